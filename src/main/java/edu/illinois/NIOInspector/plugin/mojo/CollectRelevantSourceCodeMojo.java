@@ -8,6 +8,9 @@ import org.apache.maven.plugins.annotations.Parameter;
 
 import org.apache.maven.plugins.annotations.LifecyclePhase;
 
+import edu.illinois.NIOInspector.plugin.util.logging.FlightRecording;
+import edu.illinois.NIOInspector.plugin.util.logging.PhaseTimer;
+
 import static edu.illinois.NIOInspector.plugin.util.extractors.ClassCodeExtractor.extractClassesWithCode;
 import static edu.illinois.NIOInspector.plugin.util.extractors.MethodCodeExtractor.extractImplementedMethodsWithCode;
 import static edu.illinois.NIOInspector.plugin.util.extractors.MostRecentLogFinder.findMostRecentLog;
@@ -49,6 +52,15 @@ public class CollectRelevantSourceCodeMojo extends AbstractMojo {
     @Parameter(property = "testSourceDirectory", defaultValue = "${project.build.testSourceDirectory}")
     private File testSourceDirectory;
 
+    /**
+     * Whether to record the goal with JDK Flight Recorder (Java 11 or later), into collectRelevantSourceCode.jfr
+     * next to the log file.
+     */
+    @Parameter(property = "recordJfr", defaultValue = "false")
+    private boolean recordJfr;
+
+    private final PhaseTimer phaseTimer = new PhaseTimer("collectRelevantSourceCode");
+
     /**
      * Maximum number of lines (of file-level source code) to be included in the prompt for LLM
      */
@@ -70,6 +82,8 @@ public class CollectRelevantSourceCodeMojo extends AbstractMojo {
      * @throws MojoExecutionException if an error occurs during execution
      */
     public void execute() throws MojoExecutionException {
+        FlightRecording recording = recordJfr
+            ? FlightRecording.startIfAvailable("NIOInspector collectRelevantSourceCode") : null;
         File logFile = null;
         // Log file not provided; default to file produced by most recent run
         if (logFilePath == null) {
@@ -80,16 +94,36 @@ public class CollectRelevantSourceCodeMojo extends AbstractMojo {
         }
 
         String parentDirectory = logFile.getParent();
-        List<String> possibleNIOTests = new ArrayList<>();
         try {
-            try (BufferedReader reader = new BufferedReader(new FileReader(new File(parentDirectory, "possible-NIO-list.txt")))) {
-                String line;
-                while ((line = reader.readLine()) != null) {
-                    possibleNIOTests.add(line.trim());
-                }
+            collectRelevantSourceCode(parentDirectory);
+        } finally {
+            for (String line : phaseTimer.formatTimings()) {
+                getLog().info(line);
+            }
+            if (recording != null) {
+                recording.dumpTo(new File(parentDirectory, "collectRelevantSourceCode.jfr"));
+            }
+        }
+    }
+
+    /**
+     * Collects the source code requested by the LLM agent for every possible NIO test, timing each phase.
+     *
+     * @param parentDirectory the directory of the log file, holding the information collected for each test
+     * @throws MojoExecutionException if the list of possible NIO tests or an agent response cannot be read
+     */
+    private void collectRelevantSourceCode(String parentDirectory) throws MojoExecutionException {
+        List<String> possibleNIOTests = new ArrayList<>();
+        PhaseTimer.Phase listPhase = phaseTimer.start("log parsing");
+        try (BufferedReader reader = new BufferedReader(new FileReader(new File(parentDirectory, "possible-NIO-list.txt")))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                possibleNIOTests.add(line.trim());
             }
         } catch (IOException e) {
             throw new MojoExecutionException(e.getMessage());
+        } finally {
+            listPhase.close();
         }
         for (String possibleNIOTest : possibleNIOTests) {
             File agentResponse = new File(parentDirectory + File.separator +
@@ -101,35 +135,52 @@ public class CollectRelevantSourceCodeMojo extends AbstractMojo {
             
             // Process the sorted list (e.g., write to file)
             String agentResponseString = "";
+            PhaseTimer.Phase responsePhase = phaseTimer.start("log parsing", possibleNIOTest);
             try {
                 agentResponseString = (new String(Files.readAllBytes(agentResponse.toPath()))).trim();
             } catch (IOException e) {
                 throw new MojoExecutionException(e.getMessage());
+            } finally {
+                responsePhase.close();
             }
 
             // Write most relevant source code
-            if (agentResponseString.equals("Directly Fixable")) {
-                getLog().info("LLM Agent suggests that fixing " + possibleNIOTest + " is possible without additional source code info");
-                continue;
-            } else if (agentResponseString.startsWith("Find Method Code")) {
-                String fullName = agentResponseString.substring(agentResponseString.indexOf(':') + 1).replaceAll("[{}\\s]", "");
-                String className = splitString(fullName)[0];
-                String methodName = splitString(fullName)[1];
-                writeRelevantMethodCode(possibleNIOTest, className, methodName, parentDirectory);
-            } else if (agentResponseString.startsWith("Find Class Code")) {
-                String className = agentResponseString.substring(agentResponseString.indexOf(':') + 1).replaceAll("[{}\\s]", "");
-                writeClassCode(possibleNIOTest, className, parentDirectory);
-            } else if (agentResponseString.startsWith("Find Hypothesized Method")) {
-                String methodName = agentResponseString.substring(agentResponseString.indexOf(':') + 1).replaceAll("[{}\\s]", "");
-                writeRelevantMethodCode(possibleNIOTest, null, methodName, parentDirectory);
-            } else if (agentResponseString.startsWith("Find Relevant File")) {
-                writeMostRelevantFileCode(possibleNIOTest, parentDirectory);
-            } else {
-                getLog().warn("LLM agent fails to produce parsable response. Consider re-prompting the agent.");
+            PhaseTimer.Phase sourcePhase = phaseTimer.start("source parsing", possibleNIOTest);
+            try {
+                writeRelevantSourceCode(possibleNIOTest, agentResponseString, parentDirectory);
+            } finally {
+                sourcePhase.close();
             }
         }
     }
 
+    /**
+     * Writes the source code requested by the response of the LLM agent for a possible NIO test
+     * @param possibleNIOTest The string containing class and method names of a possible NIO test.
+     * @param agentResponseString the response of the LLM agent.
+     * @param parentDirectory the parent directory containing the source files.
+     */
+    private void writeRelevantSourceCode(String possibleNIOTest, String agentResponseString, String parentDirectory) {
+        if (agentResponseString.equals("Directly Fixable")) {
+            getLog().info("LLM Agent suggests that fixing " + possibleNIOTest + " is possible without additional source code info");
+        } else if (agentResponseString.startsWith("Find Method Code")) {
+            String fullName = agentResponseString.substring(agentResponseString.indexOf(':') + 1).replaceAll("[{}\\s]", "");
+            String className = splitString(fullName)[0];
+            String methodName = splitString(fullName)[1];
+            writeRelevantMethodCode(possibleNIOTest, className, methodName, parentDirectory);
+        } else if (agentResponseString.startsWith("Find Class Code")) {
+            String className = agentResponseString.substring(agentResponseString.indexOf(':') + 1).replaceAll("[{}\\s]", "");
+            writeClassCode(possibleNIOTest, className, parentDirectory);
+        } else if (agentResponseString.startsWith("Find Hypothesized Method")) {
+            String methodName = agentResponseString.substring(agentResponseString.indexOf(':') + 1).replaceAll("[{}\\s]", "");
+            writeRelevantMethodCode(possibleNIOTest, null, methodName, parentDirectory);
+        } else if (agentResponseString.startsWith("Find Relevant File")) {
+            writeMostRelevantFileCode(possibleNIOTest, parentDirectory);
+        } else {
+            getLog().warn("LLM agent fails to produce parsable response. Consider re-prompting the agent.");
+        }
+    }
+
     /**
      * Writes the code of a class given the class name
      * @param possibleNIOTest The string containing class and method names of a possible NIO test.
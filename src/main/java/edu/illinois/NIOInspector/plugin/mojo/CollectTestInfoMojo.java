@@ -6,6 +6,12 @@ import org.apache.maven.plugins.annotations.Mojo;
 import org.apache.maven.plugins.annotations.Parameter;
 import org.apache.maven.plugins.annotations.LifecyclePhase;
 
+import edu.illinois.NIOInspector.plugin.util.detection.OutputCapture;
+import edu.illinois.NIOInspector.plugin.util.detection.TestOutcomeAggregator;
+import edu.illinois.NIOInspector.plugin.util.logging.FlightRecording;
+import edu.illinois.NIOInspector.plugin.util.logging.LoggedStackTraces;
+import edu.illinois.NIOInspector.plugin.util.logging.PhaseTimer;
+
 import static edu.illinois.NIOInspector.plugin.util.extractors.MostRecentLogFinder.findMostRecentLog;
 import static edu.illinois.NIOInspector.plugin.util.extractors.StackTraceLineNumberExtractor.findLineNumberInStackTrace;
 
@@ -16,7 +22,12 @@ import java.io.FileReader;
 import java.io.FileWriter;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -25,6 +36,8 @@ import java.util.regex.Pattern;
  * 1. A list of possible NIO tests.
  * 2. The stacktrace of the first rerun of each possible NIO test.
  * 3. The reduced method source code of each possible NIO test.
+ * 4. The files changed by each possible NIO test in the initial run (if the rerun tracked files).
+ * 5. The output each possible NIO test printed in its failing reruns (if the reruns were quiet).
  */
 @Mojo(name = "collectTestInfo", defaultPhase = LifecyclePhase.INITIALIZE)
 public class CollectTestInfoMojo extends AbstractMojo {
@@ -41,12 +54,22 @@ public class CollectTestInfoMojo extends AbstractMojo {
     @Parameter(property = "testSourceDirectory", defaultValue = "${project.build.testSourceDirectory}")
     private File testSourceDirectory;
 
+    /**
+     * Whether to record the goal with JDK Flight Recorder (Java 11 or later), into collectTestInfo.jfr next to
+     * the log file.
+     */
+    @Parameter(property = "recordJfr", defaultValue = "false")
+    private boolean recordJfr;
+
+    private final PhaseTimer phaseTimer = new PhaseTimer("collectTestInfo");
+
     /**
      * Executes the Mojo to collect test information.
      *
      * @throws MojoExecutionException if an error occurs during execution
      */
     public void execute() throws MojoExecutionException {
+        FlightRecording recording = recordJfr ? FlightRecording.startIfAvailable("NIOInspector collectTestInfo") : null;
         File logFile = null;
         // Log file not provided; default to file produced by most recent run
         if (logFilePath == null) {
@@ -58,31 +81,107 @@ public class CollectTestInfoMojo extends AbstractMojo {
 
         String parentDirectory = logFile.getParent();
 
+        try {
+            collectTestInfo(logFile, parentDirectory);
+        } finally {
+            for (String line : phaseTimer.formatTimings()) {
+                getLog().info(line);
+            }
+            if (recording != null) {
+                recording.dumpTo(new File(parentDirectory, "collectTestInfo.jfr"));
+            }
+        }
+    }
+
+    /**
+     * Collects the information of every possible NIO test found in the log file, timing each phase.
+     *
+     * @param logFile The log file produced by running the Rerun Mojo
+     * @param parentDirectory The directory to store the information collected
+     * @throws MojoExecutionException if an error occurs while collecting
+     */
+    private void collectTestInfo(File logFile, String parentDirectory) throws MojoExecutionException {
         // Get a list of all possible NIO tests
-        List<String> possibleNIOTests = getPossibleNIOTests(logFile);
+        List<String> possibleNIOTests;
+        Map<String, List<String>> fileChanges;
+        PhaseTimer.Phase parsingPhase = phaseTimer.start("log parsing");
+        try {
+            possibleNIOTests = getPossibleNIOTests(logFile);
+            fileChanges = getFileChanges(logFile);
+        } finally {
+            parsingPhase.close();
+        }
         if (possibleNIOTests.isEmpty()) {
             getLog().warn("No error strings found");
             return;
         }
 
         // Write the list of possible NIO tests
+        PhaseTimer.Phase listPhase = phaseTimer.start("artifact writing");
         try (FileWriter writer = new FileWriter(new File(parentDirectory, "possible-NIO-list.txt"))) {
             for (String line : possibleNIOTests) {
                 writer.write(line + System.lineSeparator());
             }
         } catch (IOException e) {
             e.printStackTrace();
+        } finally {
+            listPhase.close();
         }
 
         for (String possibleNIOTest : possibleNIOTests) {
             // Write reduced test code at method granularity
-            writeReducedTestFile(possibleNIOTest, parentDirectory);
+            PhaseTimer.Phase sourcePhase = phaseTimer.start("source parsing", possibleNIOTest);
+            try {
+                writeReducedTestFile(possibleNIOTest, parentDirectory);
+            } finally {
+                sourcePhase.close();
+            }
 
-            // Write stacktrace of the failure in each rerun
-            writeStackTrace(possibleNIOTest, parentDirectory, logFile);
+            // Write the files changed in the initial run
+            if (fileChanges.containsKey(possibleNIOTest)) {
+                PhaseTimer.Phase fileChangesPhase = phaseTimer.start("artifact writing", possibleNIOTest);
+                try {
+                    writeFileChanges(possibleNIOTest, parentDirectory, fileChanges.get(possibleNIOTest));
+                } finally {
+                    fileChangesPhase.close();
+                }
+            }
+
+            // Write stacktrace of the failure in each rerun (tests of forked shards are logged by their shard)
+            PhaseTimer.Phase stackTracePhase = phaseTimer.start("stack trace extraction", possibleNIOTest);
+            try {
+                for (File runLog : getRunLogs(logFile)) {
+                    writeStackTrace(possibleNIOTest, parentDirectory, runLog);
+                    writeCapturedOutput(possibleNIOTest, parentDirectory, runLog);
+                }
+            } finally {
+                stackTracePhase.close();
+            }
         }
     }
 
+    /**
+     * Lists the log of a rerun followed by the logs of its forked shards (if any)
+     * @param logFile The log file produced by running the Rerun Mojo
+     * @return The log files of the rerun
+     */
+    private List<File> getRunLogs(File logFile) {
+        List<File> runLogs = new ArrayList<>();
+        runLogs.add(logFile);
+        File[] shardDirectories = logFile.getAbsoluteFile().getParentFile()
+            .listFiles(file -> file.isDirectory() && file.getName().startsWith("shard-"));
+        if (shardDirectories != null) {
+            Arrays.sort(shardDirectories);
+            for (File shardDirectory : shardDirectories) {
+                File shardLog = new File(shardDirectory, logFile.getName());
+                if (shardLog.isFile()) {
+                    runLogs.add(shardLog);
+                }
+            }
+        }
+        return runLogs;
+    }
+
     /**
      * Write the stack trace of a possible NIO test in each rerun
      * @param possibleNIOTest The name of the test to write stack trace for
@@ -91,6 +190,7 @@ public class CollectTestInfoMojo extends AbstractMojo {
      */
     public void writeStackTrace(String possibleNIOTest, String parentDirectory, File logFile) throws MojoExecutionException {
         try (BufferedReader reader = new BufferedReader(new FileReader(logFile))) {
+            Map<Integer, Integer> stackTraceLines = findStackTraceLines(logFile);
             String line;
             int startLine = -1;
             boolean inRerunExamination = false;
@@ -117,7 +217,16 @@ public class CollectTestInfoMojo extends AbstractMojo {
                 }
                 Matcher failureMatcher = failureMessagePattern.matcher(line);
                 if (failureMatcher.find() && startLine != -1) {
-                    extractStackTrace(startLine, parentDirectory, logFile, NIOTestName, rerunNum);
+                    // Frames logged before are only referred to
+                    int reference = LoggedStackTraces.parseReference(line);
+                    if (reference > 0 && stackTraceLines.containsKey(reference)) {
+                        extractStackTrace(lineNum, readFrames(logFile, stackTraceLines.get(reference)), parentDirectory,
+                            logFile, NIOTestName, rerunNum);
+                    } else if (reference > 0) {
+                        getLog().warn("Stack trace #" + reference + " of rerun #" + rerunNum + " not found in " + logFile);
+                    } else {
+                        extractStackTrace(startLine, parentDirectory, logFile, NIOTestName, rerunNum);
+                    }
                     inRerunExamination = false;
                     startLine = -1;
                 }
@@ -127,6 +236,29 @@ public class CollectTestInfoMojo extends AbstractMojo {
         }
     }
 
+    /**
+     * Helper of `writeStackTrace()` to find the stack traces logged in full, which later failures may refer to
+     * @param logFile The log file produced by running the Rerun Mojo
+     * @return The line number of the header of each stack trace, by number
+     */
+    private Map<Integer, Integer> findStackTraceLines(File logFile) throws IOException {
+        Map<Integer, Integer> stackTraceLines = new HashMap<>();
+        try (BufferedReader reader = new BufferedReader(new FileReader(logFile))) {
+            String line;
+            int lineNum = 0;
+            while ((line = reader.readLine()) != null) {
+                lineNum++;
+                if (line.startsWith("[WARN] Failure message:")) {
+                    int number = LoggedStackTraces.parseFirst(line);
+                    if (number > 0) {
+                        stackTraceLines.put(number, lineNum);
+                    }
+                }
+            }
+        }
+        return stackTraceLines;
+    }
+
     /**
      * Helper of `writeStackTrace()` to extract stacktrace chunk from the log, given start line
      * @param startLine Line number of the start line of the stack trace chunk
@@ -136,6 +268,48 @@ public class CollectTestInfoMojo extends AbstractMojo {
      * @param rerunNum The rerun number to examine
      */
     private void extractStackTrace(int startLine, String parentDirectory, File logFile, String NIOTestName, int rerunNum) throws IOException {
+        extractStackTrace(startLine, Collections.emptyList(), parentDirectory, logFile, NIOTestName, rerunNum);
+    }
+
+    /**
+     * Helper of `writeStackTrace()` to read the frames of a stack trace logged in full
+     * @param logFile The log file produced by running the Rerun Mojo
+     * @param headerLine Line number of the header of the stack trace
+     * @return The lines of the stack trace from its first frame on
+     */
+    private List<String> readFrames(File logFile, int headerLine) throws IOException {
+        List<String> frames = new ArrayList<>();
+        try (BufferedReader reader = new BufferedReader(new FileReader(logFile))) {
+            String line;
+            int lineNum = 0;
+            while ((line = reader.readLine()) != null) {
+                lineNum++;
+                if (lineNum <= headerLine) {
+                    continue;
+                }
+                if (line.startsWith("[WARN]") || line.startsWith("[INFO]") || line.startsWith("[ERROR]")) {
+                    break;
+                }
+                if (!frames.isEmpty() || line.startsWith("\tat ")) {
+                    frames.add(line);
+                }
+            }
+        }
+        return frames;
+    }
+
+    /**
+     * Helper of `writeStackTrace()` to extract stacktrace chunk from the log, given start line, completed with the
+     * frames it refers to
+     * @param startLine Line number of the start line of the stack trace chunk
+     * @param referencedFrames The frames of the stack trace the chunk refers to, empty if it is complete
+     * @param parentDirectory The directory to store the stack trace written
+     * @param logFile The log file produced by running the Rerun Mojo
+     * @param NIOTestName The name of the NIO method to be used as part of file name of the written stack trace
+     * @param rerunNum The rerun number to examine
+     */
+    private void extractStackTrace(int startLine, List<String> referencedFrames, String parentDirectory, File logFile,
+        String NIOTestName, int rerunNum) throws IOException {
         File subDirectory = new File(parentDirectory + File.separator + NIOTestName);
         if (!subDirectory.exists()) {
             subDirectory.mkdir();
@@ -159,6 +333,10 @@ public class CollectTestInfoMojo extends AbstractMojo {
                     }
                 }
             }
+            for (String frame : referencedFrames) {
+                writer.write(frame);
+                writer.newLine();
+            }
             getLog().info("Extracted log for rerun #" + rerunNum + " saved to " + subDirectory.getName());
         }
         File bugLineOfRerunNum = new File(subDirectory, "error_line" + rerunNum);
@@ -225,6 +403,119 @@ public class CollectTestInfoMojo extends AbstractMojo {
         return possibleNIOTests;
     }
 
+    /**
+     * Parses the "File System Pollution" section of the rerun log
+     * @param logFile The log file to parse.
+     * @return Map from test (i.e. com.example.FooTest#bar) to the files it changed in the initial run.
+     */
+    Map<String, List<String>> getFileChanges(File logFile) {
+        Map<String, List<String>> fileChanges = new LinkedHashMap<>();
+        String fileChangePrefix = "[WARN] " + TestOutcomeAggregator.FILE_CHANGE_INDENT;
+        Pattern testPattern = Pattern.compile("^\\[WARN\\] (\\S+) \\(changed \\d+ file\\(s\\)\\)");
+
+        try (BufferedReader reader = new BufferedReader(new FileReader(logFile))) {
+            String line;
+            boolean inSection = false;
+            List<String> changes = null;
+            while ((line = reader.readLine()) != null) {
+                if (line.startsWith("[INFO] =") && line.contains("File System Pollution")) {
+                    inSection = true;
+                } else if (inSection && line.startsWith("[INFO] =")) {
+                    // Next section
+                    break;
+                } else if (inSection && line.startsWith(fileChangePrefix) && changes != null) {
+                    changes.add(line.substring(fileChangePrefix.length()));
+                } else if (inSection) {
+                    Matcher testMatcher = testPattern.matcher(line);
+                    changes = testMatcher.find()
+                        ? fileChanges.computeIfAbsent(testMatcher.group(1), k -> new ArrayList<>()) : null;
+                }
+            }
+        } catch (IOException e) {
+            getLog().error("Error reading log file: " + logFile.getAbsolutePath(), e);
+        }
+        return fileChanges;
+    }
+
+    /**
+     * Write the files changed by a possible NIO test in the initial run
+     * @param possibleNIOTest The name of the test to write file changes for
+     * @param parentDirectory The directory to store the file changes written
+     * @param changes The file changes (i.e. "created /tmp/out.txt")
+     */
+    private void writeFileChanges(String possibleNIOTest, String parentDirectory, List<String> changes) {
+        File subDirectory = new File(parentDirectory + File.separator + possibleNIOTest.replace("#", "."));
+        if (!subDirectory.exists()) {
+            subDirectory.mkdir();
+        }
+        try (BufferedWriter writer = new BufferedWriter(new FileWriter(new File(subDirectory, "changed_files")))) {
+            for (String change : changes) {
+                writer.write(change);
+                writer.newLine();
+            }
+            getLog().info("Files changed in the initial run written to: " + subDirectory);
+        } catch (IOException e) {
+            getLog().error("Error writing changed files: ", e);
+        }
+    }
+
+    /**
+     * Write the output a possible NIO test printed in each rerun it failed in, as captured in quiet reruns
+     * @param possibleNIOTest The name of the test to write the output of
+     * @param parentDirectory The directory to store the output written
+     * @param logFile The log file produced by running the Rerun Mojo
+     */
+    private void writeCapturedOutput(String possibleNIOTest, String parentDirectory, File logFile) {
+        Pattern rerunStartPattern = Pattern.compile("\\[INFO\\] =======================Starting Rerun #(\\d+)");
+        String failingTestReport = "[WARN] Failing Test: " + possibleNIOTest;
+        Map<Integer, List<String>> outputs = new LinkedHashMap<>();
+        try (BufferedReader reader = new BufferedReader(new FileReader(logFile))) {
+            String line;
+            int rerunNum = 0;
+            boolean failingTest = false;
+            List<String> output = null;
+            // The output follows the failure message of the test, each line indented
+            while ((line = reader.readLine()) != null) {
+                if (output != null && line.startsWith(OutputCapture.CAPTURED_OUTPUT_INDENT)) {
+                    output.add(line.substring(OutputCapture.CAPTURED_OUTPUT_INDENT.length()));
+                    continue;
+                }
+                output = null;
+                Matcher rerunStartMatcher = rerunStartPattern.matcher(line);
+                if (rerunStartMatcher.find()) {
+                    rerunNum = Integer.parseInt(rerunStartMatcher.group(1));
+                    failingTest = false;
+                } else if (line.startsWith("[WARN] Failing Test: ")) {
+                    failingTest = rerunNum > 0 && line.equals(failingTestReport);
+                } else if (failingTest && line.startsWith("[WARN] Captured output")) {
+                    output = outputs.computeIfAbsent(rerunNum, k -> new ArrayList<>());
+                    failingTest = false;
+                }
+            }
+        } catch (IOException e) {
+            getLog().error("Error reading log file: " + logFile.getAbsolutePath(), e);
+            return;
+        }
+        if (outputs.isEmpty()) {
+            return;
+        }
+        File subDirectory = new File(parentDirectory + File.separator + possibleNIOTest.replace("#", "."));
+        if (!subDirectory.exists()) {
+            subDirectory.mkdir();
+        }
+        for (Map.Entry<Integer, List<String>> entry : outputs.entrySet()) {
+            try (BufferedWriter writer = new BufferedWriter(new FileWriter(new File(subDirectory, "output" + entry.getKey())))) {
+                for (String outputLine : entry.getValue()) {
+                    writer.write(outputLine);
+                    writer.newLine();
+                }
+                getLog().info("Captured output of rerun #" + entry.getKey() + " written to: " + subDirectory);
+            } catch (IOException e) {
+                getLog().error("Error writing captured output: ", e);
+            }
+        }
+    }
+
     /**
      * Implementation of a test method may be in a parent class - finds it if necessary
      * @param parentClass The name of the parent class.
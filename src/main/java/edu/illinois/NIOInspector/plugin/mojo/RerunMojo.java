@@ -12,20 +12,34 @@ import org.apache.maven.project.MavenProject;
 
 import org.codehaus.plexus.util.xml.Xpp3Dom;
 
+import org.junit.jupiter.engine.Constants;
+
 import edu.illinois.NIOInspector.plugin.util.detection.ClassLoaderIsolatedTestRunner;
 import edu.illinois.NIOInspector.plugin.util.detection.IsolatedURLClassLoader;
+import edu.illinois.NIOInspector.plugin.util.detection.RerunOptions;
+import edu.illinois.NIOInspector.plugin.util.history.HistoryStore;
+import edu.illinois.NIOInspector.plugin.util.history.TestPrioritizer;
+import edu.illinois.NIOInspector.plugin.util.logging.CustomTimeBasedFileAppender;
+import edu.illinois.NIOInspector.plugin.util.logging.FlightRecording;
+import edu.illinois.NIOInspector.plugin.util.logging.PhaseTimer;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.StringReader;
 import java.net.URL;
 import java.net.URLClassLoader;
 import java.lang.reflect.Constructor;
 import java.lang.reflect.Method;
 import java.lang.reflect.InvocationTargetException;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
 import java.util.List;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.TreeMap;
 import java.util.regex.Pattern;
 
 /**
@@ -34,6 +48,13 @@ import java.util.regex.Pattern;
 @Mojo(name = "rerun", requiresDependencyResolution = ResolutionScope.TEST)
 public class RerunMojo extends AbstractMojo {
 
+    // Prefix of the Jupiter parallel execution parameters forwarded from the system properties
+    private static final String PARALLEL_PREFIX = "junit.jupiter.execution.parallel.";
+
+    // Group IDs of the artifacts loaded by the shared class loader (see isShared)
+    private static final Set<String> SHARED_GROUP_IDS = new HashSet<>(Arrays.asList("org.junit.platform",
+        "org.junit.jupiter", "org.junit.vintage", "junit", "org.hamcrest", "org.opentest4j", "org.apiguardian"));
+
     /**
      * Comma-separated list of test classes and methods to rerun.
      */
@@ -58,6 +79,157 @@ public class RerunMojo extends AbstractMojo {
     @Parameter(property = "numReruns", defaultValue = "3")
     private int numReruns;
 
+    /**
+     * Number of forked JVMs to shard the test classes across (1 runs all tests in the Maven JVM).
+     */
+    @Parameter(property = "forkCount", defaultValue = "1")
+    private int forkCount;
+
+    /**
+     * Number of shards run concurrently in the Maven JVM, each in its own isolated class loader
+     * (ignored when forkCount is greater than 1).
+     */
+    @Parameter(property = "threadShards", defaultValue = "1")
+    private int threadShards;
+
+    /**
+     * Whether reruns #2..N only re-execute tests that passed in the initial run but failed in rerun #1.
+     */
+    @Parameter(property = "narrowReruns", defaultValue = "false")
+    private boolean narrowReruns;
+
+    /**
+     * Whether reruns leave out the tests whose bytecode cannot mutate shared state.
+     */
+    @Parameter(property = "prefilterReruns", defaultValue = "false")
+    private boolean prefilterReruns;
+
+    /**
+     * Whether to snapshot static fields around each test of the initial run and report the tests changing them.
+     */
+    @Parameter(property = "snapshotStatics", defaultValue = "false")
+    private boolean snapshotStatics;
+
+    /**
+     * Whether to index the project directory, the build directory and java.io.tmpdir around each test of the
+     * initial run and report the tests creating, modifying or deleting files there.
+     */
+    @Parameter(property = "trackFiles", defaultValue = "false")
+    private boolean trackFiles;
+
+    /**
+     * Whether to attach an agent to forked workers (forking one if forkCount is 1) recording the JVM-global state
+     * (i.e. system properties, default locale and time zone, thread locals, logger levels) each test of the initial
+     * run changes.
+     */
+    @Parameter(property = "trackGlobals", defaultValue = "false")
+    private boolean trackGlobals;
+
+    /**
+     * Whether suites made only of JUnit 4 test classes run directly with JUnitCore instead of the Vintage engine.
+     */
+    @Parameter(property = "directJUnit4", defaultValue = "true")
+    private boolean directJUnit4;
+
+    /**
+     * Whether the test frameworks (JUnit Platform, Jupiter, Vintage, JUnit 4 and their dependencies) are loaded
+     * once by a class loader shared by the class loaders of all shards and NIO confirmations.
+     */
+    @Parameter(property = "shareTestFrameworks", defaultValue = "true")
+    private boolean shareTestFrameworks;
+
+    /**
+     * Whether forked workers share a dynamic AppCDS archive of their classes across reruns (Java 13 or later).
+     */
+    @Parameter(property = "classDataSharing", defaultValue = "true")
+    private boolean classDataSharing;
+
+    /**
+     * Whether each possible NIO test is run alone twice after the final results to confirm it.
+     */
+    @Parameter(property = "confirmNIO", defaultValue = "false")
+    private boolean confirmNIO;
+
+    /**
+     * Whether each possible NIO test is rerun once in a fresh class loader, then once in a fresh JVM if it still
+     * fails, after the final results to classify the scope of the state it pollutes.
+     */
+    @Parameter(property = "classifyPollution", defaultValue = "false")
+    private boolean classifyPollution;
+
+    /**
+     * Whether Jupiter tests run in parallel (with concurrent execution by default) in the reruns. If not set, the
+     * parallel execution configured for Surefire (configurationParameters) or by system properties is used.
+     */
+    @Parameter(property = "parallelReruns")
+    private Boolean parallelReruns;
+
+    /**
+     * Whether to run all test classes, instead of skipping the unchanged ones found idempotent by a previous rerun.
+     */
+    @Parameter(property = "fullRun", defaultValue = "false")
+    private boolean fullRun;
+
+    /**
+     * Whether to order test classes by their likelihood of being flaky (and then by cost) according to past reruns.
+     */
+    @Parameter(property = "prioritize", defaultValue = "true")
+    private boolean prioritize;
+
+    /**
+     * Wall-clock budget of the whole rerun (e.g. 15m, 90s, 1h30m), after which remaining runs are skipped and
+     * partial results are reported. No budget if not set.
+     */
+    @Parameter(property = "timeBudget")
+    private String timeBudget;
+
+    /**
+     * Time (e.g. 60s, 5m) after which a running test is considered hung: its forked worker is killed, its test class
+     * quarantined, and the rest of its shard run by a respawned worker. No timeout if not set.
+     */
+    @Parameter(property = "testTimeout")
+    private String testTimeout;
+
+    /**
+     * Time (e.g. 10m) after which a test class running in one run is considered hung, handled like testTimeout.
+     * No timeout if not set.
+     */
+    @Parameter(property = "classTimeout")
+    private String classTimeout;
+
+    /**
+     * Whether to sample the heap and garbage collections of every run, reported in rerun-results.log.
+     */
+    @Parameter(property = "heapTelemetry", defaultValue = "false")
+    private boolean heapTelemetry;
+
+    /**
+     * Growth (e.g. 256m, 1g) of the heap retained since the initial run after which a forked worker is recycled:
+     * its remaining reruns run in a fresh worker, and its test classes are flagged. Implies heapTelemetry.
+     * No recycling if not set.
+     */
+    @Parameter(property = "heapGrowthLimit")
+    private String heapGrowthLimit;
+
+    /**
+     * Whether to capture what the tests print instead of letting it reach the console and the logs. Only the output
+     * of the tests failing in a rerun after passing in the initial run is kept, logged next to their stack trace.
+     */
+    @Parameter(property = "quietReruns", defaultValue = "false")
+    private boolean quietReruns;
+
+    /**
+     * Size (e.g. 64k, 1m) of the output kept per test in quiet reruns: only its last bytes are kept.
+     */
+    @Parameter(property = "capturedOutputLimit", defaultValue = "64k")
+    private String capturedOutputLimit;
+
+    /**
+     * Whether to record the rerun with JDK Flight Recorder (Java 11 or later), into rerun.jfr in the run directory
+     * and worker.jfr in the directory of each forked worker.
+     */
+    @Parameter(property = "recordJfr", defaultValue = "false")
+    private boolean recordJfr;
 
     /**
      * Executes the Mojo to rerun tests.
@@ -66,6 +238,35 @@ public class RerunMojo extends AbstractMojo {
      */
     public void execute() throws MojoExecutionException {
 
+        FlightRecording recording = recordJfr ? FlightRecording.startIfAvailable("NIOInspector rerun") : null;
+        PhaseTimer phaseTimer = new PhaseTimer("rerun");
+
+        long deadline = 0;
+        if (timeBudget != null && !timeBudget.isEmpty()) {
+            try {
+                deadline = System.currentTimeMillis() + RerunOptions.parseDurationMillis(timeBudget);
+            } catch (IllegalArgumentException e) {
+                throw new MojoExecutionException("Invalid timeBudget: " + timeBudget, e);
+            }
+        }
+
+        long testTimeoutMillis = parseTimeout("testTimeout", testTimeout);
+        long classTimeoutMillis = parseTimeout("classTimeout", classTimeout);
+        long heapGrowthLimitBytes = 0;
+        if (heapGrowthLimit != null && !heapGrowthLimit.isEmpty()) {
+            try {
+                heapGrowthLimitBytes = RerunOptions.parseSizeBytes(heapGrowthLimit);
+            } catch (IllegalArgumentException e) {
+                throw new MojoExecutionException("Invalid heapGrowthLimit: " + heapGrowthLimit, e);
+            }
+        }
+        long capturedOutputLimitBytes;
+        try {
+            capturedOutputLimitBytes = RerunOptions.parseSizeBytes(capturedOutputLimit);
+        } catch (IllegalArgumentException e) {
+            throw new MojoExecutionException("Invalid capturedOutputLimit: " + capturedOutputLimit, e);
+        }
+
         List<String> testClassNames = new ArrayList<>();
         Map<String, List<String>> classStringToMethodsMap = new HashMap<>();
         if (!(test == null) && !test.isEmpty()) {
@@ -96,47 +297,58 @@ public class RerunMojo extends AbstractMojo {
         } else {
             // If test parameter is not provided, find all test classes
             testClassNames = findTestClasses(project.getBuild().getTestOutputDirectory());
+            if (prioritize) {
+                testClassNames = prioritizeTestClasses(testClassNames);
+            }
         }
     
         URLClassLoader classLoader = null;
+        PhaseTimer.Phase classpathPhase = phaseTimer.start("classpath assembly");
         try {
             // Convert the paths to URLs
             URL testClassesURL = new File(project.getBuild().getTestOutputDirectory()).toURI().toURL();
 
-            List<URL> allURLs = new ArrayList<>();
+            // Test frameworks are loaded once by a shared parent class loader, the rest by the isolated one
+            List<URL> sharedURLs = new ArrayList<>();
+            List<URL> isolatedURLs = new ArrayList<>();
             try {
                 // Get all dependencies needed for NIOInspector plugin
-                List<URL> pluginDependencies = new ArrayList<>();
                 for (Artifact artifact : pluginArtifacts) {
                     if (artifact.getFile() != null) {
-                        pluginDependencies.add(artifact.getFile().toURI().toURL());
+                        (isShared(artifact) ? sharedURLs : isolatedURLs).add(artifact.getFile().toURI().toURL());
                     }
                 }
-                allURLs.addAll(pluginDependencies);
 
                 // Get all test dependencies for current project
-                List<String> projectTestDependenciesElements = project.getTestClasspathElements();
-                List<URL> projectTestDependencies = new ArrayList<>();
-                for (String dependency : projectTestDependenciesElements) {
-                    projectTestDependencies.add(new File(dependency).toURI().toURL());
+                Set<File> sharedProjectFiles = new HashSet<>();
+                for (Artifact artifact : project.getArtifacts()) {
+                    if (artifact.getFile() != null && isShared(artifact)) {
+                        sharedProjectFiles.add(artifact.getFile().getAbsoluteFile());
+                    }
+                }
+                for (String dependency : project.getTestClasspathElements()) {
+                    File file = new File(dependency).getAbsoluteFile();
+                    (sharedProjectFiles.contains(file) ? sharedURLs : isolatedURLs).add(file.toURI().toURL());
                 }
-                allURLs.addAll(projectTestDependencies);
 
-                // Add runtime dependencies of current project
-                List<String> projectRuntimeDependenciesElements = project.getRuntimeClasspathElements();
-                List<URL> projectRuntimeDependencies = new ArrayList<>();
-                for (String dependency : projectRuntimeDependenciesElements) {
-                    projectRuntimeDependencies.add(new File(dependency).toURI().toURL());
+                // Add runtime dependencies of current project (duplicates are dropped by the class loader)
+                for (String dependency : project.getRuntimeClasspathElements()) {
+                    isolatedURLs.add(new File(dependency).toURI().toURL());
                 }
-                allURLs.addAll(projectRuntimeDependencies);
             } catch (Exception e) {
                 throw new MojoExecutionException("Error retrieving all dependent Jars", e);
             }
             // Add test classes found in current project
-            allURLs.add(testClassesURL);
+            isolatedURLs.add(testClassesURL);
+            classpathPhase.close();
 
             // Create IsolatedURLClassLoader with all relevant URLs
-            classLoader = new IsolatedURLClassLoader(allURLs.toArray(new URL[0]));
+            PhaseTimer.Phase loaderPhase = phaseTimer.start("loader creation");
+            try {
+                classLoader = IsolatedURLClassLoader.create(sharedURLs, isolatedURLs);
+            } finally {
+                loaderPhase.close();
+            }
         } catch (IOException e) {
             throw new MojoExecutionException("Error creating URLClassLoader", e);
         }
@@ -151,12 +363,154 @@ public class RerunMojo extends AbstractMojo {
             constructor.setAccessible(true);
             Object testRunner = constructor.newInstance();
     
+            // Options are passed as plain strings since they cross class loader boundaries
+            Properties options = new Properties();
+            options.setProperty(RerunOptions.FORK_COUNT, String.valueOf(forkCount));
+            options.setProperty(RerunOptions.THREAD_SHARDS, String.valueOf(threadShards));
+            options.setProperty(RerunOptions.NARROW_RERUNS, String.valueOf(narrowReruns));
+            options.setProperty(RerunOptions.PREFILTER_RERUNS, String.valueOf(prefilterReruns));
+            options.setProperty(RerunOptions.SNAPSHOT_STATICS, String.valueOf(snapshotStatics));
+            options.setProperty(RerunOptions.TRACK_GLOBALS, String.valueOf(trackGlobals));
+            options.setProperty(RerunOptions.DIRECT_JUNIT4, String.valueOf(directJUnit4));
+            options.setProperty(RerunOptions.CLASS_DATA_SHARING, String.valueOf(classDataSharing));
+            if (trackFiles) {
+                options.setProperty(RerunOptions.TRACKED_DIRECTORIES, String.join(File.pathSeparator,
+                    project.getBasedir().getAbsolutePath(), project.getBuild().getDirectory(),
+                    System.getProperty("java.io.tmpdir")));
+            }
+            options.setProperty(RerunOptions.CONFIRM_NIO, String.valueOf(confirmNIO));
+            options.setProperty(RerunOptions.CLASSIFY_POLLUTION, String.valueOf(classifyPollution));
+            // Explicitly selected tests are always run
+            options.setProperty(RerunOptions.INCREMENTAL, String.valueOf(!fullRun && (test == null || test.isEmpty())));
+            options.setProperty(RerunOptions.TEST_OUTPUT_DIRECTORY, project.getBuild().getTestOutputDirectory());
+            options.setProperty(RerunOptions.DEADLINE, String.valueOf(deadline));
+            options.setProperty(RerunOptions.TEST_TIMEOUT, String.valueOf(testTimeoutMillis));
+            options.setProperty(RerunOptions.CLASS_TIMEOUT, String.valueOf(classTimeoutMillis));
+            options.setProperty(RerunOptions.HEAP_TELEMETRY, String.valueOf(heapTelemetry || heapGrowthLimitBytes > 0));
+            options.setProperty(RerunOptions.HEAP_GROWTH_LIMIT, String.valueOf(heapGrowthLimitBytes));
+            options.setProperty(RerunOptions.QUIET_RERUNS, String.valueOf(quietReruns));
+            options.setProperty(RerunOptions.CAPTURED_OUTPUT_LIMIT, String.valueOf(capturedOutputLimitBytes));
+            options.setProperty(RerunOptions.RECORD_JFR, String.valueOf(recording != null));
+            for (Map.Entry<String, String> parameter : getConfigurationParameters().entrySet()) {
+                options.setProperty(RerunOptions.CONFIGURATION_PARAMETER_PREFIX + parameter.getKey(),
+                    parameter.getValue());
+            }
+
             // Invoke the JUnit runner method reflectively
-            Method runMethod = testRunnerClass.getMethod("runInvokedReflectively", List.class, Map.class, ClassLoader.class, int.class);
-            runMethod.invoke(testRunner, testClassNames, classStringToMethodsMap, classLoader, numReruns);
+            Method runMethod = testRunnerClass.getMethod("runInvokedReflectively", List.class, Map.class, ClassLoader.class, int.class, Properties.class);
+            PhaseTimer.Phase runnerPhase = phaseTimer.start("test runner");
+            try {
+                runMethod.invoke(testRunner, testClassNames, classStringToMethodsMap, classLoader, numReruns, options);
+            } finally {
+                runnerPhase.close();
+            }
         } catch (ClassNotFoundException | InstantiationException | IllegalAccessException | NoSuchMethodException | InvocationTargetException e) {
             throw new MojoExecutionException("Error invoking ClassLoaderIsolatedTestRunner", e);
         }
+
+        for (String line : phaseTimer.formatTimings()) {
+            getLog().info(line);
+        }
+        if (recording != null) {
+            File runDirectory = getRunDirectory(classLoader);
+            if (runDirectory != null) {
+                recording.dumpTo(new File(runDirectory, "rerun.jfr"));
+            }
+        }
+    }
+
+    /**
+     * Parses a timeout parameter.
+     *
+     * @param name the name of the parameter
+     * @param timeout the value of the parameter (e.g. 60s), or null
+     * @return the timeout in milliseconds, 0 if not set
+     * @throws MojoExecutionException if the value is malformed
+     */
+    private static long parseTimeout(String name, String timeout) throws MojoExecutionException {
+        if (timeout == null || timeout.isEmpty()) {
+            return 0;
+        }
+        try {
+            return RerunOptions.parseDurationMillis(timeout);
+        } catch (IllegalArgumentException e) {
+            throw new MojoExecutionException("Invalid " + name + ": " + timeout, e);
+        }
+    }
+
+    /**
+     * Gets the directory the test runner wrote the logs of this rerun to. The directory is set in the class loader
+     * the test runner was loaded by, hence read reflectively.
+     *
+     * @param classLoader the class loader of the test runner
+     * @return the run directory, or null if unknown
+     */
+    private File getRunDirectory(ClassLoader classLoader) {
+        try {
+            Class<?> appenderClass = classLoader.loadClass(CustomTimeBasedFileAppender.class.getName());
+            Object logDirectory = appenderClass.getMethod("getLogDirectory").invoke(null);
+            return logDirectory == null ? null : new File(logDirectory.toString());
+        } catch (ReflectiveOperationException e) {
+            getLog().warn("Failed to find the run directory: " + e);
+            return null;
+        }
+    }
+
+    /**
+     * Checks whether an artifact is loaded by the class loader shared by all isolated class loaders, i.e. it
+     * belongs to a test framework whose classes hold no state the tests may pollute.
+     *
+     * @param artifact the artifact of the plugin or of the project
+     * @return true if the artifact is shared
+     */
+    private boolean isShared(Artifact artifact) {
+        return shareTestFrameworks && SHARED_GROUP_IDS.contains(artifact.getGroupId());
+    }
+
+    /**
+     * Gets the JUnit Platform configuration parameters of the reruns: those configured for Surefire, overridden by
+     * the Jupiter parallel execution parameters set as system properties (which forked workers would not see), and
+     * by parallelReruns if set.
+     *
+     * @return the configuration parameters
+     */
+    private Map<String, String> getConfigurationParameters() {
+        Map<String, String> parameters = parseSurefireConfigurationParameters(project);
+        for (String key : System.getProperties().stringPropertyNames()) {
+            if (key.startsWith(PARALLEL_PREFIX)) {
+                parameters.put(key, System.getProperty(key));
+            }
+        }
+        if (parallelReruns != null) {
+            parameters.put(Constants.PARALLEL_EXECUTION_ENABLED_PROPERTY_NAME, String.valueOf(parallelReruns));
+            if (parallelReruns && !parameters.containsKey(Constants.DEFAULT_PARALLEL_EXECUTION_MODE)) {
+                parameters.put(Constants.DEFAULT_PARALLEL_EXECUTION_MODE, "concurrent");
+            }
+        }
+        return parameters;
+    }
+
+    /**
+     * Orders test classes so that likely NIO / non-deterministic ones run (and are reported) first,
+     * according to the history of past reruns.
+     *
+     * @param testClassNames the test classes found
+     * @return the ordered test classes, or the given ones if no history is available
+     */
+    private List<String> prioritizeTestClasses(List<String> testClassNames) {
+        try {
+            HistoryStore history = new HistoryStore(new File(HistoryStore.DEFAULT_DIRECTORY));
+            if (history.getBuildCount() == 0) {
+                return testClassNames;
+            }
+            getLog().info("Ordering test classes by the history of the last " +
+                Math.min(history.getBuildCount(), TestPrioritizer.DEFAULT_HISTORY_BUILDS) + " rerun(s)");
+            return TestPrioritizer.prioritize(testClassNames,
+                history.summarize(TestPrioritizer.DEFAULT_HISTORY_BUILDS));
+        } catch (IOException e) {
+            getLog().warn("Failed to read the history of past reruns: " + e);
+            return testClassNames;
+        }
     }
 
     /**
@@ -232,4 +586,42 @@ public class RerunMojo extends AbstractMojo {
         }
         return excludedList;
     }
+
+    /**
+     * Parses the Surefire plugin configuration from a Maven project to extract the JUnit Platform configuration
+     * parameters (the configurationParameters property, in the properties file format).
+     *
+     * @param project The Maven project from which to extract the Surefire configuration parameters.
+     * @return The configuration parameters, those of executions overriding those of the plugin.
+     */
+    public static Map<String, String> parseSurefireConfigurationParameters(MavenProject project) {
+        Map<String, String> parameters = new TreeMap<>();
+        Plugin surefirePlugin = project.getPlugin("org.apache.maven.plugins:maven-surefire-plugin");
+        if (surefirePlugin != null) {
+            List<Object> configurations = new ArrayList<>();
+            configurations.add(surefirePlugin.getConfiguration());
+            for (PluginExecution execution : surefirePlugin.getExecutions()) {
+                configurations.add(execution.getConfiguration());
+            }
+            for (Object configuration : configurations) {
+                Xpp3Dom propertiesNode = configuration == null ? null
+                    : ((Xpp3Dom) configuration).getChild("properties");
+                Xpp3Dom parametersNode = propertiesNode == null ? null
+                    : propertiesNode.getChild("configurationParameters");
+                if (parametersNode == null || parametersNode.getValue() == null) {
+                    continue;
+                }
+                Properties properties = new Properties();
+                try {
+                    properties.load(new StringReader(parametersNode.getValue()));
+                } catch (IOException e) {
+                    continue;
+                }
+                for (String key : properties.stringPropertyNames()) {
+                    parameters.put(key, properties.getProperty(key).trim());
+                }
+            }
+        }
+        return parameters;
+    }
 }
@@ -0,0 +1,317 @@
+package edu.illinois.NIOInspector.plugin.util.analysis;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The parts of a parsed class file needed to find state-mutating operations: the type hierarchy,
+ * annotations, fields, and the fields accessed and methods invoked by each method.
+ * All class names are in internal form (i.e. com/example/ExampleTest).
+ */
+public class ClassFileInfo {
+
+    /**
+     * Access flag of static members
+     */
+    public static final int ACC_STATIC = 0x0008;
+
+    /**
+     * Access flag of final members
+     */
+    public static final int ACC_FINAL = 0x0010;
+
+    /**
+     * Access flag of native methods
+     */
+    public static final int ACC_NATIVE = 0x0100;
+
+    /**
+     * Access flag of enum classes
+     */
+    public static final int ACC_ENUM = 0x4000;
+
+    private final String name;
+
+    private final String superName;
+
+    private final List<String> interfaces;
+
+    private final int access;
+
+    private final List<Annotation> annotations;
+
+    private final List<Field> fields = new ArrayList<>();
+
+    private final List<Method> methods = new ArrayList<>();
+
+    /**
+     * Creates the info of a class; fields and methods are added while parsing.
+     *
+     * @param name the name of the class
+     * @param superName the name of the superclass, or null for java/lang/Object
+     * @param interfaces the names of the directly implemented interfaces
+     * @param access the access flags of the class
+     * @param annotations the runtime-visible annotations of the class
+     */
+    public ClassFileInfo(String name, String superName, List<String> interfaces, int access,
+        List<Annotation> annotations) {
+        this.name = name;
+        this.superName = superName;
+        this.interfaces = interfaces;
+        this.access = access;
+        this.annotations = annotations;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getSuperName() {
+        return superName;
+    }
+
+    public List<String> getInterfaces() {
+        return interfaces;
+    }
+
+    public int getAccess() {
+        return access;
+    }
+
+    public List<Annotation> getAnnotations() {
+        return annotations;
+    }
+
+    public List<Field> getFields() {
+        return fields;
+    }
+
+    public List<Method> getMethods() {
+        return methods;
+    }
+
+    /**
+     * Finds a field declared by this class.
+     *
+     * @param fieldName the name of the field
+     * @return the field, or null if not declared by this class
+     */
+    public Field getField(String fieldName) {
+        for (Field field : fields) {
+            if (field.getName().equals(fieldName)) {
+                return field;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Finds a method declared by this class.
+     *
+     * @param methodName the name of the method
+     * @param descriptor the descriptor of the method (i.e. (Ljava/lang/String;)V)
+     * @return the method, or null if not declared by this class
+     */
+    public Method getMethod(String methodName, String descriptor) {
+        for (Method method : methods) {
+            if (method.getName().equals(methodName) && method.getDescriptor().equals(descriptor)) {
+                return method;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * A runtime-visible annotation, with the classes given as its element values (e.g. by @ExtendWith)
+     */
+    public static class Annotation {
+
+        private final String descriptor;
+
+        private final List<String> classValues;
+
+        public Annotation(String descriptor, List<String> classValues) {
+            this.descriptor = descriptor;
+            this.classValues = classValues;
+        }
+
+        /**
+         * @return the descriptor of the annotation type (i.e. Lorg/junit/Test;)
+         */
+        public String getDescriptor() {
+            return descriptor;
+        }
+
+        /**
+         * @return the descriptors of the class literals among the element values
+         */
+        public List<String> getClassValues() {
+            return classValues;
+        }
+    }
+
+    /**
+     * A field declared by the class
+     */
+    public static class Field {
+
+        private final int access;
+
+        private final String name;
+
+        private final String descriptor;
+
+        private final List<Annotation> annotations;
+
+        public Field(int access, String name, String descriptor, List<Annotation> annotations) {
+            this.access = access;
+            this.name = name;
+            this.descriptor = descriptor;
+            this.annotations = annotations;
+        }
+
+        public int getAccess() {
+            return access;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public String getDescriptor() {
+            return descriptor;
+        }
+
+        public List<Annotation> getAnnotations() {
+            return annotations;
+        }
+    }
+
+    /**
+     * A method declared by the class, with the static fields and methods referenced by its code
+     */
+    public static class Method {
+
+        private final int access;
+
+        private final String name;
+
+        private final String descriptor;
+
+        private final List<Annotation> annotations;
+
+        private final List<MemberRef> staticWrites = new ArrayList<>();
+
+        private final List<MemberRef> staticReads = new ArrayList<>();
+
+        private final List<MemberRef> invocations = new ArrayList<>();
+
+        public Method(int access, String name, String descriptor, List<Annotation> annotations) {
+            this.access = access;
+            this.name = name;
+            this.descriptor = descriptor;
+            this.annotations = annotations;
+        }
+
+        public int getAccess() {
+            return access;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public String getDescriptor() {
+            return descriptor;
+        }
+
+        public List<Annotation> getAnnotations() {
+            return annotations;
+        }
+
+        /**
+         * @return the static fields written by PUTSTATIC
+         */
+        public List<MemberRef> getStaticWrites() {
+            return staticWrites;
+        }
+
+        /**
+         * @return the static fields read by GETSTATIC
+         */
+        public List<MemberRef> getStaticReads() {
+            return staticReads;
+        }
+
+        /**
+         * @return the methods invoked, including the methods handed to invokedynamic (e.g. lambda bodies)
+         */
+        public List<MemberRef> getInvocations() {
+            return invocations;
+        }
+
+        /**
+         * Checks whether the method is annotated with the given annotation type.
+         *
+         * @param annotationDescriptors the descriptors of the annotation types to look for
+         * @return true if any of the annotation types is present
+         */
+        public boolean isAnnotatedWith(List<String> annotationDescriptors) {
+            for (Annotation annotation : annotations) {
+                if (annotationDescriptors.contains(annotation.getDescriptor())) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    /**
+     * A reference from code to a field or method of a class
+     */
+    public static class MemberRef {
+
+        private final String owner;
+
+        private final String name;
+
+        private final String descriptor;
+
+        public MemberRef(String owner, String name, String descriptor) {
+            this.owner = owner;
+            this.name = name;
+            this.descriptor = descriptor;
+        }
+
+        public String getOwner() {
+            return owner;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public String getDescriptor() {
+            return descriptor;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof MemberRef)) {
+                return false;
+            }
+            MemberRef other = (MemberRef) o;
+            return owner.equals(other.owner) && name.equals(other.name) && descriptor.equals(other.descriptor);
+        }
+
+        @Override
+        public int hashCode() {
+            return (owner.hashCode() * 31 + name.hashCode()) * 31 + descriptor.hashCode();
+        }
+
+        @Override
+        public String toString() {
+            return owner.replace('/', '.') + "." + name;
+        }
+    }
+}
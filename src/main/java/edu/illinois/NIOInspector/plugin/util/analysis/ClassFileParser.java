@@ -0,0 +1,359 @@
+package edu.illinois.NIOInspector.plugin.util.analysis;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Minimal reader of class files (any version), extracting a ClassFileInfo. Only the constant pool,
+ * annotations, the BootstrapMethods attribute and the field and method instructions of the code are
+ * decoded; everything else is skipped. No bytecode library is used, so that the plugin neither depends
+ * on the class file versions a library supports nor clashes with the one on the classpath of the project.
+ */
+public final class ClassFileParser {
+
+    private static final int MAGIC = 0xCAFEBABE;
+
+    private static final int CONSTANT_UTF8 = 1;
+    private static final int CONSTANT_INTEGER = 3;
+    private static final int CONSTANT_FLOAT = 4;
+    private static final int CONSTANT_LONG = 5;
+    private static final int CONSTANT_DOUBLE = 6;
+    private static final int CONSTANT_CLASS = 7;
+    private static final int CONSTANT_STRING = 8;
+    private static final int CONSTANT_FIELDREF = 9;
+    private static final int CONSTANT_METHODREF = 10;
+    private static final int CONSTANT_INTERFACE_METHODREF = 11;
+    private static final int CONSTANT_NAME_AND_TYPE = 12;
+    private static final int CONSTANT_METHOD_HANDLE = 15;
+    private static final int CONSTANT_METHOD_TYPE = 16;
+    private static final int CONSTANT_DYNAMIC = 17;
+    private static final int CONSTANT_INVOKE_DYNAMIC = 18;
+    private static final int CONSTANT_MODULE = 19;
+    private static final int CONSTANT_PACKAGE = 20;
+
+    private static final int GETSTATIC = 0xb2;
+    private static final int PUTSTATIC = 0xb3;
+    private static final int INVOKEVIRTUAL = 0xb6;
+    private static final int INVOKESTATIC = 0xb8;
+    private static final int INVOKEINTERFACE = 0xb9;
+    private static final int INVOKEDYNAMIC = 0xba;
+    private static final int TABLESWITCH = 0xaa;
+    private static final int LOOKUPSWITCH = 0xab;
+    private static final int WIDE = 0xc4;
+    private static final int IINC = 0x84;
+
+    // Length of each instruction including its opcode, 0 for the variable-length switches and wide
+    private static final int[] INSTRUCTION_LENGTHS = new int[256];
+
+    static {
+        for (int opcode = 0; opcode < 256; opcode++) {
+            INSTRUCTION_LENGTHS[opcode] = 1;
+        }
+        setLength(2, 0x10, 0x12, 0x15, 0x16, 0x17, 0x18, 0x19, 0x36, 0x37, 0x38, 0x39, 0x3a, 0xa9, 0xbc);
+        setLength(3, 0x11, 0x13, 0x14, IINC, 0xb2, 0xb3, 0xb4, 0xb5, 0xb6, 0xb7, 0xb8, 0xbb, 0xbd, 0xc0, 0xc1,
+            0xc6, 0xc7);
+        for (int opcode = 0x99; opcode <= 0xa8; opcode++) {
+            INSTRUCTION_LENGTHS[opcode] = 3;
+        }
+        setLength(4, 0xc5);
+        setLength(5, INVOKEINTERFACE, INVOKEDYNAMIC, 0xc8, 0xc9);
+        setLength(0, TABLESWITCH, LOOKUPSWITCH, WIDE);
+    }
+
+    private final Object[] constants;
+
+    private final int[] tags;
+
+    // Bootstrap method arguments referring to methods, per bootstrap method
+    private final List<List<ClassFileInfo.MemberRef>> bootstrapMethodRefs = new ArrayList<>();
+
+    private ClassFileParser(int constantCount) {
+        this.constants = new Object[constantCount];
+        this.tags = new int[constantCount];
+    }
+
+    private static void setLength(int length, int... opcodes) {
+        for (int opcode : opcodes) {
+            INSTRUCTION_LENGTHS[opcode] = length;
+        }
+    }
+
+    /**
+     * Parses a class file.
+     *
+     * @param in the stream of the class file, which is not closed
+     * @return the info of the class
+     * @throws IOException if the stream cannot be read or is not a well-formed class file
+     */
+    public static ClassFileInfo parse(InputStream in) throws IOException {
+        DataInputStream data = new DataInputStream(in);
+        if (data.readInt() != MAGIC) {
+            throw new IOException("Not a class file");
+        }
+        data.readUnsignedShort();
+        data.readUnsignedShort();
+        ClassFileParser parser = new ClassFileParser(data.readUnsignedShort());
+        try {
+            return parser.parseClass(data);
+        } catch (RuntimeException e) {
+            throw new IOException("Malformed class file: " + e, e);
+        }
+    }
+
+    private ClassFileInfo parseClass(DataInputStream data) throws IOException {
+        readConstantPool(data);
+        int access = data.readUnsignedShort();
+        String name = getClassName(data.readUnsignedShort());
+        int superIndex = data.readUnsignedShort();
+        String superName = superIndex == 0 ? null : getClassName(superIndex);
+        List<String> interfaces = new ArrayList<>();
+        int interfaceCount = data.readUnsignedShort();
+        for (int i = 0; i < interfaceCount; i++) {
+            interfaces.add(getClassName(data.readUnsignedShort()));
+        }
+
+        List<ClassFileInfo.Field> fields = new ArrayList<>();
+        int fieldCount = data.readUnsignedShort();
+        for (int i = 0; i < fieldCount; i++) {
+            int fieldAccess = data.readUnsignedShort();
+            String fieldName = getUtf8(data.readUnsignedShort());
+            String descriptor = getUtf8(data.readUnsignedShort());
+            List<ClassFileInfo.Annotation> annotations = new ArrayList<>();
+            readAttributes(data, annotations, null);
+            fields.add(new ClassFileInfo.Field(fieldAccess, fieldName, descriptor, annotations));
+        }
+
+        // Code refers to bootstrap methods, which come after the methods, so code is decoded last
+        List<ClassFileInfo.Method> methods = new ArrayList<>();
+        List<byte[]> codes = new ArrayList<>();
+        int methodCount = data.readUnsignedShort();
+        for (int i = 0; i < methodCount; i++) {
+            int methodAccess = data.readUnsignedShort();
+            String methodName = getUtf8(data.readUnsignedShort());
+            String descriptor = getUtf8(data.readUnsignedShort());
+            List<ClassFileInfo.Annotation> annotations = new ArrayList<>();
+            byte[][] code = new byte[1][];
+            readAttributes(data, annotations, code);
+            methods.add(new ClassFileInfo.Method(methodAccess, methodName, descriptor, annotations));
+            codes.add(code[0]);
+        }
+
+        List<ClassFileInfo.Annotation> annotations = new ArrayList<>();
+        readAttributes(data, annotations, null);
+
+        ClassFileInfo info = new ClassFileInfo(name, superName, interfaces, access, annotations);
+        info.getFields().addAll(fields);
+        for (int i = 0; i < methods.size(); i++) {
+            if (codes.get(i) != null) {
+                scanCode(codes.get(i), methods.get(i));
+            }
+            info.getMethods().add(methods.get(i));
+        }
+        return info;
+    }
+
+    private void readConstantPool(DataInputStream data) throws IOException {
+        for (int i = 1; i < constants.length; i++) {
+            int tag = data.readUnsignedByte();
+            tags[i] = tag;
+            switch (tag) {
+                case CONSTANT_UTF8:
+                    constants[i] = data.readUTF();
+                    break;
+                case CONSTANT_INTEGER:
+                case CONSTANT_FLOAT:
+                    data.readInt();
+                    break;
+                case CONSTANT_LONG:
+                case CONSTANT_DOUBLE:
+                    data.readLong();
+                    // Takes up two entries
+                    i++;
+                    break;
+                case CONSTANT_CLASS:
+                case CONSTANT_STRING:
+                case CONSTANT_METHOD_TYPE:
+                case CONSTANT_MODULE:
+                case CONSTANT_PACKAGE:
+                    constants[i] = new int[] {data.readUnsignedShort()};
+                    break;
+                case CONSTANT_FIELDREF:
+                case CONSTANT_METHODREF:
+                case CONSTANT_INTERFACE_METHODREF:
+                case CONSTANT_NAME_AND_TYPE:
+                case CONSTANT_DYNAMIC:
+                case CONSTANT_INVOKE_DYNAMIC:
+                    constants[i] = new int[] {data.readUnsignedShort(), data.readUnsignedShort()};
+                    break;
+                case CONSTANT_METHOD_HANDLE:
+                    constants[i] = new int[] {data.readUnsignedByte(), data.readUnsignedShort()};
+                    break;
+                default:
+                    throw new IOException("Unknown constant pool tag " + tag);
+            }
+        }
+    }
+
+    /**
+     * Reads the attributes of a field, method or class.
+     *
+     * @param data the stream positioned at the attribute count
+     * @param annotations the list to add the runtime-visible annotations to
+     * @param code a holder for the bytecode of a method, or null if not reading a method
+     */
+    private void readAttributes(DataInputStream data, List<ClassFileInfo.Annotation> annotations, byte[][] code)
+        throws IOException {
+        int attributeCount = data.readUnsignedShort();
+        for (int i = 0; i < attributeCount; i++) {
+            String attributeName = getUtf8(data.readUnsignedShort());
+            byte[] content = new byte[data.readInt()];
+            data.readFully(content);
+            DataInputStream attribute = new DataInputStream(new ByteArrayInputStream(content));
+            if ("RuntimeVisibleAnnotations".equals(attributeName)) {
+                int annotationCount = attribute.readUnsignedShort();
+                for (int j = 0; j < annotationCount; j++) {
+                    annotations.add(readAnnotation(attribute));
+                }
+            } else if ("Code".equals(attributeName) && code != null) {
+                attribute.readUnsignedShort();
+                attribute.readUnsignedShort();
+                code[0] = new byte[attribute.readInt()];
+                attribute.readFully(code[0]);
+            } else if ("BootstrapMethods".equals(attributeName) && code == null) {
+                readBootstrapMethods(attribute);
+            }
+        }
+    }
+
+    private ClassFileInfo.Annotation readAnnotation(DataInputStream data) throws IOException {
+        String descriptor = getUtf8(data.readUnsignedShort());
+        List<String> classValues = new ArrayList<>();
+        int pairCount = data.readUnsignedShort();
+        for (int i = 0; i < pairCount; i++) {
+            data.readUnsignedShort();
+            readElementValue(data, classValues);
+        }
+        return new ClassFileInfo.Annotation(descriptor, classValues);
+    }
+
+    private void readElementValue(DataInputStream data, List<String> classValues) throws IOException {
+        int tag = data.readUnsignedByte();
+        switch (tag) {
+            case 'e':
+                data.readUnsignedShort();
+                data.readUnsignedShort();
+                break;
+            case 'c':
+                classValues.add(getUtf8(data.readUnsignedShort()));
+                break;
+            case '@':
+                readAnnotation(data);
+                break;
+            case '[':
+                int valueCount = data.readUnsignedShort();
+                for (int i = 0; i < valueCount; i++) {
+                    readElementValue(data, classValues);
+                }
+                break;
+            default:
+                // Constant values (B, C, D, F, I, J, S, Z, s)
+                data.readUnsignedShort();
+        }
+    }
+
+    private void readBootstrapMethods(DataInputStream data) throws IOException {
+        int bootstrapMethodCount = data.readUnsignedShort();
+        for (int i = 0; i < bootstrapMethodCount; i++) {
+            List<ClassFileInfo.MemberRef> refs = new ArrayList<>();
+            data.readUnsignedShort();
+            int argumentCount = data.readUnsignedShort();
+            for (int j = 0; j < argumentCount; j++) {
+                int argument = data.readUnsignedShort();
+                if (tags[argument] == CONSTANT_METHOD_HANDLE) {
+                    // e.g. the implementation method of a lambda or method reference
+                    refs.add(getMemberRef(((int[]) constants[argument])[1]));
+                }
+            }
+            bootstrapMethodRefs.add(refs);
+        }
+    }
+
+    /**
+     * Decodes the instructions of a method, recording the static fields it reads and writes and the
+     * methods it invokes.
+     */
+    private void scanCode(byte[] code, ClassFileInfo.Method method) {
+        int pc = 0;
+        while (pc < code.length) {
+            int opcode = code[pc] & 0xff;
+            switch (opcode) {
+                case GETSTATIC:
+                    method.getStaticReads().add(getMemberRef(readShort(code, pc + 1)));
+                    break;
+                case PUTSTATIC:
+                    method.getStaticWrites().add(getMemberRef(readShort(code, pc + 1)));
+                    break;
+                case INVOKEVIRTUAL:
+                case 0xb7:
+                case INVOKESTATIC:
+                case INVOKEINTERFACE:
+                    method.getInvocations().add(getMemberRef(readShort(code, pc + 1)));
+                    break;
+                case INVOKEDYNAMIC:
+                    int bootstrapIndex = ((int[]) constants[readShort(code, pc + 1)])[0];
+                    if (bootstrapIndex < bootstrapMethodRefs.size()) {
+                        method.getInvocations().addAll(bootstrapMethodRefs.get(bootstrapIndex));
+                    }
+                    break;
+                default:
+                    break;
+            }
+            pc += getInstructionLength(code, pc, opcode);
+        }
+    }
+
+    private static int getInstructionLength(byte[] code, int pc, int opcode) {
+        int length = INSTRUCTION_LENGTHS[opcode];
+        if (length > 0) {
+            return length;
+        }
+        if (opcode == WIDE) {
+            return (code[pc + 1] & 0xff) == IINC ? 6 : 4;
+        }
+        // Switch operands are aligned to 4 bytes from the start of the code
+        int operands = pc + 1 + (3 - pc % 4);
+        if (opcode == TABLESWITCH) {
+            int low = readInt(code, operands + 4);
+            int high = readInt(code, operands + 8);
+            return operands - pc + 12 + (high - low + 1) * 4;
+        }
+        int pairCount = readInt(code, operands + 4);
+        return operands - pc + 8 + pairCount * 8;
+    }
+
+    private static int readShort(byte[] code, int offset) {
+        return ((code[offset] & 0xff) << 8) | (code[offset + 1] & 0xff);
+    }
+
+    private static int readInt(byte[] code, int offset) {
+        return (readShort(code, offset) << 16) | readShort(code, offset + 2);
+    }
+
+    private String getUtf8(int index) {
+        return (String) constants[index];
+    }
+
+    private String getClassName(int index) {
+        return getUtf8(((int[]) constants[index])[0]);
+    }
+
+    private ClassFileInfo.MemberRef getMemberRef(int index) {
+        int[] ref = (int[]) constants[index];
+        int[] nameAndType = (int[]) constants[ref[1]];
+        return new ClassFileInfo.MemberRef(getClassName(ref[0]), getUtf8(nameAndType[0]), getUtf8(nameAndType[1]));
+    }
+}
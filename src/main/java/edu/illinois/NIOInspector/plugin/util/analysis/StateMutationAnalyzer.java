@@ -0,0 +1,511 @@
+package edu.illinois.NIOInspector.plugin.util.analysis;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Static pre-filter finding the tests that can mutate state shared across runs, by scanning the bytecode of
+ * the test and of the project classes it transitively reaches. Project classes are the ones loaded from
+ * directories (i.e. test and main output directories); library classes are opaque, except for calls to known
+ * state-mutating JDK methods (system properties, defaults, file writes, reflection, etc.).
+ * <p>
+ * A test can mutate shared state if its code, its lifecycle methods, or the project rules and extensions of
+ * its class write a static field, access a static field of a mutable type, or call such a method. The analysis
+ * is a heuristic: tests it cannot resolve are always considered able to mutate shared state.
+ */
+public class StateMutationAnalyzer {
+
+    private static final Logger logger = LoggerFactory.getLogger(StateMutationAnalyzer.class);
+
+    private static final List<String> LIFECYCLE_ANNOTATIONS = Arrays.asList(
+        "Lorg/junit/Before;", "Lorg/junit/After;", "Lorg/junit/BeforeClass;", "Lorg/junit/AfterClass;",
+        "Lorg/junit/jupiter/api/BeforeEach;", "Lorg/junit/jupiter/api/AfterEach;",
+        "Lorg/junit/jupiter/api/BeforeAll;", "Lorg/junit/jupiter/api/AfterAll;");
+
+    private static final List<String> EXTENSION_ANNOTATIONS = Arrays.asList(
+        "Lorg/junit/Rule;", "Lorg/junit/ClassRule;", "Lorg/junit/runner/RunWith;",
+        "Lorg/junit/jupiter/api/extension/ExtendWith;", "Lorg/junit/jupiter/api/extension/RegisterExtension;");
+
+    // Library methods mutating state shared across runs: owner -> method names, optionally followed by a
+    // descriptor prefix (e.g. constructors opening a file for writing), or "*" for all methods
+    private static final Map<String, List<String>> SINKS = new HashMap<>();
+
+    static {
+        addSinks("java/lang/System", "setProperty", "clearProperty", "setProperties", "getProperties", "setOut",
+            "setErr", "setIn", "setSecurityManager", "exit");
+        addSinks("java/lang/Runtime", "exec", "exit", "halt", "addShutdownHook");
+        addSinks("java/lang/ProcessBuilder", "start");
+        addSinks("java/lang/Thread", "start", "setDefaultUncaughtExceptionHandler");
+        addSinks("java/lang/ThreadLocal", "set");
+        addSinks("java/util/Locale", "setDefault");
+        addSinks("java/util/TimeZone", "setDefault");
+        addSinks("java/util/prefs/Preferences", "put", "putInt", "putLong", "putBoolean", "putFloat", "putDouble",
+            "putByteArray", "remove", "clear", "removeNode");
+        addSinks("java/util/logging/LogManager", "readConfiguration", "reset");
+        addSinks("java/util/logging/Logger", "setLevel", "addHandler", "removeHandler");
+        addSinks("java/net/Authenticator", "setDefault");
+        addSinks("java/net/CookieHandler", "setDefault");
+        addSinks("java/net/ProxySelector", "setDefault");
+        addSinks("java/net/ResponseCache", "setDefault");
+        addSinks("java/net/URL", "setURLStreamHandlerFactory");
+        addSinks("java/net/URLConnection", "setDefaultUseCaches", "setFileNameMap", "setContentHandlerFactory");
+        addSinks("javax/net/ssl/HttpsURLConnection", "setDefaultSSLSocketFactory", "setDefaultHostnameVerifier");
+        addSinks("javax/net/ssl/SSLContext", "setDefault");
+        addSinks("java/security/Security", "addProvider", "insertProviderAt", "removeProvider", "setProperty");
+        addSinks("java/sql/DriverManager", "registerDriver", "deregisterDriver", "setLoginTimeout",
+            "setLogWriter");
+        // File writes
+        addSinks("java/io/FileOutputStream", "<init>");
+        addSinks("java/io/FileWriter", "<init>");
+        addSinks("java/io/RandomAccessFile", "<init>");
+        addSinks("java/io/PrintWriter", "<init>(Ljava/lang/String;", "<init>(Ljava/io/File;");
+        addSinks("java/io/PrintStream", "<init>(Ljava/lang/String;", "<init>(Ljava/io/File;");
+        addSinks("java/util/Formatter", "<init>(Ljava/lang/String;", "<init>(Ljava/io/File;");
+        addSinks("java/io/File", "createNewFile", "delete", "deleteOnExit", "mkdir", "mkdirs", "renameTo",
+            "setLastModified", "setReadOnly", "setWritable", "setReadable", "setExecutable", "createTempFile");
+        addSinks("java/nio/file/Files", "write", "writeString", "newOutputStream", "newBufferedWriter",
+            "newByteChannel", "createFile", "createDirectory", "createDirectories", "createTempFile",
+            "createTempDirectory", "createLink", "createSymbolicLink", "delete", "deleteIfExists", "move", "copy",
+            "setAttribute", "setLastModifiedTime", "setOwner", "setPosixFilePermissions");
+        addSinks("java/nio/channels/FileChannel", "open");
+        // Reflection and other ways around the bytecode seen here
+        addSinks("java/lang/reflect/Field", "set", "setBoolean", "setByte", "setChar", "setShort", "setInt",
+            "setLong", "setFloat", "setDouble", "setAccessible");
+        addSinks("java/lang/reflect/AccessibleObject", "setAccessible");
+        addSinks("java/lang/reflect/Method", "invoke");
+        addSinks("java/lang/reflect/Constructor", "newInstance");
+        addSinks("java/lang/Class", "newInstance");
+        addSinks("java/lang/invoke/MethodHandle", "invoke", "invokeExact", "invokeWithArguments");
+        addSinks("java/lang/invoke/VarHandle", "*");
+        addSinks("sun/misc/Unsafe", "*");
+        addSinks("jdk/internal/misc/Unsafe", "*");
+    }
+
+    // Types under java/util/ that are not mutable containers
+    private static final List<String> IMMUTABLE_UTIL_PREFIXES = Arrays.asList(
+        "java/util/regex/", "java/util/function/", "java/util/stream/", "java/util/logging/", "java/util/Optional",
+        "java/util/UUID", "java/util/Locale", "java/util/Currency", "java/util/Random", "java/util/Comparator",
+        "java/util/Base64", "java/util/ResourceBundle");
+
+    private static final List<String> MUTABLE_LANG_TYPES = Arrays.asList(
+        "java/lang/StringBuilder", "java/lang/StringBuffer", "java/lang/ThreadLocal");
+
+    private final List<File> classDirectories = new ArrayList<>();
+
+    private final ClassLoader classLoader;
+
+    // Parsed project classes, with null for classes not found in a class directory
+    private final Map<String, ClassFileInfo> classes = new HashMap<>();
+
+    // Direct project subtypes of each (project or library) type, built on first use
+    private Map<String, List<String>> directSubtypes;
+
+    // Transitive project subtypes of each type queried so far
+    private final Map<String, Set<String>> subtypes = new HashMap<>();
+
+    // The mutation reachable from each method, with "" for none
+    private final Map<ClassFileInfo.MemberRef, String> mutations = new HashMap<>();
+
+    /**
+     * Creates an analyzer for the classes of the given class loader.
+     *
+     * @param classLoader the class loader loaded with test classes and all dependencies
+     */
+    public StateMutationAnalyzer(ClassLoader classLoader) {
+        this.classLoader = classLoader;
+        if (classLoader instanceof URLClassLoader) {
+            for (URL url : ((URLClassLoader) classLoader).getURLs()) {
+                try {
+                    File file = new File(url.toURI());
+                    if (file.isDirectory()) {
+                        classDirectories.add(file);
+                    }
+                } catch (URISyntaxException | IllegalArgumentException e) {
+                    // Not a local file, hence not a project class directory
+                }
+            }
+        }
+    }
+
+    /**
+     * Finds a state-mutating operation reachable from a test.
+     *
+     * @param testClassName the name of the test class (i.e. com.example.ExampleTest)
+     * @param testMethodName the name of the test method (overloads are considered together)
+     * @return a description of the operation found, or null if the test cannot mutate shared state
+     */
+    public String findMutation(String testClassName, String testMethodName) {
+        String testClass = testClassName.replace('.', '/');
+        if (getProjectClass(testClass) == null) {
+            return "test class " + testClassName + " not found in a class directory";
+        }
+
+        // The test method (possibly inherited), lifecycle methods, constructors, and project rules or extensions
+        Set<ClassFileInfo.MemberRef> roots = new LinkedHashSet<>();
+        boolean testMethodFound = false;
+        for (ClassFileInfo info = getProjectClass(testClass); info != null;
+             info = info.getSuperName() == null ? null : getProjectClass(info.getSuperName())) {
+            for (ClassFileInfo.Method method : info.getMethods()) {
+                boolean isTestMethod = !testMethodFound && method.getName().equals(testMethodName);
+                boolean isJUnit3Fixture = ("setUp".equals(method.getName()) || "tearDown".equals(method.getName())) &&
+                    "()V".equals(method.getDescriptor());
+                boolean isConstructor = "<init>".equals(method.getName()) && info.getName().equals(testClass);
+                if (isTestMethod || isJUnit3Fixture || isConstructor || method.isAnnotatedWith(LIFECYCLE_ANNOTATIONS)) {
+                    roots.add(new ClassFileInfo.MemberRef(info.getName(), method.getName(), method.getDescriptor()));
+                }
+            }
+            for (ClassFileInfo.Method method : info.getMethods()) {
+                testMethodFound |= method.getName().equals(testMethodName);
+            }
+            for (String extension : getExtensionTypes(info)) {
+                ClassFileInfo extensionInfo = getProjectClass(extension);
+                if (extensionInfo != null) {
+                    for (ClassFileInfo.Method method : extensionInfo.getMethods()) {
+                        roots.add(new ClassFileInfo.MemberRef(extension, method.getName(), method.getDescriptor()));
+                    }
+                }
+            }
+        }
+        if (!testMethodFound) {
+            return "test method " + testClassName + "#" + testMethodName + " not found in the bytecode";
+        }
+        for (ClassFileInfo.MemberRef root : roots) {
+            String mutation = findMutation(root);
+            if (!mutation.isEmpty()) {
+                return mutation;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Searches the methods reachable from a method for a state-mutating operation.
+     *
+     * @param root the method to start from
+     * @return a description of the operation found, or "" if none
+     */
+    private String findMutation(ClassFileInfo.MemberRef root) {
+        String cached = mutations.get(root);
+        if (cached != null) {
+            return cached;
+        }
+        String result = "";
+        Set<ClassFileInfo.MemberRef> visited = new HashSet<>();
+        Deque<ClassFileInfo.MemberRef> queue = new ArrayDeque<>();
+        queue.add(root);
+        search:
+        while (!queue.isEmpty()) {
+            ClassFileInfo.MemberRef ref = queue.poll();
+            if (!visited.add(ref)) {
+                continue;
+            }
+            String known = mutations.get(ref);
+            if (known != null) {
+                if (known.isEmpty()) {
+                    continue;
+                }
+                result = known;
+                break;
+            }
+            if (getProjectClass(ref.getOwner()) == null) {
+                if (isSink(ref)) {
+                    result = "calls " + ref + " in " + root;
+                    break;
+                }
+                if ("<init>".equals(ref.getName())) {
+                    continue;
+                }
+                // Library types may dispatch to project implementations (e.g. Runnable#run)
+                for (String subtype : getProjectSubtypes(ref.getOwner())) {
+                    queue.add(new ClassFileInfo.MemberRef(subtype, ref.getName(), ref.getDescriptor()));
+                }
+                continue;
+            }
+            for (ClassFileInfo.MemberRef target : resolve(ref)) {
+                ClassFileInfo owner = getProjectClass(target.getOwner());
+                if (owner == null) {
+                    // Inherited from a library class
+                    queue.add(target);
+                    continue;
+                }
+                ClassFileInfo.Method method = owner.getMethod(target.getName(), target.getDescriptor());
+                if ("<clinit>".equals(method.getName())) {
+                    // Static initializers only run once, before the initial run of the test
+                    continue;
+                }
+                if ((method.getAccess() & ClassFileInfo.ACC_NATIVE) != 0) {
+                    result = "calls native method " + target + " in " + root;
+                    break search;
+                }
+                for (ClassFileInfo.MemberRef field : method.getStaticWrites()) {
+                    result = "writes static field " + field + " in " + target;
+                    break search;
+                }
+                for (ClassFileInfo.MemberRef field : method.getStaticReads()) {
+                    if (isMutableStaticField(field)) {
+                        result = "accesses mutable static field " + field + " in " + target;
+                        break search;
+                    }
+                }
+                queue.addAll(method.getInvocations());
+            }
+        }
+        mutations.put(root, result);
+        return result;
+    }
+
+    /**
+     * Resolves an invoked method of a project class to the methods that may run: the declaration found in the
+     * class or its supertypes, and the overrides in its project subtypes.
+     */
+    private List<ClassFileInfo.MemberRef> resolve(ClassFileInfo.MemberRef ref) {
+        List<ClassFileInfo.MemberRef> targets = new ArrayList<>();
+        ClassFileInfo.MemberRef declaration = findDeclaration(ref.getOwner(), ref.getName(), ref.getDescriptor(),
+            new HashSet<>());
+        if (declaration != null) {
+            targets.add(declaration);
+        }
+        if (!"<init>".equals(ref.getName())) {
+            for (String subtype : getProjectSubtypes(ref.getOwner())) {
+                ClassFileInfo info = getProjectClass(subtype);
+                if (info != null && info.getMethod(ref.getName(), ref.getDescriptor()) != null) {
+                    targets.add(new ClassFileInfo.MemberRef(subtype, ref.getName(), ref.getDescriptor()));
+                }
+            }
+        }
+        return targets;
+    }
+
+    /**
+     * Finds the declaration of a method in a type or its supertypes, stopping at library types.
+     *
+     * @return the declaring method, the method of the first library supertype, or null if not found
+     */
+    private ClassFileInfo.MemberRef findDeclaration(String owner, String name, String descriptor,
+        Set<String> visited) {
+        if (!visited.add(owner)) {
+            return null;
+        }
+        ClassFileInfo info = getProjectClass(owner);
+        if (info == null) {
+            return new ClassFileInfo.MemberRef(owner, name, descriptor);
+        }
+        if (info.getMethod(name, descriptor) != null) {
+            return new ClassFileInfo.MemberRef(owner, name, descriptor);
+        }
+        if (info.getSuperName() != null) {
+            ClassFileInfo.MemberRef declaration = findDeclaration(info.getSuperName(), name, descriptor, visited);
+            if (declaration != null && getProjectClass(declaration.getOwner()) != null) {
+                return declaration;
+            }
+        }
+        // Default methods of project interfaces
+        for (String anInterface : info.getInterfaces()) {
+            ClassFileInfo.MemberRef declaration = findDeclaration(anInterface, name, descriptor, visited);
+            if (declaration != null && getProjectClass(declaration.getOwner()) != null) {
+                return declaration;
+            }
+        }
+        return info.getSuperName() == null ? null : new ClassFileInfo.MemberRef(
+            getFirstLibrarySuperclass(info), name, descriptor);
+    }
+
+    private String getFirstLibrarySuperclass(ClassFileInfo info) {
+        String superName = info.getSuperName();
+        while (getProjectClass(superName) != null) {
+            ClassFileInfo superInfo = getProjectClass(superName);
+            if (superInfo.getSuperName() == null) {
+                break;
+            }
+            superName = superInfo.getSuperName();
+        }
+        return superName;
+    }
+
+    /**
+     * Checks whether a static field read by GETSTATIC holds state that can be mutated through it
+     * (e.g. a static collection, array, or project singleton with non-final fields).
+     */
+    private boolean isMutableStaticField(ClassFileInfo.MemberRef ref) {
+        if (getProjectClass(ref.getOwner()) == null) {
+            return false;
+        }
+        String descriptor = ref.getDescriptor();
+        if (descriptor.startsWith("[")) {
+            return true;
+        } else if (!descriptor.startsWith("L")) {
+            return false;
+        }
+        String type = descriptor.substring(1, descriptor.length() - 1);
+        if (type.startsWith("java/util/")) {
+            for (String prefix : IMMUTABLE_UTIL_PREFIXES) {
+                if (type.startsWith(prefix)) {
+                    return false;
+                }
+            }
+            return true;
+        } else if (MUTABLE_LANG_TYPES.contains(type)) {
+            return true;
+        }
+        if (hasMutableInstanceFields(type)) {
+            return true;
+        }
+        // The field may hold any project implementation of its type
+        for (String subtype : getProjectSubtypes(type)) {
+            if (hasMutableInstanceFields(subtype)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean hasMutableInstanceFields(String type) {
+        for (ClassFileInfo info = getProjectClass(type); info != null;
+             info = info.getSuperName() == null ? null : getProjectClass(info.getSuperName())) {
+            for (ClassFileInfo.Field field : info.getFields()) {
+                if ((field.getAccess() & (ClassFileInfo.ACC_STATIC | ClassFileInfo.ACC_FINAL)) == 0) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Gets the project rules, runners and extensions registered by a test class.
+     */
+    private static List<String> getExtensionTypes(ClassFileInfo info) {
+        List<String> types = new ArrayList<>();
+        for (ClassFileInfo.Annotation annotation : info.getAnnotations()) {
+            if (EXTENSION_ANNOTATIONS.contains(annotation.getDescriptor())) {
+                for (String classValue : annotation.getClassValues()) {
+                    types.add(toInternalName(classValue));
+                }
+            }
+        }
+        for (ClassFileInfo.Field field : info.getFields()) {
+            for (ClassFileInfo.Annotation annotation : field.getAnnotations()) {
+                if (EXTENSION_ANNOTATIONS.contains(annotation.getDescriptor())) {
+                    types.add(toInternalName(field.getDescriptor()));
+                }
+            }
+        }
+        return types;
+    }
+
+    private static String toInternalName(String descriptor) {
+        return descriptor.startsWith("L") && descriptor.endsWith(";")
+            ? descriptor.substring(1, descriptor.length() - 1) : descriptor;
+    }
+
+    private static boolean isSink(ClassFileInfo.MemberRef ref) {
+        List<String> sinks = SINKS.get(ref.getOwner());
+        if (sinks == null) {
+            return false;
+        }
+        String signature = ref.getName() + ref.getDescriptor();
+        for (String sink : sinks) {
+            if ("*".equals(sink) || signature.startsWith(sink.contains("(") ? sink : sink + "(")) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static void addSinks(String owner, String... methods) {
+        SINKS.put(owner, Arrays.asList(methods));
+    }
+
+    /**
+     * Gets the transitive project subtypes of a type.
+     */
+    private Set<String> getProjectSubtypes(String type) {
+        if (directSubtypes == null) {
+            directSubtypes = new HashMap<>();
+            for (File directory : classDirectories) {
+                indexSubtypes(directory, "");
+            }
+        }
+        Set<String> cached = subtypes.get(type);
+        if (cached != null) {
+            return cached;
+        }
+        Set<String> result = new LinkedHashSet<>();
+        Deque<String> queue = new ArrayDeque<>(directSubtypes.getOrDefault(type, Collections.emptyList()));
+        while (!queue.isEmpty()) {
+            String subtype = queue.poll();
+            if (result.add(subtype)) {
+                queue.addAll(directSubtypes.getOrDefault(subtype, Collections.emptyList()));
+            }
+        }
+        subtypes.put(type, result);
+        return result;
+    }
+
+    private void indexSubtypes(File directory, String packagePrefix) {
+        File[] files = directory.listFiles();
+        if (files == null) {
+            return;
+        }
+        for (File file : files) {
+            if (file.isDirectory()) {
+                indexSubtypes(file, packagePrefix + file.getName() + "/");
+            } else if (file.getName().endsWith(".class")) {
+                String name = packagePrefix + file.getName().substring(0, file.getName().length() - 6);
+                ClassFileInfo info = getProjectClass(name);
+                if (info != null) {
+                    if (info.getSuperName() != null) {
+                        directSubtypes.computeIfAbsent(info.getSuperName(), k -> new ArrayList<>()).add(name);
+                    }
+                    for (String anInterface : info.getInterfaces()) {
+                        directSubtypes.computeIfAbsent(anInterface, k -> new ArrayList<>()).add(name);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Parses a class if it is loaded from a class directory of the project.
+     *
+     * @param name the name of the class in internal form
+     * @return the parsed class, or null if it is a library class or cannot be parsed
+     */
+    private ClassFileInfo getProjectClass(String name) {
+        if (name == null) {
+            return null;
+        }
+        if (classes.containsKey(name)) {
+            return classes.get(name);
+        }
+        ClassFileInfo info = null;
+        URL resource = classLoader.getResource(name + ".class");
+        if (resource != null && "file".equals(resource.getProtocol())) {
+            try (InputStream in = resource.openStream()) {
+                info = ClassFileParser.parse(in);
+            } catch (IOException e) {
+                logger.warn("Failed to parse " + resource + ": " + e);
+            }
+        }
+        classes.put(name, info);
+        return info;
+    }
+}
@@ -0,0 +1,203 @@
+package edu.illinois.NIOInspector.plugin.util.detection;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+import java.util.UUID;
+
+/**
+ * Dynamic AppCDS archive of the classes loaded by forked rerun workers, keyed by a fingerprint of the JVM and of
+ * the classpath. When no archive matches, the first worker forked creates it as it exits
+ * (-XX:ArchiveClassesAtExit); workers of later reruns map it (-XX:SharedArchiveFile) instead of parsing and
+ * verifying these classes again. The time each worker takes to report its outcomes is remembered per shard, so
+ * that the time saved by the archive can be reported.
+ */
+public class ClassDataSharingArchive {
+
+    private static final Logger logger = LoggerFactory.getLogger(ClassDataSharingArchive.class);
+
+    /**
+     * Default location of the archives, next to the time-named log directories
+     */
+    public static final String DEFAULT_DIRECTORY = ".NIOInspector" + File.separator + "cds";
+
+    /**
+     * First Java version able to create dynamic archives
+     */
+    static final int MIN_JAVA_VERSION = 13;
+
+    // CDS logs a warning for each class it cannot archive, which would be echoed with the output of the worker
+    private static final String QUIET_CDS = "-Xlog:cds=off,cds+dynamic=off";
+
+    private final File archiveFile;
+
+    private final File timingsFile;
+
+    // Whether the archive existed before the workers of this run were forked
+    private final boolean archived;
+
+    // Times of the workers run without the archive: shard key -> milliseconds
+    private final Properties timings = new Properties();
+
+    // Archive being created by a worker of this run, moved to archiveFile once the worker exits
+    private File pendingArchiveFile;
+
+    /**
+     * Locates the archive matching the current JVM and the given classpath, and loads the recorded times.
+     *
+     * @param directory the directory of the archives
+     * @param workerClasspath the classpath of the worker JVMs
+     * @param classLoader the class loader loaded with test classes and all dependencies
+     * @param testOutputDirectory the directory of the test classes, which are left out of the fingerprint
+     */
+    public ClassDataSharingArchive(File directory, String workerClasspath, ClassLoader classLoader,
+        String testOutputDirectory) {
+        String fingerprint = UUID.nameUUIDFromBytes(String.join("\n", System.getProperty("java.home"),
+            System.getProperty("java.vm.version"), workerClasspath, VerdictCache.hashClasspath(classLoader,
+            testOutputDirectory)).getBytes(StandardCharsets.UTF_8)).toString();
+        this.archiveFile = new File(directory, fingerprint + ".jsa").getAbsoluteFile();
+        this.timingsFile = new File(directory, fingerprint + ".properties").getAbsoluteFile();
+        this.archived = archiveFile.isFile();
+        if (timingsFile.isFile()) {
+            try (InputStream in = new FileInputStream(timingsFile)) {
+                timings.load(in);
+            } catch (IOException e) {
+                logger.warn("Ignoring unreadable CDS timings " + timingsFile.getPath() + ": " + e);
+                timings.clear();
+            }
+        }
+    }
+
+    /**
+     * Checks whether workers can use an archive: dynamic archives need Java 13, and CDS only accepts jar files
+     * on the classpath of the JVM.
+     *
+     * @param workerClasspath the classpath of the worker JVMs
+     * @return true if workers can create and map archives
+     */
+    public static boolean isSupported(String workerClasspath) {
+        return Runtime.version().version().get(0) >= MIN_JAVA_VERSION && workerClasspath.endsWith(".jar") &&
+            new File(workerClasspath).isFile();
+    }
+
+    /**
+     * Gets the JVM options of the next worker: mapping the archive if it exists, creating it for the first
+     * worker otherwise.
+     *
+     * @return the JVM options, empty if the worker runs without the archive
+     */
+    public synchronized List<String> getJvmOptions() {
+        if (archived) {
+            return Arrays.asList("-XX:SharedArchiveFile=" + archiveFile.getPath(), QUIET_CDS);
+        }
+        if (pendingArchiveFile != null) {
+            return Collections.emptyList();
+        }
+        File directory = archiveFile.getParentFile();
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            logger.warn("Failed to create directory: " + directory.getPath());
+            return Collections.emptyList();
+        }
+        // Concurrent runs each create their own archive, the last one moved in place wins
+        pendingArchiveFile = new File(directory, archiveFile.getName() + "." + UUID.randomUUID() + ".tmp");
+        return Arrays.asList("-XX:ArchiveClassesAtExit=" + pendingArchiveFile.getPath(), QUIET_CDS);
+    }
+
+    /**
+     * Checks whether the workers of this run map the archive.
+     *
+     * @return true if the archive existed before the workers were forked
+     */
+    public boolean isArchived() {
+        return archived;
+    }
+
+    /**
+     * Records the time a worker took to report its outcomes, and gets the time the archive saved it.
+     *
+     * @param shard the "class" or "class#method" entries of the shard run by the worker
+     * @param numReruns user-configured number of times to rerun the tests
+     * @param millis the time from forking the worker to its last outcome
+     * @return the time saved by the archive, or null if the worker ran without the archive or the shard was
+     * never timed without it
+     */
+    public synchronized Long recordWorkerTime(List<String> shard, int numReruns, long millis) {
+        String key = getShardKey(shard, numReruns);
+        if (!archived) {
+            timings.setProperty(key, String.valueOf(millis));
+            return null;
+        }
+        String baseline = timings.getProperty(key);
+        return baseline == null ? null : Long.parseLong(baseline) - millis;
+    }
+
+    /**
+     * Moves the archive created by a worker of this run in place and saves the recorded times. Must be called
+     * once all workers have exited.
+     */
+    public synchronized void save() {
+        try {
+            if (pendingArchiveFile != null) {
+                if (!pendingArchiveFile.isFile()) {
+                    logger.warn("The worker creating the CDS archive did not write it; workers of later " +
+                        "reruns load their classes as usual");
+                    return;
+                }
+                Files.move(pendingArchiveFile.toPath(), archiveFile.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+                logger.info("Created CDS archive " + archiveFile.getPath() + " for the workers of later reruns");
+            }
+            if (!archived) {
+                // Write to a temporary file first, so that concurrent or interrupted runs never see partial times
+                File tmpFile = new File(timingsFile.getParentFile(), timingsFile.getName() + ".tmp");
+                try (OutputStream out = new FileOutputStream(tmpFile)) {
+                    timings.store(out, "NIOInspector times of workers without the CDS archive, in milliseconds");
+                }
+                Files.move(tmpFile.toPath(), timingsFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            }
+        } catch (IOException e) {
+            logger.warn("Failed to save CDS archive " + archiveFile.getPath() + ": " + e);
+        } finally {
+            if (pendingArchiveFile != null && pendingArchiveFile.exists() && !pendingArchiveFile.delete()) {
+                logger.warn("Failed to delete " + pendingArchiveFile.getPath());
+            }
+            pendingArchiveFile = null;
+        }
+    }
+
+    /**
+     * Gets the file of the archive.
+     *
+     * @return the archive file, which may not exist yet
+     */
+    public File getArchiveFile() {
+        return archiveFile;
+    }
+
+    /**
+     * Identifies a shard by its tests and number of reruns, so that its times can be compared across reruns.
+     *
+     * @param shard the "class" or "class#method" entries of the shard
+     * @param numReruns user-configured number of times to rerun the tests
+     * @return the key of the shard
+     */
+    static String getShardKey(List<String> shard, int numReruns) {
+        List<String> entries = new ArrayList<>(shard);
+        entries.add(String.valueOf(numReruns));
+        return UUID.nameUUIDFromBytes(String.join(",", entries).getBytes(StandardCharsets.UTF_8)).toString();
+    }
+}
@@ -1,23 +1,46 @@
 package edu.illinois.NIOInspector.plugin.util.detection;
 
+import edu.illinois.NIOInspector.plugin.util.analysis.StateMutationAnalyzer;
+import edu.illinois.NIOInspector.plugin.util.history.HistoryRecorder;
+import edu.illinois.NIOInspector.plugin.util.history.HistoryStore;
+import edu.illinois.NIOInspector.plugin.util.logging.AsyncBatchingAppender;
+import edu.illinois.NIOInspector.plugin.util.logging.CustomTimeBasedFileAppender;
+import edu.illinois.NIOInspector.plugin.util.logging.LoggedStackTraces;
+import edu.illinois.NIOInspector.plugin.util.logging.PhaseTimer;
+
 import org.apache.maven.plugin.MojoExecutionException;
+import org.junit.jupiter.engine.Constants;
 import org.junit.platform.launcher.Launcher;
+import org.junit.platform.launcher.LauncherDiscoveryRequest;
+import org.junit.platform.launcher.LauncherSession;
+import org.junit.platform.launcher.PostDiscoveryFilter;
+import org.junit.platform.launcher.TestExecutionListener;
 import org.junit.platform.launcher.core.LauncherFactory;
+import org.junit.platform.engine.DiscoverySelector;
+import org.junit.platform.engine.FilterResult;
 import org.junit.platform.engine.discovery.DiscoverySelectors;
-import org.junit.platform.launcher.listeners.TestExecutionSummary;
 import org.junit.platform.launcher.core.LauncherDiscoveryRequestBuilder;
-import org.junit.platform.launcher.TestIdentifier;
+import org.junit.platform.launcher.TestPlan;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
-import java.io.PrintWriter;
+import java.io.File;
+import java.nio.charset.Charset;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
 import java.util.List;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
 
 /**
  * A JUnit test runner in an isolated classloader
@@ -26,6 +49,30 @@ public class ClassLoaderIsolatedTestRunner {
 
     private static final Logger logger = LoggerFactory.getLogger(ClassLoaderIsolatedTestRunner.class);
 
+    // Time given to the queued log events to be written before the log is reported on
+    private static final long LOG_WRITE_TIMEOUT_MILLIS = 10000;
+
+    // Stack traces logged by the runners of this class loader, which share one log file
+    private static final LoggedStackTraces loggedStackTraces = new LoggedStackTraces();
+
+    // Phases of the rerun run by this runner, reported as JDK Flight Recorder events if available
+    private final PhaseTimer phaseTimer = new PhaseTimer("rerun");
+
+    // Streams the progress of each run for the supervisor of the forked worker, or null if not requested
+    private ProgressReporter progressReporter;
+
+    // Captures the output of the tests, or null if they print as usual
+    private OutputCapture outputCapture;
+
+    // Samples the heap and garbage collections around each run, or null if not requested
+    private HeapMonitor heapMonitor;
+
+    // Shard labeling the heap samples (empty for the main runner), heap growth since the initial run after which
+    // the runner stops for its worker to be recycled (0 for none), and first rerun to execute
+    private String shardName = "";
+    private long recycleHeapGrowth;
+    private int firstRerun = 1;
+
     /**
      * Disallow construction at all from wrong ClassLoader
      *
@@ -36,24 +83,149 @@ public class ClassLoaderIsolatedTestRunner {
     }
 
     /**
-     * Runs the tests reflectively using the provided class loader.
+     * Runs the tests reflectively using the provided class loader, and logs the final results.
+     * Possible NIO tests are then confirmed by running each of them alone, and the scope of the state they
+     * pollute classified, if requested.
+     * In incremental mode, unchanged test classes found idempotent by a previous rerun are skipped.
+     * The outcomes of all tests are appended to the history store, and their durations reported along with the
+     * final results. The timing table of the phases of the rerun is logged last.
+     *
+     * @param testClasses the list of test classes to run
+     * @param classStringToMethodsMap the mapping between test classes and selected methods to run
+     * @param classLoader the class loader loaded with test classes and all dependencies
+     * @param numReruns user-configured number of times to rerun the tests
+     * @param options user-configured options of the rerun (see RerunOptions)
+     * @throws MojoExecutionException
+     */
+    public void runInvokedReflectively(List<String> testClasses, Map<String, List<String>> classStringToMethodsMap,
+        ClassLoader classLoader, int numReruns, Properties options) throws MojoExecutionException {
+
+        TestOutcomeAggregator aggregator = new TestOutcomeAggregator();
+        HistoryRecorder historyRecorder = new HistoryRecorder();
+        TestDurationRecorder durationRecorder = new TestDurationRecorder();
+        HeapTelemetryRecorder heapRecorder = new HeapTelemetryRecorder();
+        Consumer<String> outcomeSink = aggregator.andThen(historyRecorder).andThen(durationRecorder)
+            .andThen(heapRecorder);
+        List<String> classesToRun = testClasses;
+        if (RerunOptions.getBoolean(options, RerunOptions.INCREMENTAL)) {
+            // Skip test classes found idempotent by a previous rerun and unchanged since
+            VerdictCache cache = new VerdictCache(new File(VerdictCache.DEFAULT_CACHE_FILE), classLoader,
+                options.getProperty(RerunOptions.TEST_OUTPUT_DIRECTORY));
+            classesToRun = cache.filterUnchanged(testClasses, numReruns);
+            if (!classesToRun.isEmpty()) {
+                runInvokedReflectively(classesToRun, classStringToMethodsMap, classLoader, numReruns, options,
+                    outcomeSink);
+            }
+            cache.update(classesToRun, aggregator, aggregator.getRerunsCovered(numReruns));
+        } else {
+            runInvokedReflectively(testClasses, classStringToMethodsMap, classLoader, numReruns, options, outcomeSink);
+        }
+        PhaseTimer.Phase resultsPhase = phaseTimer.start("final results");
+        try {
+            historyRecorder.save(new File(HistoryStore.DEFAULT_DIRECTORY));
+            aggregator.logFinalResults(numReruns);
+            durationRecorder.logReport();
+            heapRecorder.logReport();
+            String logDirectory = CustomTimeBasedFileAppender.getLogDirectory();
+            if (logDirectory != null) {
+                durationRecorder.save(new File(logDirectory));
+            }
+        } finally {
+            resultsPhase.close();
+        }
+        long deadline = RerunOptions.getLong(options, RerunOptions.DEADLINE, 0);
+        if (RerunOptions.getBoolean(options, RerunOptions.CONFIRM_NIO) && deadline > 0 &&
+            System.currentTimeMillis() >= deadline) {
+            logger.warn("Time budget reached, skipping the confirmation of possible NIO tests");
+        } else if (RerunOptions.getBoolean(options, RerunOptions.CONFIRM_NIO)) {
+            PhaseTimer.Phase confirmationPhase = phaseTimer.start("NIO confirmation");
+            try {
+                new NIOConfirmer(classLoader, options)
+                    .confirm(new ArrayList<>(aggregator.getNIOTests(numReruns).keySet()));
+            } finally {
+                confirmationPhase.close();
+            }
+        }
+        if (RerunOptions.getBoolean(options, RerunOptions.CLASSIFY_POLLUTION) && deadline > 0 &&
+            System.currentTimeMillis() >= deadline) {
+            logger.warn("Time budget reached, skipping the classification of possible NIO tests");
+        } else if (RerunOptions.getBoolean(options, RerunOptions.CLASSIFY_POLLUTION)) {
+            // The same shards as the forked workers of the reruns, to rerun candidates in their directories
+            List<List<String>> workerShards = runsInForkedWorkers(classLoader, options)
+                ? ShardExecutor.createShards(classesToRun, classStringToMethodsMap,
+                    Math.max(RerunOptions.getInt(options, RerunOptions.FORK_COUNT, 1), 1))
+                : null;
+            PhaseTimer.Phase classificationPhase = phaseTimer.start("pollution classification");
+            try {
+                new PollutionScopeClassifier(classLoader, options, workerShards)
+                    .classify(new ArrayList<>(aggregator.getNIOTests(numReruns).keySet()));
+            } finally {
+                classificationPhase.close();
+            }
+        }
+        logger.info("");
+        for (String line : phaseTimer.formatTimings()) {
+            logger.info(line);
+        }
+        for (AsyncBatchingAppender<?> appender : AsyncBatchingAppender.getStartedAppenders()) {
+            // Sizes are only known once the queued events are written, which later goals (e.g. collectTestInfo)
+            // also need before reading the log; the few report lines are left to the writer thread
+            if (!appender.awaitWritten(LOG_WRITE_TIMEOUT_MILLIS)) {
+                logger.warn("Log events still queued after " + LOG_WRITE_TIMEOUT_MILLIS + " ms, the log may be " +
+                    "incomplete");
+            }
+            for (String line : appender.formatReport()) {
+                logger.info(line);
+            }
+        }
+    }
+
+    /**
+     * Runs the tests reflectively using the provided class loader, and streams the outcome of every test
+     * in every run to the given sink (see TestOutcomeAggregator for the format of the outcome lines).
      *
      * @param testClasses the list of test classes to run
      * @param classStringToMethodsMap the mapping between test classes and selected methods to run
      * @param classLoader the class loader loaded with test classes and all dependencies
      * @param numReruns user-configured number of times to rerun the tests
+     * @param options user-configured options of the rerun (see RerunOptions)
+     * @param outcomeSink the consumer of the encoded outcome lines
      * @throws MojoExecutionException
      */
     public void runInvokedReflectively(List<String> testClasses, Map<String, List<String>> classStringToMethodsMap,
-        ClassLoader classLoader, int numReruns) throws MojoExecutionException {
+        ClassLoader classLoader, int numReruns, Properties options, Consumer<String> outcomeSink) throws MojoExecutionException {
 
         // Make sure no elements come from other (e.g. system) classloaders
         ensureLoadedInIsolatedClassLoader(this);
 
+        // Shard the test classes across forked JVMs or isolated class loaders if requested
+        int forkCount = RerunOptions.getInt(options, RerunOptions.FORK_COUNT, 1);
+        int threadShards = RerunOptions.getInt(options, RerunOptions.THREAD_SHARDS, 1);
+        if (runsInForkedWorkers(classLoader, options)) {
+            PhaseTimer.Phase shardsPhase = phaseTimer.start("forked shards");
+            try {
+                new ForkedShardExecutor(classLoader, options).run(testClasses, classStringToMethodsMap, numReruns,
+                    Math.max(forkCount, 1), outcomeSink);
+            } finally {
+                shardsPhase.close();
+            }
+            return;
+        } else if (threadShards > 1) {
+            PhaseTimer.Phase shardsPhase = phaseTimer.start("in-JVM shards");
+            try {
+                new InJvmShardExecutor(classLoader, options).run(testClasses, classStringToMethodsMap, numReruns,
+                    threadShards, outcomeSink);
+            } finally {
+                shardsPhase.close();
+            }
+            return;
+        }
+
         // Load classes and methods (if selected)
         List<Class<?>> classesToRunAllTests = new ArrayList<>();
         List<Class<?>> classesToRunSelectedTests = new ArrayList<>();
         Map<Class<?>, List<String>> classToMethodsMap = new HashMap<>();
+        PhaseTimer.Phase classLoading = phaseTimer.start("class loading");
         for (int i = 0; i < testClasses.size(); i++) {
             String testClassString = testClasses.get(i);
             try {
@@ -74,140 +246,547 @@ public class ClassLoaderIsolatedTestRunner {
                 continue;
             }
         }
+        classLoading.close();
+        if (RerunOptions.getBoolean(options, RerunOptions.REPORT_PROGRESS)) {
+            progressReporter = new ProgressReporter(outcomeSink);
+        }
+        if (RerunOptions.getBoolean(options, RerunOptions.QUIET_RERUNS)) {
+            outputCapture = new OutputCapture((int) Math.min(Integer.MAX_VALUE,
+                RerunOptions.getLong(options, RerunOptions.CAPTURED_OUTPUT_LIMIT, OutputCapture.DEFAULT_LIMIT)));
+        }
+        recycleHeapGrowth = RerunOptions.getLong(options, RerunOptions.RECYCLE_HEAP_GROWTH, 0);
+        if (RerunOptions.getBoolean(options, RerunOptions.HEAP_TELEMETRY) || recycleHeapGrowth > 0) {
+            heapMonitor = new HeapMonitor();
+            shardName = options.getProperty(RerunOptions.SHARD_NAME, "");
+        }
+        firstRerun = Math.max(1, RerunOptions.getInt(options, RerunOptions.FIRST_RERUN, 1));
 
         // Run JUnit 4 or 5 tests using either Jupiter or Vintage Engine
-        runJUnitTests(classesToRunAllTests, classesToRunSelectedTests, classToMethodsMap, classLoader, numReruns);
+        runJUnitTests(classesToRunAllTests, classesToRunSelectedTests, classToMethodsMap, classLoader, numReruns,
+            options, outcomeSink);
     }
 
     /**
-     * Runs JUnit 4/5 tests.
+     * Runs JUnit 4/5 tests, through the JUnit Platform launcher or, for pure JUnit 4 suites, directly with JUnitCore
+     * (see JUnit4Executor).
      *
      * @param classesToRunAllTests the list of test classes where all methods shall be run
      * @param classesToRunSelectedTests the array of test classes where selected methods shall be run
      * @param classToMethodsMap map from a test class to the selected test methods to run
      * @param classLoader the class loader loaded with test classes and all dependencies
      * @param numReruns user-configured number of times to rerun the tests
+     * @param options user-configured options of the rerun (see RerunOptions), e.g. narrowed or pre-filtered reruns,
+     *                state tracking in the initial run, JUnit Platform configuration parameters and time budget
+     * @param outcomeSink the consumer of the encoded outcome of every test in every run
      * @throws MojoExecutionException
      */
     private void runJUnitTests(List<Class<?>> classesToRunAllTests, List<Class<?>> classesToRunSelectedTests,
-        Map<Class<?>, List<String>> classToMethodsMap, ClassLoader classLoader, int numReruns) throws MojoExecutionException {
+        Map<Class<?>, List<String>> classToMethodsMap, ClassLoader classLoader, int numReruns, Properties options,
+        Consumer<String> outcomeSink)
+        throws MojoExecutionException {
+        // Whether reruns #2..N only re-execute the tests that can still be NIO
+        boolean narrowReruns = RerunOptions.getBoolean(options, RerunOptions.NARROW_RERUNS);
+        // Whether reruns leave out the tests unable to mutate shared state
+        boolean prefilterReruns = RerunOptions.getBoolean(options, RerunOptions.PREFILTER_RERUNS);
+        // Whether to record the static fields, files (in the tracked directories) and JVM-global state changed by
+        // each test in the initial run
+        boolean snapshotStatics = RerunOptions.getBoolean(options, RerunOptions.SNAPSHOT_STATICS);
+        List<File> trackedDirectories = RerunOptions.getFiles(options, RerunOptions.TRACKED_DIRECTORIES);
+        boolean trackGlobals = RerunOptions.getBoolean(options, RerunOptions.TRACK_GLOBALS);
+        // Whether to run pure JUnit 4 suites with JUnitCore instead of the Vintage engine
+        boolean directJUnit4 = RerunOptions.getBoolean(options, RerunOptions.DIRECT_JUNIT4);
+        // JUnit Platform configuration parameters of every discovery request (e.g. to run Jupiter tests in parallel)
+        Map<String, String> configurationParameters = RerunOptions.getConfigurationParameters(options);
+        // Time (in epoch milliseconds) to finish all runs by, or 0 for no time budget
+        long deadline = RerunOptions.getLong(options, RerunOptions.DEADLINE, 0);
 
         // Sanity check
         Thread.currentThread().setContextClassLoader(classLoader);
+        LauncherSession session = null;
         Launcher launcher = null;
+        JUnit4Executor junit4Executor = null;
 
-        // Use reflection to invoke create() method of LauncherFactory to ensure it picks up the correct classloader
-        try {
-            Method createMethod = LauncherFactory.class.getDeclaredMethod("create");
-            createMethod.setAccessible(true);
-            launcher = (Launcher) createMethod.invoke(null);
-        } catch (IllegalAccessException | NoSuchMethodException | InvocationTargetException e) {
-            throw new MojoExecutionException("Error invoking ClassLoaderIsolatedTestRunner", e);
+        PhaseTimer.Phase sessionPhase = phaseTimer.start("launcher session");
+        List<Class<?>> testClasses = new ArrayList<>(classesToRunAllTests);
+        testClasses.addAll(classesToRunSelectedTests);
+        if (directJUnit4 && JUnit4Executor.canRun(testClasses, classLoader)) {
+            // Pure JUnit 4 suites need neither the launcher nor the Vintage engine
+            logger.info("Running " + testClasses.size() + " JUnit 4 test class(es) directly with JUnitCore");
+            junit4Executor = new JUnit4Executor();
+        } else {
+            // Use reflection to invoke openSession() method of LauncherFactory to ensure it picks up the correct
+            // classloader. The session (and the test engines it loads) is reused by the initial run and all reruns
+            try {
+                Method openSessionMethod = LauncherFactory.class.getDeclaredMethod("openSession");
+                openSessionMethod.setAccessible(true);
+                session = (LauncherSession) openSessionMethod.invoke(null);
+            } catch (IllegalAccessException | NoSuchMethodException | InvocationTargetException e) {
+                throw new MojoExecutionException("Error invoking ClassLoaderIsolatedTestRunner", e);
+            }
+            launcher = session.getLauncher();
+            ensureLoadedInIsolatedClassLoader(launcher);
         }
-        ensureLoadedInIsolatedClassLoader(launcher);
+        sessionPhase.close();
+        long sessionNanos = sessionPhase.getElapsedNanos();
+
+        try {
+            // Custom listener to track test pass status
+            CustomSummaryGeneratingListener listener = new CustomSummaryGeneratingListener();
+            List<TestExecutionListener> runListeners = new ArrayList<>();
+            runListeners.add(listener);
+            if (progressReporter != null) {
+                runListeners.add(progressReporter);
+            }
+            if (outputCapture != null) {
+                runListeners.add(outputCapture);
+                outputCapture.install();
+            }
+            TestExecutionListener[] listeners = runListeners.toArray(new TestExecutionListener[0]);
+            if (junit4Executor != null) {
+                junit4Executor.registerTestExecutionListeners(listeners);
+            } else {
+                launcher.registerTestExecutionListeners(listeners);
+            }
 
-        // Custom listener to track test pass status
-        CustomSummaryGeneratingListener listener = new CustomSummaryGeneratingListener();
-        launcher.registerTestExecutionListeners(listener);
+            // Select classes or methods to run, one group of selectors per test class
+            List<List<DiscoverySelector>> classSelectors = new ArrayList<>();
+            for (Class<?> testClass : classesToRunAllTests) {
+                classSelectors.add(Collections.singletonList(DiscoverySelectors.selectClass(testClass)));
+            }
+            for (Class<?> testClass : classesToRunSelectedTests) {
+                List<DiscoverySelector> methodSelectors = new ArrayList<>();
+                for (String method : classToMethodsMap.get(testClass)) {
+                    methodSelectors.add(DiscoverySelectors.selectMethod(testClass, method));
+                }
+                classSelectors.add(methodSelectors);
+            }
+            long[] discoveryNanos = new long[numReruns + 1];
+            long[] executionNanos = new long[numReruns + 1];
 
-        // Select classes or methods to run
-        LauncherDiscoveryRequestBuilder requestBuilder = LauncherDiscoveryRequestBuilder.request();
-        for (Class<?> testClass : classesToRunAllTests) {
-            requestBuilder.selectors(DiscoverySelectors.selectClass(testClass));
-        }
-        for (Class<?> testClass : classesToRunSelectedTests) {
-            for (String method : classToMethodsMap.get(testClass)) {
-                requestBuilder.selectors(DiscoverySelectors.selectMethod(testClass, method));
+            // Snapshot static fields, tracked directories and JVM-global state around each test of the initial run
+            // if requested
+            StaticStateTracker staticStateTracker = snapshotStatics ? new StaticStateTracker(classLoader) : null;
+            FileSystemTracker fileSystemTracker = trackedDirectories.isEmpty() ? null
+                : new FileSystemTracker(trackedDirectories);
+            List<TestExecutionListener> trackers = new ArrayList<>();
+            if (staticStateTracker != null && staticStateTracker.isAvailable()) {
+                trackers.add(staticStateTracker);
             }
-        }
+            if (fileSystemTracker != null) {
+                trackers.add(fileSystemTracker);
+            }
+            GlobalStateTracker globalStateTracker = trackGlobals ? new GlobalStateTracker(classLoader) : null;
+            if (globalStateTracker != null && globalStateTracker.isAvailable()) {
+                trackers.add(globalStateTracker);
+            } else if (globalStateTracker != null) {
+                logger.warn("JVM-global state is not tracked: GlobalStateAgent is not attached to this JVM");
+            }
+            TestExecutionListener[] initialRunListeners = trackers.toArray(new TestExecutionListener[0]);
 
-        // First Run
-        logger.info("");
-        logger.info("====================Starting the Initial Run of Test====================");
-        logger.info("");
-        launcher.execute(requestBuilder.build());
-        final Map<String, Boolean> testStatusInFirstRun = new HashMap<>(listener.getTestPassStatus());
-        TestExecutionSummary summary = listener.getSummary();
-        printSummary(summary);
-
-        // Reruns
-        Map<String, Integer> flakyTests = new HashMap<>();
-        Map<String, Integer> NIOTests = new HashMap<>();
-        Map<String, Integer> NDTests = new HashMap<>();
-        for (int i = 0; i < numReruns; i++) {
+            // Trackers attribute the state changed between the start and the end of a test to that test, which only
+            // holds if tests run one at a time
+            Map<String, String> initialRunParameters = configurationParameters;
+            if (junit4Executor == null && isParallel(configurationParameters)) {
+                if (trackers.isEmpty()) {
+                    logger.info("Running Jupiter tests in parallel in all runs");
+                } else {
+                    logger.info("Running Jupiter tests in parallel in the reruns only, state changes being " +
+                        "tracked test by test in the initial run");
+                    initialRunParameters = new HashMap<>(configurationParameters);
+                    initialRunParameters.put(Constants.PARALLEL_EXECUTION_ENABLED_PROPERTY_NAME, "false");
+                }
+            }
+
+            // First Run
             logger.info("");
-            logger.info("=======================Starting Rerun #" + (i + 1) + "=========================");
+            logger.info("====================Starting the Initial Run of Test====================");
             logger.info("");
-            launcher.execute(requestBuilder.build());
-            summary = listener.getSummary();
-            summary.getFailures().forEach(failure -> {
-                TestIdentifier testIdentifier = failure.getTestIdentifier();
-                String testUniqueId = testIdentifier.getUniqueId();
-                String testString = extractTestMethod(testUniqueId);
-                if (testStatusInFirstRun.containsKey(testUniqueId) && 
-                    testStatusInFirstRun.get(testUniqueId)) {
-                        // Test passed in the first iteration but failed in later iteration
-                        if (flakyTests.containsKey(testString)) {
-                            flakyTests.put(testString, flakyTests.get(testString) + 1);
-                        } else {
-                            flakyTests.put(testString, 1);
-                        }
+            long runStartTime = System.currentTimeMillis();
+            if (heapMonitor != null) {
+                heapMonitor.startRun();
+            }
+            BitSet executedInFirstRun = new BitSet();
+            BitSet passedInFirstRun = new BitSet();
+            List<DiscoverySelector> selectorsRun = new ArrayList<>();
+            int classesRun = 0;
+            if (deadline <= 0) {
+                for (List<DiscoverySelector> selectors : classSelectors) {
+                    selectorsRun.addAll(selectors);
+                }
+                classesRun = classSelectors.size();
+                executeRun(launcher, junit4Executor, createRequest(selectorsRun, initialRunParameters), 0,
+                    discoveryNanos, executionNanos, initialRunListeners);
+                executedInFirstRun.or(listener.getExecutedTests());
+                passedInFirstRun.or(listener.getPassedTests());
+                reportOutcomes(0, listener, outcomeSink);
+                printSummary(listener);
+            } else {
+                // Run class by class, leaving half of the budget to the reruns
+                long initialRunDeadline = numReruns == 0 ? deadline : runStartTime + (deadline - runStartTime) / 2;
+                for (List<DiscoverySelector> selectors : classSelectors) {
+                    if (System.currentTimeMillis() >= initialRunDeadline) {
+                        logger.warn("Time budget reached, skipping the initial run of " +
+                            (classSelectors.size() - classesRun) + " test class(es)");
+                        break;
+                    }
+                    executeRun(launcher, junit4Executor, createRequest(selectors, initialRunParameters), 0,
+                        discoveryNanos, executionNanos, initialRunListeners);
+                    executedInFirstRun.or(listener.getExecutedTests());
+                    passedInFirstRun.or(listener.getPassedTests());
+                    reportOutcomes(0, listener, outcomeSink);
+                    printSummary(listener);
+                    selectorsRun.addAll(selectors);
+                    classesRun++;
+                }
+            }
+            long lastRunMillis = System.currentTimeMillis() - runStartTime;
+            if (heapMonitor != null) {
+                outcomeSink.accept(HeapMonitor.encode(heapMonitor.endRun(shardName, 0)));
+            }
+            // Only failures of tests that passed in the initial run (i.e. possible NIO tests) keep their stack trace
+            listener.setDigestedTests(passedInFirstRun);
+            if (staticStateTracker != null && staticStateTracker.isAvailable()) {
+                staticStateTracker.reportChangedFields(outcomeSink);
+            }
+            if (fileSystemTracker != null) {
+                fileSystemTracker.reportFileChanges(outcomeSink);
+            }
+            if (globalStateTracker != null && globalStateTracker.isAvailable()) {
+                globalStateTracker.reportChangedState(outcomeSink);
+            }
+
+            // Tests that cannot mutate shared state cannot be NIO, so they need no reruns
+            Set<String> excludedTests = Collections.emptySet();
+            if (prefilterReruns && numReruns > 0 && classesRun > 0) {
+                long analysisStartTime = System.currentTimeMillis();
+                Set<String> uniqueIds = new HashSet<>();
+                for (int index = executedInFirstRun.nextSetBit(0); index >= 0;
+                        index = executedInFirstRun.nextSetBit(index + 1)) {
+                    uniqueIds.add(listener.getUniqueId(index));
+                }
+                excludedTests = findNonMutatingTests(uniqueIds, classLoader);
+                logger.info("");
+                logger.info("Static pre-filter: " + excludedTests.size() + " test(s) cannot mutate shared state " +
+                    "and are left out of the reruns (analyzed in " + (System.currentTimeMillis() - analysisStartTime) +
+                    " ms)");
+            }
+            LauncherDiscoveryRequest request = createRequest(selectorsRun, excludedTests, configurationParameters);
+            int prefilteredReruns = 0;
+
+            // Reruns
+            int completedRuns = 1;
+            int rerunsCovered = 0;
+            boolean recycled = false;
+            for (int i = 0; i < numReruns && classesRun > 0; i++) {
+                if (i + 1 < firstRerun && !(narrowReruns && i == 0)) {
+                    // Already run by the recycled worker this runner took over from
+                    rerunsCovered++;
+                    continue;
+                }
+                if (deadline > 0 && System.currentTimeMillis() + lastRunMillis > deadline) {
+                    logger.warn("Time budget leaves no room for rerun #" + (i + 1) + " (the last run took " +
+                        lastRunMillis + " ms), skipping the remaining reruns");
+                    break;
+                }
+                logger.info("");
+                logger.info("=======================Starting Rerun #" + (i + 1) + "=========================");
+                logger.info("");
+                runStartTime = System.currentTimeMillis();
+                if (heapMonitor != null) {
+                    heapMonitor.startRun();
+                }
+                executeRun(launcher, junit4Executor, request, i + 1, discoveryNanos, executionNanos);
+                lastRunMillis = System.currentTimeMillis() - runStartTime;
+                if (heapMonitor != null) {
+                    outcomeSink.accept(HeapMonitor.encode(heapMonitor.endRun(shardName, i + 1)));
+                }
+                completedRuns = i + 2;
+                if (!narrowReruns || i == 0) {
+                    prefilteredReruns++;
                 }
-            });
-            printSummary(summary);
+                rerunsCovered++;
+                reportOutcomes(i + 1, listener, outcomeSink);
+                printSummary(listener);
+
+                if (narrowReruns && i == 0 && numReruns > 1) {
+                    // Only tests that passed in the initial run but failed in rerun #1 can still be NIO
+                    BitSet candidates = getNIOCandidates(passedInFirstRun, listener.getFailedTests());
+                    if (candidates.isEmpty()) {
+                        logger.info("");
+                        logger.info("No test passed in the initial run but failed in rerun #1, skipping " +
+                            "the remaining reruns");
+                        rerunsCovered = numReruns;
+                        break;
+                    }
+                    logger.info("");
+                    logger.info("Narrowing reruns #2.." + numReruns + " to " + candidates.cardinality() +
+                        " candidate test(s)");
+                    List<DiscoverySelector> candidateSelectors = new ArrayList<>();
+                    for (int index = candidates.nextSetBit(0); index >= 0; index = candidates.nextSetBit(index + 1)) {
+                        candidateSelectors.add(DiscoverySelectors.selectUniqueId(listener.getUniqueId(index)));
+                    }
+                    request = createRequest(candidateSelectors, Collections.emptySet(), configurationParameters);
+                }
+
+                if (recycleHeapGrowth > 0 && i + 1 < numReruns &&
+                        heapMonitor.getGrowthSinceInitialRun() > recycleHeapGrowth) {
+                    // The supervisor of the worker runs the remaining reruns in a fresh worker
+                    logger.warn("Heap retained grew by " +
+                        HeapMonitor.formatMegabytes(heapMonitor.getGrowthSinceInitialRun()) +
+                        " since the initial run, stopping after rerun #" + (i + 1) + " for the worker to be recycled");
+                    outcomeSink.accept(HeapMonitor.encodeRecycle(i + 1, heapMonitor.getGrowthSinceInitialRun()));
+                    recycled = true;
+                    break;
+                }
+            }
+            if (classesRun == 0) {
+                rerunsCovered = numReruns;
+            }
+            if (!excludedTests.isEmpty()) {
+                logger.info("Static pre-filter avoided " + (long) excludedTests.size() * prefilteredReruns +
+                    " test execution(s) in " + prefilteredReruns + " rerun(s)");
+            }
+            if (!recycled) {
+                outcomeSink.accept(TestOutcomeAggregator.encodeCoverage(classesRun, classSelectors.size(),
+                    rerunsCovered));
+            }
+            logPhaseTimings(junit4Executor != null, sessionNanos, Arrays.copyOf(discoveryNanos, completedRuns),
+                Arrays.copyOf(executionNanos, completedRuns));
+        } finally {
+            if (outputCapture != null) {
+                outputCapture.uninstall();
+            }
+            if (session != null) {
+                session.close();
+            }
         }
+    }
 
-        // Log final results (possible NIO tests)
-        for (Map.Entry<String, Integer> entry : flakyTests.entrySet()) {
-            // Check if a test is not failing in all reruns
-            if (entry.getValue() < numReruns) {
-                NDTests.put(entry.getKey(), entry.getValue());
-            } else {
-                NIOTests.put(entry.getKey(), entry.getValue());
+    /**
+     * Logs the output a test failing in the current run printed, each line indented so that it cannot be mistaken
+     * for a log line (see CollectTestInfoMojo).
+     *
+     * @param uniqueId the unique ID of the test
+     */
+    private void logCapturedOutput(String uniqueId) {
+        String output = outputCapture.getCapturedOutput(uniqueId);
+        if (output == null) {
+            return;
+        }
+        long capturedBytes = outputCapture.getCapturedBytes(uniqueId);
+        int keptBytes = output.getBytes(Charset.defaultCharset()).length;
+        StringBuilder lines = new StringBuilder();
+        for (String line : output.split("\\r?\\n")) {
+            lines.append(System.lineSeparator()).append(OutputCapture.CAPTURED_OUTPUT_INDENT).append(line);
+        }
+        logger.warn("Captured output" + (capturedBytes > keptBytes ? " (last " + keptBytes + " of " + capturedBytes +
+            " bytes)" : "") + ":" + lines);
+    }
+
+    /**
+     * Gets the tests that passed in the initial run but failed in the given run.
+     *
+     * @param passedInFirstRun the indexes (see CustomSummaryGeneratingListener) of the tests passed in the initial run
+     * @param failedTests the indexes of the tests failed in the run
+     * @return the indexes of the candidate tests
+     */
+    static BitSet getNIOCandidates(BitSet passedInFirstRun, BitSet failedTests) {
+        BitSet candidates = (BitSet) failedTests.clone();
+        candidates.and(passedInFirstRun);
+        return candidates;
+    }
+
+    /**
+     * Finds the tests that cannot mutate state shared across runs, according to their bytecode.
+     *
+     * @param uniqueIds the unique IDs of the tests (and containers) executed in the initial run
+     * @param classLoader the class loader loaded with test classes and all dependencies
+     * @return the unique IDs of the tests found unable to mutate shared state
+     */
+    static Set<String> findNonMutatingTests(Set<String> uniqueIds, ClassLoader classLoader) {
+        StateMutationAnalyzer analyzer = new StateMutationAnalyzer(classLoader);
+        Set<String> nonMutatingTests = new HashSet<>();
+        for (String uniqueId : uniqueIds) {
+            // Containers, and tests not mapping to a test method (e.g. dynamic tests), are always rerun
+            String testMethod = extractTestMethod(uniqueId);
+            if (testMethod == null || testMethod.indexOf('#') <= 0) {
+                continue;
+            }
+            int separator = testMethod.indexOf('#');
+            if (analyzer.findMutation(testMethod.substring(0, separator), testMethod.substring(separator + 1)) == null) {
+                nonMutatingTests.add(uniqueId);
             }
         }
+        return nonMutatingTests;
+    }
+
+    /**
+     * Checks whether configuration parameters enable the parallel execution of Jupiter tests.
+     *
+     * @param configurationParameters the JUnit Platform configuration parameters
+     * @return true if Jupiter tests run in parallel
+     */
+    static boolean isParallel(Map<String, String> configurationParameters) {
+        return Boolean.parseBoolean(configurationParameters.get(Constants.PARALLEL_EXECUTION_ENABLED_PROPERTY_NAME));
+    }
+
+    /**
+     * Creates a request discovering the given selectors.
+     *
+     * @param selectors the classes, methods or unique IDs to discover
+     * @param configurationParameters the JUnit Platform configuration parameters of the request
+     * @return the discovery request
+     */
+    private static LauncherDiscoveryRequest createRequest(List<DiscoverySelector> selectors,
+        Map<String, String> configurationParameters) {
+        return createRequest(selectors, Collections.emptySet(), configurationParameters);
+    }
+
+    /**
+     * Creates a request discovering the given selectors, leaving out the given tests.
+     *
+     * @param selectors the classes, methods or unique IDs to discover
+     * @param excludedTests the unique IDs of the tests to leave out
+     * @param configurationParameters the JUnit Platform configuration parameters of the request
+     * @return the discovery request
+     */
+    static LauncherDiscoveryRequest createRequest(List<DiscoverySelector> selectors, Set<String> excludedTests,
+        Map<String, String> configurationParameters) {
+        LauncherDiscoveryRequestBuilder builder = LauncherDiscoveryRequestBuilder.request().selectors(selectors)
+            .configurationParameters(configurationParameters);
+        if (!excludedTests.isEmpty()) {
+            builder.filters((PostDiscoveryFilter) descriptor ->
+                FilterResult.includedIf(!excludedTests.contains(descriptor.getUniqueId().toString())));
+        }
+        return builder.build();
+    }
+
+    /**
+     * Discovers and executes the selected tests once, recording the time spent in each phase.
+     * A TestPlan can only be executed once, hence discovery is repeated for every run.
+     *
+     * @param launcher the launcher of the session shared by all runs, or null if running JUnit 4 directly
+     * @param junit4Executor the executor running JUnit 4 directly, or null if running through the launcher
+     * @param request the discovery request selecting the tests to run
+     * @param run 0 for the initial run, i for rerun #i
+     * @param discoveryNanos the discovery time of each run
+     * @param executionNanos the execution time of each run
+     * @param listeners additional listeners for this run only
+     */
+    private void executeRun(Launcher launcher, JUnit4Executor junit4Executor, LauncherDiscoveryRequest request,
+        int run, long[] discoveryNanos, long[] executionNanos, TestExecutionListener... listeners) {
+        String runName = run == 0 ? "initial run" : "rerun #" + run;
+        String executionPhase = run == 0 ? "initial run" : "reruns";
+        if (progressReporter != null) {
+            progressReporter.setRun(run);
+        }
+        if (outputCapture != null) {
+            // Only failures in the reruns can make possible NIO or ND tests
+            outputCapture.startRun(run > 0);
+        }
+        PhaseTimer.Phase discovery = phaseTimer.start("discovery", runName);
+        PhaseTimer.Phase execution;
+        if (junit4Executor != null) {
+            JUnit4Executor.Plan plan = junit4Executor.discover(request);
+            discovery.close();
+            execution = phaseTimer.start(executionPhase, runName);
+            junit4Executor.execute(plan, listeners);
+        } else {
+            TestPlan testPlan = launcher.discover(request);
+            discovery.close();
+            execution = phaseTimer.start(executionPhase, runName);
+            launcher.execute(testPlan, listeners);
+        }
+        execution.close();
+        discoveryNanos[run] += discovery.getElapsedNanos();
+        executionNanos[run] += execution.getElapsedNanos();
+    }
+
+    /**
+     * Logs the time spent in opening the launcher session (or in checking the suite can run directly with JUnitCore),
+     * and in discovery and execution of each run.
+     *
+     * @param directJUnit4 whether the tests ran directly with JUnitCore
+     * @param sessionNanos the time spent in opening the launcher session, or in checking the suite
+     * @param discoveryNanos the discovery time of each run
+     * @param executionNanos the execution time of each run
+     */
+    private void logPhaseTimings(boolean directJUnit4, long sessionNanos, long[] discoveryNanos,
+        long[] executionNanos) {
+        long totalDiscoveryNanos = 0;
+        long totalExecutionNanos = 0;
         logger.info("");
-        logger.info("=========================Final Results=========================");
-        logger.info("");
-        if (flakyTests.isEmpty()) {
-            logger.info("No Flaky Tests Found");
+        if (directJUnit4) {
+            logger.info("JUnit 4 suite checked in " + TimeUnit.NANOSECONDS.toMillis(sessionNanos) +
+                " ms and run directly with JUnitCore by all runs");
         } else {
-            if (!NIOTests.isEmpty()) {
-                logger.error("Number of Possible NIO Test(s) Found: " + NIOTests.size());
-                for (Map.Entry<String, Integer> NIOEntry : NIOTests.entrySet()) {
-                    logger.error(NIOEntry.getKey() + " (passed in the initial run but failed in " +
-                        NIOEntry.getValue() + " out of " + numReruns + " reruns)");
-                }
-            }
-            if (!NDTests.isEmpty()) {
-                logger.warn("Number of Non-deterministic Flaky Test(s) Found: " + NDTests.size());
-                for (Map.Entry<String, Integer> NDEntry : NDTests.entrySet()) {
-                    logger.warn(NDEntry.getKey() + " (passed in the initial run but failed in " +
-                        NDEntry.getValue() + " out of " + numReruns + " reruns)");
-                }
+            logger.info("Launcher session opened once in " + TimeUnit.NANOSECONDS.toMillis(sessionNanos) +
+                " ms and reused by all runs");
+        }
+        for (int run = 0; run < discoveryNanos.length; run++) {
+            if (run > 0 && discoveryNanos[run] == 0 && executionNanos[run] == 0) {
+                // Rerun skipped, having run in a recycled worker
+                continue;
             }
+            logger.info((run == 0 ? "Initial run" : "Rerun #" + run) +
+                ": discovery " + TimeUnit.NANOSECONDS.toMillis(discoveryNanos[run]) +
+                " ms, execution " + TimeUnit.NANOSECONDS.toMillis(executionNanos[run]) + " ms");
+            totalDiscoveryNanos += discoveryNanos[run];
+            totalExecutionNanos += executionNanos[run];
         }
-        
+        logger.info("All runs: discovery " + TimeUnit.NANOSECONDS.toMillis(totalDiscoveryNanos) +
+            " ms, execution " + TimeUnit.NANOSECONDS.toMillis(totalExecutionNanos) + " ms");
     }
 
     /**
-     * Prints the test execution summary produced by the JUnit Jupiter / Vintage engine
-     * @param summary The test execution summary to logged.
+     * Streams the outcome of every test executed in one run to the sink
+     *
+     * @param run 0 for the initial run, i for rerun #i
+     * @param listener the listener holding the outcomes of the run
+     * @param outcomeSink the consumer of the encoded outcome lines
      */
-    private void printSummary(TestExecutionSummary summary) {
-        summary.printTo(new PrintWriter(System.out));
-        summary.getFailures().forEach(failure -> {
-            logger.warn("Failing Test: " + extractTestMethod(failure.getTestIdentifier().getUniqueId()));
-            Throwable exception = failure.getException();
-            if (exception != null) {
-                logger.warn("Failure message: ", exception);
-            }
-        });
-        if (summary.getTestsFailedCount() > 0) {
+    private void reportOutcomes(int run, CustomSummaryGeneratingListener listener, Consumer<String> outcomeSink) {
+        BitSet executed = listener.getExecutedTests();
+        BitSet passed = listener.getPassedTests();
+        BitSet failed = listener.getFailedTests();
+        for (int index = executed.nextSetBit(0); index >= 0; index = executed.nextSetBit(index + 1)) {
+            char status = passed.get(index) ? TestOutcomeAggregator.PASSED
+                : failed.get(index) ? TestOutcomeAggregator.FAILED : TestOutcomeAggregator.OTHER;
+            outcomeSink.accept(TestOutcomeAggregator.encodeOutcome(run, listener.getUniqueId(index), status,
+                listener.getDurationMillis(index)));
+        }
+    }
+
+    /**
+     * Prints the summary of one run along with the failure digests kept by the listener
+     * @param listener The listener holding the outcomes of the run.
+     */
+    private void printSummary(CustomSummaryGeneratingListener listener) {
+        if (outputCapture == null) {
+            listener.printTo(System.out);
+        } else {
+            logger.info(listener.formatSummary());
+        }
+        BitSet failed = listener.getFailedTests();
+        for (int index = failed.nextSetBit(0); index >= 0; index = failed.nextSetBit(index + 1)) {
+            logger.warn("Failing Test: " + extractTestMethod(listener.getUniqueId(index)));
+            String digest = listener.getFailureDigest(index);
+            if (digest != null) {
+                // Frames repeating across reruns are logged only once
+                logger.warn("Failure message: " + loggedStackTraces.format(digest));
+            }
+            if (outputCapture != null && listener.isDigested(index)) {
+                logCapturedOutput(listener.getUniqueId(index));
+            }
+        }
+        if (listener.getOmittedDigests() > 0) {
+            logger.warn("Stack traces of " + listener.getOmittedDigests() + " failure(s) omitted after " +
+                CustomSummaryGeneratingListener.MAX_DIGESTS + " distinct ones");
+        }
+        if (listener.getTestsFailedCount() > 0) {
             logger.warn("All Failed tests:");
-            for (TestExecutionSummary.Failure failure : summary.getFailures()) {
-                TestIdentifier failedTest = failure.getTestIdentifier();
-                logger.warn(failedTest.getDisplayName() + ": " + failedTest.getUniqueId());
+            for (int index = failed.nextSetBit(0); index >= 0; index = failed.nextSetBit(index + 1)) {
+                logger.warn(listener.getDisplayName(index) + ": " + listener.getUniqueId(index));
             }
         }
     }
@@ -218,7 +797,7 @@ public class ClassLoaderIsolatedTestRunner {
      * @param input The unique test ID string
      * @return Test method name in the standard format (i.e. com.example.exampleTest#TestSomething)
      */
-    private static String extractTestMethod(String input) {
+    public static String extractTestMethod(String input) {
         // Find the index of the first occurrence of "[test:"
         int startIndex = input.indexOf("[test:");
         if (startIndex == -1) {
@@ -284,16 +863,36 @@ public class ClassLoaderIsolatedTestRunner {
     }
 
     /**
-     * Ensures that the specified object is loaded by IsolatedURLClassLoader.
+     * Checks whether the tests run in forked workers rather than in the current JVM.
+     *
+     * @param classLoader the class loader loaded with test classes and all dependencies
+     * @param options user-configured options of the rerun (see RerunOptions)
+     * @return true if the tests run in forked workers
+     */
+    private static boolean runsInForkedWorkers(ClassLoader classLoader, Properties options) {
+        // JVM-global state is only tracked in forked workers, which have GlobalStateAgent attached
+        boolean forkForGlobals = RerunOptions.getBoolean(options, RerunOptions.TRACK_GLOBALS) &&
+            !new GlobalStateTracker(classLoader).isAvailable();
+        // Timeouts are enforced, and workers recycled, by the supervisor of forked workers
+        boolean forkForSupervision = RerunOptions.getLong(options, RerunOptions.TEST_TIMEOUT, 0) > 0 ||
+            RerunOptions.getLong(options, RerunOptions.CLASS_TIMEOUT, 0) > 0 ||
+            RerunOptions.getLong(options, RerunOptions.HEAP_GROWTH_LIMIT, 0) > 0;
+        return RerunOptions.getInt(options, RerunOptions.FORK_COUNT, 1) > 1 || forkForGlobals || forkForSupervision;
+    }
+
+    /**
+     * Ensures that the specified object is loaded by IsolatedURLClassLoader, or by the class loader shared by
+     * isolated class loaders (see IsolatedURLClassLoader.create).
      *
      * @param o the object to check
-     * @throws MojoExecutionException if the object is not loaded by IsolatedURLClassLoader
+     * @throws MojoExecutionException if the object is loaded by neither
      */
     private static void ensureLoadedInIsolatedClassLoader(Object o) throws MojoExecutionException {
         String objectClassLoader = o.getClass().getClassLoader().getClass().getName();
 
         // Can't do instanceof here because they are not instances of each other.
-        if (!objectClassLoader.equals(IsolatedURLClassLoader.class.getName())) {
+        if (!objectClassLoader.equals(IsolatedURLClassLoader.class.getName()) &&
+            !objectClassLoader.equals(IsolatedURLClassLoader.SharedURLClassLoader.class.getName())) {
             throw new MojoExecutionException(String.format(
                     "Instance of %s not loaded by an IsolatedURLClassLoader (loaded by %s)",
                     o.getClass(), objectClassLoader));
@@ -1,54 +1,371 @@
 package edu.illinois.NIOInspector.plugin.util.detection;
 
+import org.junit.platform.launcher.TestExecutionListener;
 import org.junit.platform.launcher.TestIdentifier;
 import org.junit.platform.launcher.TestPlan;
-import org.junit.platform.launcher.listeners.SummaryGeneratingListener;
 import org.junit.platform.engine.TestExecutionResult;
 
+import java.io.PrintStream;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 /**
- * Custom listener to support tracking all tests executed (instead of failed tests only)
+ * Custom listener to support tracking all tests executed (instead of failed tests only).
+ * The unique ID of each test is interned once into an int index shared by all runs, and the outcomes of the
+ * current run are kept as bit sets over these indexes. Failures are not retained with their Throwable: only a
+ * bounded, deduplicated digest of the stack traces of the tests chosen by setDigestedTests (i.e. the tests that
+ * passed in the initial run) is kept, other failures keeping the first line of their exception.
+ * Callbacks may come from many threads at once when Jupiter tests run in parallel, hence all state is guarded by
+ * the listener itself, and start times are kept per test.
  */
-public class CustomSummaryGeneratingListener extends SummaryGeneratingListener {
+public class CustomSummaryGeneratingListener implements TestExecutionListener {
 
-    // Stores the execution status of each executed test
-    private final Map<String, Boolean> testPassStatus = new HashMap<>();
+    // Maximum number of distinct failure digests kept per run, and of lines kept per stack trace
+    static final int MAX_DIGESTS = 1000;
+    static final int MAX_DIGEST_LINES = 200;
+
+    // Digest of failures whose stack trace is dropped because MAX_DIGESTS distinct ones are already kept
+    static final String OMITTED_DIGEST = "(stack trace omitted: " + MAX_DIGESTS +
+        " distinct failures are already kept for this run)";
+
+    // Index of each unique ID seen so far, and the unique ID of each index
+    private final Map<String, Integer> indexes = new HashMap<>();
+    private final List<String> uniqueIds = new ArrayList<>();
+
+    // Tests (and containers) executed, passed and failed in the current run
+    private final BitSet executed = new BitSet();
+    private final BitSet passed = new BitSet();
+    private final BitSet failed = new BitSet();
+
+    // Start times (from System.nanoTime) and execution times (in milliseconds) of the tests, by index
+    private long[] startTimes = new long[256];
+    private long[] durations = new long[256];
+
+    // Tests whose failures keep their whole stack trace; null until set
+    private BitSet digestedTests;
+
+    // Distinct digests of the current run, the digest of each failure, and display names of the failed tests
+    private final Map<String, Integer> digestIndexes = new HashMap<>();
+    private final List<String> digests = new ArrayList<>();
+    private final Map<Integer, Integer> failureDigests = new HashMap<>();
+    private final Map<Integer, String> failedDisplayNames = new HashMap<>();
+    private int omittedDigests;
+
+    // Counters of the current run
+    private long runStartTime;
+    private long testsFound;
+    private long testsSkipped;
+    private long testsSucceeded;
+    private long testsFailed;
+    private long testsAborted;
+    private long containersFailed;
 
     /**
-     * Make sure the Map is clean when a run starts
+     * Make sure the outcomes are clean when a run starts
      *
      * @param testPlan The test plan being executed.
      */
     @Override
-    public void testPlanExecutionStarted(TestPlan testPlan) {
-        super.testPlanExecutionStarted(testPlan);
-        testPassStatus.clear();
+    public synchronized void testPlanExecutionStarted(TestPlan testPlan) {
+        executed.clear();
+        passed.clear();
+        failed.clear();
+        digestIndexes.clear();
+        digests.clear();
+        failureDigests.clear();
+        failedDisplayNames.clear();
+        omittedDigests = 0;
+        runStartTime = System.currentTimeMillis();
+        testsFound = testPlan == null ? 0 : testPlan.countTestIdentifiers(TestIdentifier::isTest);
+        testsSkipped = 0;
+        testsSucceeded = 0;
+        testsFailed = 0;
+        testsAborted = 0;
+        containersFailed = 0;
+    }
+
+    /**
+     * Counts a skipped test
+     *
+     * @param testIdentifier The identifier of the skipped test.
+     * @param reason The reason the test is skipped.
+     */
+    @Override
+    public synchronized void executionSkipped(TestIdentifier testIdentifier, String reason) {
+        if (testIdentifier.isTest()) {
+            testsSkipped++;
+        }
     }
 
     /**
-     * Updates the map with the status of the test upon finishing execution
+     * Records the start time of a test
+     *
+     * @param testIdentifier The identifier of the started test.
+     */
+    @Override
+    public synchronized void executionStarted(TestIdentifier testIdentifier) {
+        // Interned first: the arrays are replaced when a new index outgrows them
+        int index = indexOf(testIdentifier.getUniqueId());
+        startTimes[index] = System.nanoTime();
+    }
+
+    /**
+     * Records the status of the test upon finishing execution
      *
      * @param testIdentifier     The identifier of the finished test.
      * @param testExecutionResult The result of the finished test execution.
      */
     @Override
-    public void executionFinished(TestIdentifier testIdentifier, TestExecutionResult testExecutionResult) {
-        super.executionFinished(testIdentifier, testExecutionResult);
-        String testUniqueId = testIdentifier.getUniqueId();
-        // Store the execution status of the test identified by its unique ID
-        if (!testPassStatus.containsKey(testUniqueId)) {
-            testPassStatus.put(testUniqueId, testExecutionResult.getStatus() == TestExecutionResult.Status.SUCCESSFUL);
+    public synchronized void executionFinished(TestIdentifier testIdentifier, TestExecutionResult testExecutionResult) {
+        int index = indexOf(testIdentifier.getUniqueId());
+        // Only the first execution of a test in a run counts
+        if (executed.get(index)) {
+            return;
+        }
+        executed.set(index);
+        long startTime = startTimes[index];
+        durations[index] = startTime == 0 ? 0 : (System.nanoTime() - startTime) / 1_000_000;
+        startTimes[index] = 0;
+
+        TestExecutionResult.Status status = testExecutionResult.getStatus();
+        if (status == TestExecutionResult.Status.SUCCESSFUL) {
+            passed.set(index);
+        } else if (status == TestExecutionResult.Status.FAILED) {
+            failed.set(index);
+            failedDisplayNames.put(index, testIdentifier.getDisplayName());
+            testExecutionResult.getThrowable().ifPresent(throwable -> failureDigests.put(index, digest(index, throwable)));
+        }
+        if (testIdentifier.isTest()) {
+            if (status == TestExecutionResult.Status.SUCCESSFUL) {
+                testsSucceeded++;
+            } else if (status == TestExecutionResult.Status.FAILED) {
+                testsFailed++;
+            } else {
+                testsAborted++;
+            }
+        } else if (status == TestExecutionResult.Status.FAILED) {
+            containersFailed++;
+        }
+    }
+
+    /**
+     * Sets the tests whose failures keep their whole stack trace in later runs.
+     *
+     * @param tests the indexes of the tests (i.e. the tests that passed in the initial run)
+     */
+    public synchronized void setDigestedTests(BitSet tests) {
+        digestedTests = (BitSet) tests.clone();
+    }
+
+    /**
+     * Interns a unique ID.
+     *
+     * @param uniqueId the unique ID of a test or container
+     * @return its index, the same in all runs
+     */
+    public synchronized int indexOf(String uniqueId) {
+        Integer index = indexes.get(uniqueId);
+        if (index == null) {
+            index = uniqueIds.size();
+            indexes.put(uniqueId, index);
+            uniqueIds.add(uniqueId);
+            if (index >= durations.length) {
+                startTimes = Arrays.copyOf(startTimes, durations.length * 2);
+                durations = Arrays.copyOf(durations, durations.length * 2);
+            }
         }
+        return index;
+    }
+
+    /**
+     * Retrieves the unique ID of an index.
+     *
+     * @param index the index of a test or container
+     * @return its unique ID
+     */
+    public synchronized String getUniqueId(int index) {
+        return uniqueIds.get(index);
+    }
+
+    /**
+     * Retrieves the tests (and containers) executed in the current run.
+     *
+     * @return The indexes of the executed tests.
+     */
+    public synchronized BitSet getExecutedTests() {
+        return (BitSet) executed.clone();
+    }
+
+    /**
+     * Retrieves the tests (and containers) that passed in the current run.
+     *
+     * @return The indexes of the passed tests.
+     */
+    public synchronized BitSet getPassedTests() {
+        return (BitSet) passed.clone();
+    }
+
+    /**
+     * Retrieves the tests (and containers) that failed in the current run; aborted tests neither pass nor fail.
+     *
+     * @return The indexes of the failed tests.
+     */
+    public synchronized BitSet getFailedTests() {
+        return (BitSet) failed.clone();
     }
 
     /**
-     * Retrieves the map containing the execution status of each test.
+     * Retrieves the execution time of a test executed in the current run.
      *
-     * @return The test status map for the current run.
+     * @param index the index of the test
+     * @return The execution time in milliseconds.
      */
-    public Map<String, Boolean> getTestPassStatus() {
-        return testPassStatus;
+    public synchronized long getDurationMillis(int index) {
+        return durations[index];
+    }
+
+    /**
+     * Retrieves the display name of a test that failed in the current run.
+     *
+     * @param index the index of the test
+     * @return The display name, or null if the test did not fail.
+     */
+    public synchronized String getDisplayName(int index) {
+        return failedDisplayNames.get(index);
+    }
+
+    /**
+     * Retrieves the digest of the failure of a test in the current run: its stack trace (at most MAX_DIGEST_LINES
+     * lines) if the test is digested, the first line of its exception otherwise, or OMITTED_DIGEST once MAX_DIGESTS
+     * distinct digests are kept.
+     *
+     * @param index the index of the test
+     * @return The digest, or null if the test did not fail with an exception.
+     */
+    public synchronized String getFailureDigest(int index) {
+        Integer digestIndex = failureDigests.get(index);
+        if (digestIndex == null) {
+            return null;
+        }
+        return digestIndex < 0 ? OMITTED_DIGEST : digests.get(digestIndex);
+    }
+
+    /**
+     * Retrieves the number of failures of the current run whose digest was omitted.
+     *
+     * @return The number of failures.
+     */
+    public synchronized int getOmittedDigests() {
+        return omittedDigests;
+    }
+
+    /**
+     * Checks whether the failures of a test keep their whole stack trace.
+     *
+     * @param index the index of the test
+     * @return true if the test is digested (i.e. passed in the initial run)
+     */
+    public synchronized boolean isDigested(int index) {
+        return digestedTests != null && digestedTests.get(index);
+    }
+
+    /**
+     * Retrieves the number of tests that failed in the current run.
+     *
+     * @return The number of failed tests, excluding containers.
+     */
+    public synchronized long getTestsFailedCount() {
+        return testsFailed;
+    }
+
+    /**
+     * Formats the counters of the current run on one line.
+     *
+     * @return the summary of the run
+     */
+    public synchronized String formatSummary() {
+        return "Test run finished after " + (System.currentTimeMillis() - runStartTime) + " ms: " +
+            (testsSucceeded + testsFailed + testsAborted) + " test(s) started, " + testsSucceeded + " successful, " +
+            testsFailed + " failed, " + testsAborted + " aborted, " + testsSkipped + " skipped" +
+            (containersFailed == 0 ? "" : ", " + containersFailed + " container(s) failed");
+    }
+
+    /**
+     * Prints the counters of the current run, in the layout of the JUnit Platform summary.
+     *
+     * @param out the stream to print to
+     */
+    public synchronized void printTo(PrintStream out) {
+        out.println();
+        out.println("Test run finished after " + (System.currentTimeMillis() - runStartTime) + " ms");
+        out.println(String.format("[%10d containers failed     ]", containersFailed));
+        out.println(String.format("[%10d tests found           ]", testsFound));
+        out.println(String.format("[%10d tests skipped         ]", testsSkipped));
+        out.println(String.format("[%10d tests started         ]", testsSucceeded + testsFailed + testsAborted));
+        out.println(String.format("[%10d tests aborted         ]", testsAborted));
+        out.println(String.format("[%10d tests successful      ]", testsSucceeded));
+        out.println(String.format("[%10d tests failed          ]", testsFailed));
+        out.println();
+        out.flush();
+    }
+
+    /**
+     * Interns the digest of a failure into the digests of the current run.
+     *
+     * @param index the index of the failed test
+     * @param throwable the cause of the failure
+     * @return the index of the digest, or -1 if omitted
+     */
+    private int digest(int index, Throwable throwable) {
+        String digest = digestedTests != null && digestedTests.get(index) ? renderStackTrace(throwable)
+            : firstLine(String.valueOf(throwable));
+        Integer digestIndex = digestIndexes.get(digest);
+        if (digestIndex != null) {
+            return digestIndex;
+        }
+        if (digests.size() >= MAX_DIGESTS) {
+            omittedDigests++;
+            return -1;
+        }
+        digestIndexes.put(digest, digests.size());
+        digests.add(digest);
+        return digests.size() - 1;
+    }
+
+    /**
+     * Renders the stack trace of a throwable, cut at MAX_DIGEST_LINES lines.
+     *
+     * @param throwable the throwable
+     * @return the stack trace, without trailing line separator
+     */
+    static String renderStackTrace(Throwable throwable) {
+        StringWriter writer = new StringWriter();
+        try (PrintWriter printWriter = new PrintWriter(writer)) {
+            throwable.printStackTrace(printWriter);
+        }
+        String[] lines = writer.toString().split("\\r?\\n");
+        int kept = Math.min(lines.length, MAX_DIGEST_LINES);
+        StringBuilder trace = new StringBuilder();
+        for (int i = 0; i < kept; i++) {
+            if (i > 0) {
+                trace.append(System.lineSeparator());
+            }
+            trace.append(lines[i]);
+        }
+        if (kept < lines.length) {
+            trace.append(System.lineSeparator()).append("\t... ").append(lines.length - kept).append(" more lines");
+        }
+        return trace.toString();
+    }
+
+    private static String firstLine(String text) {
+        int end = text.indexOf('\n');
+        return (end < 0 ? text : text.substring(0, end)).trim();
     }
 }
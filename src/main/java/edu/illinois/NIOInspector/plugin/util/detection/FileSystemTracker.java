@@ -0,0 +1,214 @@
+package edu.illinois.NIOInspector.plugin.util.detection;
+
+import org.junit.platform.engine.TestExecutionResult;
+import org.junit.platform.launcher.TestExecutionListener;
+import org.junit.platform.launcher.TestIdentifier;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * Listener indexing the files under the tracked directories (i.e. the project directory, the build directory and
+ * java.io.tmpdir) before and after each test, and recording the files each test created, modified or deleted.
+ * The index taken after a test is reused before the next test unless other tests' containers ran in between.
+ */
+public class FileSystemTracker implements TestExecutionListener {
+
+    private static final Logger logger = LoggerFactory.getLogger(FileSystemTracker.class);
+
+    /**
+     * Number of files indexed at most, to bound the memory and time spent on huge directories
+     */
+    static final int MAX_FILES = 200_000;
+
+    // Directories never indexed: logs of this plugin, version control, and JVM performance data
+    private static final List<String> EXCLUDED_DIRECTORY_PREFIXES = Arrays.asList(".NIOInspector", ".git",
+        "hsperfdata_");
+
+    private final List<Path> roots = new ArrayList<>();
+
+    // Index taken after the last test, valid until a container starts or finishes
+    private Map<String, long[]> lastIndex;
+
+    private boolean truncationLogged;
+
+    // Indexes taken when tests started
+    private final Map<String, Map<String, long[]>> indexes = new HashMap<>();
+
+    // File changes of each test, in execution order
+    private final Map<String, List<String>> fileChanges = new LinkedHashMap<>();
+
+    /**
+     * Creates a tracker of the given directories; directories nested in others are only indexed once (unless nested
+     * in an excluded directory, i.e. the temporary directory of a forked worker).
+     *
+     * @param directories the directories to track
+     */
+    public FileSystemTracker(List<File> directories) {
+        List<Path> paths = new ArrayList<>();
+        for (File directory : directories) {
+            if (directory.isDirectory()) {
+                paths.add(directory.toPath().toAbsolutePath().normalize());
+            }
+        }
+        for (Path path : paths) {
+            boolean nested = false;
+            for (Path other : paths) {
+                nested |= !other.equals(path) && path.startsWith(other) && !isExcluded(other.relativize(path));
+            }
+            if (!nested && !roots.contains(path)) {
+                roots.add(path);
+            }
+        }
+    }
+
+    @Override
+    public void executionStarted(TestIdentifier testIdentifier) {
+        if (testIdentifier.isTest()) {
+            indexes.put(testIdentifier.getUniqueId(), lastIndex != null ? lastIndex : index());
+        } else {
+            lastIndex = null;
+        }
+    }
+
+    @Override
+    public void executionFinished(TestIdentifier testIdentifier, TestExecutionResult testExecutionResult) {
+        Map<String, long[]> before = indexes.remove(testIdentifier.getUniqueId());
+        if (before == null) {
+            lastIndex = null;
+            return;
+        }
+        Map<String, long[]> after = index();
+        List<String> changes = diff(before, after);
+        if (!changes.isEmpty()) {
+            fileChanges.put(testIdentifier.getUniqueId(), changes);
+        }
+        lastIndex = after;
+    }
+
+    /**
+     * Gets the file changes of each test.
+     *
+     * @return map from the unique ID of each test to its file changes (i.e. "created /tmp/out.txt")
+     */
+    public Map<String, List<String>> getFileChanges() {
+        return fileChanges;
+    }
+
+    /**
+     * Streams the file changes of each test to the sink (see TestOutcomeAggregator).
+     *
+     * @param outcomeSink the consumer of the encoded lines
+     */
+    public void reportFileChanges(Consumer<String> outcomeSink) {
+        for (Map.Entry<String, List<String>> entry : fileChanges.entrySet()) {
+            outcomeSink.accept(TestOutcomeAggregator.encodeFileChanges(entry.getKey(), entry.getValue()));
+        }
+    }
+
+    /**
+     * Compares two indexes.
+     *
+     * @param before the index taken before the test
+     * @param after the index taken after the test
+     * @return the sorted file changes (i.e. "created /tmp/out.txt", "modified ...", "deleted ...")
+     */
+    static List<String> diff(Map<String, long[]> before, Map<String, long[]> after) {
+        List<String> changes = new ArrayList<>();
+        for (Map.Entry<String, long[]> entry : after.entrySet()) {
+            long[] previous = before.get(entry.getKey());
+            if (previous == null) {
+                changes.add("created " + entry.getKey());
+            } else if (!Arrays.equals(previous, entry.getValue())) {
+                changes.add("modified " + entry.getKey());
+            }
+        }
+        for (String path : before.keySet()) {
+            if (!after.containsKey(path)) {
+                changes.add("deleted " + path);
+            }
+        }
+        Collections.sort(changes);
+        return changes;
+    }
+
+    /**
+     * Indexes the size and modification time of every file under the tracked directories.
+     *
+     * @return map from absolute path to its size and modification time
+     */
+    Map<String, long[]> index() {
+        Map<String, long[]> index = new HashMap<>();
+        for (Path root : roots) {
+            try {
+                Files.walkFileTree(root, new SimpleFileVisitor<Path>() {
+                    @Override
+                    public FileVisitResult preVisitDirectory(Path directory, BasicFileAttributes attributes) {
+                        Path name = directory.getFileName();
+                        if (!directory.equals(root) && name != null && isExcluded(name.toString())) {
+                            return FileVisitResult.SKIP_SUBTREE;
+                        }
+                        return FileVisitResult.CONTINUE;
+                    }
+
+                    @Override
+                    public FileVisitResult visitFile(Path file, BasicFileAttributes attributes) {
+                        if (index.size() >= MAX_FILES) {
+                            return FileVisitResult.TERMINATE;
+                        }
+                        index.put(file.toString(),
+                            new long[] {attributes.size(), attributes.lastModifiedTime().toMillis()});
+                        return FileVisitResult.CONTINUE;
+                    }
+
+                    @Override
+                    public FileVisitResult visitFileFailed(Path file, IOException e) {
+                        // e.g. deleted while walking, or not readable
+                        return FileVisitResult.CONTINUE;
+                    }
+                });
+            } catch (IOException e) {
+                logger.warn("Failed to index " + root + ": " + e);
+            }
+        }
+        if (index.size() >= MAX_FILES && !truncationLogged) {
+            logger.warn("Tracked directories hold more than " + MAX_FILES + " files, only the first ones are tracked");
+            truncationLogged = true;
+        }
+        return index;
+    }
+
+    private static boolean isExcluded(Path relativePath) {
+        for (Path name : relativePath) {
+            if (isExcluded(name.toString())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean isExcluded(String directoryName) {
+        for (String prefix : EXCLUDED_DIRECTORY_PREFIXES) {
+            if (directoryName.startsWith(prefix)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,187 @@
+package edu.illinois.NIOInspector.plugin.util.detection;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Method;
+import java.net.InetAddress;
+import java.net.MalformedURLException;
+import java.net.Socket;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.function.Consumer;
+
+/**
+ * Entry point of a forked rerun worker. Loads one shard of the test classes in a fresh IsolatedURLClassLoader,
+ * runs the initial run and all reruns, and streams the per-test outcomes to the loopback port ForkedShardExecutor
+ * listens on, apart from the output of the tests.
+ * Only JDK classes and IsolatedURLClassLoader may be referenced here, since nothing else is on the
+ * classpath of the worker JVM.
+ */
+public class ForkedRerunWorker {
+
+    /**
+     * Key of the newline-separated URLs to load the shard from
+     */
+    static final String CLASSPATH = "worker.classpath";
+
+    /**
+     * Key of the newline-separated URLs of the class loader shared by the isolated one (may be absent)
+     */
+    static final String SHARED_CLASSPATH = "worker.sharedClasspath";
+
+    /**
+     * Key of the comma-separated "class" or "class#method" entries of the shard
+     */
+    static final String TESTS = "worker.tests";
+
+    /**
+     * Key of the number of reruns
+     */
+    static final String NUM_RERUNS = "worker.numReruns";
+
+    /**
+     * Key of the directory to write the log of the shard to
+     */
+    static final String LOG_DIRECTORY = "worker.logDirectory";
+
+    /**
+     * Key of the loopback port to stream the encoded outcome lines to
+     */
+    static final String OUTCOME_PORT = "worker.outcomePort";
+
+    private static final String RUNNER_CLASS = "edu.illinois.NIOInspector.plugin.util.detection.ClassLoaderIsolatedTestRunner";
+
+    private static final String APPENDER_CLASS = "edu.illinois.NIOInspector.plugin.util.logging.CustomTimeBasedFileAppender";
+
+    /**
+     * Runs the shard described by the given specification file, then terminates the JVM.
+     *
+     * @param args the path to the shard specification file
+     */
+    public static void main(String[] args) {
+        File specificationFile = new File(args[0]);
+        int exitCode = 0;
+        try {
+            int port = Integer.parseInt(loadSpecification(specificationFile).getProperty(OUTCOME_PORT));
+            // Tests print to System.out and System.err, which would split or glue lines sharing them
+            try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), port);
+                 PrintStream outcomeStream = new PrintStream(new BufferedOutputStream(socket.getOutputStream()),
+                     true, "UTF-8")) {
+                run(specificationFile, outcomeStream::println);
+            }
+        } catch (Throwable t) {
+            t.printStackTrace();
+            exitCode = 1;
+        }
+        // Tests may leave non-daemon threads behind
+        System.exit(exitCode);
+    }
+
+    /**
+     * Runs the shard described by the given specification file.
+     *
+     * @param specificationFile the shard specification written by ForkedShardExecutor
+     * @param outcomeSink the consumer of the encoded outcome lines
+     * @throws Exception if the shard cannot be loaded or run
+     */
+    static void run(File specificationFile, Consumer<String> outcomeSink) throws Exception {
+        Properties specification = loadSpecification(specificationFile);
+        List<URL> urls = parseClasspath(specification.getProperty(CLASSPATH, ""));
+        List<URL> sharedURLs = parseClasspath(specification.getProperty(SHARED_CLASSPATH, ""));
+        List<String> testClassNames = new ArrayList<>();
+        Map<String, List<String>> classStringToMethodsMap = new HashMap<>();
+        parseTests(specification.getProperty(TESTS, ""), testClassNames, classStringToMethodsMap);
+        int numReruns = Integer.parseInt(specification.getProperty(NUM_RERUNS, "0"));
+
+        IsolatedURLClassLoader classLoader = IsolatedURLClassLoader.create(sharedURLs, urls);
+        try {
+            // Must happen before the runner initializes logging in the isolated class loader
+            String logDirectory = specification.getProperty(LOG_DIRECTORY);
+            if (logDirectory != null) {
+                classLoader.loadClass(APPENDER_CLASS).getMethod("setLogDirectoryOverride", String.class)
+                    .invoke(null, logDirectory);
+            }
+
+            Class<?> testRunnerClass = classLoader.loadClass(RUNNER_CLASS);
+            Constructor<?> constructor = testRunnerClass.getDeclaredConstructor();
+            constructor.setAccessible(true);
+            Object testRunner = constructor.newInstance();
+            Method runMethod = testRunnerClass.getMethod("runInvokedReflectively", List.class, Map.class,
+                ClassLoader.class, int.class, Properties.class, Consumer.class);
+            runMethod.invoke(testRunner, testClassNames, classStringToMethodsMap, classLoader, numReruns,
+                specification, outcomeSink);
+        } finally {
+            try {
+                classLoader.close();
+            } catch (IOException e) {
+                // The JVM is about to exit anyway
+            }
+        }
+    }
+
+    /**
+     * Loads a shard specification file.
+     *
+     * @param specificationFile the shard specification written by ForkedShardExecutor
+     * @return the specification
+     * @throws IOException if the file cannot be read
+     */
+    private static Properties loadSpecification(File specificationFile) throws IOException {
+        Properties specification = new Properties();
+        try (InputStream in = new FileInputStream(specificationFile)) {
+            specification.load(in);
+        }
+        return specification;
+    }
+
+    /**
+     * Parses newline-separated URLs.
+     *
+     * @param classpath the URLs to parse
+     * @return the URLs, in order
+     * @throws MalformedURLException if an entry is not a URL
+     */
+    static List<URL> parseClasspath(String classpath) throws MalformedURLException {
+        List<URL> urls = new ArrayList<>();
+        for (String url : classpath.split("\n")) {
+            if (!url.trim().isEmpty()) {
+                urls.add(new URL(url.trim()));
+            }
+        }
+        return urls;
+    }
+
+    /**
+     * Parses comma-separated "class" or "class#method" entries.
+     *
+     * @param tests the entries to parse
+     * @param testClassNames list to collect the test class names
+     * @param classStringToMethodsMap map to collect the selected methods of each class
+     */
+    static void parseTests(String tests, List<String> testClassNames, Map<String, List<String>> classStringToMethodsMap) {
+        for (String entry : tests.split(",")) {
+            String testClassOrMethod = entry.trim();
+            if (testClassOrMethod.isEmpty()) {
+                continue;
+            }
+            String testClass = testClassOrMethod.contains("#")
+                ? testClassOrMethod.substring(0, testClassOrMethod.indexOf('#')) : testClassOrMethod;
+            if (!testClassNames.contains(testClass)) {
+                testClassNames.add(testClass);
+            }
+            if (testClassOrMethod.contains("#")) {
+                classStringToMethodsMap.computeIfAbsent(testClass, k -> new ArrayList<>())
+                    .add(testClassOrMethod.substring(testClassOrMethod.indexOf('#') + 1));
+            }
+        }
+    }
+}
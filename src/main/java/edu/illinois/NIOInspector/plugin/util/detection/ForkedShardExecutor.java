@@ -0,0 +1,512 @@
+package edu.illinois.NIOInspector.plugin.util.detection;
+
+import edu.illinois.NIOInspector.plugin.util.logging.FlightRecording;
+import edu.illinois.NIOInspector.plugin.util.logging.PhaseTimer;
+
+import org.apache.maven.plugin.MojoExecutionException;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Runs shards of the test classes in forked JVMs. Each worker JVM loads its shard in its own
+ * IsolatedURLClassLoader, with its own working directory and java.io.tmpdir (and GlobalStateAgent attached if
+ * JVM-global state is tracked), runs the initial run and all reruns, and streams the per-test outcomes back
+ * over a loopback socket of its own, so that the output of the tests cannot split or glue them. Workers share a dynamic AppCDS archive across reruns if enabled (see
+ * ClassDataSharingArchive). Each worker is supervised (see WorkerSupervisor): a worker hanging past the test or
+ * test class timeout is killed, and a killed or dead worker is respawned without the test classes it was running.
+ * A worker whose heap grew past the limit is recycled: a fresh worker runs its remaining reruns.
+ */
+public class ForkedShardExecutor extends ShardExecutor {
+
+    private static final Logger logger = LoggerFactory.getLogger(ForkedShardExecutor.class);
+
+    // How often to check whether a worker died before connecting to its outcome socket
+    private static final int CONNECT_CHECK_INTERVAL_MILLIS = 1000;
+
+    // Archive of the classes of the workers, or null if class data sharing is disabled or unsupported
+    private ClassDataSharingArchive archive;
+
+    /**
+     * Creates an executor forking workers with the classpath of the given class loader.
+     *
+     * @param classLoader the class loader loaded with test classes and all dependencies
+     * @param options user-configured options of the rerun (see RerunOptions)
+     * @throws MojoExecutionException if the classpath cannot be determined
+     */
+    public ForkedShardExecutor(ClassLoader classLoader, Properties options) throws MojoExecutionException {
+        super(classLoader, options);
+        String workerClasspath = getWorkerClasspath();
+        if (RerunOptions.getBoolean(options, RerunOptions.CLASS_DATA_SHARING)) {
+            if (ClassDataSharingArchive.isSupported(workerClasspath)) {
+                archive = new ClassDataSharingArchive(new File(ClassDataSharingArchive.DEFAULT_DIRECTORY),
+                    workerClasspath, classLoader, options.getProperty(RerunOptions.TEST_OUTPUT_DIRECTORY));
+            } else {
+                logger.info("Forked workers run without a CDS archive, which needs Java " +
+                    ClassDataSharingArchive.MIN_JAVA_VERSION + " and the plugin packaged as a jar");
+            }
+        }
+    }
+
+    @Override
+    public void run(List<String> testClasses, Map<String, List<String>> classStringToMethodsMap, int numReruns,
+        int forkCount, Consumer<String> outcomeSink) throws MojoExecutionException {
+
+        List<List<String>> shards = createShards(testClasses, classStringToMethodsMap, forkCount);
+        logger.info("Running " + shards.size() + " shard(s) in forked JVMs; shard logs are written to " +
+            new File(runDirectory, "shard-*"));
+
+        long testTimeout = RerunOptions.getLong(options, RerunOptions.TEST_TIMEOUT, 0);
+        long classTimeout = RerunOptions.getLong(options, RerunOptions.CLASS_TIMEOUT, 0);
+        List<WorkerSupervisor> supervisors = new ArrayList<>();
+        for (int i = 0; i < shards.size(); i++) {
+            supervisors.add(new WorkerSupervisor(getShardDirectory(i).getName(), testTimeout, classTimeout,
+                outcomeSink));
+        }
+        ScheduledExecutorService watchdog = null;
+        if (testTimeout > 0 || classTimeout > 0) {
+            List<String> limits = new ArrayList<>();
+            if (testTimeout > 0) {
+                limits.add("a test longer than " + testTimeout + " ms");
+            }
+            if (classTimeout > 0) {
+                limits.add("a test class longer than " + classTimeout + " ms in one run");
+            }
+            logger.info("Workers running " + String.join(" or ", limits) + " are killed, and the test class " +
+                "quarantined");
+            watchdog = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "NIOInspector-watchdog");
+                thread.setDaemon(true);
+                return thread;
+            });
+            long interval = WorkerSupervisor.getCheckInterval(testTimeout, classTimeout);
+            watchdog.scheduleWithFixedDelay(() -> supervisors.forEach(WorkerSupervisor::checkTimeouts), interval,
+                interval, TimeUnit.MILLISECONDS);
+        }
+
+        long heapGrowthLimit = RerunOptions.getLong(options, RerunOptions.HEAP_GROWTH_LIMIT, 0);
+        if (heapGrowthLimit > 0) {
+            logger.info("Workers whose retained heap grows by more than " +
+                HeapMonitor.formatMegabytes(heapGrowthLimit) + " since the initial run are recycled after the rerun");
+        }
+
+        ExecutorService pool = Executors.newFixedThreadPool(shards.size(), runnable -> {
+            Thread thread = new Thread(runnable);
+            thread.setDaemon(true);
+            return thread;
+        });
+        try {
+            List<Future<?>> results = new ArrayList<>();
+            for (int i = 0; i < shards.size(); i++) {
+                int shardIndex = i;
+                results.add(pool.submit(() -> {
+                    Thread.currentThread().setName("NIOInspector-" + getShardDirectory(shardIndex).getName());
+                    runSupervised(shardIndex, shards.get(shardIndex), numReruns, supervisors.get(shardIndex));
+                    return null;
+                }));
+            }
+            for (Future<?> result : results) {
+                try {
+                    result.get();
+                } catch (ExecutionException e) {
+                    if (e.getCause() instanceof MojoExecutionException) {
+                        throw (MojoExecutionException) e.getCause();
+                    }
+                    throw new MojoExecutionException("Failed to supervise a forked worker", e.getCause());
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new MojoExecutionException("Interrupted while waiting for forked workers", e);
+        } finally {
+            for (WorkerSupervisor supervisor : supervisors) {
+                supervisor.destroyWorker();
+            }
+            pool.shutdownNow();
+            if (watchdog != null) {
+                watchdog.shutdownNow();
+            }
+            if (archive != null) {
+                archive.save();
+            }
+        }
+    }
+
+    /**
+     * Runs one shard in a supervised worker, respawning it without the test classes it was killed for (or died
+     * running) until the rest of the shard is run, or for the remaining reruns if it stopped for its heap growth.
+     * Respawned workers run in directories of their own (shard-i-respawn-k).
+     *
+     * @param shardIndex the index of the shard
+     * @param shard the "class" or "class#method" entries of the shard
+     * @param numReruns user-configured number of times to rerun the tests
+     * @param supervisor the supervisor of the workers of the shard
+     * @throws MojoExecutionException if a worker cannot be started
+     * @throws InterruptedException if interrupted while waiting for a worker
+     */
+    private void runSupervised(int shardIndex, List<String> shard, int numReruns, WorkerSupervisor supervisor)
+        throws MojoExecutionException, InterruptedException {
+        List<String> remainingShard = new ArrayList<>(shard);
+        String shardName = getShardDirectory(shardIndex).getName();
+        int firstRerun = 1;
+        for (int attempt = 0; ; attempt++) {
+            File directory = attempt == 0 ? getShardDirectory(shardIndex)
+                : new File(runDirectory, shardName + "-respawn-" + attempt);
+            long startTime = System.nanoTime();
+            long lastOutcomeTime;
+            int exitCode;
+            try (ServerSocket outcomeServer = openOutcomeServer(directory.getName())) {
+                Process worker = startWorker(remainingShard, numReruns, directory, null, null, true, firstRerun,
+                    outcomeServer.getLocalPort());
+                supervisor.startAttempt(worker);
+                lastOutcomeTime = readOutput(worker, outcomeServer, directory.getName(), supervisor);
+                exitCode = worker.waitFor();
+            } catch (IOException e) {
+                throw new MojoExecutionException("Failed to close the outcome socket of " + directory.getName(), e);
+            }
+
+            if (supervisor.isCompleted()) {
+                if (exitCode != 0) {
+                    logger.warn("Worker of " + directory.getName() + " exited with code " + exitCode +
+                        " after reporting all its outcomes");
+                } else if (archive != null && lastOutcomeTime != 0) {
+                    reportWorkerTime(directory.getName(), remainingShard, numReruns,
+                        (lastOutcomeTime - startTime) / 1_000_000);
+                }
+                return;
+            }
+            long deadline = RerunOptions.getLong(options, RerunOptions.DEADLINE, 0);
+            if (supervisor.isRecycled()) {
+                List<String> testClasses = new ArrayList<>();
+                ForkedRerunWorker.parseTests(String.join(",", remainingShard), testClasses, new HashMap<>());
+                firstRerun = supervisor.recycle(testClasses);
+                if (deadline > 0 && System.currentTimeMillis() >= deadline) {
+                    logger.warn("Time budget reached, not recycling the worker of " + shardName);
+                    return;
+                }
+                logger.warn("Recycling the worker of " + shardName + " for reruns #" + firstRerun + ".." +
+                    numReruns + ", which replays the initial run without reporting it again");
+                continue;
+            }
+            List<String> quarantinedClasses = supervisor.quarantine(exitCode);
+            if (quarantinedClasses.isEmpty()) {
+                logger.warn("Worker of " + directory.getName() + " exited with code " + exitCode +
+                    "; outcomes of its unfinished runs are missing");
+                return;
+            }
+            remainingShard.removeIf(entry -> quarantinedClasses.contains(entry.contains("#")
+                ? entry.substring(0, entry.indexOf('#')) : entry));
+            if (remainingShard.isEmpty()) {
+                return;
+            } else if (deadline > 0 && System.currentTimeMillis() >= deadline) {
+                logger.warn("Time budget reached, not respawning the worker of " + shardName);
+                return;
+            }
+            logger.warn("Quarantined " + String.join(", ", quarantinedClasses) + "; respawning the worker of " +
+                shardName + " for the rest of the shard, which replays the runs before " +
+                WorkerSupervisor.getRunName(supervisor.getReplayedRuns()) + " without reporting them again");
+        }
+    }
+
+    /**
+     * Records the time a worker took to report its outcomes, and logs the time the CDS archive saved it.
+     *
+     * @param shardName the name of the directory of the worker
+     * @param shard the "class" or "class#method" entries of the shard
+     * @param numReruns user-configured number of times to rerun the tests
+     * @param millis the time from forking the worker to its last outcome
+     */
+    private void reportWorkerTime(String shardName, List<String> shard, int numReruns, long millis) {
+        Long saved = archive.recordWorkerTime(shard, numReruns, millis);
+        if (!archive.isArchived()) {
+            return;
+        }
+        logger.info("Worker of " + shardName + " reported its outcomes after " + millis +
+            " ms with the CDS archive" + (saved == null ? "" : " (" + saved + " ms saved)"));
+    }
+
+    /**
+     * Runs one shard in a worker JVM with the given working directory and java.io.tmpdir (e.g. those of the
+     * current JVM, or of an earlier worker) instead of its own, so that its tests see the files left by earlier
+     * runs, and waits for the worker to exit.
+     *
+     * @param shard the "class" or "class#method" entries of the shard
+     * @param numReruns user-configured number of times to rerun the tests
+     * @param shardDirectory the directory to write the specification and the log of the shard to
+     * @param workingDirectory the working directory of the worker
+     * @param tmpDirectory the java.io.tmpdir of the worker
+     * @param outcomeSink the consumer of the outcome lines
+     * @return the exit code of the worker
+     * @throws MojoExecutionException if the worker cannot be started
+     * @throws InterruptedException if interrupted while waiting for the worker
+     */
+    int runShardIn(List<String> shard, int numReruns, File shardDirectory, File workingDirectory, File tmpDirectory,
+        Consumer<String> outcomeSink) throws MojoExecutionException, InterruptedException {
+        if (!shardDirectory.isDirectory() && !shardDirectory.mkdirs()) {
+            throw new MojoExecutionException("Failed to create directory: " + shardDirectory.getAbsolutePath());
+        }
+        try (ServerSocket outcomeServer = openOutcomeServer(shardDirectory.getName())) {
+            Process worker = startWorker(shard, numReruns, shardDirectory, workingDirectory, tmpDirectory, false, 1,
+                outcomeServer.getLocalPort());
+            try {
+                readOutput(worker, outcomeServer, shardDirectory.getName(), outcomeSink);
+                return worker.waitFor();
+            } finally {
+                worker.destroy();
+            }
+        } catch (IOException e) {
+            throw new MojoExecutionException("Failed to close the outcome socket of " + shardDirectory.getName(), e);
+        }
+    }
+
+    /**
+     * Opens the loopback socket a worker streams its outcome lines to.
+     *
+     * @param shardName the name of the shard run by the worker
+     * @return the socket, listening on a free port
+     * @throws MojoExecutionException if the socket cannot be opened
+     */
+    private static ServerSocket openOutcomeServer(String shardName) throws MojoExecutionException {
+        try {
+            ServerSocket outcomeServer = new ServerSocket(0, 1, InetAddress.getLoopbackAddress());
+            outcomeServer.setSoTimeout(CONNECT_CHECK_INTERVAL_MILLIS);
+            return outcomeServer;
+        } catch (IOException e) {
+            throw new MojoExecutionException("Failed to open the outcome socket of " + shardName, e);
+        }
+    }
+
+    /**
+     * Writes the specification of a shard and forks a worker JVM running it.
+     *
+     * @param shard the "class" or "class#method" entries of the shard
+     * @param numReruns user-configured number of times to rerun the tests
+     * @param shardDirectory the directory to write the specification and the log of the shard to
+     * @param workingDirectory the working directory of the worker, or null to use the shard directory
+     * @param tmpDirectory the java.io.tmpdir of the worker, or null to use the tmp directory of the shard
+     * @param reportProgress whether the worker streams its progress for a WorkerSupervisor (and stops for its
+     *                       heap growth, if limited)
+     * @param firstRerun the first rerun the worker executes after the initial run, 1 for all reruns
+     * @param outcomePort the loopback port the worker streams its outcome lines to
+     * @return the worker process
+     * @throws MojoExecutionException if the worker cannot be started
+     */
+    private Process startWorker(List<String> shard, int numReruns, File shardDirectory, File workingDirectory,
+        File tmpDirectory, boolean reportProgress, int firstRerun, int outcomePort) throws MojoExecutionException {
+        // Workers in directories of their own are timed, and may create the CDS archive
+        boolean ownDirectories = workingDirectory == null;
+        if (ownDirectories) {
+            workingDirectory = shardDirectory;
+            tmpDirectory = new File(shardDirectory, "tmp");
+            if (!tmpDirectory.isDirectory() && !tmpDirectory.mkdirs()) {
+                throw new MojoExecutionException("Failed to create directory: " + tmpDirectory.getAbsolutePath());
+            }
+        }
+
+        Properties specification = createShardOptions();
+        StringBuilder classpathString = new StringBuilder();
+        for (URL url : classpath) {
+            classpathString.append(url.toExternalForm()).append('\n');
+        }
+        specification.setProperty(ForkedRerunWorker.CLASSPATH, classpathString.toString());
+        if (sharedClassLoader instanceof URLClassLoader) {
+            StringBuilder sharedClasspathString = new StringBuilder();
+            for (URL url : ((URLClassLoader) sharedClassLoader).getURLs()) {
+                sharedClasspathString.append(url.toExternalForm()).append('\n');
+            }
+            specification.setProperty(ForkedRerunWorker.SHARED_CLASSPATH, sharedClasspathString.toString());
+        }
+        specification.setProperty(ForkedRerunWorker.TESTS, String.join(",", shard));
+        specification.setProperty(ForkedRerunWorker.NUM_RERUNS, String.valueOf(numReruns));
+        specification.setProperty(ForkedRerunWorker.LOG_DIRECTORY, shardDirectory.getAbsolutePath());
+        specification.setProperty(ForkedRerunWorker.OUTCOME_PORT, String.valueOf(outcomePort));
+        specification.setProperty(RerunOptions.REPORT_PROGRESS, String.valueOf(reportProgress));
+        specification.setProperty(RerunOptions.SHARD_NAME, shardDirectory.getName());
+        specification.setProperty(RerunOptions.FIRST_RERUN, String.valueOf(firstRerun));
+        long heapGrowthLimit = RerunOptions.getLong(options, RerunOptions.HEAP_GROWTH_LIMIT, 0);
+        if (reportProgress && heapGrowthLimit > 0) {
+            specification.setProperty(RerunOptions.RECYCLE_HEAP_GROWTH, String.valueOf(heapGrowthLimit));
+        }
+        if (ownDirectories && specification.getProperty(RerunOptions.TRACKED_DIRECTORIES) != null) {
+            // Temporary files of the worker go to its own java.io.tmpdir
+            specification.setProperty(RerunOptions.TRACKED_DIRECTORIES, specification.getProperty(
+                RerunOptions.TRACKED_DIRECTORIES) + File.pathSeparator + tmpDirectory.getAbsolutePath());
+        }
+        File specificationFile = new File(shardDirectory, "shard.properties");
+        try (OutputStream out = new FileOutputStream(specificationFile)) {
+            specification.store(out, "NIOInspector shard");
+        } catch (IOException e) {
+            throw new MojoExecutionException("Failed to write " + specificationFile.getAbsolutePath(), e);
+        }
+
+        List<String> command = new ArrayList<>(Arrays.asList(
+            new File(System.getProperty("java.home"), "bin" + File.separator + "java").getAbsolutePath(),
+            "-Djava.io.tmpdir=" + tmpDirectory.getAbsolutePath(),
+            "-cp", getWorkerClasspath(),
+            ForkedRerunWorker.class.getName(),
+            specificationFile.getAbsolutePath()));
+        if (archive != null && (ownDirectories || archive.isArchived())) {
+            command.addAll(1, archive.getJvmOptions());
+        }
+        if (RerunOptions.getBoolean(specification, RerunOptions.RECORD_JFR) && PhaseTimer.isFlightRecorderAvailable()) {
+            command.add(1, FlightRecording.getJvmOption(new File(shardDirectory, "worker.jfr")));
+        }
+        if (RerunOptions.getBoolean(specification, RerunOptions.TRACK_GLOBALS)) {
+            File agentJar = new File(shardDirectory, "global-state-agent.jar");
+            try {
+                GlobalStateAgent.writeAgentJar(agentJar);
+            } catch (IOException e) {
+                throw new MojoExecutionException("Failed to write " + agentJar.getAbsolutePath(), e);
+            }
+            command.add(1, "-javaagent:" + agentJar.getAbsolutePath());
+        }
+        try {
+            return new ProcessBuilder(command).directory(workingDirectory).redirectErrorStream(true).start();
+        } catch (IOException e) {
+            throw new MojoExecutionException("Failed to start the worker of " + shardDirectory.getName(), e);
+        }
+    }
+
+    /**
+     * Echoes the output of a worker while passing the outcome lines it streams over its socket to the sink.
+     *
+     * @param worker the worker process
+     * @param outcomeServer the socket the worker connects to
+     * @param shardName the name of the shard run by the worker
+     * @param outcomeSink the consumer of the outcome lines
+     * @return the time (System.nanoTime) of the last outcome line, or 0 if there was none
+     */
+    private long readOutput(Process worker, ServerSocket outcomeServer, String shardName,
+        Consumer<String> outcomeSink) {
+        Thread echo = new Thread(() -> echoOutput(worker.getInputStream(), shardName),
+            Thread.currentThread().getName() + "-output");
+        echo.setDaemon(true);
+        echo.start();
+
+        long lastOutcomeTime = 0;
+        try (Socket socket = acceptWorker(worker, outcomeServer)) {
+            if (socket == null) {
+                logger.warn("Worker of " + shardName + " exited without connecting to its outcome socket");
+            } else {
+                lastOutcomeTime = readOutcomes(socket.getInputStream(), shardName, outcomeSink);
+            }
+        } catch (IOException e) {
+            logger.warn("Failed to read the outcomes of " + shardName + ": " + e);
+        }
+        try {
+            echo.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return lastOutcomeTime;
+    }
+
+    /**
+     * Waits for a worker to connect to its outcome socket.
+     *
+     * @param worker the worker process
+     * @param outcomeServer the socket the worker connects to
+     * @return the connection, or null if the worker exited (or was killed) before connecting
+     * @throws IOException if the connection cannot be accepted
+     */
+    private static Socket acceptWorker(Process worker, ServerSocket outcomeServer) throws IOException {
+        while (true) {
+            try {
+                return outcomeServer.accept();
+            } catch (SocketTimeoutException e) {
+                if (!worker.isAlive()) {
+                    return null;
+                }
+            }
+        }
+    }
+
+    /**
+     * Reads the outcome lines streamed by a worker, passing them to the sink. Anything else is echoed, as the
+     * output of the worker is.
+     *
+     * @param in the stream of the outcome lines
+     * @param shardName the name of the shard run by the worker
+     * @param outcomeSink the consumer of the outcome lines
+     * @return the time (System.nanoTime) of the last outcome line, or 0 if there was none
+     * @throws IOException if the stream cannot be read
+     */
+    static long readOutcomes(InputStream in, String shardName, Consumer<String> outcomeSink) throws IOException {
+        long lastOutcomeTime = 0;
+        BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+        String line;
+        while ((line = reader.readLine()) != null) {
+            if (TestOutcomeAggregator.isOutcomeLine(line)) {
+                synchronized (outcomeSink) {
+                    outcomeSink.accept(line);
+                }
+                lastOutcomeTime = System.nanoTime();
+            } else {
+                System.out.println("[" + shardName + "] " + line);
+            }
+        }
+        return lastOutcomeTime;
+    }
+
+    /**
+     * Echoes the standard output and error of a worker, i.e. the output of its tests and its logs.
+     *
+     * @param in the output of the worker
+     * @param shardName the name of the shard run by the worker
+     */
+    private static void echoOutput(InputStream in, String shardName) {
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(in))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                System.out.println("[" + shardName + "] " + line);
+            }
+        } catch (IOException e) {
+            logger.warn("Failed to read the output of " + shardName + ": " + e);
+        }
+    }
+
+    /**
+     * The worker JVM only needs the entry point on its classpath; everything else is loaded by the
+     * IsolatedURLClassLoader it creates.
+     *
+     * @return the classpath of the worker JVM
+     * @throws MojoExecutionException if the location of the plugin cannot be determined
+     */
+    private static String getWorkerClasspath() throws MojoExecutionException {
+        try {
+            return new File(ForkedRerunWorker.class.getProtectionDomain().getCodeSource().getLocation().toURI())
+                .getAbsolutePath();
+        } catch (URISyntaxException | NullPointerException | SecurityException e) {
+            throw new MojoExecutionException("Failed to locate the NIOInspector plugin", e);
+        }
+    }
+}
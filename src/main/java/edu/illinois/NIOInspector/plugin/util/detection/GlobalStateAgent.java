@@ -0,0 +1,339 @@
+package edu.illinois.NIOInspector.plugin.util.detection;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.instrument.Instrumentation;
+import java.lang.ref.Reference;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.security.Provider;
+import java.security.Security;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TimeZone;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+import java.util.jar.Attributes;
+import java.util.jar.JarOutputStream;
+import java.util.jar.Manifest;
+import java.util.logging.Level;
+import java.util.logging.LogManager;
+import java.util.logging.Logger;
+
+/**
+ * Java agent attached to forked rerun workers when JVM-global state is tracked (see GlobalStateTracker).
+ * The agent opens java.lang to itself, so that the thread locals of a thread can be read, and replaces the system
+ * properties with a subclass whose writes bump a striped counter and record the original value of each property
+ * the first time it is written. Reads of system properties are left untouched.
+ * Only JDK classes may be referenced here, since the agent is loaded from the classpath of the worker JVM
+ * (see ForkedRerunWorker).
+ */
+public class GlobalStateAgent {
+
+    // Marks properties that did not exist before being written
+    private static final String ABSENT = new String("<absent>");
+
+    private static volatile boolean installed;
+
+    private static final LongAdder propertyWrites = new LongAdder();
+
+    // Original value of each system property written since the last reset
+    private static final Map<String, String> originalProperties = new ConcurrentHashMap<>();
+
+    private static volatile Properties recordingProperties;
+
+    private static Field threadLocalsField;
+    private static Field inheritableThreadLocalsField;
+    private static Field tableField;
+    private static Field valueField;
+
+    /**
+     * Entry point of the agent.
+     *
+     * @param agentArgs the arguments of the agent (unused)
+     * @param instrumentation the instrumentation of the JVM
+     */
+    public static void premain(String agentArgs, Instrumentation instrumentation) {
+        try {
+            Module javaBase = Object.class.getModule();
+            instrumentation.redefineModule(javaBase, Collections.emptySet(), Collections.emptyMap(),
+                Collections.singletonMap("java.lang", Collections.singleton(GlobalStateAgent.class.getModule())),
+                Collections.emptySet(), Collections.emptyMap());
+            threadLocalsField = Thread.class.getDeclaredField("threadLocals");
+            threadLocalsField.setAccessible(true);
+            inheritableThreadLocalsField = Thread.class.getDeclaredField("inheritableThreadLocals");
+            inheritableThreadLocalsField.setAccessible(true);
+            Class<?> mapClass = Class.forName("java.lang.ThreadLocal$ThreadLocalMap");
+            tableField = mapClass.getDeclaredField("table");
+            tableField.setAccessible(true);
+            valueField = Class.forName("java.lang.ThreadLocal$ThreadLocalMap$Entry").getDeclaredField("value");
+            valueField.setAccessible(true);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            // Thread locals are then not tracked
+            threadLocalsField = null;
+            System.err.println("Thread locals are not tracked on this JVM: " + e);
+        }
+
+        Properties properties = new RecordingProperties();
+        properties.putAll(System.getProperties());
+        recordingProperties = properties;
+        System.setProperties(properties);
+        installed = true;
+    }
+
+    /**
+     * Writes a jar holding only the manifest of the agent, whose class is found on the classpath of the worker.
+     *
+     * @param jarFile the file to write the jar to
+     * @throws IOException if the jar cannot be written
+     */
+    static void writeAgentJar(File jarFile) throws IOException {
+        Manifest manifest = new Manifest();
+        manifest.getMainAttributes().put(Attributes.Name.MANIFEST_VERSION, "1.0");
+        manifest.getMainAttributes().put(new Attributes.Name("Premain-Class"), GlobalStateAgent.class.getName());
+        try (OutputStream out = new JarOutputStream(new FileOutputStream(jarFile), manifest)) {
+            out.flush();
+        }
+    }
+
+    /**
+     * Checks whether the agent is attached to this JVM.
+     *
+     * @return true if premain ran
+     */
+    public static boolean isInstalled() {
+        return installed;
+    }
+
+    /**
+     * Gets the number of system property writes so far, cheap enough to call around every test.
+     *
+     * @return the number of writes
+     */
+    public static long getPropertyWrites() {
+        return propertyWrites.sum();
+    }
+
+    /**
+     * Forgets the original values of the system properties written so far.
+     */
+    public static void resetChangedProperties() {
+        originalProperties.clear();
+    }
+
+    /**
+     * Lists the system properties written since the last reset whose value differs from the original one.
+     *
+     * @return map from property name to "set", "removed" or "changed"
+     */
+    public static Map<String, String> getChangedProperties() {
+        Map<String, String> changes = new HashMap<>();
+        for (Map.Entry<String, String> entry : originalProperties.entrySet()) {
+            Object current = recordingProperties.get(entry.getKey());
+            String original = entry.getValue();
+            if (current == null && original != ABSENT) {
+                changes.put(entry.getKey(), "removed");
+            } else if (current != null && original == ABSENT) {
+                changes.put(entry.getKey(), "set");
+            } else if (current != null && !String.valueOf(current).equals(original)) {
+                changes.put(entry.getKey(), "changed");
+            }
+        }
+        return changes;
+    }
+
+    /**
+     * Captures the JVM-global state other than system properties.
+     *
+     * @param thread the thread running the tests, whose context class loader and thread locals are captured
+     * @param testClassLoader the class loader of the tests, whose SLF4J binding (if Logback) is inspected
+     * @return map from setting (i.e. "default time zone") to its current value
+     */
+    public static Map<String, String> snapshot(Thread thread, ClassLoader testClassLoader) {
+        Map<String, String> state = new HashMap<>();
+        state.put("default locale", Locale.getDefault().toLanguageTag());
+        state.put("default format locale", Locale.getDefault(Locale.Category.FORMAT).toLanguageTag());
+        state.put("default display locale", Locale.getDefault(Locale.Category.DISPLAY).toLanguageTag());
+        state.put("default time zone", TimeZone.getDefault().getID());
+        state.put("context class loader", describe(thread.getContextClassLoader()));
+        StringBuilder providers = new StringBuilder();
+        for (Provider provider : Security.getProviders()) {
+            providers.append(provider.getName()).append(',');
+        }
+        state.put("security providers", providers.toString());
+
+        LogManager logManager = LogManager.getLogManager();
+        for (Enumeration<String> names = logManager.getLoggerNames(); names.hasMoreElements();) {
+            String name = names.nextElement();
+            Logger logger = logManager.getLogger(name);
+            Level level = logger == null ? null : logger.getLevel();
+            state.put("JUL level of " + (name.isEmpty() ? "the root logger" : name), String.valueOf(level));
+        }
+        captureLogbackLevels(testClassLoader, state);
+
+        if (threadLocalsField != null) {
+            captureThreadLocals(thread, threadLocalsField, state);
+            captureThreadLocals(thread, inheritableThreadLocalsField, state);
+        }
+        return state;
+    }
+
+    private static void captureLogbackLevels(ClassLoader testClassLoader, Map<String, String> state) {
+        try {
+            Object loggerFactory = Class.forName("org.slf4j.LoggerFactory", false, testClassLoader)
+                .getMethod("getILoggerFactory").invoke(null);
+            Method getLoggerList = loggerFactory.getClass().getMethod("getLoggerList");
+            for (Object logger : (List<?>) getLoggerList.invoke(loggerFactory)) {
+                Object name = logger.getClass().getMethod("getName").invoke(logger);
+                Object level = logger.getClass().getMethod("getLevel").invoke(logger);
+                state.put("SLF4J level of " + name, String.valueOf(level));
+            }
+        } catch (ReflectiveOperationException | LinkageError | RuntimeException e) {
+            // No SLF4J, or not bound to Logback
+        }
+    }
+
+    private static void captureThreadLocals(Thread thread, Field mapField, Map<String, String> state) {
+        try {
+            Object map = mapField.get(thread);
+            if (map == null) {
+                return;
+            }
+            for (Object entry : (Object[]) tableField.get(map)) {
+                if (entry == null) {
+                    continue;
+                }
+                Object threadLocal = ((Reference<?>) entry).get();
+                Object value = valueField.get(entry);
+                if (threadLocal != null && value != null && !isInternal(value.getClass().getName())) {
+                    state.put("thread local holding " + value.getClass().getName() + "#" +
+                        System.identityHashCode(threadLocal), describe(value));
+                }
+            }
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            // The thread local map changed while being read
+        }
+    }
+
+    private static boolean isInternal(String className) {
+        return className.startsWith("jdk.") || className.startsWith("sun.") ||
+            className.startsWith("org.junit.") || className.startsWith("ch.qos.logback.") ||
+            className.startsWith("org.slf4j.") || className.startsWith("edu.illinois.NIOInspector.");
+    }
+
+    private static String describe(Object value) {
+        return value == null ? "null" : value.getClass().getName() + "@" + System.identityHashCode(value);
+    }
+
+    private static void recordWrite(Properties properties, Object key) {
+        propertyWrites.increment();
+        if (key instanceof String && !originalProperties.containsKey(key)) {
+            Object original = properties.get(key);
+            originalProperties.putIfAbsent((String) key, original == null ? ABSENT : String.valueOf(original));
+        }
+    }
+
+    /**
+     * System properties recording their writes; reads are inherited unchanged.
+     */
+    private static class RecordingProperties extends Properties {
+
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        public synchronized Object put(Object key, Object value) {
+            recordWrite(this, key);
+            return super.put(key, value);
+        }
+
+        @Override
+        public synchronized Object remove(Object key) {
+            recordWrite(this, key);
+            return super.remove(key);
+        }
+
+        @Override
+        public synchronized boolean remove(Object key, Object value) {
+            recordWrite(this, key);
+            return super.remove(key, value);
+        }
+
+        @Override
+        public synchronized void putAll(Map<?, ?> t) {
+            for (Object key : t.keySet()) {
+                recordWrite(this, key);
+            }
+            super.putAll(t);
+        }
+
+        @Override
+        public synchronized void clear() {
+            for (Object key : keySet()) {
+                recordWrite(this, key);
+            }
+            super.clear();
+        }
+
+        @Override
+        public synchronized Object putIfAbsent(Object key, Object value) {
+            recordWrite(this, key);
+            return super.putIfAbsent(key, value);
+        }
+
+        @Override
+        public synchronized Object replace(Object key, Object value) {
+            recordWrite(this, key);
+            return super.replace(key, value);
+        }
+
+        @Override
+        public synchronized boolean replace(Object key, Object oldValue, Object newValue) {
+            recordWrite(this, key);
+            return super.replace(key, oldValue, newValue);
+        }
+
+        @Override
+        public synchronized void replaceAll(BiFunction<? super Object, ? super Object, ?> function) {
+            for (Object key : keySet()) {
+                recordWrite(this, key);
+            }
+            super.replaceAll(function);
+        }
+
+        @Override
+        public synchronized Object compute(Object key,
+            BiFunction<? super Object, ? super Object, ?> remappingFunction) {
+            recordWrite(this, key);
+            return super.compute(key, remappingFunction);
+        }
+
+        @Override
+        public synchronized Object computeIfAbsent(Object key, Function<? super Object, ?> mappingFunction) {
+            recordWrite(this, key);
+            return super.computeIfAbsent(key, mappingFunction);
+        }
+
+        @Override
+        public synchronized Object computeIfPresent(Object key,
+            BiFunction<? super Object, ? super Object, ?> remappingFunction) {
+            recordWrite(this, key);
+            return super.computeIfPresent(key, remappingFunction);
+        }
+
+        @Override
+        public synchronized Object merge(Object key, Object value,
+            BiFunction<? super Object, ? super Object, ?> remappingFunction) {
+            recordWrite(this, key);
+            return super.merge(key, value, remappingFunction);
+        }
+    }
+}
@@ -0,0 +1,185 @@
+package edu.illinois.NIOInspector.plugin.util.detection;
+
+import org.junit.platform.engine.TestExecutionResult;
+import org.junit.platform.launcher.TestExecutionListener;
+import org.junit.platform.launcher.TestIdentifier;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Properties;
+import java.util.Set;
+import java.util.function.Consumer;
+
+/**
+ * Listener recording which JVM-global state (system properties, default locales and time zone, the context class
+ * loader and thread locals of the test thread, security providers, and JUL or Logback logger levels) each test
+ * changed. The state is read through GlobalStateAgent, which must be attached to the JVM (i.e. a forked worker);
+ * as the agent is loaded by the system class loader, it is only accessed reflectively.
+ */
+public class GlobalStateTracker implements TestExecutionListener {
+
+    private static final Logger logger = LoggerFactory.getLogger(GlobalStateTracker.class);
+
+    // Prefix of the thread local settings, whose keys end with the identity of the thread local
+    private static final String THREAD_LOCAL = "thread local holding ";
+
+    private final ClassLoader classLoader;
+
+    private final Method snapshot;
+    private final Method getPropertyWrites;
+    private final Method resetChangedProperties;
+    private final Method getChangedProperties;
+
+    // Snapshots, numbers of system property writes and system properties taken when tests started
+    private final Map<String, Map<String, String>> snapshots = new HashMap<>();
+    private final Map<String, Long> propertyWrites = new HashMap<>();
+    private final Map<String, Properties> systemProperties = new HashMap<>();
+
+    // JVM-global state changed by each test, in execution order
+    private final Map<String, List<String>> changedState = new LinkedHashMap<>();
+
+    /**
+     * Creates a tracker reading the state through the agent attached to this JVM, if any.
+     *
+     * @param classLoader the class loader of the tests
+     */
+    public GlobalStateTracker(ClassLoader classLoader) {
+        this.classLoader = classLoader;
+        Method snapshotMethod = null;
+        Method getPropertyWritesMethod = null;
+        Method resetChangedPropertiesMethod = null;
+        Method getChangedPropertiesMethod = null;
+        try {
+            Class<?> agent = Class.forName(GlobalStateAgent.class.getName(), true, ClassLoader.getSystemClassLoader());
+            if (Boolean.TRUE.equals(agent.getMethod("isInstalled").invoke(null))) {
+                snapshotMethod = agent.getMethod("snapshot", Thread.class, ClassLoader.class);
+                getPropertyWritesMethod = agent.getMethod("getPropertyWrites");
+                resetChangedPropertiesMethod = agent.getMethod("resetChangedProperties");
+                getChangedPropertiesMethod = agent.getMethod("getChangedProperties");
+            }
+        } catch (ReflectiveOperationException | LinkageError | RuntimeException e) {
+            // Not attached
+            snapshotMethod = null;
+        }
+        this.snapshot = snapshotMethod;
+        this.getPropertyWrites = getPropertyWritesMethod;
+        this.resetChangedProperties = resetChangedPropertiesMethod;
+        this.getChangedProperties = getChangedPropertiesMethod;
+    }
+
+    /**
+     * Checks whether the agent is attached to this JVM.
+     *
+     * @return false if the state cannot be read
+     */
+    public boolean isAvailable() {
+        return snapshot != null;
+    }
+
+    @Override
+    public void executionStarted(TestIdentifier testIdentifier) {
+        if (!isAvailable() || !testIdentifier.isTest()) {
+            return;
+        }
+        try {
+            resetChangedProperties.invoke(null);
+            propertyWrites.put(testIdentifier.getUniqueId(), (Long) getPropertyWrites.invoke(null));
+            systemProperties.put(testIdentifier.getUniqueId(), System.getProperties());
+            snapshots.put(testIdentifier.getUniqueId(), takeSnapshot());
+        } catch (ReflectiveOperationException e) {
+            logger.warn("Failed to read JVM-global state: " + e);
+        }
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public void executionFinished(TestIdentifier testIdentifier, TestExecutionResult testExecutionResult) {
+        Map<String, String> before = snapshots.remove(testIdentifier.getUniqueId());
+        Long writesBefore = propertyWrites.remove(testIdentifier.getUniqueId());
+        Properties propertiesBefore = systemProperties.remove(testIdentifier.getUniqueId());
+        if (before == null) {
+            return;
+        }
+        try {
+            List<String> changes = diff(before, takeSnapshot());
+            if (System.getProperties() != propertiesBefore) {
+                changes.add("system properties (replaced)");
+            } else if (!writesBefore.equals(getPropertyWrites.invoke(null))) {
+                // Most tests write no system property, then their values need no comparison
+                Map<String, String> changedProperties = (Map<String, String>) getChangedProperties.invoke(null);
+                for (Map.Entry<String, String> entry : changedProperties.entrySet()) {
+                    changes.add("system property " + entry.getKey() + " (" + entry.getValue() + ")");
+                }
+            }
+            Collections.sort(changes);
+            if (!changes.isEmpty()) {
+                changedState.put(testIdentifier.getUniqueId(), changes);
+            }
+        } catch (ReflectiveOperationException e) {
+            logger.warn("Failed to read JVM-global state: " + e);
+        }
+    }
+
+    /**
+     * Gets the JVM-global state changed by each test.
+     *
+     * @return map from the unique ID of each test to the settings (i.e. "default time zone") it changed
+     */
+    public Map<String, List<String>> getChangedState() {
+        return changedState;
+    }
+
+    /**
+     * Streams the JVM-global state changed by each test to the sink (see TestOutcomeAggregator).
+     *
+     * @param outcomeSink the consumer of the encoded lines
+     */
+    public void reportChangedState(Consumer<String> outcomeSink) {
+        for (Map.Entry<String, List<String>> entry : changedState.entrySet()) {
+            outcomeSink.accept(TestOutcomeAggregator.encodeGlobalStateChanges(entry.getKey(), entry.getValue()));
+        }
+    }
+
+    /**
+     * Compares two snapshots. Settings appearing with no value (i.e. loggers created with no level) and thread
+     * locals cleared by the test are not changes.
+     *
+     * @param before the snapshot taken before the test
+     * @param after the snapshot taken after the test
+     * @return the sorted settings whose value changed
+     */
+    static List<String> diff(Map<String, String> before, Map<String, String> after) {
+        Set<String> changes = new HashSet<>();
+        for (Map.Entry<String, String> entry : after.entrySet()) {
+            String previous = before.get(entry.getKey());
+            if (previous == null ? !"null".equals(entry.getValue()) : !previous.equals(entry.getValue())) {
+                String setting = entry.getKey();
+                changes.add(setting.startsWith(THREAD_LOCAL) ? setting.substring(0, setting.lastIndexOf('#')) : setting);
+            }
+        }
+        for (Map.Entry<String, String> entry : before.entrySet()) {
+            if (!after.containsKey(entry.getKey()) && !entry.getKey().startsWith(THREAD_LOCAL) &&
+                    !Objects.equals("null", entry.getValue())) {
+                changes.add(entry.getKey());
+            }
+        }
+        List<String> sorted = new ArrayList<>(changes);
+        Collections.sort(sorted);
+        return sorted;
+    }
+
+    @SuppressWarnings("unchecked")
+    private Map<String, String> takeSnapshot() throws ReflectiveOperationException {
+        return (Map<String, String>) snapshot.invoke(null, Thread.currentThread(), classLoader);
+    }
+}
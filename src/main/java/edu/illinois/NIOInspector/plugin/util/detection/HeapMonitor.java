@@ -0,0 +1,232 @@
+package edu.illinois.NIOInspector.plugin.util.detection;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Samples the heap and the garbage collections of the current JVM around every run, so that the memory leaked by
+ * polluting tests shows up run after run. The heap retained by a run is measured after a full garbage collection
+ * once the run ends; the collections during the run and the peak heap usage are read from the
+ * GarbageCollectorMXBeans and the heap MemoryPoolMXBeans. Samples are exchanged as heap lines (see
+ * TestOutcomeAggregator for the other lines), read by HeapTelemetryRecorder.
+ */
+public class HeapMonitor {
+
+    /**
+     * Type of the heap lines
+     */
+    static final String HEAP = "HEAP";
+
+    /**
+     * Type of the line a runner streams before stopping for its worker to be recycled
+     */
+    static final String RECYCLE = "RECYCLE";
+
+    private final MemoryMXBean memoryMXBean = ManagementFactory.getMemoryMXBean();
+
+    private final List<GarbageCollectorMXBean> garbageCollectors = ManagementFactory.getGarbageCollectorMXBeans();
+
+    private final List<MemoryPoolMXBean> memoryPools = ManagementFactory.getMemoryPoolMXBeans();
+
+    // Heap retained before the current run, and after the initial run (-1 until it ends)
+    private long retainedBefore = -1;
+    private long retainedAfterInitialRun = -1;
+
+    // Garbage collections (count and accumulated time) of the JVM when the current run started
+    private long collectionsAtStart;
+    private long collectionMillisAtStart;
+
+    /**
+     * Heap and garbage collections of one run, as sampled or decoded from a heap line.
+     */
+    static class Sample {
+
+        final String source;
+
+        final int run;
+
+        final long retainedBeforeBytes;
+
+        final long retainedAfterBytes;
+
+        final long peakBytes;
+
+        final long collections;
+
+        final long collectionMillis;
+
+        Sample(String source, int run, long retainedBeforeBytes, long retainedAfterBytes, long peakBytes,
+            long collections, long collectionMillis) {
+            this.source = source;
+            this.run = run;
+            this.retainedBeforeBytes = retainedBeforeBytes;
+            this.retainedAfterBytes = retainedAfterBytes;
+            this.peakBytes = peakBytes;
+            this.collections = collections;
+            this.collectionMillis = collectionMillis;
+        }
+
+        /**
+         * Gets the growth of the heap retained over the run.
+         *
+         * @return the growth in bytes (negative if the heap shrank)
+         */
+        long getGrowthBytes() {
+            return retainedAfterBytes - retainedBeforeBytes;
+        }
+    }
+
+    /**
+     * Starts sampling a run (for the initial run, after a full garbage collection measuring the heap retained
+     * before it), and resets the peak heap usage.
+     */
+    public void startRun() {
+        if (retainedBefore < 0) {
+            retainedBefore = collectAndMeasure();
+        }
+        for (MemoryPoolMXBean memoryPool : memoryPools) {
+            if (memoryPool.getType() == MemoryType.HEAP && memoryPool.isValid()) {
+                memoryPool.resetPeakUsage();
+            }
+        }
+        collectionsAtStart = getCollections();
+        collectionMillisAtStart = getCollectionMillis();
+    }
+
+    /**
+     * Ends sampling a run, measuring the heap it retained after a full garbage collection.
+     *
+     * @param source the shard the run belongs to, empty for the main runner
+     * @param run 0 for the initial run, i for rerun #i
+     * @return the sample of the run
+     */
+    public Sample endRun(String source, int run) {
+        long collections = getCollections() - collectionsAtStart;
+        long collectionMillis = getCollectionMillis() - collectionMillisAtStart;
+        long peak = 0;
+        for (MemoryPoolMXBean memoryPool : memoryPools) {
+            if (memoryPool.getType() == MemoryType.HEAP && memoryPool.isValid()) {
+                peak += memoryPool.getPeakUsage().getUsed();
+            }
+        }
+        long retainedAfter = collectAndMeasure();
+        Sample sample = new Sample(source, run, retainedBefore, retainedAfter, peak, collections, collectionMillis);
+        retainedBefore = retainedAfter;
+        if (run == 0) {
+            retainedAfterInitialRun = retainedAfter;
+        }
+        return sample;
+    }
+
+    /**
+     * Gets the growth of the heap retained from the end of the initial run to the end of the last sampled run.
+     *
+     * @return the growth in bytes, or 0 before the initial run ends
+     */
+    public long getGrowthSinceInitialRun() {
+        return retainedAfterInitialRun < 0 ? 0 : retainedBefore - retainedAfterInitialRun;
+    }
+
+    private long collectAndMeasure() {
+        memoryMXBean.gc();
+        return memoryMXBean.getHeapMemoryUsage().getUsed();
+    }
+
+    private long getCollections() {
+        long collections = 0;
+        for (GarbageCollectorMXBean garbageCollector : garbageCollectors) {
+            collections += Math.max(0, garbageCollector.getCollectionCount());
+        }
+        return collections;
+    }
+
+    private long getCollectionMillis() {
+        long millis = 0;
+        for (GarbageCollectorMXBean garbageCollector : garbageCollectors) {
+            millis += Math.max(0, garbageCollector.getCollectionTime());
+        }
+        return millis;
+    }
+
+    /**
+     * Encodes the sample of a run as a line.
+     *
+     * @param sample the sample
+     * @return the encoded heap line
+     */
+    static String encode(Sample sample) {
+        return TestOutcomeAggregator.MARKER + "\t" + HEAP + "\t" + sample.run + "\t" + sample.retainedBeforeBytes +
+            "\t" + sample.retainedAfterBytes + "\t" + sample.peakBytes + "\t" + sample.collections + "\t" +
+            sample.collectionMillis + "\t" + sample.source;
+    }
+
+    /**
+     * Decodes a heap line.
+     *
+     * @param line the line to decode
+     * @return the sample, or null if the line does not carry a well-formed sample
+     */
+    static Sample decode(String line) {
+        if (!TestOutcomeAggregator.isOutcomeLine(line)) {
+            return null;
+        }
+        String[] fields = line.substring(line.indexOf(TestOutcomeAggregator.MARKER)).split("\t", 9);
+        if (fields.length != 9 || !HEAP.equals(fields[1])) {
+            return null;
+        }
+        try {
+            return new Sample(fields[8], Integer.parseInt(fields[2]), Long.parseLong(fields[3]),
+                Long.parseLong(fields[4]), Long.parseLong(fields[5]), Long.parseLong(fields[6]),
+                Long.parseLong(fields[7]));
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Encodes the line a runner streams before stopping after a rerun, its heap having grown past the limit.
+     *
+     * @param run the last rerun the runner executed
+     * @param growthBytes the growth of the heap retained since the initial run
+     * @return the encoded recycle line
+     */
+    static String encodeRecycle(int run, long growthBytes) {
+        return TestOutcomeAggregator.MARKER + "\t" + RECYCLE + "\t" + run + "\t" + growthBytes;
+    }
+
+    /**
+     * Decodes a recycle line.
+     *
+     * @param line the line to decode
+     * @return the last rerun executed and the heap growth, or null if the line is not a well-formed recycle line
+     */
+    static long[] decodeRecycle(String line) {
+        if (!TestOutcomeAggregator.isOutcomeLine(line)) {
+            return null;
+        }
+        String[] fields = line.substring(line.indexOf(TestOutcomeAggregator.MARKER)).split("\t");
+        if (fields.length != 4 || !RECYCLE.equals(fields[1])) {
+            return null;
+        }
+        try {
+            return new long[] { Integer.parseInt(fields[2]), Long.parseLong(fields[3]) };
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Formats a number of bytes in megabytes.
+     *
+     * @param bytes the number of bytes
+     * @return e.g. "12.3 MB"
+     */
+    static String formatMegabytes(long bytes) {
+        return String.format(Locale.ROOT, "%.1f MB", bytes / (1024.0 * 1024.0));
+    }
+}
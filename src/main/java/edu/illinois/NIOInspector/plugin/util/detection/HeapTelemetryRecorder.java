@@ -0,0 +1,102 @@
+package edu.illinois.NIOInspector.plugin.util.detection;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * Collects the heap and garbage collection samples of every run (see HeapMonitor) from the heap lines of all
+ * runners, and reports the heap each run retained and grew by, its peak heap usage and the time its garbage
+ * collections took. Samples are kept per source: the main runner, or the shard (or respawned worker) they come from.
+ */
+public class HeapTelemetryRecorder implements Consumer<String> {
+
+    private static final Logger logger = LoggerFactory.getLogger(HeapTelemetryRecorder.class);
+
+    // Indentation of the runs listed under each source
+    private static final String INDENT = "    ";
+
+    // Samples of each source, in the order they were received
+    private final Map<String, List<HeapMonitor.Sample>> samples = new LinkedHashMap<>();
+
+    /**
+     * Decodes a heap line and records its sample; other lines are ignored.
+     *
+     * @param line the line to decode
+     */
+    @Override
+    public synchronized void accept(String line) {
+        HeapMonitor.Sample sample = HeapMonitor.decode(line);
+        if (sample != null) {
+            samples.computeIfAbsent(sample.source, k -> new ArrayList<>()).add(sample);
+        }
+    }
+
+    /**
+     * Gets the samples received from one source.
+     *
+     * @param source the shard the samples come from, empty for the main runner
+     * @return the samples, in the order they were received
+     */
+    synchronized List<HeapMonitor.Sample> getSamples(String source) {
+        return new ArrayList<>(samples.getOrDefault(source, new ArrayList<>()));
+    }
+
+    /**
+     * Gets the growth of the heap retained from the end of the initial run to the end of the last rerun of a
+     * source.
+     *
+     * @param source the shard the samples come from, empty for the main runner
+     * @return the growth in bytes, or null if the source did not report both the initial run and a rerun
+     */
+    synchronized Long getGrowthSinceInitialRun(String source) {
+        HeapMonitor.Sample initialRun = null;
+        HeapMonitor.Sample lastRerun = null;
+        for (HeapMonitor.Sample sample : samples.getOrDefault(source, new ArrayList<>())) {
+            if (sample.run == 0) {
+                initialRun = sample;
+            } else if (lastRerun == null || sample.run > lastRerun.run) {
+                lastRerun = sample;
+            }
+        }
+        return initialRun == null || lastRerun == null ? null
+            : lastRerun.retainedAfterBytes - initialRun.retainedAfterBytes;
+    }
+
+    /**
+     * Logs the heap and garbage collections of each run, by source.
+     */
+    public synchronized void logReport() {
+        if (samples.isEmpty()) {
+            return;
+        }
+        logger.info("");
+        logger.info("=====================Heap and GC Telemetry======================");
+        logger.info("");
+        for (Map.Entry<String, List<HeapMonitor.Sample>> entry : samples.entrySet()) {
+            String indent = "";
+            if (!entry.getKey().isEmpty()) {
+                logger.info(entry.getKey() + ":");
+                indent = INDENT;
+            }
+            for (HeapMonitor.Sample sample : entry.getValue()) {
+                long growth = sample.getGrowthBytes();
+                logger.info(indent + (sample.run == 0 ? "Initial run" : "Rerun #" + sample.run) + ": " +
+                    HeapMonitor.formatMegabytes(sample.retainedAfterBytes) + " retained (" + (growth < 0 ? "-" : "+") +
+                    HeapMonitor.formatMegabytes(Math.abs(growth)) + "), peak " +
+                    HeapMonitor.formatMegabytes(sample.peakBytes) + ", " + sample.collections + " GC(s) taking " +
+                    sample.collectionMillis + " ms");
+            }
+            Long growth = getGrowthSinceInitialRun(entry.getKey());
+            if (growth != null && growth > 0) {
+                logger.warn(indent + "Heap retained grew by " + HeapMonitor.formatMegabytes(growth) +
+                    " from the initial run to the last rerun");
+            }
+        }
+    }
+}
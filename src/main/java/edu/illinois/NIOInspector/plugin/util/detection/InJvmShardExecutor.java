@@ -0,0 +1,132 @@
+package edu.illinois.NIOInspector.plugin.util.detection;
+
+import edu.illinois.NIOInspector.plugin.util.logging.CustomTimeBasedFileAppender;
+
+import org.apache.maven.plugin.MojoExecutionException;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * Runs shards of the test classes concurrently in the current JVM. Every shard gets its own
+ * IsolatedURLClassLoader holding its own copy of the test classes and of ClassLoaderIsolatedTestRunner,
+ * so static state is kept per shard and the initial run and reruns of a shard share one loader.
+ */
+public class InJvmShardExecutor extends ShardExecutor {
+
+    private static final Logger logger = LoggerFactory.getLogger(InJvmShardExecutor.class);
+
+    /**
+     * Creates an executor loading shards from the classpath of the given class loader.
+     *
+     * @param classLoader the class loader loaded with test classes and all dependencies
+     * @param options user-configured options of the rerun (see RerunOptions)
+     * @throws MojoExecutionException if the classpath cannot be determined
+     */
+    public InJvmShardExecutor(ClassLoader classLoader, Properties options) throws MojoExecutionException {
+        super(classLoader, options);
+    }
+
+    @Override
+    public void run(List<String> testClasses, Map<String, List<String>> classStringToMethodsMap, int numReruns,
+        int shardCount, Consumer<String> outcomeSink) throws MojoExecutionException {
+
+        List<List<String>> shards = createShards(testClasses, classStringToMethodsMap, shardCount);
+        logger.info("Running " + shards.size() + " shard(s) concurrently in isolated class loaders; " +
+            "shard logs are written to " + new File(runDirectory, "shard-*"));
+
+        AtomicInteger threadIndex = new AtomicInteger();
+        ExecutorService pool = Executors.newFixedThreadPool(Math.max(1, shards.size()), runnable -> {
+            Thread thread = new Thread(runnable, "NIOInspector-shard-" + threadIndex.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        });
+        Consumer<String> synchronizedSink = line -> {
+            synchronized (outcomeSink) {
+                outcomeSink.accept(line);
+            }
+        };
+        try {
+            List<Future<?>> results = new ArrayList<>();
+            for (int i = 0; i < shards.size(); i++) {
+                List<String> shard = shards.get(i);
+                File shardDirectory = getShardDirectory(i);
+                results.add(pool.submit(() -> {
+                    runShard(shard, numReruns, shardDirectory, synchronizedSink);
+                    return null;
+                }));
+            }
+            for (int i = 0; i < results.size(); i++) {
+                try {
+                    results.get(i).get();
+                } catch (ExecutionException e) {
+                    Throwable cause = e.getCause() instanceof InvocationTargetException
+                        ? e.getCause().getCause() : e.getCause();
+                    logger.warn("shard-" + i + " failed; outcomes of its unfinished runs are missing: " + cause);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new MojoExecutionException("Interrupted while waiting for shards", e);
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    /**
+     * Runs one shard in a fresh IsolatedURLClassLoader.
+     *
+     * @param shard the "class" or "class#method" entries of the shard
+     * @param numReruns user-configured number of times to rerun the tests
+     * @param shardDirectory the directory to write the log of the shard to
+     * @param outcomeSink the consumer of the outcome lines
+     * @throws Exception if the shard cannot be loaded or run
+     */
+    void runShard(List<String> shard, int numReruns, File shardDirectory, Consumer<String> outcomeSink)
+        throws Exception {
+        List<String> testClassNames = new ArrayList<>();
+        Map<String, List<String>> classStringToMethodsMap = new HashMap<>();
+        ForkedRerunWorker.parseTests(String.join(",", shard), testClassNames, classStringToMethodsMap);
+
+        IsolatedURLClassLoader shardClassLoader = new IsolatedURLClassLoader(classpath, sharedClassLoader);
+        try {
+            // Must happen before the runner initializes logging in the shard's class loader
+            shardClassLoader.loadClass(CustomTimeBasedFileAppender.class.getName())
+                .getMethod("setLogDirectoryOverride", String.class).invoke(null, shardDirectory.getAbsolutePath());
+
+            Class<?> testRunnerClass = shardClassLoader.loadClass(ClassLoaderIsolatedTestRunner.class.getName());
+            Constructor<?> constructor = testRunnerClass.getDeclaredConstructor();
+            constructor.setAccessible(true);
+            Object testRunner = constructor.newInstance();
+            Method runMethod = testRunnerClass.getMethod("runInvokedReflectively", List.class, Map.class,
+                ClassLoader.class, int.class, Properties.class, Consumer.class);
+            Properties shardOptions = createShardOptions();
+            shardOptions.setProperty(RerunOptions.SHARD_NAME, shardDirectory.getName());
+            runMethod.invoke(testRunner, testClassNames, classStringToMethodsMap, shardClassLoader, numReruns,
+                shardOptions, outcomeSink);
+        } finally {
+            try {
+                shardClassLoader.close();
+            } catch (IOException e) {
+                logger.warn("Failed to close the class loader of " + shardDirectory.getName() + ": " + e);
+            }
+        }
+    }
+}
@@ -2,12 +2,19 @@ package edu.illinois.NIOInspector.plugin.util.detection;
 
 import java.net.URL;
 import java.net.URLClassLoader;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 
 /**
  * Custom URL class loader that isolates loading of classes from the system class loader.
  */
 public class IsolatedURLClassLoader extends URLClassLoader {
 
+    // Classes defined by this class loader, in the order they were loaded
+    private final List<Class<?>> loadedClasses = new ArrayList<>();
+
     /**
      * Constructs the isolated URL class loader on top of Platform classloader
      * to ensure non-core Java classes (e.g. java.sql.*) are loaded
@@ -16,6 +23,90 @@ public class IsolatedURLClassLoader extends URLClassLoader {
      */
     public IsolatedURLClassLoader(URL[] urls) {
         // Prevent delegation to the system class loader.
-        super(urls, ClassLoader.getPlatformClassLoader());
+        this(urls, ClassLoader.getPlatformClassLoader());
+    }
+
+    /**
+     * Constructs the isolated URL class loader on top of the given parent, e.g. a class loader holding jars
+     * shared by many isolated class loaders (see create)
+     *
+     * @param urls the URLs from which to load classes and resources
+     * @param parent the class loader to delegate to first
+     */
+    public IsolatedURLClassLoader(URL[] urls, ClassLoader parent) {
+        super(urls, parent);
+    }
+
+    /**
+     * Creates an isolated class loader on top of a class loader holding the shared URLs, which are loaded
+     * (and their classes defined) once however many isolated class loaders are created on top of it.
+     * Both lists are deduplicated, and URLs already shared are dropped from the isolated ones; since the shared
+     * class loader is asked first, only URLs without any state the tests may pollute should be shared.
+     *
+     * @param sharedURLs the URLs of the shared class loader; if empty, the Platform class loader is the parent
+     * @param isolatedURLs the URLs of the isolated class loader
+     * @return the isolated class loader
+     */
+    public static IsolatedURLClassLoader create(List<URL> sharedURLs, List<URL> isolatedURLs) {
+        Map<String, URL> shared = deduplicate(sharedURLs);
+        Map<String, URL> isolated = deduplicate(isolatedURLs);
+        isolated.keySet().removeAll(shared.keySet());
+        ClassLoader parent = shared.isEmpty() ? ClassLoader.getPlatformClassLoader()
+            : new SharedURLClassLoader(shared.values().toArray(new URL[0]));
+        return new IsolatedURLClassLoader(isolated.values().toArray(new URL[0]), parent);
+    }
+
+    /**
+     * Gets the URLs of the shared class loader this class loader was created on top of.
+     *
+     * @return the shared URLs, or an empty array if the parent is the Platform class loader
+     */
+    public URL[] getSharedURLs() {
+        return getParent() instanceof SharedURLClassLoader ? ((SharedURLClassLoader) getParent()).getURLs() : new URL[0];
+    }
+
+    @Override
+    protected Class<?> findClass(String name) throws ClassNotFoundException {
+        Class<?> loadedClass = super.findClass(name);
+        synchronized (loadedClasses) {
+            loadedClasses.add(loadedClass);
+        }
+        return loadedClass;
+    }
+
+    /**
+     * Gets the classes defined by this class loader so far (e.g. to snapshot their static fields).
+     * Only JDK types are returned, since callers may live on the other side of the class loader boundary.
+     * Classes of the shared class loader are not included.
+     *
+     * @return a copy of the list of loaded classes
+     */
+    public List<Class<?>> getLoadedClasses() {
+        synchronized (loadedClasses) {
+            return new ArrayList<>(loadedClasses);
+        }
+    }
+
+    private static Map<String, URL> deduplicate(List<URL> urls) {
+        Map<String, URL> deduplicated = new LinkedHashMap<>();
+        for (URL url : urls) {
+            deduplicated.putIfAbsent(url.toExternalForm(), url);
+        }
+        return deduplicated;
+    }
+
+    /**
+     * Class loader holding the jars shared by isolated class loaders, also on top of Platform classloader.
+     */
+    public static class SharedURLClassLoader extends URLClassLoader {
+
+        /**
+         * Constructs the shared class loader.
+         *
+         * @param urls the URLs from which to load classes and resources
+         */
+        public SharedURLClassLoader(URL[] urls) {
+            super(urls, ClassLoader.getPlatformClassLoader());
+        }
     }
 }
@@ -0,0 +1,542 @@
+package edu.illinois.NIOInspector.plugin.util.detection;
+
+import org.junit.platform.commons.util.ExceptionUtils;
+import org.junit.platform.engine.ConfigurationParameters;
+import org.junit.platform.engine.TestDescriptor;
+import org.junit.platform.engine.TestExecutionResult;
+import org.junit.platform.engine.UniqueId;
+import org.junit.platform.engine.discovery.ClassSelector;
+import org.junit.platform.engine.discovery.MethodSelector;
+import org.junit.platform.engine.discovery.UniqueIdSelector;
+import org.junit.platform.engine.support.descriptor.AbstractTestDescriptor;
+import org.junit.platform.engine.support.descriptor.EngineDescriptor;
+import org.junit.platform.launcher.LauncherDiscoveryRequest;
+import org.junit.platform.launcher.PostDiscoveryFilter;
+import org.junit.platform.launcher.TestExecutionListener;
+import org.junit.platform.launcher.TestIdentifier;
+import org.junit.platform.launcher.TestPlan;
+import org.junit.runner.Description;
+import org.junit.runner.JUnitCore;
+import org.junit.runner.Request;
+import org.junit.runner.RunWith;
+import org.junit.runner.Runner;
+import org.junit.runner.manipulation.Filter;
+import org.junit.runner.manipulation.Filterable;
+import org.junit.runner.manipulation.NoTestsRemainException;
+import org.junit.runner.notification.Failure;
+import org.junit.runner.notification.RunListener;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Method;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+
+/**
+ * Runs pure JUnit 4 suites directly with JUnitCore instead of going through the JUnit Platform launcher and the
+ * Vintage engine. Events of a native RunListener are translated into TestExecutionListener events, with the unique
+ * IDs the Vintage engine would assign ("[engine:junit-vintage]/[runner:class]/[test:method(class)]"), so that the
+ * outcomes, trackers, history and verdict cache are the same on both paths.
+ * Like Launcher, the tests of a request are discovered and then executed; the request may only hold class, method
+ * and unique ID selectors, and post-discovery filters.
+ */
+public class JUnit4Executor {
+
+    private static final Logger logger = LoggerFactory.getLogger(JUnit4Executor.class);
+
+    static final String ENGINE_ID = "junit-vintage";
+
+    // Test engines that do not prevent running a suite directly, since they find no test in JUnit 4 classes
+    private static final Set<String> SUPPORTED_ENGINES = new HashSet<>(Collections.singletonList(
+        "org.junit.jupiter.engine.JupiterTestEngine"));
+
+    private static final ConfigurationParameters NO_PARAMETERS = new ConfigurationParameters() {
+        @Override
+        public Optional<String> get(String key) {
+            return Optional.empty();
+        }
+
+        @Override
+        public Optional<Boolean> getBoolean(String key) {
+            return Optional.empty();
+        }
+
+        @Override
+        @Deprecated
+        public int size() {
+            return 0;
+        }
+
+        @Override
+        public Set<String> keySet() {
+            return Collections.emptySet();
+        }
+    };
+
+    private final List<TestExecutionListener> registeredListeners = new ArrayList<>();
+
+    /**
+     * Checks whether a suite can be run directly: JUnit 4 is the only test framework of the classpath (besides the
+     * Vintage and Jupiter engines of the plugin), and every test class is a JUnit 4 (or JUnit 3) class using no
+     * Jupiter annotation.
+     *
+     * @param testClasses the test classes of the suite
+     * @param classLoader the class loader loaded with test classes and all dependencies
+     * @return false if the suite must go through the launcher
+     */
+    public static boolean canRun(List<Class<?>> testClasses, ClassLoader classLoader) {
+        if (testClasses.isEmpty()) {
+            return false;
+        }
+        try {
+            Enumeration<URL> services = classLoader.getResources(
+                "META-INF/services/" + org.junit.platform.engine.TestEngine.class.getName());
+            while (services.hasMoreElements()) {
+                try (BufferedReader reader = new BufferedReader(new InputStreamReader(
+                        services.nextElement().openStream(), StandardCharsets.UTF_8))) {
+                    String line;
+                    while ((line = reader.readLine()) != null) {
+                        String engine = line.replaceAll("#.*", "").trim();
+                        if (!engine.isEmpty() && !SUPPORTED_ENGINES.contains(engine) &&
+                                !engine.startsWith("org.junit.vintage.")) {
+                            logger.debug("Test engine " + engine + " found, running tests through the launcher");
+                            return false;
+                        }
+                    }
+                }
+            }
+        } catch (IOException e) {
+            return false;
+        }
+        for (Class<?> testClass : testClasses) {
+            if (!isJUnit4Class(testClass)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Checks whether a class is run by JUnit 4: a JUnit 3 test case, a class with a JUnit 4 runner, or a class with
+     * JUnit 4 test methods, using no Jupiter annotation.
+     *
+     * @param testClass the test class
+     * @return true if JUnitCore runs the same tests as the Vintage engine
+     */
+    static boolean isJUnit4Class(Class<?> testClass) {
+        try {
+            boolean junit4 = junit.framework.Test.class.isAssignableFrom(testClass);
+            RunWith runWith = testClass.getAnnotation(RunWith.class);
+            if (runWith != null) {
+                // Runners delegating to the JUnit Platform do not run JUnit 4 tests
+                junit4 = !runWith.value().getName().startsWith("org.junit.platform.");
+                if (!junit4) {
+                    return false;
+                }
+            }
+            for (Class<?> current = testClass; current != null && current != Object.class;
+                    current = current.getSuperclass()) {
+                if (usesJupiter(current.getDeclaredAnnotations())) {
+                    return false;
+                }
+                for (Method method : current.getDeclaredMethods()) {
+                    if (usesJupiter(method.getDeclaredAnnotations())) {
+                        return false;
+                    }
+                    junit4 |= method.isAnnotationPresent(org.junit.Test.class);
+                }
+            }
+            return junit4;
+        } catch (LinkageError | RuntimeException e) {
+            // Leave classes that cannot be inspected to the launcher
+            return false;
+        }
+    }
+
+    private static boolean usesJupiter(Annotation[] annotations) {
+        for (Annotation annotation : annotations) {
+            if (annotation.annotationType().getName().startsWith("org.junit.jupiter.")) {
+                return true;
+            }
+            // Composed annotations (i.e. a custom @IntegrationTest meta-annotated with @Test)
+            for (Annotation metaAnnotation : annotation.annotationType().getDeclaredAnnotations()) {
+                if (metaAnnotation.annotationType().getName().startsWith("org.junit.jupiter.")) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Registers listeners notified in every run, like Launcher.registerTestExecutionListeners.
+     *
+     * @param listeners the listeners
+     */
+    public void registerTestExecutionListeners(TestExecutionListener... listeners) {
+        Collections.addAll(registeredListeners, listeners);
+    }
+
+    /**
+     * Discovers the tests of a request: a JUnit 4 runner for each selected class, filtered by the selected methods
+     * and unique IDs and by the post-discovery filters.
+     *
+     * @param request the discovery request
+     * @return the plan to execute
+     */
+    public Plan discover(LauncherDiscoveryRequest request) {
+        // Selected methods and unique IDs of each class, or null if the whole class is selected
+        Map<Class<?>, Set<String>> selections = new LinkedHashMap<>();
+        for (ClassSelector selector : request.getSelectorsByType(ClassSelector.class)) {
+            selections.put(selector.getJavaClass(), null);
+        }
+        for (MethodSelector selector : request.getSelectorsByType(MethodSelector.class)) {
+            select(selections, selector.getJavaClass(), selector.getMethodName());
+        }
+        for (UniqueIdSelector selector : request.getSelectorsByType(UniqueIdSelector.class)) {
+            Class<?> testClass = getRunnerClass(selector.getUniqueId());
+            if (testClass != null) {
+                select(selections, testClass, selector.getUniqueId().toString());
+            }
+        }
+
+        EngineDescriptor engine = new EngineDescriptor(UniqueId.forEngine(ENGINE_ID), "JUnit Vintage");
+        Plan plan = new Plan();
+        for (Map.Entry<Class<?>, Set<String>> entry : selections.entrySet()) {
+            Runner runner = Request.aClass(entry.getKey()).getRunner();
+            UniqueId classId = engine.getUniqueId().append("runner", entry.getKey().getName());
+            if (runner instanceof Filterable) {
+                Map<Description, UniqueId> uniqueIds = new HashMap<>();
+                assignUniqueIds(runner.getDescription(), classId, uniqueIds);
+                try {
+                    ((Filterable) runner).filter(new SelectionFilter(entry.getValue(), uniqueIds,
+                        request.getPostDiscoveryFilters()));
+                } catch (NoTestsRemainException e) {
+                    continue;
+                }
+            }
+            engine.addChild(createDescriptors(runner.getDescription(), classId, plan.descriptors));
+            plan.runners.add(runner);
+        }
+        plan.testPlan = TestPlan.from(Collections.singletonList(engine), NO_PARAMETERS);
+        plan.engine = TestIdentifier.from(engine);
+        return plan;
+    }
+
+    /**
+     * Executes a discovered plan with JUnitCore.
+     *
+     * @param plan the plan returned by discover
+     * @param listeners additional listeners for this run only
+     */
+    public void execute(Plan plan, TestExecutionListener... listeners) {
+        List<TestExecutionListener> all = new ArrayList<>(registeredListeners);
+        Collections.addAll(all, listeners);
+        TestExecutionListener notifier = new CompositeListener(all);
+        notifier.testPlanExecutionStarted(plan.testPlan);
+        notifier.executionStarted(plan.engine);
+        JUnitCore core = new JUnitCore();
+        core.addListener(new ListenerBridge(plan, notifier));
+        for (Runner runner : plan.runners) {
+            core.run(runner);
+        }
+        notifier.executionFinished(plan.engine, TestExecutionResult.successful());
+        notifier.testPlanExecutionFinished(plan.testPlan);
+    }
+
+    private static void select(Map<Class<?>, Set<String>> selections, Class<?> testClass, String selection) {
+        if (selections.containsKey(testClass) && selections.get(testClass) == null) {
+            // The whole class is already selected
+            return;
+        }
+        selections.computeIfAbsent(testClass, k -> new HashSet<>()).add(selection);
+    }
+
+    /**
+     * Gets the class of the runner segment of a Vintage unique ID.
+     *
+     * @param uniqueId the unique ID
+     * @return the class, or null if the unique ID does not belong to a JUnit 4 class
+     */
+    private Class<?> getRunnerClass(UniqueId uniqueId) {
+        for (UniqueId.Segment segment : uniqueId.getSegments()) {
+            if ("runner".equals(segment.getType())) {
+                try {
+                    return Class.forName(segment.getValue(), false, Thread.currentThread().getContextClassLoader());
+                } catch (ClassNotFoundException | LinkageError e) {
+                    return null;
+                }
+            }
+        }
+        return null;
+    }
+
+    private static void assignUniqueIds(Description description, UniqueId uniqueId,
+        Map<Description, UniqueId> uniqueIds) {
+        uniqueIds.put(description, uniqueId);
+        for (Description child : description.getChildren()) {
+            assignUniqueIds(child, uniqueId.append("test", child.getDisplayName()), uniqueIds);
+        }
+    }
+
+    /**
+     * Creates the descriptors of a description and its children, with the unique IDs of the Vintage engine.
+     */
+    private static TestDescriptor createDescriptors(Description description, UniqueId uniqueId,
+        Map<Description, TestDescriptor> descriptors) {
+        TestDescriptor descriptor = new JUnit4Descriptor(uniqueId, description);
+        descriptors.put(description, descriptor);
+        for (Description child : description.getChildren()) {
+            descriptor.addChild(createDescriptors(child, uniqueId.append("test", child.getDisplayName()),
+                descriptors));
+        }
+        return descriptor;
+    }
+
+    /**
+     * Tests and containers discovered for one run.
+     */
+    public static class Plan {
+        private final List<Runner> runners = new ArrayList<>();
+        private final Map<Description, TestDescriptor> descriptors = new HashMap<>();
+        private final Map<Description, TestIdentifier> identifiers = new HashMap<>();
+        private TestPlan testPlan;
+        private TestIdentifier engine;
+
+        /**
+         * Gets the number of test classes to run.
+         *
+         * @return the number of JUnit 4 runners
+         */
+        public int getRunnerCount() {
+            return runners.size();
+        }
+
+        private TestIdentifier getIdentifier(Description description) {
+            TestDescriptor descriptor = descriptors.get(description);
+            if (descriptor == null) {
+                // Created while running (i.e. an initialization error)
+                return null;
+            }
+            return identifiers.computeIfAbsent(description, d -> TestIdentifier.from(descriptor));
+        }
+    }
+
+    private static class JUnit4Descriptor extends AbstractTestDescriptor {
+
+        private final Type type;
+
+        JUnit4Descriptor(UniqueId uniqueId, Description description) {
+            super(uniqueId, description.getMethodName() != null ? description.getMethodName()
+                : description.getDisplayName());
+            this.type = description.isTest() ? Type.TEST : Type.CONTAINER;
+        }
+
+        @Override
+        public Type getType() {
+            return type;
+        }
+    }
+
+    /**
+     * Keeps the selected tests that pass the post-discovery filters.
+     */
+    private static class SelectionFilter extends Filter {
+
+        private final Set<String> selections;
+        private final Map<Description, UniqueId> uniqueIds;
+        private final List<PostDiscoveryFilter> postDiscoveryFilters;
+
+        SelectionFilter(Set<String> selections, Map<Description, UniqueId> uniqueIds,
+            List<PostDiscoveryFilter> postDiscoveryFilters) {
+            this.selections = selections;
+            this.uniqueIds = uniqueIds;
+            this.postDiscoveryFilters = postDiscoveryFilters;
+        }
+
+        @Override
+        public boolean shouldRun(Description description) {
+            if (!description.isTest()) {
+                for (Description child : description.getChildren()) {
+                    if (shouldRun(child)) {
+                        return true;
+                    }
+                }
+                return false;
+            }
+            UniqueId uniqueId = uniqueIds.get(description);
+            if (uniqueId == null) {
+                return true;
+            }
+            if (selections != null && !isSelected(description, uniqueId.toString())) {
+                return false;
+            }
+            TestDescriptor descriptor = new JUnit4Descriptor(uniqueId, description);
+            for (PostDiscoveryFilter filter : postDiscoveryFilters) {
+                if (filter.apply(descriptor).excluded()) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private boolean isSelected(Description description, String uniqueId) {
+            String methodName = description.getMethodName();
+            for (String selection : selections) {
+                if (selection.startsWith("[") ? uniqueId.startsWith(selection)
+                        : methodName != null && (methodName.equals(selection) ||
+                        methodName.startsWith(selection + "["))) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        @Override
+        public String describe() {
+            return "NIOInspector selection";
+        }
+    }
+
+    /**
+     * Translates the events of JUnitCore into TestExecutionListener events.
+     */
+    private static class ListenerBridge extends RunListener {
+
+        private final Plan plan;
+        private final TestExecutionListener notifier;
+
+        // Failures and assumption failures of the tests and containers being executed
+        private final Map<Description, TestExecutionResult> results = new HashMap<>();
+
+        ListenerBridge(Plan plan, TestExecutionListener notifier) {
+            this.plan = plan;
+            this.notifier = notifier;
+        }
+
+        @Override
+        public void testSuiteStarted(Description description) {
+            start(description);
+        }
+
+        @Override
+        public void testSuiteFinished(Description description) {
+            finish(description);
+        }
+
+        @Override
+        public void testStarted(Description description) {
+            start(description);
+        }
+
+        @Override
+        public void testFinished(Description description) {
+            finish(description);
+        }
+
+        @Override
+        public void testFailure(Failure failure) {
+            results.put(failure.getDescription(), TestExecutionResult.failed(prune(failure)));
+        }
+
+        @Override
+        public void testAssumptionFailure(Failure failure) {
+            results.putIfAbsent(failure.getDescription(), TestExecutionResult.aborted(prune(failure)));
+        }
+
+        /**
+         * Prunes the frames of JUnitCore and NIOInspector below the test class, as the launcher does.
+         */
+        private static Throwable prune(Failure failure) {
+            Throwable throwable = failure.getException();
+            String className = failure.getDescription().getClassName();
+            if (throwable != null && className != null) {
+                ExceptionUtils.pruneStackTrace(throwable, Collections.singletonList(className));
+                StackTraceElement[] stackTrace = throwable.getStackTrace();
+                for (int i = 0; i < stackTrace.length; i++) {
+                    if (stackTrace[i].getClassName().equals(JUnit4Executor.class.getName())) {
+                        throwable.setStackTrace(Arrays.copyOf(stackTrace, i));
+                        break;
+                    }
+                }
+            }
+            return throwable;
+        }
+
+        @Override
+        public void testIgnored(Description description) {
+            TestIdentifier identifier = plan.getIdentifier(description);
+            if (identifier != null) {
+                notifier.executionSkipped(identifier, "ignored");
+            }
+        }
+
+        private void start(Description description) {
+            TestIdentifier identifier = plan.getIdentifier(description);
+            if (identifier != null) {
+                notifier.executionStarted(identifier);
+            }
+        }
+
+        private void finish(Description description) {
+            TestIdentifier identifier = plan.getIdentifier(description);
+            TestExecutionResult result = results.remove(description);
+            if (identifier != null) {
+                notifier.executionFinished(identifier, result == null ? TestExecutionResult.successful() : result);
+            }
+        }
+    }
+
+    /**
+     * Notifies several listeners in order.
+     */
+    private static class CompositeListener implements TestExecutionListener {
+
+        private final List<TestExecutionListener> listeners;
+
+        CompositeListener(List<TestExecutionListener> listeners) {
+            this.listeners = listeners;
+        }
+
+        @Override
+        public void testPlanExecutionStarted(TestPlan testPlan) {
+            listeners.forEach(listener -> listener.testPlanExecutionStarted(testPlan));
+        }
+
+        @Override
+        public void testPlanExecutionFinished(TestPlan testPlan) {
+            listeners.forEach(listener -> listener.testPlanExecutionFinished(testPlan));
+        }
+
+        @Override
+        public void executionSkipped(TestIdentifier testIdentifier, String reason) {
+            listeners.forEach(listener -> listener.executionSkipped(testIdentifier, reason));
+        }
+
+        @Override
+        public void executionStarted(TestIdentifier testIdentifier) {
+            listeners.forEach(listener -> listener.executionStarted(testIdentifier));
+        }
+
+        @Override
+        public void executionFinished(TestIdentifier testIdentifier, TestExecutionResult testExecutionResult) {
+            listeners.forEach(listener -> listener.executionFinished(testIdentifier, testExecutionResult));
+        }
+    }
+}
@@ -0,0 +1,177 @@
+package edu.illinois.NIOInspector.plugin.util.detection;
+
+import org.apache.maven.plugin.MojoExecutionException;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.lang.reflect.InvocationTargetException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Confirms possible NIO tests by running each of them alone, twice back to back, in a fresh
+ * IsolatedURLClassLoader. A test that passes and then fails pollutes its own state, while a test that
+ * passes both times was only failing because of the other tests run before it.
+ */
+public class NIOConfirmer {
+
+    private static final Logger logger = LoggerFactory.getLogger(NIOConfirmer.class);
+
+    /**
+     * Outcome of running a candidate alone twice
+     */
+    public enum Verdict {
+        CONFIRMED("passed, then failed when run alone twice: NIO confirmed"),
+        ORDER_DEPENDENT("passed both times when run alone: likely polluted by other tests rather than NIO"),
+        FAILS_ALONE("failed the first time it was run alone: inconclusive"),
+        NOT_RUN("could not be run alone: inconclusive");
+
+        private final String description;
+
+        Verdict(String description) {
+            this.description = description;
+        }
+
+        /**
+         * Gets the description of the verdict.
+         *
+         * @return the description logged next to the test
+         */
+        public String getDescription() {
+            return description;
+        }
+    }
+
+    private final InJvmShardExecutor shardExecutor;
+
+    /**
+     * Creates a confirmer loading candidates from the classpath of the given class loader.
+     *
+     * @param classLoader the class loader loaded with test classes and all dependencies
+     * @param options user-configured options of the rerun (see RerunOptions)
+     * @throws MojoExecutionException if the classpath cannot be determined
+     */
+    public NIOConfirmer(ClassLoader classLoader, Properties options) throws MojoExecutionException {
+        this.shardExecutor = new InJvmShardExecutor(classLoader, createConfirmationOptions(options));
+    }
+
+    /**
+     * Copies the options of the rerun for running a candidate alone: both runs in full, without tracking any state
+     * (which would otherwise fork a JVM without the agent), and regardless of the time budget of the reruns, which
+     * is mostly spent by the time candidates are confirmed.
+     *
+     * @param options user-configured options of the rerun (see RerunOptions)
+     * @return the options of a confirmation
+     */
+    static Properties createConfirmationOptions(Properties options) {
+        Properties confirmationOptions = new Properties();
+        if (options != null) {
+            confirmationOptions.putAll(options);
+        }
+        confirmationOptions.setProperty(RerunOptions.SNAPSHOT_STATICS, "false");
+        confirmationOptions.setProperty(RerunOptions.TRACK_GLOBALS, "false");
+        confirmationOptions.remove(RerunOptions.TRACKED_DIRECTORIES);
+        confirmationOptions.setProperty(RerunOptions.PREFILTER_RERUNS, "false");
+        confirmationOptions.setProperty(RerunOptions.NARROW_RERUNS, "false");
+        confirmationOptions.remove(RerunOptions.DEADLINE);
+        return confirmationOptions;
+    }
+
+    /**
+     * Runs every candidate alone twice, with many candidates checked concurrently, and logs the verdicts.
+     *
+     * @param candidates the possible NIO tests (i.e. com.example.exampleTest#TestSomething)
+     * @throws MojoExecutionException if interrupted while waiting for the candidates
+     */
+    public void confirm(List<String> candidates) throws MojoExecutionException {
+        if (candidates.isEmpty()) {
+            return;
+        }
+        List<String> sortedCandidates = new ArrayList<>(candidates);
+        Collections.sort(sortedCandidates);
+
+        AtomicInteger threadIndex = new AtomicInteger();
+        ExecutorService pool = Executors.newFixedThreadPool(
+            Math.min(sortedCandidates.size(), Runtime.getRuntime().availableProcessors()), runnable -> {
+                Thread thread = new Thread(runnable, "NIOInspector-confirm-" + threadIndex.getAndIncrement());
+                thread.setDaemon(true);
+                return thread;
+            });
+        List<Verdict> verdicts = new ArrayList<>();
+        try {
+            List<Future<Verdict>> results = new ArrayList<>();
+            for (int i = 0; i < sortedCandidates.size(); i++) {
+                String candidate = sortedCandidates.get(i);
+                File candidateDirectory = new File(shardExecutor.runDirectory, "confirm-" + i);
+                results.add(pool.submit(() -> confirmCandidate(candidate, candidateDirectory)));
+            }
+            for (int i = 0; i < results.size(); i++) {
+                try {
+                    verdicts.add(results.get(i).get());
+                } catch (ExecutionException e) {
+                    Throwable cause = e.getCause() instanceof InvocationTargetException
+                        ? e.getCause().getCause() : e.getCause();
+                    logger.warn("Failed to run " + sortedCandidates.get(i) + " alone: " + cause);
+                    verdicts.add(Verdict.NOT_RUN);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new MojoExecutionException("Interrupted while confirming NIO tests", e);
+        } finally {
+            pool.shutdownNow();
+        }
+
+        logger.info("");
+        logger.info("=========================NIO Confirmation=========================");
+        logger.info("");
+        for (int i = 0; i < sortedCandidates.size(); i++) {
+            String message = sortedCandidates.get(i) + " " + verdicts.get(i).getDescription();
+            if (verdicts.get(i) == Verdict.CONFIRMED) {
+                logger.warn(message);
+            } else {
+                logger.info(message);
+            }
+        }
+    }
+
+    /**
+     * Runs one candidate alone twice in a fresh IsolatedURLClassLoader.
+     *
+     * @param candidate the test method (i.e. com.example.exampleTest#TestSomething)
+     * @param candidateDirectory the directory to write the log of the candidate to
+     * @return the verdict of the candidate
+     * @throws Exception if the candidate cannot be loaded or run
+     */
+    Verdict confirmCandidate(String candidate, File candidateDirectory) throws Exception {
+        TestOutcomeAggregator aggregator = new TestOutcomeAggregator();
+        shardExecutor.runShard(Collections.singletonList(candidate), 1, candidateDirectory, aggregator);
+        return getVerdict(aggregator, candidate);
+    }
+
+    /**
+     * Derives the verdict of a candidate from the outcomes of running it alone twice.
+     *
+     * @param aggregator the outcomes of the two runs
+     * @param candidate the test method (i.e. com.example.exampleTest#TestSomething)
+     * @return the verdict of the candidate
+     */
+    static Verdict getVerdict(TestOutcomeAggregator aggregator, String candidate) {
+        Boolean firstRunStatus = aggregator.getFirstRunStatus(candidate);
+        if (firstRunStatus == null) {
+            return Verdict.NOT_RUN;
+        } else if (!firstRunStatus) {
+            return Verdict.FAILS_ALONE;
+        }
+        return aggregator.getFlakyTests().containsKey(candidate) ? Verdict.CONFIRMED : Verdict.ORDER_DEPENDENT;
+    }
+}
@@ -0,0 +1,366 @@
+package edu.illinois.NIOInspector.plugin.util.detection;
+
+import org.junit.platform.engine.TestExecutionResult;
+import org.junit.platform.launcher.TestExecutionListener;
+import org.junit.platform.launcher.TestIdentifier;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.lang.reflect.Method;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Supplier;
+
+/**
+ * Captures what each test prints to System.out and System.err while it runs, instead of letting it reach the
+ * console and the logs. Output is attributed to the test running on the printing thread (or on the thread that
+ * created it), and kept in a bounded ring buffer per test holding its last bytes. Only the output of the tests that
+ * failed in the current run is kept once they finish; output printed outside of tests (e.g. by the runner or in
+ * class-level callbacks) goes through unchanged.
+ * <p>
+ * Captures running at the same time (e.g. in-JVM shards, each with its own class loader and thus its own copy of
+ * this class) share one Router per stream, installed by the first capture and removed once the last one is
+ * uninstalled, whatever the order. Since the Router may come from another class loader, captures attach to it
+ * reflectively, through JDK types only.
+ */
+public class OutputCapture implements TestExecutionListener {
+
+    /**
+     * Indentation of the captured output lines in the logs (see CollectTestInfoMojo)
+     */
+    public static final String CAPTURED_OUTPUT_INDENT = "    | ";
+
+    /**
+     * Number of bytes kept per test by default
+     */
+    public static final int DEFAULT_LIMIT = 64 * 1024;
+
+    // Test running on each thread (inherited by the threads it creates), or null outside of tests
+    private final InheritableThreadLocal<String> currentTest = new InheritableThreadLocal<>();
+
+    // Output of the tests running or failed in the current run, by unique ID
+    private final Map<String, RingBuffer> buffers = new HashMap<>();
+
+    private final int limit;
+
+    // Whether the output of failed tests is kept in the current run
+    private volatile boolean keepFailures;
+
+    // Target of the output of the current thread, attached to the routers
+    private final Supplier<OutputStream> target = this::getTarget;
+
+    // Routers of System.out and System.err this capture is attached to, null when not installed
+    private PrintStream outRouter;
+    private PrintStream errRouter;
+
+    // Sink of the output of finished tests (e.g. from threads they left behind)
+    private static final OutputStream DISCARD = new OutputStream() {
+        @Override
+        public void write(int b) {
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+        }
+    };
+
+    /**
+     * Last bytes written by one test, up to a limit, along with the number of bytes written in total.
+     */
+    static class RingBuffer extends OutputStream {
+
+        private final int limit;
+
+        // Kept bytes, growing up to the limit; the oldest is at start
+        private byte[] bytes = new byte[0];
+        private int start;
+        private int size;
+
+        // Number of bytes written in total
+        private long written;
+
+        RingBuffer(int limit) {
+            this.limit = limit;
+        }
+
+        @Override
+        public void write(int b) {
+            write(new byte[] { (byte) b }, 0, 1);
+        }
+
+        @Override
+        public synchronized void write(byte[] b, int off, int len) {
+            written += len;
+            if (len >= limit) {
+                // Only the tail of the write is kept
+                bytes = Arrays.copyOfRange(b, off + len - limit, off + len);
+                start = 0;
+                size = limit;
+                return;
+            }
+            if (size + len > bytes.length && bytes.length < limit) {
+                // Grow lazily, most tests print little or nothing
+                byte[] grown = new byte[Math.min(limit, Math.max(size + len, Math.max(256, bytes.length * 2)))];
+                System.arraycopy(toByteArray(), 0, grown, 0, size);
+                bytes = grown;
+                start = 0;
+            }
+            int overflow = size + len - bytes.length;
+            if (overflow > 0) {
+                // Drop the oldest bytes
+                start = (start + overflow) % bytes.length;
+                size -= overflow;
+            }
+            int position = (start + size) % bytes.length;
+            int first = Math.min(len, bytes.length - position);
+            System.arraycopy(b, off, bytes, position, first);
+            System.arraycopy(b, off + first, bytes, 0, len - first);
+            size += len;
+        }
+
+        /**
+         * Gets the kept bytes, oldest first.
+         *
+         * @return the last bytes written, up to the limit
+         */
+        synchronized byte[] toByteArray() {
+            byte[] ordered = new byte[size];
+            int first = Math.min(size, bytes.length - start);
+            System.arraycopy(bytes, start, ordered, 0, first);
+            System.arraycopy(bytes, 0, ordered, first, size - first);
+            return ordered;
+        }
+
+        synchronized long getWritten() {
+            return written;
+        }
+    }
+
+    /**
+     * Creates a capture keeping the last bytes of the output of each test.
+     *
+     * @param limit the number of bytes kept per test
+     */
+    public OutputCapture(int limit) {
+        this.limit = Math.max(1, limit);
+    }
+
+    /**
+     * Redirects System.out and System.err through the capture, installing the routers unless another capture did.
+     */
+    public void install() {
+        // The only lock shared by the captures of all class loaders
+        synchronized (System.class) {
+            if (outRouter != null) {
+                return;
+            }
+            outRouter = Router.attach(System.out, target);
+            System.setOut(outRouter);
+            errRouter = Router.attach(System.err, target);
+            System.setErr(errRouter);
+        }
+    }
+
+    /**
+     * Stops redirecting System.out and System.err through the capture, restoring them as they were before the
+     * routers were installed once no other capture is attached.
+     */
+    public void uninstall() {
+        synchronized (System.class) {
+            if (outRouter == null) {
+                return;
+            }
+            System.out.flush();
+            System.err.flush();
+            PrintStream originalOut = Router.detach(outRouter, target);
+            if (originalOut != null && System.out == outRouter) {
+                System.setOut(originalOut);
+            }
+            PrintStream originalErr = Router.detach(errRouter, target);
+            if (originalErr != null && System.err == errRouter) {
+                System.setErr(originalErr);
+            }
+            outRouter = null;
+            errRouter = null;
+        }
+    }
+
+    /**
+     * Discards the output kept from the previous run.
+     *
+     * @param keepFailures whether to keep the output of the tests failing in this run
+     */
+    public synchronized void startRun(boolean keepFailures) {
+        buffers.clear();
+        this.keepFailures = keepFailures;
+    }
+
+    @Override
+    public void executionStarted(TestIdentifier testIdentifier) {
+        if (testIdentifier.isTest()) {
+            synchronized (this) {
+                buffers.put(testIdentifier.getUniqueId(), new RingBuffer(limit));
+            }
+            currentTest.set(testIdentifier.getUniqueId());
+        } else {
+            // Pooled threads may have inherited the test that created them
+            currentTest.set(null);
+        }
+    }
+
+    @Override
+    public void executionFinished(TestIdentifier testIdentifier, TestExecutionResult testExecutionResult) {
+        if (testIdentifier.isTest()) {
+            System.out.flush();
+            System.err.flush();
+            currentTest.set(null);
+            if (!keepFailures || testExecutionResult.getStatus() != TestExecutionResult.Status.FAILED) {
+                synchronized (this) {
+                    buffers.remove(testIdentifier.getUniqueId());
+                }
+            }
+        }
+    }
+
+    /**
+     * Gets the output a test failing in the current run printed.
+     *
+     * @param uniqueId the unique ID of the test
+     * @return the last characters it printed (up to the limit in bytes), or null if it printed nothing or its
+     * output was not kept
+     */
+    public synchronized String getCapturedOutput(String uniqueId) {
+        RingBuffer buffer = buffers.get(uniqueId);
+        return buffer == null || buffer.getWritten() == 0 ? null
+            : new String(buffer.toByteArray(), Charset.defaultCharset());
+    }
+
+    /**
+     * Gets the number of bytes a test failing in the current run printed in total.
+     *
+     * @param uniqueId the unique ID of the test
+     * @return the number of bytes, 0 if its output was not kept
+     */
+    public synchronized long getCapturedBytes(String uniqueId) {
+        RingBuffer buffer = buffers.get(uniqueId);
+        return buffer == null ? 0 : buffer.getWritten();
+    }
+
+    /**
+     * Gets where the output of the current thread goes.
+     *
+     * @return the buffer of the test running on the current thread, a sink discarding the output of a finished
+     * test, or null outside of the tests of this capture
+     */
+    private OutputStream getTarget() {
+        String uniqueId = currentTest.get();
+        if (uniqueId == null) {
+            return null;
+        }
+        RingBuffer buffer;
+        synchronized (this) {
+            buffer = buffers.get(uniqueId);
+        }
+        return buffer != null ? buffer : DISCARD;
+    }
+
+    /**
+     * Stream writing the output of each thread to the target of the first attached capture claiming it, or to the
+     * original stream outside of tests.
+     */
+    static class Router extends PrintStream {
+
+        private final PrintStream original;
+
+        private final List<Supplier<OutputStream>> targets;
+
+        private Router(PrintStream original, List<Supplier<OutputStream>> targets) {
+            super(new OutputStream() {
+                @Override
+                public void write(int b) {
+                    write(new byte[] { (byte) b }, 0, 1);
+                }
+
+                @Override
+                public void write(byte[] b, int off, int len) {
+                    for (Supplier<OutputStream> target : targets) {
+                        OutputStream stream = target.get();
+                        if (stream != null) {
+                            try {
+                                stream.write(b, off, len);
+                            } catch (IOException e) {
+                                // Buffers do not fail
+                            }
+                            return;
+                        }
+                    }
+                    original.write(b, off, len);
+                }
+
+                @Override
+                public void flush() {
+                    original.flush();
+                }
+            }, true);
+            this.original = original;
+            this.targets = targets;
+        }
+
+        /**
+         * Attaches a target to the router installed as the given stream, or to a new router wrapping it.
+         *
+         * @param stream the stream currently installed (i.e. System.out)
+         * @param target the target to attach
+         * @return the router to install
+         */
+        static PrintStream attach(PrintStream stream, Supplier<OutputStream> target) {
+            if (isRouter(stream)) {
+                invoke(stream, "addTarget", target);
+                return stream;
+            }
+            Router router = new Router(stream, new CopyOnWriteArrayList<>());
+            router.addTarget(target);
+            return router;
+        }
+
+        /**
+         * Detaches a target from a router.
+         *
+         * @param router the router the target was attached to
+         * @param target the target to detach
+         * @return the stream to restore, if no target is left, otherwise null
+         */
+        static PrintStream detach(PrintStream router, Supplier<OutputStream> target) {
+            return (PrintStream) invoke(router, "removeTarget", target);
+        }
+
+        private void addTarget(Supplier<OutputStream> target) {
+            targets.add(target);
+        }
+
+        private PrintStream removeTarget(Supplier<OutputStream> target) {
+            targets.remove(target);
+            return targets.isEmpty() ? original : null;
+        }
+
+        private static boolean isRouter(PrintStream stream) {
+            // Possibly loaded by another class loader
+            return stream != null && Router.class.getName().equals(stream.getClass().getName());
+        }
+
+        private static Object invoke(PrintStream router, String name, Supplier<OutputStream> target) {
+            try {
+                Method method = router.getClass().getDeclaredMethod(name, Supplier.class);
+                method.setAccessible(true);
+                return method.invoke(router, target);
+            } catch (ReflectiveOperationException e) {
+                throw new IllegalStateException("Failed to call " + name + " on the output router", e);
+            }
+        }
+    }
+}
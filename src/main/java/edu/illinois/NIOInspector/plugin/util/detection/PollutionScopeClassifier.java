@@ -0,0 +1,218 @@
+package edu.illinois.NIOInspector.plugin.util.detection;
+
+import org.apache.maven.plugin.MojoExecutionException;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.lang.reflect.InvocationTargetException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Classifies where the state polluted by possible NIO tests lives, by rerunning each of them once in a fresh
+ * IsolatedURLClassLoader and, if it still fails, once in a fresh forked JVM (with the same working directory and
+ * java.io.tmpdir). A test passing in the fresh class loader polluted static state of the class loader it was
+ * rerun in, a test passing only in the fresh JVM polluted JVM-global state, and a test failing in both polluted
+ * state persisted outside the JVM. Each candidate costs at most two executions of its test method.
+ * If the reruns ran in forked workers, whose static and JVM-global state is gone, each candidate is only rerun
+ * in a fresh JVM with the working directory and java.io.tmpdir of the worker it ran in.
+ */
+public class PollutionScopeClassifier {
+
+    private static final Logger logger = LoggerFactory.getLogger(PollutionScopeClassifier.class);
+
+    /**
+     * Scope of the state polluted by a candidate
+     */
+    public enum Scope {
+        STATIC_STATE("passed in a fresh class loader: polluted in-memory static state"),
+        JVM_GLOBAL_STATE("failed in a fresh class loader but passed in a fresh JVM: polluted JVM-global state " +
+            "(e.g. system properties, default locale or time zone)"),
+        IN_MEMORY_STATE("passed in a fresh JVM, its reruns having run in a forked worker: polluted in-memory " +
+            "static or JVM-global state"),
+        EXTERNAL_STATE("failed in a fresh JVM: polluted persistent external state (e.g. files, databases, ports)"),
+        UNKNOWN("could not be rerun in a fresh class loader or JVM: unknown");
+
+        private final String description;
+
+        Scope(String description) {
+            this.description = description;
+        }
+
+        /**
+         * Gets the description of the scope.
+         *
+         * @return the description logged next to the test
+         */
+        public String getDescription() {
+            return description;
+        }
+    }
+
+    private final InJvmShardExecutor inJvmExecutor;
+
+    private final ForkedShardExecutor forkedExecutor;
+
+    // Shards of the forked workers the reruns ran in, or null if they ran in the current JVM
+    private final List<List<String>> workerShards;
+
+    /**
+     * Creates a classifier loading candidates from the classpath of the given class loader.
+     *
+     * @param classLoader the class loader loaded with test classes and all dependencies
+     * @param options user-configured options of the rerun (see RerunOptions)
+     * @param workerShards the shards of the forked workers the reruns ran in (see ShardExecutor.createShards),
+     * or null if they ran in the current JVM
+     * @throws MojoExecutionException if the classpath cannot be determined
+     */
+    public PollutionScopeClassifier(ClassLoader classLoader, Properties options, List<List<String>> workerShards)
+        throws MojoExecutionException {
+        // A single execution is enough, without tracking any state
+        Properties classifierOptions = new Properties();
+        if (options != null) {
+            classifierOptions.putAll(options);
+        }
+        classifierOptions.setProperty(RerunOptions.SNAPSHOT_STATICS, "false");
+        classifierOptions.setProperty(RerunOptions.TRACK_GLOBALS, "false");
+        classifierOptions.remove(RerunOptions.TRACKED_DIRECTORIES);
+        this.inJvmExecutor = new InJvmShardExecutor(classLoader, classifierOptions);
+        this.forkedExecutor = new ForkedShardExecutor(classLoader, classifierOptions);
+        this.workerShards = workerShards;
+    }
+
+    /**
+     * Classifies every candidate, with many candidates classified concurrently, and logs their scopes.
+     *
+     * @param candidates the possible NIO tests (i.e. com.example.exampleTest#TestSomething)
+     * @throws MojoExecutionException if interrupted while waiting for the candidates
+     */
+    public void classify(List<String> candidates) throws MojoExecutionException {
+        if (candidates.isEmpty()) {
+            return;
+        }
+        List<String> sortedCandidates = new ArrayList<>(candidates);
+        Collections.sort(sortedCandidates);
+
+        AtomicInteger threadIndex = new AtomicInteger();
+        ExecutorService pool = Executors.newFixedThreadPool(
+            Math.min(sortedCandidates.size(), Runtime.getRuntime().availableProcessors()), runnable -> {
+                Thread thread = new Thread(runnable, "NIOInspector-classify-" + threadIndex.getAndIncrement());
+                thread.setDaemon(true);
+                return thread;
+            });
+        List<Scope> scopes = new ArrayList<>();
+        try {
+            List<Future<Scope>> results = new ArrayList<>();
+            for (int i = 0; i < sortedCandidates.size(); i++) {
+                String candidate = sortedCandidates.get(i);
+                File candidateDirectory = new File(inJvmExecutor.runDirectory, "classify-" + i);
+                results.add(pool.submit(() -> classifyCandidate(candidate, candidateDirectory)));
+            }
+            for (int i = 0; i < results.size(); i++) {
+                try {
+                    scopes.add(results.get(i).get());
+                } catch (ExecutionException e) {
+                    Throwable cause = e.getCause() instanceof InvocationTargetException
+                        ? e.getCause().getCause() : e.getCause();
+                    logger.warn("Failed to classify " + sortedCandidates.get(i) + ": " + cause);
+                    scopes.add(Scope.UNKNOWN);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new MojoExecutionException("Interrupted while classifying NIO tests", e);
+        } finally {
+            pool.shutdownNow();
+        }
+
+        logger.info("");
+        logger.info("=========================Pollution Scope=========================");
+        logger.info("");
+        for (int i = 0; i < sortedCandidates.size(); i++) {
+            logger.info(sortedCandidates.get(i) + " " + scopes.get(i).getDescription());
+        }
+    }
+
+    /**
+     * Reruns one candidate in a fresh IsolatedURLClassLoader, then in a fresh JVM if it still fails (only in a
+     * fresh JVM if the reruns ran in forked workers).
+     *
+     * @param candidate the test method (i.e. com.example.exampleTest#TestSomething)
+     * @param candidateDirectory the directory to write the logs of the candidate to
+     * @return the scope of the state polluted by the candidate
+     * @throws Exception if the candidate cannot be loaded or run
+     */
+    private Scope classifyCandidate(String candidate, File candidateDirectory) throws Exception {
+        List<String> shard = Collections.singletonList(candidate);
+        Boolean passedInFreshLoader = null;
+        File workingDirectory = new File(System.getProperty("user.dir"));
+        File tmpDirectory = new File(System.getProperty("java.io.tmpdir"));
+        if (workerShards == null) {
+            TestOutcomeAggregator freshLoader = new TestOutcomeAggregator();
+            inJvmExecutor.runShard(shard, 0, new File(candidateDirectory, "loader"), freshLoader);
+            passedInFreshLoader = freshLoader.getFirstRunStatus(candidate);
+            if (passedInFreshLoader != null && passedInFreshLoader) {
+                return Scope.STATIC_STATE;
+            }
+        } else {
+            int shardIndex = getShardIndex(workerShards, candidate);
+            if (shardIndex < 0) {
+                return Scope.UNKNOWN;
+            }
+            workingDirectory = forkedExecutor.getShardDirectory(shardIndex);
+            tmpDirectory = new File(workingDirectory, "tmp");
+        }
+
+        TestOutcomeAggregator freshJvm = new TestOutcomeAggregator();
+        int exitCode = forkedExecutor.runShardIn(shard, 0, new File(candidateDirectory, "jvm"), workingDirectory,
+            tmpDirectory, freshJvm);
+        if (exitCode != 0) {
+            logger.warn("Worker classifying " + candidate + " exited with code " + exitCode);
+        }
+        return getScope(passedInFreshLoader, freshJvm.getFirstRunStatus(candidate));
+    }
+
+    /**
+     * Finds the shard a candidate ran in.
+     *
+     * @param shards the "class" or "class#method" entries of each shard
+     * @param candidate the test method (i.e. com.example.exampleTest#TestSomething)
+     * @return the index of the shard, or -1 if not found
+     */
+    static int getShardIndex(List<List<String>> shards, String candidate) {
+        String testClass = candidate.substring(0, candidate.indexOf('#'));
+        for (int i = 0; i < shards.size(); i++) {
+            if (shards.get(i).contains(testClass) || shards.get(i).contains(candidate)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Derives the scope of the state polluted by a candidate from the outcomes of its fresh executions.
+     *
+     * @param passedInFreshLoader whether the candidate passed in a fresh class loader, or null if not run
+     * @param passedInFreshJvm whether the candidate passed in a fresh JVM, or null if not run
+     * @return the scope
+     */
+    static Scope getScope(Boolean passedInFreshLoader, Boolean passedInFreshJvm) {
+        if (passedInFreshLoader != null && passedInFreshLoader) {
+            return Scope.STATIC_STATE;
+        } else if (passedInFreshJvm == null) {
+            return Scope.UNKNOWN;
+        } else if (passedInFreshJvm) {
+            return passedInFreshLoader == null ? Scope.IN_MEMORY_STATE : Scope.JVM_GLOBAL_STATE;
+        }
+        return Scope.EXTERNAL_STATE;
+    }
+}
@@ -0,0 +1,157 @@
+package edu.illinois.NIOInspector.plugin.util.detection;
+
+import org.junit.platform.engine.TestExecutionResult;
+import org.junit.platform.launcher.TestExecutionListener;
+import org.junit.platform.launcher.TestIdentifier;
+
+import java.util.function.Consumer;
+
+/**
+ * Streams a progress line as each test class and test starts and finishes, so that the supervisor of a forked
+ * worker knows what the worker is running when it hangs or dies (see WorkerSupervisor). Progress lines share the
+ * marker of the outcome lines, and are ignored by TestOutcomeAggregator.
+ */
+public class ProgressReporter implements TestExecutionListener {
+
+    /**
+     * Type of the progress lines
+     */
+    static final String PROGRESS = "PROGRESS";
+
+    private static final String STARTED = "S";
+
+    private static final String FINISHED = "F";
+
+    private static final String TEST_CLASS = "C";
+
+    private static final String TEST = "T";
+
+    private final Consumer<String> progressSink;
+
+    // 0 for the initial run, i for rerun #i
+    private volatile int run;
+
+    /**
+     * Progress of one test class or test, as decoded from a progress line.
+     */
+    static class Progress {
+
+        final boolean started;
+
+        final boolean testClass;
+
+        final int run;
+
+        final String className;
+
+        final String uniqueId;
+
+        Progress(boolean started, boolean testClass, int run, String className, String uniqueId) {
+            this.started = started;
+            this.testClass = testClass;
+            this.run = run;
+            this.className = className;
+            this.uniqueId = uniqueId;
+        }
+    }
+
+    /**
+     * Creates a reporter streaming progress lines to the given sink.
+     *
+     * @param progressSink the consumer of the progress lines (i.e. the outcome sink of a forked worker)
+     */
+    public ProgressReporter(Consumer<String> progressSink) {
+        this.progressSink = progressSink;
+    }
+
+    /**
+     * Sets the run the next started tests belong to.
+     *
+     * @param run 0 for the initial run, i for rerun #i
+     */
+    public void setRun(int run) {
+        this.run = run;
+    }
+
+    @Override
+    public void executionStarted(TestIdentifier testIdentifier) {
+        report(true, testIdentifier);
+    }
+
+    @Override
+    public void executionFinished(TestIdentifier testIdentifier, TestExecutionResult testExecutionResult) {
+        report(false, testIdentifier);
+    }
+
+    private void report(boolean started, TestIdentifier testIdentifier) {
+        String uniqueId = testIdentifier.getUniqueId();
+        String className = getTestClass(uniqueId);
+        // Only tests, and the containers of the selected test classes (not engines, nested classes or templates)
+        if (className == null || !(testIdentifier.isTest() || isTestClass(uniqueId))) {
+            return;
+        }
+        progressSink.accept(encode(started, !testIdentifier.isTest(), run, className, uniqueId));
+    }
+
+    /**
+     * Encodes the progress of a test class or test as a line.
+     *
+     * @param started true if the test class or test started, false if it finished
+     * @param testClass true for a test class, false for a test
+     * @param run 0 for the initial run, i for rerun #i
+     * @param className the selected test class the test class or test belongs to
+     * @param uniqueId the unique ID of the test class or test
+     * @return the encoded progress line
+     */
+    static String encode(boolean started, boolean testClass, int run, String className, String uniqueId) {
+        return TestOutcomeAggregator.MARKER + "\t" + PROGRESS + "\t" + (started ? STARTED : FINISHED) + "\t" +
+            (testClass ? TEST_CLASS : TEST) + "\t" + run + "\t" + className + "\t" + uniqueId;
+    }
+
+    /**
+     * Decodes a progress line.
+     *
+     * @param line the line to decode
+     * @return the progress, or null if the line does not carry a well-formed progress
+     */
+    static Progress decode(String line) {
+        if (!TestOutcomeAggregator.isOutcomeLine(line)) {
+            return null;
+        }
+        String[] fields = line.substring(line.indexOf(TestOutcomeAggregator.MARKER)).split("\t", 7);
+        if (fields.length != 7 || !PROGRESS.equals(fields[1])) {
+            return null;
+        }
+        try {
+            return new Progress(STARTED.equals(fields[2]), TEST_CLASS.equals(fields[3]), Integer.parseInt(fields[4]),
+                fields[5], fields[6]);
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Finds the selected test class a test class, nested class or test belongs to, from the first class segment
+     * of its unique ID ([class:...] for Jupiter, [runner:...] for Vintage and JUnitCore).
+     *
+     * @param uniqueId the unique ID
+     * @return the name of the test class, or null if the unique ID has no class segment (e.g. an engine)
+     */
+    static String getTestClass(String uniqueId) {
+        String segment = findClassSegment(uniqueId);
+        return segment == null ? null : segment.substring(segment.indexOf(':') + 1, segment.length() - 1);
+    }
+
+    private static boolean isTestClass(String uniqueId) {
+        return uniqueId.endsWith("/" + findClassSegment(uniqueId));
+    }
+
+    private static String findClassSegment(String uniqueId) {
+        for (String segment : uniqueId.split("/")) {
+            if ((segment.startsWith("[class:") || segment.startsWith("[runner:")) && segment.endsWith("]")) {
+                return segment;
+            }
+        }
+        return null;
+    }
+}
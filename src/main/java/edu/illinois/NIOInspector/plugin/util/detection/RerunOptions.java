@@ -0,0 +1,321 @@
+package edu.illinois.NIOInspector.plugin.util.detection;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Keys and accessors of the options forwarded from the rerun Mojo to ClassLoaderIsolatedTestRunner.
+ * Options cross class loader (and JVM) boundaries, hence they are kept as plain strings in a Properties object.
+ */
+public final class RerunOptions {
+
+    /**
+     * Number of forked JVMs the test classes are sharded across
+     */
+    public static final String FORK_COUNT = "forkCount";
+
+    /**
+     * Number of shards run concurrently in the current JVM, each in its own IsolatedURLClassLoader
+     */
+    public static final String THREAD_SHARDS = "threadShards";
+
+    /**
+     * Whether reruns #2..N only re-execute the tests that passed in the initial run but failed in rerun #1
+     */
+    public static final String NARROW_RERUNS = "narrowReruns";
+
+    /**
+     * Whether each possible NIO test is run alone twice, in a fresh class loader, after the final results
+     */
+    public static final String CONFIRM_NIO = "confirmNIO";
+
+    /**
+     * Whether the scope of the state polluted by each possible NIO test is classified after the final results
+     * (see PollutionScopeClassifier)
+     */
+    public static final String CLASSIFY_POLLUTION = "classifyPollution";
+
+    /**
+     * Whether test classes found idempotent by a previous rerun, and unchanged since, are skipped
+     */
+    public static final String INCREMENTAL = "incremental";
+
+    /**
+     * Directory of the test classes of the project, left out of the classpath fingerprint of the verdict cache
+     */
+    public static final String TEST_OUTPUT_DIRECTORY = "testOutputDirectory";
+
+    /**
+     * Whether reruns leave out the tests found unable to mutate shared state by StateMutationAnalyzer
+     */
+    public static final String PREFILTER_RERUNS = "prefilterReruns";
+
+    /**
+     * Whether the initial run records the static fields changed by each test (see StaticStateTracker)
+     */
+    public static final String SNAPSHOT_STATICS = "snapshotStatics";
+
+    /**
+     * Directories (joined by the path separator) in which the initial run records the files changed by each test
+     * (see FileSystemTracker); absent when files are not tracked
+     */
+    public static final String TRACKED_DIRECTORIES = "trackedDirectories";
+
+    /**
+     * Whether the initial run records the JVM-global state changed by each test (see GlobalStateTracker), which
+     * requires forked workers with GlobalStateAgent attached
+     */
+    public static final String TRACK_GLOBALS = "trackGlobals";
+
+    /**
+     * Whether suites made only of JUnit 4 test classes run directly with JUnitCore (see JUnit4Executor)
+     */
+    public static final String DIRECT_JUNIT4 = "directJUnit4";
+
+    /**
+     * Whether forked workers create and map a dynamic AppCDS archive (see ClassDataSharingArchive)
+     */
+    public static final String CLASS_DATA_SHARING = "classDataSharing";
+
+    /**
+     * Whether forked workers record themselves with JDK Flight Recorder (see FlightRecording)
+     */
+    public static final String RECORD_JFR = "recordJfr";
+
+    /**
+     * Time (in milliseconds) after which a test still running in a forked worker is considered hung, its worker
+     * killed and its test class quarantined (see WorkerSupervisor); absent or 0 for no timeout
+     */
+    public static final String TEST_TIMEOUT = "testTimeout";
+
+    /**
+     * Time (in milliseconds) after which a test class still running in one run of a forked worker is considered
+     * hung, its worker killed and the class quarantined (see WorkerSupervisor); absent or 0 for no timeout
+     */
+    public static final String CLASS_TIMEOUT = "classTimeout";
+
+    /**
+     * Whether the runner streams a progress line as each test class and test starts and finishes, for the
+     * supervisor of its forked worker (see WorkerSupervisor)
+     */
+    public static final String REPORT_PROGRESS = "reportProgress";
+
+    /**
+     * Whether the heap and garbage collections of every run are sampled and reported (see HeapMonitor)
+     */
+    public static final String HEAP_TELEMETRY = "heapTelemetry";
+
+    /**
+     * Growth (in bytes) of the heap retained since the initial run after which a forked worker is recycled (see
+     * WorkerSupervisor); absent or 0 for no recycling. Forces the tests to run in forked workers
+     */
+    public static final String HEAP_GROWTH_LIMIT = "heapGrowthLimit";
+
+    /**
+     * Growth (in bytes) of the heap retained since the initial run after which the runner of a supervised forked
+     * worker stops after the current rerun, for the rest of its reruns to run in a fresh worker; absent or 0 to
+     * run all reruns
+     */
+    public static final String RECYCLE_HEAP_GROWTH = "recycleHeapGrowth";
+
+    /**
+     * First rerun the runner executes after the initial run (and rerun #1, if it narrows the reruns), the reruns
+     * before it having run in a recycled worker; absent for all reruns
+     */
+    public static final String FIRST_RERUN = "firstRerun";
+
+    /**
+     * Name of the shard the runner runs (i.e. shard-0), labeling its heap telemetry; absent for the main runner
+     */
+    public static final String SHARD_NAME = "shardName";
+
+    /**
+     * Whether what the tests print is captured instead of reaching the console and the logs, keeping the output of
+     * the failing reruns of possible NIO and ND tests (see OutputCapture)
+     */
+    public static final String QUIET_RERUNS = "quietReruns";
+
+    /**
+     * Number of bytes of output kept per test when the output is captured
+     */
+    public static final String CAPTURED_OUTPUT_LIMIT = "capturedOutputLimit";
+
+    /**
+     * Prefix of the options holding JUnit Platform configuration parameters (e.g.
+     * junit.jupiter.execution.parallel.enabled), passed to the discovery request of every run
+     */
+    public static final String CONFIGURATION_PARAMETER_PREFIX = "configurationParameter.";
+
+    /**
+     * Time (in epoch milliseconds) by which all runs must be finished, derived from the time budget of the rerun
+     */
+    public static final String DEADLINE = "deadline";
+
+    private static final Pattern DURATION_PART = Pattern.compile("(\\d+)(ms|s|m|h)?");
+
+    private static final Pattern SIZE = Pattern.compile("(\\d+)([kmg])?b?");
+
+    private RerunOptions() {
+    }
+
+    /**
+     * Reads an integer option.
+     *
+     * @param options the options passed to the runner (may be null)
+     * @param key the key of the option
+     * @param defaultValue the value to use if the option is absent or malformed
+     * @return the value of the option
+     */
+    public static int getInt(Properties options, String key, int defaultValue) {
+        String value = options == null ? null : options.getProperty(key);
+        if (value == null || value.trim().isEmpty()) {
+            return defaultValue;
+        }
+        try {
+            return Integer.parseInt(value.trim());
+        } catch (NumberFormatException e) {
+            return defaultValue;
+        }
+    }
+
+    /**
+     * Reads a long option.
+     *
+     * @param options the options passed to the runner (may be null)
+     * @param key the key of the option
+     * @param defaultValue the value to use if the option is absent or malformed
+     * @return the value of the option
+     */
+    public static long getLong(Properties options, String key, long defaultValue) {
+        String value = options == null ? null : options.getProperty(key);
+        if (value == null || value.trim().isEmpty()) {
+            return defaultValue;
+        }
+        try {
+            return Long.parseLong(value.trim());
+        } catch (NumberFormatException e) {
+            return defaultValue;
+        }
+    }
+
+    /**
+     * Parses a duration such as "15m", "90s", "1h30m" or "500ms" (a bare number is taken as seconds).
+     *
+     * @param duration the duration to parse
+     * @return the duration in milliseconds
+     * @throws IllegalArgumentException if the duration is malformed
+     */
+    public static long parseDurationMillis(String duration) {
+        String trimmed = duration == null ? "" : duration.trim().toLowerCase();
+        Matcher matcher = DURATION_PART.matcher(trimmed);
+        long millis = 0;
+        int end = 0;
+        while (matcher.find() && matcher.start() == end) {
+            long value = Long.parseLong(matcher.group(1));
+            String unit = matcher.group(2) == null ? "s" : matcher.group(2);
+            switch (unit) {
+                case "ms":
+                    millis += value;
+                    break;
+                case "m":
+                    millis += TimeUnit.MINUTES.toMillis(value);
+                    break;
+                case "h":
+                    millis += TimeUnit.HOURS.toMillis(value);
+                    break;
+                default:
+                    millis += TimeUnit.SECONDS.toMillis(value);
+            }
+            end = matcher.end();
+        }
+        if (trimmed.isEmpty() || end != trimmed.length()) {
+            throw new IllegalArgumentException("Malformed duration: " + duration);
+        }
+        return millis;
+    }
+
+    /**
+     * Parses a size such as "512m", "2g", "800k" or "1048576" (a bare number is taken as bytes).
+     *
+     * @param size the size to parse
+     * @return the size in bytes
+     * @throws IllegalArgumentException if the size is malformed
+     */
+    public static long parseSizeBytes(String size) {
+        String trimmed = size == null ? "" : size.trim().toLowerCase();
+        Matcher matcher = SIZE.matcher(trimmed);
+        if (!matcher.matches()) {
+            throw new IllegalArgumentException("Malformed size: " + size);
+        }
+        long bytes = Long.parseLong(matcher.group(1));
+        String unit = matcher.group(2) == null ? "" : matcher.group(2);
+        switch (unit) {
+            case "k":
+                return bytes << 10;
+            case "m":
+                return bytes << 20;
+            case "g":
+                return bytes << 30;
+            default:
+                return bytes;
+        }
+    }
+
+    /**
+     * Reads a boolean option.
+     *
+     * @param options the options passed to the runner (may be null)
+     * @param key the key of the option
+     * @return true only if the option is present and set to "true"
+     */
+    public static boolean getBoolean(Properties options, String key) {
+        return options != null && Boolean.parseBoolean(options.getProperty(key, "false").trim());
+    }
+
+    /**
+     * Reads the JUnit Platform configuration parameters held by options prefixed with
+     * CONFIGURATION_PARAMETER_PREFIX.
+     *
+     * @param options the options passed to the runner (may be null)
+     * @return the configuration parameters without prefix, empty if none
+     */
+    public static Map<String, String> getConfigurationParameters(Properties options) {
+        Map<String, String> parameters = new TreeMap<>();
+        if (options != null) {
+            for (String key : options.stringPropertyNames()) {
+                if (key.startsWith(CONFIGURATION_PARAMETER_PREFIX)) {
+                    parameters.put(key.substring(CONFIGURATION_PARAMETER_PREFIX.length()),
+                        options.getProperty(key).trim());
+                }
+            }
+        }
+        return parameters;
+    }
+
+    /**
+     * Reads an option holding paths joined by the path separator.
+     *
+     * @param options the options passed to the runner (may be null)
+     * @param key the key of the option
+     * @return the files, empty if the option is absent
+     */
+    public static List<File> getFiles(Properties options, String key) {
+        List<File> files = new ArrayList<>();
+        String value = options == null ? null : options.getProperty(key);
+        if (value != null) {
+            for (String path : value.split(File.pathSeparator)) {
+                if (!path.trim().isEmpty()) {
+                    files.add(new File(path.trim()));
+                }
+            }
+        }
+        return files;
+    }
+}
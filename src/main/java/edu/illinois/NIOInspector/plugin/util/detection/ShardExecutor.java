@@ -0,0 +1,134 @@
+package edu.illinois.NIOInspector.plugin.util.detection;
+
+import edu.illinois.NIOInspector.plugin.util.logging.CustomTimeBasedFileAppender;
+
+import org.apache.maven.plugin.MojoExecutionException;
+
+import java.io.File;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.function.Consumer;
+
+/**
+ * Base of the executors that split the test classes into shards, run each shard (initial run and all reruns)
+ * in its own IsolatedURLClassLoader (on top of the shared class loader, if any), and stream the per-test outcomes of all shards into one sink.
+ */
+public abstract class ShardExecutor {
+
+    /**
+     * URLs of the class loader loaded with test classes and all dependencies
+     */
+    protected final URL[] classpath;
+
+    /**
+     * Parent of the class loader, holding the jars shared by the class loaders of all shards
+     */
+    protected final ClassLoader sharedClassLoader;
+
+    /**
+     * User-configured options of the rerun (see RerunOptions)
+     */
+    protected final Properties options;
+
+    /**
+     * Directory of the current rerun; shard logs are written to its shard-i sub-directories
+     */
+    protected final File runDirectory;
+
+    /**
+     * Creates an executor loading shards from the classpath of the given class loader.
+     *
+     * @param classLoader the class loader loaded with test classes and all dependencies
+     * @param options user-configured options of the rerun (see RerunOptions)
+     * @throws MojoExecutionException if the classpath cannot be determined
+     */
+    protected ShardExecutor(ClassLoader classLoader, Properties options) throws MojoExecutionException {
+        if (!(classLoader instanceof URLClassLoader)) {
+            throw new MojoExecutionException("Sharded reruns require a URLClassLoader, got " + classLoader);
+        }
+        this.classpath = ((URLClassLoader) classLoader).getURLs();
+        this.sharedClassLoader = classLoader.getParent();
+        this.options = options;
+        String logDirectory = CustomTimeBasedFileAppender.getLogDirectory();
+        this.runDirectory = logDirectory != null ? new File(logDirectory)
+            : new File(".NIOInspector", new SimpleDateFormat("yyyy-MM-dd-HH-mm-ss").format(new Date())).getAbsoluteFile();
+    }
+
+    /**
+     * Shards the test classes, runs all shards and waits for them to finish.
+     *
+     * @param testClasses the list of test classes to run
+     * @param classStringToMethodsMap the mapping between test classes and selected methods to run
+     * @param numReruns user-configured number of times to rerun the tests
+     * @param shardCount the number of shards (all run concurrently)
+     * @param outcomeSink the consumer of the outcome lines of all shards
+     * @throws MojoExecutionException if the shards cannot be run
+     */
+    public abstract void run(List<String> testClasses, Map<String, List<String>> classStringToMethodsMap, int numReruns,
+        int shardCount, Consumer<String> outcomeSink) throws MojoExecutionException;
+
+    /**
+     * Splits the test classes into at most shardCount shards, keeping each class (with its selected methods)
+     * in one shard.
+     *
+     * @param testClasses the list of test classes to run
+     * @param classStringToMethodsMap the mapping between test classes and selected methods to run
+     * @param shardCount the maximum number of shards
+     * @return the shards, each a list of "class" or "class#method" entries
+     */
+    static List<List<String>> createShards(List<String> testClasses, Map<String, List<String>> classStringToMethodsMap,
+        int shardCount) {
+        List<String> distinctClasses = new ArrayList<>(new LinkedHashSet<>(testClasses));
+        List<List<String>> shards = new ArrayList<>();
+        for (int i = 0; i < Math.min(shardCount, distinctClasses.size()); i++) {
+            shards.add(new ArrayList<>());
+        }
+        for (int i = 0; i < distinctClasses.size(); i++) {
+            String testClass = distinctClasses.get(i);
+            List<String> shard = shards.get(i % shards.size());
+            if (classStringToMethodsMap.containsKey(testClass)) {
+                for (String method : classStringToMethodsMap.get(testClass)) {
+                    shard.add(testClass + "#" + method);
+                }
+            } else {
+                shard.add(testClass);
+            }
+        }
+        return shards;
+    }
+
+    /**
+     * Copies the options for the runner of one shard, which must not shard (or fork for supervision) again.
+     *
+     * @return the options of a shard
+     */
+    protected Properties createShardOptions() {
+        Properties shardOptions = new Properties();
+        if (options != null) {
+            shardOptions.putAll(options);
+        }
+        shardOptions.setProperty(RerunOptions.FORK_COUNT, "1");
+        shardOptions.setProperty(RerunOptions.THREAD_SHARDS, "1");
+        shardOptions.remove(RerunOptions.TEST_TIMEOUT);
+        shardOptions.remove(RerunOptions.CLASS_TIMEOUT);
+        shardOptions.remove(RerunOptions.HEAP_GROWTH_LIMIT);
+        return shardOptions;
+    }
+
+    /**
+     * Gets the directory of a shard, which holds its log.
+     *
+     * @param shardIndex the index of the shard
+     * @return the directory of the shard
+     */
+    protected File getShardDirectory(int shardIndex) {
+        return new File(runDirectory, "shard-" + shardIndex);
+    }
+}
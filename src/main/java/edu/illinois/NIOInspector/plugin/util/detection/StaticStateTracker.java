@@ -0,0 +1,350 @@
+package edu.illinois.NIOInspector.plugin.util.detection;
+
+import org.junit.platform.engine.TestExecutionResult;
+import org.junit.platform.launcher.TestExecutionListener;
+import org.junit.platform.launcher.TestIdentifier;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.reflect.Array;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * Listener taking a bounded-depth structural hash of the static fields of every initialized class loaded by
+ * the IsolatedURLClassLoader before and after each test, and recording which static fields each test changed.
+ * Classes of the test frameworks, mocking libraries and this plugin are left out, since their internal caches
+ * change with every test.
+ */
+public class StaticStateTracker implements TestExecutionListener {
+
+    private static final Logger logger = LoggerFactory.getLogger(StaticStateTracker.class);
+
+    /**
+     * Depth up to which objects reachable from static fields are hashed
+     */
+    static final int MAX_DEPTH = 3;
+
+    /**
+     * Number of elements of an array, collection or map hashed
+     */
+    static final int MAX_ELEMENTS = 1000;
+
+    private static final List<String> EXCLUDED_PACKAGES = Arrays.asList(
+        "edu.illinois.NIOInspector.", "org.junit.", "junit.", "org.opentest4j.", "org.apiguardian.", "org.slf4j.",
+        "ch.qos.logback.", "com.github.javaparser.", "org.mockito.", "net.bytebuddy.", "org.objenesis.");
+
+    private final ClassLoader classLoader;
+
+    private final Method getLoadedClasses;
+
+    // Unsafe#shouldBeInitialized, to avoid initializing classes by reading their static fields
+    private final Object unsafe;
+
+    private final Method shouldBeInitialized;
+
+    // Static fields worth hashing (i.e. not compile-time constants) of each class seen so far
+    private final Map<Class<?>, List<Field>> staticFields = new HashMap<>();
+
+    // Fields of each class hashed when reached from a static field
+    private final Map<Class<?>, List<Field>> instanceFields = new HashMap<>();
+
+    // Snapshots taken when tests started
+    private final Map<String, Map<String, Long>> snapshots = new HashMap<>();
+
+    // Static fields changed by each test, in execution order
+    private final Map<String, List<String>> changedFields = new LinkedHashMap<>();
+
+    /**
+     * Creates a tracker of the classes loaded by the given class loader.
+     *
+     * @param classLoader the IsolatedURLClassLoader loaded with test classes and all dependencies
+     */
+    public StaticStateTracker(ClassLoader classLoader) {
+        this.classLoader = classLoader;
+        Method loadedClassesMethod = null;
+        Object unsafeInstance = null;
+        Method shouldBeInitializedMethod = null;
+        try {
+            // Invoked reflectively, as the class loader is an IsolatedURLClassLoader of another class loader
+            loadedClassesMethod = classLoader.getClass().getMethod("getLoadedClasses");
+            Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+            Field theUnsafe = unsafeClass.getDeclaredField("theUnsafe");
+            theUnsafe.setAccessible(true);
+            unsafeInstance = theUnsafe.get(null);
+            shouldBeInitializedMethod = unsafeClass.getMethod("shouldBeInitialized", Class.class);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            logger.warn("Static field snapshots are not supported on this JVM or class loader: " + e);
+            loadedClassesMethod = null;
+        }
+        this.getLoadedClasses = loadedClassesMethod;
+        this.unsafe = unsafeInstance;
+        this.shouldBeInitialized = shouldBeInitializedMethod;
+    }
+
+    /**
+     * Checks whether snapshots can be taken.
+     *
+     * @return false if the loaded or initialized classes cannot be determined
+     */
+    public boolean isAvailable() {
+        return getLoadedClasses != null;
+    }
+
+    @Override
+    public void executionStarted(TestIdentifier testIdentifier) {
+        if (isAvailable() && testIdentifier.isTest()) {
+            snapshots.put(testIdentifier.getUniqueId(), takeSnapshot());
+        }
+    }
+
+    @Override
+    public void executionFinished(TestIdentifier testIdentifier, TestExecutionResult testExecutionResult) {
+        Map<String, Long> before = snapshots.remove(testIdentifier.getUniqueId());
+        if (before == null) {
+            return;
+        }
+        List<String> changed = diff(before, takeSnapshot());
+        if (!changed.isEmpty()) {
+            changedFields.put(testIdentifier.getUniqueId(), changed);
+        }
+    }
+
+    /**
+     * Gets the static fields changed by each test.
+     *
+     * @return map from the unique ID of each test to the static fields (i.e. com.example.Cache.entries) it changed
+     */
+    public Map<String, List<String>> getChangedFields() {
+        return changedFields;
+    }
+
+    /**
+     * Streams the static fields changed by each test to the sink (see TestOutcomeAggregator).
+     *
+     * @param outcomeSink the consumer of the encoded lines
+     */
+    public void reportChangedFields(Consumer<String> outcomeSink) {
+        for (Map.Entry<String, List<String>> entry : changedFields.entrySet()) {
+            outcomeSink.accept(TestOutcomeAggregator.encodePollution(entry.getKey(), entry.getValue()));
+        }
+    }
+
+    /**
+     * Finds the fields present in both snapshots whose hash changed. Fields of classes initialized in between
+     * are not compared, as their initial values are not pollution.
+     */
+    static List<String> diff(Map<String, Long> before, Map<String, Long> after) {
+        List<String> changed = new ArrayList<>();
+        for (Map.Entry<String, Long> entry : before.entrySet()) {
+            Long hash = after.get(entry.getKey());
+            if (hash != null && !hash.equals(entry.getValue())) {
+                changed.add(entry.getKey());
+            }
+        }
+        Collections.sort(changed);
+        return changed;
+    }
+
+    /**
+     * Hashes the static fields of all initialized classes loaded so far.
+     *
+     * @return map from static field (i.e. com.example.Cache.entries) to its structural hash
+     */
+    Map<String, Long> takeSnapshot() {
+        Map<String, Long> snapshot = new HashMap<>();
+        List<?> loadedClasses;
+        try {
+            loadedClasses = (List<?>) getLoadedClasses.invoke(classLoader);
+        } catch (ReflectiveOperationException e) {
+            return snapshot;
+        }
+        for (Object loadedClass : loadedClasses) {
+            Class<?> clazz = (Class<?>) loadedClass;
+            if (isExcluded(clazz.getName()) || !isInitialized(clazz)) {
+                continue;
+            }
+            for (Field field : getStaticFields(clazz)) {
+                long hash;
+                try {
+                    hash = hash(field.get(null), MAX_DEPTH, new IdentityHashMap<>());
+                } catch (IllegalAccessException | RuntimeException e) {
+                    continue;
+                }
+                snapshot.put(clazz.getName() + "." + field.getName(), hash);
+            }
+        }
+        return snapshot;
+    }
+
+    private static boolean isExcluded(String className) {
+        for (String excludedPackage : EXCLUDED_PACKAGES) {
+            if (className.startsWith(excludedPackage)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean isInitialized(Class<?> clazz) {
+        try {
+            return !(Boolean) shouldBeInitialized.invoke(unsafe, clazz);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            return false;
+        }
+    }
+
+    private List<Field> getStaticFields(Class<?> clazz) {
+        return staticFields.computeIfAbsent(clazz, k -> {
+            List<Field> fields = new ArrayList<>();
+            try {
+                for (Field field : clazz.getDeclaredFields()) {
+                    int modifiers = field.getModifiers();
+                    boolean isConstant = Modifier.isFinal(modifiers) &&
+                        (field.getType().isPrimitive() || field.getType() == String.class);
+                    if (Modifier.isStatic(modifiers) && !isConstant && !field.isSynthetic() && trySetAccessible(field)) {
+                        fields.add(field);
+                    }
+                }
+            } catch (LinkageError | RuntimeException e) {
+                // Fields referring to classes that cannot be loaded
+            }
+            return fields;
+        });
+    }
+
+    private List<Field> getInstanceFields(Class<?> clazz) {
+        return instanceFields.computeIfAbsent(clazz, k -> {
+            List<Field> fields = new ArrayList<>();
+            try {
+                for (Class<?> c = clazz; c != null && c != Object.class; c = c.getSuperclass()) {
+                    for (Field field : c.getDeclaredFields()) {
+                        if (!Modifier.isStatic(field.getModifiers()) && trySetAccessible(field)) {
+                            fields.add(field);
+                        }
+                    }
+                }
+            } catch (LinkageError | RuntimeException e) {
+                // Fields referring to classes that cannot be loaded
+            }
+            return fields;
+        });
+    }
+
+    private static boolean trySetAccessible(Field field) {
+        try {
+            field.setAccessible(true);
+            return true;
+        } catch (RuntimeException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Computes a structural hash of a value, following references up to the given depth.
+     * Objects of JDK classes are only looked into through their public API (e.g. collections and maps);
+     * other objects are hashed by their fields.
+     *
+     * @param value the value to hash
+     * @param depth the remaining depth
+     * @param visited the objects on the current path, to cut cycles
+     * @return the hash
+     */
+    long hash(Object value, int depth, IdentityHashMap<Object, Boolean> visited) {
+        if (value == null) {
+            return 0;
+        }
+        Class<?> clazz = value.getClass();
+        if (value instanceof String || value instanceof Number || value instanceof Boolean ||
+            value instanceof Character) {
+            return clazz.getName().hashCode() * 31L + value.hashCode();
+        } else if (value instanceof Enum) {
+            return clazz.getName().hashCode() * 31L + ((Enum<?>) value).name().hashCode();
+        } else if (value instanceof Class) {
+            return ((Class<?>) value).getName().hashCode();
+        } else if (depth == 0 || visited.containsKey(value)) {
+            // Only a change of identity is seen beyond the depth or on cycles
+            return System.identityHashCode(value);
+        }
+        visited.put(value, Boolean.TRUE);
+        try {
+            long hash = clazz.getName().hashCode();
+            if (clazz.isArray()) {
+                int length = Array.getLength(value);
+                hash = hash * 31 + length;
+                for (int i = 0; i < Math.min(length, MAX_ELEMENTS); i++) {
+                    hash = hash * 31 + hash(Array.get(value, i), depth - 1, visited);
+                }
+            } else if (isJdkClass(clazz)) {
+                hash = hash * 31 + hashJdkObject(value, depth, visited);
+            } else {
+                for (Field field : getInstanceFields(clazz)) {
+                    hash = hash * 31 + hash(field.get(value), depth - 1, visited);
+                }
+            }
+            return hash;
+        } catch (IllegalAccessException | RuntimeException e) {
+            // e.g. concurrent modification of a collection
+            return System.identityHashCode(value);
+        } finally {
+            visited.remove(value);
+        }
+    }
+
+    private long hashJdkObject(Object value, int depth, IdentityHashMap<Object, Boolean> visited) {
+        if (value instanceof List) {
+            long hash = ((List<?>) value).size();
+            int count = 0;
+            for (Object element : (List<?>) value) {
+                if (count++ == MAX_ELEMENTS) {
+                    break;
+                }
+                hash = hash * 31 + hash(element, depth - 1, visited);
+            }
+            return hash;
+        } else if (value instanceof Collection) {
+            // Order-insensitive, as the iteration order of sets may change with their content
+            long hash = ((Collection<?>) value).size();
+            int count = 0;
+            for (Object element : (Collection<?>) value) {
+                if (count++ == MAX_ELEMENTS) {
+                    break;
+                }
+                hash += hash(element, depth - 1, visited);
+            }
+            return hash;
+        } else if (value instanceof Map) {
+            long hash = ((Map<?, ?>) value).size();
+            int count = 0;
+            for (Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet()) {
+                if (count++ == MAX_ELEMENTS) {
+                    break;
+                }
+                hash += hash(entry.getKey(), depth - 1, visited) * 31 ^ hash(entry.getValue(), depth - 1, visited);
+            }
+            return hash;
+        } else if (value instanceof CharSequence || value.getClass().getName().startsWith("java.util.concurrent.atomic.") ||
+            value instanceof java.util.Date) {
+            return value.toString().hashCode();
+        }
+        return System.identityHashCode(value);
+    }
+
+    private static boolean isJdkClass(Class<?> clazz) {
+        String name = clazz.getName();
+        return name.startsWith("java.") || name.startsWith("javax.") || name.startsWith("jdk.") ||
+            name.startsWith("sun.") || name.startsWith("com.sun.");
+    }
+}
@@ -0,0 +1,329 @@
+package edu.illinois.NIOInspector.plugin.util.detection;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * Collects the execution time of every test method in the initial run and each rerun from the outcome lines
+ * (see TestOutcomeAggregator), and reports the slowest tests and classes, the percentiles of the durations of each
+ * run, and the time the reruns added. Durations are kept in one primitive array per run, indexed by test method;
+ * invocations of the same method (e.g. parameterized tests) add up.
+ */
+public class TestDurationRecorder implements Consumer<String> {
+
+    private static final Logger logger = LoggerFactory.getLogger(TestDurationRecorder.class);
+
+    /**
+     * Name of the file listing the durations of all tests, next to rerun-results.log
+     */
+    public static final String DURATIONS_FILE = "test-durations.csv";
+
+    // Number of tests (and test classes) listed as the slowest ones
+    static final int MAX_LISTED_TESTS = 10;
+
+    // Indentation of the tests and classes listed under each heading
+    private static final String INDENT = "    ";
+
+    // Marks a test that did not execute in a run
+    private static final long NOT_EXECUTED = -1;
+
+    // Index of each test method seen so far, and the test method of each index
+    private final Map<String, Integer> indexes = new HashMap<>();
+    private final List<String> testMethods = new ArrayList<>();
+
+    // Execution time (in milliseconds) of each test in each run, by run and then by index
+    private long[][] durations = new long[0][];
+
+    /**
+     * Decodes an outcome line and records the duration of its test; other lines, and outcomes of containers, are
+     * ignored.
+     *
+     * @param line the line to decode
+     */
+    @Override
+    public synchronized void accept(String line) {
+        TestOutcome outcome = TestOutcome.decode(line);
+        if (outcome == null || outcome.getRun() < 0) {
+            return;
+        }
+        String testMethod = ClassLoaderIsolatedTestRunner.extractTestMethod(outcome.getUniqueId());
+        if (testMethod == null || testMethod.indexOf('#') <= 0) {
+            return;
+        }
+        recordDuration(outcome.getRun(), testMethod, Math.max(0, outcome.getDurationMillis()));
+    }
+
+    /**
+     * Records the execution time of a test method in one run.
+     *
+     * @param run 0 for the initial run, i for rerun #i
+     * @param testMethod the test method (i.e. com.example.exampleTest#TestSomething)
+     * @param durationMillis the execution time of the test in the run
+     */
+    public synchronized void recordDuration(int run, String testMethod, long durationMillis) {
+        Integer index = indexes.get(testMethod);
+        if (index == null) {
+            index = testMethods.size();
+            indexes.put(testMethod, index);
+            testMethods.add(testMethod);
+        }
+        if (run >= durations.length) {
+            int runs = durations.length;
+            durations = Arrays.copyOf(durations, run + 1);
+            for (int i = runs; i <= run; i++) {
+                durations[i] = newRun(Math.max(16, testMethods.size()));
+            }
+        }
+        if (index >= durations[run].length) {
+            long[] grown = newRun(Math.max(index + 1, durations[run].length * 2));
+            System.arraycopy(durations[run], 0, grown, 0, durations[run].length);
+            durations[run] = grown;
+        }
+        long recorded = durations[run][index];
+        durations[run][index] = recorded == NOT_EXECUTED ? durationMillis : recorded + durationMillis;
+    }
+
+    /**
+     * Gets the execution time of a test method in one run.
+     *
+     * @param run 0 for the initial run, i for rerun #i
+     * @param testMethod the test method (i.e. com.example.exampleTest#TestSomething)
+     * @return the execution time in milliseconds, or -1 if the test did not execute in the run
+     */
+    public synchronized long getDurationMillis(int run, String testMethod) {
+        Integer index = indexes.get(testMethod);
+        return index == null ? NOT_EXECUTED : getDuration(run, index);
+    }
+
+    /**
+     * Gets the durations of all tests executed in one run, in ascending order.
+     *
+     * @param run 0 for the initial run, i for rerun #i
+     * @return the execution times in milliseconds
+     */
+    synchronized long[] getSortedDurations(int run) {
+        long[] executed = new long[testMethods.size()];
+        int count = 0;
+        for (int index = 0; index < testMethods.size(); index++) {
+            long duration = getDuration(run, index);
+            if (duration != NOT_EXECUTED) {
+                executed[count++] = duration;
+            }
+        }
+        long[] sorted = Arrays.copyOf(executed, count);
+        Arrays.sort(sorted);
+        return sorted;
+    }
+
+    /**
+     * Computes a percentile of sorted durations with the nearest-rank method.
+     *
+     * @param sortedDurations the durations, in ascending order
+     * @param percentile the percentile, between 0 (exclusive) and 100
+     * @return the duration at the percentile, or 0 if there are none
+     */
+    static long percentile(long[] sortedDurations, int percentile) {
+        if (sortedDurations.length == 0) {
+            return 0;
+        }
+        int rank = (int) Math.ceil(percentile / 100.0 * sortedDurations.length);
+        return sortedDurations[Math.max(0, Math.min(sortedDurations.length, rank) - 1)];
+    }
+
+    /**
+     * Computes how much slower the tests of a rerun were than the same tests in the initial run.
+     *
+     * @param run i for rerun #i
+     * @return the relative slowdown (e.g. 0.1 for 10% slower, negative if faster), or null if no test executed in
+     * both runs or the tests took no measurable time in the initial run
+     */
+    synchronized Double getSlowdown(int run) {
+        long initialRun = 0;
+        long rerun = 0;
+        for (int index = 0; index < testMethods.size(); index++) {
+            if (getDuration(0, index) != NOT_EXECUTED && getDuration(run, index) != NOT_EXECUTED) {
+                initialRun += getDuration(0, index);
+                rerun += getDuration(run, index);
+            }
+        }
+        return initialRun == 0 ? null : (double) (rerun - initialRun) / initialRun;
+    }
+
+    /**
+     * Ranks the test methods by their duration in the initial run, then by their mean duration in the reruns.
+     *
+     * @return the test methods, slowest first
+     */
+    synchronized List<String> getSlowestTests() {
+        List<String> ranked = new ArrayList<>(testMethods);
+        ranked.sort((a, b) -> {
+            int compared = Long.compare(getDuration(0, indexes.get(b)), getDuration(0, indexes.get(a)));
+            return compared != 0 ? compared : Double.compare(getMeanRerunDuration(indexes.get(b)),
+                getMeanRerunDuration(indexes.get(a)));
+        });
+        return ranked;
+    }
+
+    /**
+     * Sums the durations of the test methods of each class in the initial run.
+     *
+     * @return map from test class to the total execution time of its tests, slowest first
+     */
+    synchronized Map<String, Long> getSlowestClasses() {
+        Map<String, Long> classDurations = new HashMap<>();
+        for (int index = 0; index < testMethods.size(); index++) {
+            String testMethod = testMethods.get(index);
+            long duration = getDuration(0, index);
+            if (duration != NOT_EXECUTED) {
+                classDurations.merge(testMethod.substring(0, testMethod.indexOf('#')), duration, Long::sum);
+            }
+        }
+        List<Map.Entry<String, Long>> entries = new ArrayList<>(classDurations.entrySet());
+        entries.sort((a, b) -> {
+            int compared = Long.compare(b.getValue(), a.getValue());
+            return compared != 0 ? compared : a.getKey().compareTo(b.getKey());
+        });
+        Map<String, Long> ranked = new LinkedHashMap<>();
+        for (Map.Entry<String, Long> entry : entries) {
+            ranked.put(entry.getKey(), entry.getValue());
+        }
+        return ranked;
+    }
+
+    /**
+     * Logs the durations of each run, the time the reruns added, and the slowest test classes and tests.
+     */
+    public synchronized void logReport() {
+        if (testMethods.isEmpty()) {
+            return;
+        }
+        logger.info("");
+        logger.info("=========================Test Durations=========================");
+        logger.info("");
+        long initialRunTotal = 0;
+        long rerunsTotal = 0;
+        for (int run = 0; run < durations.length; run++) {
+            long[] sorted = getSortedDurations(run);
+            if (sorted.length == 0) {
+                continue;
+            }
+            long total = 0;
+            for (long duration : sorted) {
+                total += duration;
+            }
+            if (run == 0) {
+                initialRunTotal = total;
+            } else {
+                rerunsTotal += total;
+            }
+            Double slowdown = run == 0 ? null : getSlowdown(run);
+            logger.info((run == 0 ? "Initial run" : "Rerun #" + run) + ": " + sorted.length + " test(s), " + total +
+                " ms in total" + (slowdown == null ? "" : String.format(" (%.1f%% %s than the same tests in the " +
+                "initial run)", Math.abs(slowdown) * 100, slowdown < 0 ? "faster" : "slower")) + ", p50 " + percentile(sorted, 50) + " ms, p95 " +
+                percentile(sorted, 95) + " ms, p99 " + percentile(sorted, 99) + " ms");
+        }
+        if (durations.length > 1) {
+            logger.info("Reruns added " + rerunsTotal + " ms of test execution to the " + initialRunTotal +
+                " ms of the initial run");
+        }
+
+        logger.info("Slowest test class(es) in the initial run:");
+        int listed = 0;
+        for (Map.Entry<String, Long> entry : getSlowestClasses().entrySet()) {
+            if (listed++ == MAX_LISTED_TESTS) {
+                break;
+            }
+            logger.info(INDENT + entry.getKey() + ": " + entry.getValue() + " ms");
+        }
+        logger.info("Slowest test(s):");
+        List<String> slowestTests = getSlowestTests();
+        for (String testMethod : slowestTests.subList(0, Math.min(MAX_LISTED_TESTS, slowestTests.size()))) {
+            int index = indexes.get(testMethod);
+            long initialRun = getDuration(0, index);
+            int rerunsExecuted = getRerunsExecuted(index);
+            logger.info(INDENT + testMethod + ": " +
+                (initialRun == NOT_EXECUTED ? "not run" : initialRun + " ms") + " in the initial run" +
+                (rerunsExecuted == 0 ? "" : String.format(", %.1f ms on average in %d rerun(s)",
+                    getMeanRerunDuration(index), rerunsExecuted)));
+        }
+    }
+
+    /**
+     * Writes the durations of all tests, slowest first, as a CSV file. Failures are logged, since the file is not
+     * needed for the results of the current rerun.
+     *
+     * @param directory the directory to write DURATIONS_FILE to
+     */
+    public synchronized void save(File directory) {
+        if (testMethods.isEmpty()) {
+            return;
+        }
+        File file = new File(directory, DURATIONS_FILE);
+        try {
+            Files.createDirectories(directory.toPath());
+            try (PrintWriter writer = new PrintWriter(Files.newBufferedWriter(file.toPath(), StandardCharsets.UTF_8))) {
+                writer.println("test,class,initialRunMillis,rerunsExecuted,meanRerunMillis,maxRerunMillis");
+                for (String testMethod : getSlowestTests()) {
+                    int index = indexes.get(testMethod);
+                    long maxRerun = 0;
+                    for (int run = 1; run < durations.length; run++) {
+                        maxRerun = Math.max(maxRerun, getDuration(run, index));
+                    }
+                    writer.println(testMethod + "," + testMethod.substring(0, testMethod.indexOf('#')) + "," +
+                        getDuration(0, index) + "," + getRerunsExecuted(index) + "," +
+                        String.format(Locale.ROOT, "%.1f", getMeanRerunDuration(index)) + "," + maxRerun);
+                }
+            }
+            logger.info("Durations of all tests written to " + file.getPath());
+        } catch (IOException e) {
+            logger.warn("Failed to write the durations of the tests to " + file.getPath() + ": " + e);
+        }
+    }
+
+    private long getDuration(int run, int index) {
+        return run < durations.length && index < durations[run].length ? durations[run][index] : NOT_EXECUTED;
+    }
+
+    private int getRerunsExecuted(int index) {
+        int rerunsExecuted = 0;
+        for (int run = 1; run < durations.length; run++) {
+            if (getDuration(run, index) != NOT_EXECUTED) {
+                rerunsExecuted++;
+            }
+        }
+        return rerunsExecuted;
+    }
+
+    private double getMeanRerunDuration(int index) {
+        long total = 0;
+        int rerunsExecuted = 0;
+        for (int run = 1; run < durations.length; run++) {
+            long duration = getDuration(run, index);
+            if (duration != NOT_EXECUTED) {
+                total += duration;
+                rerunsExecuted++;
+            }
+        }
+        return rerunsExecuted == 0 ? 0 : (double) total / rerunsExecuted;
+    }
+
+    private static long[] newRun(int length) {
+        long[] run = new long[length];
+        Arrays.fill(run, NOT_EXECUTED);
+        return run;
+    }
+}
@@ -0,0 +1,93 @@
+package edu.illinois.NIOInspector.plugin.util.detection;
+
+/**
+ * Outcome of one test in one run, as exchanged in the outcome lines streamed to TestOutcomeAggregator.
+ */
+public class TestOutcome {
+
+    private static final String OUTCOME = "OUTCOME";
+
+    private final int run;
+
+    private final char status;
+
+    private final long durationMillis;
+
+    private final String uniqueId;
+
+    /**
+     * Creates an outcome.
+     *
+     * @param run 0 for the initial run, i for rerun #i
+     * @param status one of TestOutcomeAggregator.PASSED, FAILED or OTHER
+     * @param durationMillis the execution time of the test in the run
+     * @param uniqueId the unique ID of the test
+     */
+    public TestOutcome(int run, char status, long durationMillis, String uniqueId) {
+        this.run = run;
+        this.status = status;
+        this.durationMillis = durationMillis;
+        this.uniqueId = uniqueId;
+    }
+
+    /**
+     * Encodes the outcome as a line.
+     *
+     * @return the encoded outcome line
+     */
+    public String encode() {
+        return TestOutcomeAggregator.MARKER + "\t" + OUTCOME + "\t" + run + "\t" + status + "\t" + durationMillis +
+            "\t" + uniqueId;
+    }
+
+    /**
+     * Decodes an outcome line.
+     *
+     * @param line the line to decode
+     * @return the outcome, or null if the line does not carry a well-formed outcome
+     */
+    public static TestOutcome decode(String line) {
+        if (!TestOutcomeAggregator.isOutcomeLine(line)) {
+            return null;
+        }
+        // Anything printed by a test without a trailing newline may precede the marker
+        String[] fields = line.substring(line.indexOf(TestOutcomeAggregator.MARKER)).split("\t", 6);
+        if (fields.length != 6 || !OUTCOME.equals(fields[1]) || fields[3].isEmpty()) {
+            return null;
+        }
+        try {
+            return new TestOutcome(Integer.parseInt(fields[2]), fields[3].charAt(0), Long.parseLong(fields[4]),
+                fields[5]);
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    /**
+     * @return 0 for the initial run, i for rerun #i
+     */
+    public int getRun() {
+        return run;
+    }
+
+    /**
+     * @return one of TestOutcomeAggregator.PASSED, FAILED or OTHER
+     */
+    public char getStatus() {
+        return status;
+    }
+
+    /**
+     * @return the execution time of the test in the run
+     */
+    public long getDurationMillis() {
+        return durationMillis;
+    }
+
+    /**
+     * @return the unique ID of the test
+     */
+    public String getUniqueId() {
+        return uniqueId;
+    }
+}
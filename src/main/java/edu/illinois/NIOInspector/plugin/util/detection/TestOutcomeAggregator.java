@@ -0,0 +1,619 @@
+package edu.illinois.NIOInspector.plugin.util.detection;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.function.Consumer;
+
+/**
+ * Collects the per-test outcomes of the initial run and all reruns, and derives the final NIO / ND classification.
+ * Outcomes are exchanged as single text lines, so that shards running in other class loaders or forked JVMs can
+ * stream them back to the runner producing the final report.
+ */
+public class TestOutcomeAggregator implements Consumer<String> {
+
+    private static final Logger logger = LoggerFactory.getLogger(TestOutcomeAggregator.class);
+
+    /**
+     * Marker that starts every outcome line
+     */
+    public static final String MARKER = "#NIOInspector#";
+
+    /**
+     * Status of a test that passed
+     */
+    public static final char PASSED = 'P';
+
+    /**
+     * Status of a test that failed
+     */
+    public static final char FAILED = 'F';
+
+    /**
+     * Status of a test that neither passed nor failed (e.g. aborted)
+     */
+    public static final char OTHER = 'O';
+
+    // Stores the pass status of each test (by unique ID) in the initial run
+    private final Map<String, Boolean> testStatusInFirstRun = new HashMap<>();
+
+    // Number of reruns failed by each test that passed in the initial run, in the order they were found
+    private final Map<String, Integer> flakyTests = new LinkedHashMap<>();
+
+    // Number of reruns executed by each test that passed in the initial run
+    private final Map<String, Integer> rerunsExecuted = new HashMap<>();
+
+    private static final String COVERAGE = "COVERAGE";
+
+    private static final String POLLUTION = "POLLUTION";
+
+    // Number of changed static fields (or JVM-global settings) listed per test in the final results
+    private static final int MAX_LISTED_FIELDS = 10;
+
+    // Static fields changed by each test in the initial run (see StaticStateTracker), in the order they were found
+    private final Map<String, Set<String>> pollutedFields = new LinkedHashMap<>();
+
+    private static final String FILES = "FILES";
+
+    /**
+     * Indentation of the file changes listed under each test in the final results (see CollectTestInfoMojo)
+     */
+    public static final String FILE_CHANGE_INDENT = "    ";
+
+    // Number of file changes listed per test in the final results
+    static final int MAX_LISTED_FILES = 50;
+
+    // Files created, modified or deleted by each test in the initial run (see FileSystemTracker), in the order they
+    // were found
+    private final Map<String, Set<String>> changedFiles = new LinkedHashMap<>();
+
+    private static final String GLOBALS = "GLOBALS";
+
+    // JVM-global state changed by each test in the initial run (see GlobalStateTracker), in the order it was found
+    private final Map<String, Set<String>> changedGlobalState = new LinkedHashMap<>();
+
+    private static final String QUARANTINE = "QUARANTINE";
+
+    // Reason each test class was quarantined by the supervisor of its forked worker (see WorkerSupervisor), in the
+    // order they were quarantined
+    private final Map<String, String> quarantinedClasses = new LinkedHashMap<>();
+
+    private static final String RECYCLED = "RECYCLED";
+
+    // Reason the later reruns of each test class ran in a fresh forked worker (see WorkerSupervisor), in the order
+    // they were recycled
+    private final Map<String, String> recycledClasses = new LinkedHashMap<>();
+
+    // Test classes given an initial run, out of all test classes, and the fewest reruns covered by any runner
+    private int classesRun;
+    private int classesTotal;
+    private int rerunsCovered = Integer.MAX_VALUE;
+
+    /**
+     * Encodes the outcome of a test in one run as a line.
+     *
+     * @param run 0 for the initial run, i for rerun #i
+     * @param uniqueId the unique ID of the test
+     * @param status one of PASSED, FAILED or OTHER
+     * @return the encoded outcome line
+     */
+    public static String encodeOutcome(int run, String uniqueId, char status) {
+        return encodeOutcome(run, uniqueId, status, 0);
+    }
+
+    /**
+     * Encodes the outcome of a test in one run, with its execution time, as a line.
+     *
+     * @param run 0 for the initial run, i for rerun #i
+     * @param uniqueId the unique ID of the test
+     * @param status one of PASSED, FAILED or OTHER
+     * @param durationMillis the execution time of the test in the run
+     * @return the encoded outcome line
+     */
+    public static String encodeOutcome(int run, String uniqueId, char status, long durationMillis) {
+        return new TestOutcome(run, status, durationMillis, uniqueId).encode();
+    }
+
+    /**
+     * Encodes how much of its share of the tests a runner covered (e.g. when running out of time budget) as a line.
+     *
+     * @param classesRun the number of test classes given an initial run
+     * @param classesTotal the number of test classes the runner was given
+     * @param rerunsCovered the number of reruns after which all results of the runner are decided
+     * @return the encoded coverage line
+     */
+    public static String encodeCoverage(int classesRun, int classesTotal, int rerunsCovered) {
+        return MARKER + "\t" + COVERAGE + "\t" + classesRun + "\t" + classesTotal + "\t" + rerunsCovered;
+    }
+
+    /**
+     * Encodes the static fields changed by a test as a line.
+     *
+     * @param uniqueId the unique ID of the test
+     * @param fields the changed static fields (i.e. com.example.Cache.entries)
+     * @return the encoded pollution line
+     */
+    public static String encodePollution(String uniqueId, List<String> fields) {
+        return MARKER + "\t" + POLLUTION + "\t" + String.join(",", fields) + "\t" + uniqueId;
+    }
+
+    /**
+     * Encodes the files changed by a test as a line.
+     *
+     * @param uniqueId the unique ID of the test
+     * @param changes the file changes (i.e. "created /tmp/out.txt")
+     * @return the encoded file change line
+     */
+    public static String encodeFileChanges(String uniqueId, List<String> changes) {
+        return MARKER + "\t" + FILES + "\t" + uniqueId + "\t" + String.join("\t", changes);
+    }
+
+    /**
+     * Encodes the JVM-global state changed by a test as a line.
+     *
+     * @param uniqueId the unique ID of the test
+     * @param changes the changed settings (i.e. "default time zone")
+     * @return the encoded global state line
+     */
+    public static String encodeGlobalStateChanges(String uniqueId, List<String> changes) {
+        return MARKER + "\t" + GLOBALS + "\t" + uniqueId + "\t" + String.join("\t", changes);
+    }
+
+    /**
+     * Encodes a test class quarantined after hanging or killing its forked worker as a line.
+     *
+     * @param testClass the test class (i.e. com.example.exampleTest)
+     * @param reason why the test class was quarantined
+     * @return the encoded quarantine line
+     */
+    public static String encodeQuarantine(String testClass, String reason) {
+        return MARKER + "\t" + QUARANTINE + "\t" + testClass + "\t" + reason.replace('\t', ' ');
+    }
+
+    /**
+     * Encodes a test class whose forked worker was recycled for its heap growth as a line.
+     *
+     * @param testClass the test class (i.e. com.example.exampleTest)
+     * @param reason why the worker was recycled
+     * @return the encoded recycled line
+     */
+    public static String encodeRecycled(String testClass, String reason) {
+        return MARKER + "\t" + RECYCLED + "\t" + testClass + "\t" + reason.replace('\t', ' ');
+    }
+
+    /**
+     * Checks whether a line (e.g. read from the output of a forked worker) carries an outcome.
+     *
+     * @param line the line to check
+     * @return true if the line contains an encoded outcome
+     */
+    public static boolean isOutcomeLine(String line) {
+        return line != null && line.contains(MARKER);
+    }
+
+    /**
+     * Checks whether a line carries the coverage a runner reports once it finished all its runs.
+     *
+     * @param line the line to check
+     * @return true if the line contains an encoded coverage
+     */
+    public static boolean isCoverageLine(String line) {
+        return isOutcomeLine(line) && line.startsWith(MARKER + "\t" + COVERAGE + "\t", line.indexOf(MARKER));
+    }
+
+    /**
+     * Decodes an outcome line and records it; lines without an outcome are ignored.
+     *
+     * @param line the line to decode
+     */
+    @Override
+    public synchronized void accept(String line) {
+        if (!isOutcomeLine(line)) {
+            return;
+        }
+        String[] fields = line.substring(line.indexOf(MARKER)).split("\t");
+        if (fields.length >= 4 && POLLUTION.equals(fields[1])) {
+            String[] pollution = line.substring(line.indexOf(MARKER)).split("\t", 4);
+            recordPollution(pollution[3], Arrays.asList(pollution[2].split(",")));
+            return;
+        } else if (fields.length >= 4 && FILES.equals(fields[1])) {
+            recordFileChanges(fields[2], Arrays.asList(fields).subList(3, fields.length));
+            return;
+        } else if (fields.length >= 4 && GLOBALS.equals(fields[1])) {
+            recordGlobalStateChanges(fields[2], Arrays.asList(fields).subList(3, fields.length));
+            return;
+        } else if (fields.length == 4 && QUARANTINE.equals(fields[1])) {
+            recordQuarantine(fields[2], fields[3]);
+            return;
+        } else if (fields.length == 4 && RECYCLED.equals(fields[1])) {
+            recordRecycled(fields[2], fields[3]);
+            return;
+        } else if (fields.length >= 2 && (ProgressReporter.PROGRESS.equals(fields[1]) ||
+                HeapMonitor.RECYCLE.equals(fields[1]))) {
+            // Only read by the supervisor of the forked worker
+            return;
+        } else if (fields.length >= 2 && HeapMonitor.HEAP.equals(fields[1])) {
+            // Read by HeapTelemetryRecorder
+            return;
+        } else if (fields.length == 5 && COVERAGE.equals(fields[1])) {
+            try {
+                recordCoverage(Integer.parseInt(fields[2]), Integer.parseInt(fields[3]), Integer.parseInt(fields[4]));
+            } catch (NumberFormatException e) {
+                logger.warn("Malformed coverage line: " + line);
+            }
+            return;
+        }
+        TestOutcome outcome = TestOutcome.decode(line);
+        if (outcome != null) {
+            recordOutcome(outcome.getRun(), outcome.getUniqueId(), outcome.getStatus());
+        } else {
+            logger.warn("Malformed outcome line: " + line);
+        }
+    }
+
+    /**
+     * Records the outcome of a test in one run.
+     *
+     * @param run 0 for the initial run, i for rerun #i
+     * @param uniqueId the unique ID of the test
+     * @param status one of PASSED, FAILED or OTHER
+     */
+    public synchronized void recordOutcome(int run, String uniqueId, char status) {
+        if (run == 0) {
+            testStatusInFirstRun.put(uniqueId, status == PASSED);
+        } else if (Boolean.TRUE.equals(testStatusInFirstRun.get(uniqueId))) {
+            String testMethod = ClassLoaderIsolatedTestRunner.extractTestMethod(uniqueId);
+            rerunsExecuted.merge(testMethod, 1, Integer::sum);
+            if (status == FAILED) {
+                // Test passed in the first iteration but failed in later iteration
+                flakyTests.merge(testMethod, 1, Integer::sum);
+            }
+        }
+    }
+
+    /**
+     * Records the static fields changed by a test.
+     *
+     * @param uniqueId the unique ID of the test
+     * @param fields the changed static fields
+     */
+    public synchronized void recordPollution(String uniqueId, List<String> fields) {
+        record(pollutedFields, uniqueId, fields);
+    }
+
+    /**
+     * Records the files changed by a test.
+     *
+     * @param uniqueId the unique ID of the test
+     * @param changes the file changes
+     */
+    public synchronized void recordFileChanges(String uniqueId, List<String> changes) {
+        record(changedFiles, uniqueId, changes);
+    }
+
+    /**
+     * Records the JVM-global state changed by a test.
+     *
+     * @param uniqueId the unique ID of the test
+     * @param changes the changed settings
+     */
+    public synchronized void recordGlobalStateChanges(String uniqueId, List<String> changes) {
+        record(changedGlobalState, uniqueId, changes);
+    }
+
+    private static void record(Map<String, Set<String>> changesByTest, String uniqueId, List<String> changes) {
+        String testMethod = ClassLoaderIsolatedTestRunner.extractTestMethod(uniqueId);
+        if (testMethod == null || testMethod.isEmpty()) {
+            testMethod = uniqueId;
+        }
+        changesByTest.computeIfAbsent(testMethod, k -> new TreeSet<>()).addAll(changes);
+    }
+
+    /**
+     * Ranks the tests by the number of static fields they changed in the initial run.
+     *
+     * @return map from test method to the static fields it changed, most polluting tests first
+     */
+    public synchronized Map<String, Set<String>> getPollutingTests() {
+        return rank(pollutedFields);
+    }
+
+    /**
+     * Ranks the tests by the number of files they changed in the initial run.
+     *
+     * @return map from test method to the files it changed, most polluting tests first
+     */
+    public synchronized Map<String, Set<String>> getFileChangingTests() {
+        return rank(changedFiles);
+    }
+
+    /**
+     * Ranks the tests by the number of JVM-global settings they changed in the initial run.
+     *
+     * @return map from test method to the settings it changed, most polluting tests first
+     */
+    public synchronized Map<String, Set<String>> getGlobalStateChangingTests() {
+        return rank(changedGlobalState);
+    }
+
+    private static Map<String, Set<String>> rank(Map<String, Set<String>> changes) {
+        List<Map.Entry<String, Set<String>>> entries = new ArrayList<>(changes.entrySet());
+        // Stable, so that ties keep their execution order
+        entries.sort((a, b) -> Integer.compare(b.getValue().size(), a.getValue().size()));
+        Map<String, Set<String>> ranked = new LinkedHashMap<>();
+        for (Map.Entry<String, Set<String>> entry : entries) {
+            ranked.put(entry.getKey(), entry.getValue());
+        }
+        return ranked;
+    }
+
+    /**
+     * Records a test class quarantined after hanging or killing its forked worker.
+     *
+     * @param testClass the test class
+     * @param reason why the test class was quarantined
+     */
+    public synchronized void recordQuarantine(String testClass, String reason) {
+        quarantinedClasses.putIfAbsent(testClass, reason);
+    }
+
+    /**
+     * Retrieves the test classes quarantined after hanging or killing their forked worker.
+     *
+     * @return map from test class to why it was quarantined, in the order they were quarantined
+     */
+    public synchronized Map<String, String> getQuarantinedClasses() {
+        return new LinkedHashMap<>(quarantinedClasses);
+    }
+
+    /**
+     * Records a test class whose later reruns ran in a fresh forked worker, the previous one having been recycled
+     * for its heap growth.
+     *
+     * @param testClass the test class
+     * @param reason why the worker was recycled
+     */
+    public synchronized void recordRecycled(String testClass, String reason) {
+        recycledClasses.putIfAbsent(testClass, reason);
+    }
+
+    /**
+     * Retrieves the test classes whose later reruns ran in a fresh forked worker.
+     *
+     * @return map from test class to why its worker was recycled, in the order they were recycled
+     */
+    public synchronized Map<String, String> getRecycledClasses() {
+        return new LinkedHashMap<>(recycledClasses);
+    }
+
+    /**
+     * Records how much of its share of the tests a runner covered.
+     *
+     * @param classesRun the number of test classes given an initial run
+     * @param classesTotal the number of test classes the runner was given
+     * @param rerunsCovered the number of reruns after which all results of the runner are decided
+     */
+    public synchronized void recordCoverage(int classesRun, int classesTotal, int rerunsCovered) {
+        this.classesRun += classesRun;
+        this.classesTotal += classesTotal;
+        this.rerunsCovered = Math.min(this.rerunsCovered, rerunsCovered);
+    }
+
+    /**
+     * Checks whether all test classes got their initial run and all reruns.
+     *
+     * @param numReruns user-configured number of times to rerun the tests
+     * @return false if some runs were skipped (e.g. when running out of time budget)
+     */
+    public synchronized boolean isCoverageComplete(int numReruns) {
+        return classesRun >= classesTotal && (rerunsCovered == Integer.MAX_VALUE || rerunsCovered >= numReruns);
+    }
+
+    /**
+     * Gets the number of reruns all tests were given (or decided without).
+     *
+     * @param numReruns user-configured number of times to rerun the tests
+     * @return the number of reruns covered by all runners
+     */
+    public synchronized int getRerunsCovered(int numReruns) {
+        return Math.min(numReruns, rerunsCovered);
+    }
+
+    /**
+     * Gets the number of reruns a test is judged on: all reruns, or fewer if it was not given all of them.
+     */
+    private int getRerunsJudged(String testMethod, int numReruns) {
+        return Math.min(numReruns, rerunsExecuted.getOrDefault(testMethod, numReruns));
+    }
+
+    /**
+     * Retrieves the number of failed reruns of each test that passed in the initial run.
+     *
+     * @return map from test method (i.e. com.example.exampleTest#TestSomething) to the number of failed reruns
+     */
+    public synchronized Map<String, Integer> getFlakyTests() {
+        return new LinkedHashMap<>(flakyTests);
+    }
+
+    /**
+     * Retrieves the tests that passed in the initial run but failed in all reruns (all the reruns they were given,
+     * if they were not given all of them).
+     *
+     * @param numReruns user-configured number of times to rerun the tests
+     * @return map from test method to the number of failed reruns
+     */
+    public synchronized Map<String, Integer> getNIOTests(int numReruns) {
+        Map<String, Integer> NIOTests = new LinkedHashMap<>();
+        for (Map.Entry<String, Integer> entry : flakyTests.entrySet()) {
+            if (entry.getValue() >= getRerunsJudged(entry.getKey(), numReruns)) {
+                NIOTests.put(entry.getKey(), entry.getValue());
+            }
+        }
+        return NIOTests;
+    }
+
+    /**
+     * Retrieves the status of a test method in the initial run.
+     *
+     * @param testMethod the test method (i.e. com.example.exampleTest#TestSomething)
+     * @return true if any invocation of the method passed, false if all failed, null if it did not run
+     */
+    public synchronized Boolean getFirstRunStatus(String testMethod) {
+        Boolean status = null;
+        for (Map.Entry<String, Boolean> entry : testStatusInFirstRun.entrySet()) {
+            if (testMethod.equals(ClassLoaderIsolatedTestRunner.extractTestMethod(entry.getKey()))) {
+                status = Boolean.TRUE.equals(status) || entry.getValue();
+            }
+        }
+        return status;
+    }
+
+    /**
+     * Retrieves the status of every test method in the initial run.
+     *
+     * @return map from test method (i.e. com.example.exampleTest#TestSomething) to whether all its invocations passed
+     */
+    public synchronized Map<String, Boolean> getFirstRunResults() {
+        Map<String, Boolean> results = new HashMap<>();
+        for (Map.Entry<String, Boolean> entry : testStatusInFirstRun.entrySet()) {
+            String testMethod = ClassLoaderIsolatedTestRunner.extractTestMethod(entry.getKey());
+            if (testMethod != null && testMethod.contains("#")) {
+                results.merge(testMethod, entry.getValue(), Boolean::logicalAnd);
+            }
+        }
+        return results;
+    }
+
+    /**
+     * Logs the final results (possible NIO tests and non-deterministic flaky tests).
+     *
+     * @param numReruns user-configured number of times to rerun the tests
+     */
+    public synchronized void logFinalResults(int numReruns) {
+        Map<String, Integer> NIOTests = getNIOTests(numReruns);
+        Map<String, Integer> NDTests = new LinkedHashMap<>();
+        for (Map.Entry<String, Integer> entry : flakyTests.entrySet()) {
+            // Check if a test is not failing in all reruns
+            if (!NIOTests.containsKey(entry.getKey())) {
+                NDTests.put(entry.getKey(), entry.getValue());
+            }
+        }
+        logger.info("");
+        logger.info("=========================Final Results=========================");
+        logger.info("");
+        if (flakyTests.isEmpty()) {
+            logger.info("No Flaky Tests Found");
+        } else {
+            if (!NIOTests.isEmpty()) {
+                logger.error("Number of Possible NIO Test(s) Found: " + NIOTests.size());
+                for (Map.Entry<String, Integer> NIOEntry : NIOTests.entrySet()) {
+                    logger.error(NIOEntry.getKey() + " (passed in the initial run but failed in " +
+                        NIOEntry.getValue() + " out of " + getRerunsJudged(NIOEntry.getKey(), numReruns) + " reruns)" +
+                        getRecycledFlag(NIOEntry.getKey()));
+                }
+            }
+            if (!NDTests.isEmpty()) {
+                logger.warn("Number of Non-deterministic Flaky Test(s) Found: " + NDTests.size());
+                for (Map.Entry<String, Integer> NDEntry : NDTests.entrySet()) {
+                    logger.warn(NDEntry.getKey() + " (passed in the initial run but failed in " +
+                        NDEntry.getValue() + " out of " + getRerunsJudged(NDEntry.getKey(), numReruns) + " reruns)" +
+                        getRecycledFlag(NDEntry.getKey()));
+                }
+            }
+        }
+        if (!quarantinedClasses.isEmpty()) {
+            logger.warn("Number of Quarantined Test Class(es): " + quarantinedClasses.size() +
+                " (outcomes of their completed runs are kept above)");
+            for (Map.Entry<String, String> entry : quarantinedClasses.entrySet()) {
+                logger.warn(entry.getKey() + " (" + entry.getValue() + ")");
+            }
+        }
+        if (!recycledClasses.isEmpty()) {
+            logger.warn("Number of Test Class(es) Rerun in Recycled Workers: " + recycledClasses.size() +
+                " (their later reruns ran in a fresh worker after replaying the initial run, without the state " +
+                "left by the earlier reruns)");
+            for (Map.Entry<String, String> entry : recycledClasses.entrySet()) {
+                logger.warn(entry.getKey() + " (" + entry.getValue() + ")");
+            }
+        }
+        if (!pollutedFields.isEmpty()) {
+            logger.info("");
+            logger.info("=====================Static State Pollution=====================");
+            logger.info("");
+            Map<String, Set<String>> pollutingTests = getPollutingTests();
+            logger.warn("Number of Test(s) Changing Static Fields in the Initial Run: " + pollutingTests.size());
+            logChanges(pollutingTests, "static field(s)", NIOTests);
+        }
+        if (!changedGlobalState.isEmpty()) {
+            logger.info("");
+            logger.info("===================JVM-Global State Pollution===================");
+            logger.info("");
+            Map<String, Set<String>> globalStateChangingTests = getGlobalStateChangingTests();
+            logger.warn("Number of Test(s) Changing JVM-Global State in the Initial Run: " +
+                globalStateChangingTests.size());
+            logChanges(globalStateChangingTests, "JVM-global setting(s)", NIOTests);
+        }
+        if (!changedFiles.isEmpty()) {
+            logger.info("");
+            logger.info("=====================File System Pollution======================");
+            logger.info("");
+            Map<String, Set<String>> fileChangingTests = getFileChangingTests();
+            logger.warn("Number of Test(s) Changing Files in the Initial Run: " + fileChangingTests.size());
+            for (Map.Entry<String, Set<String>> entry : fileChangingTests.entrySet()) {
+                logger.warn(entry.getKey() + " (changed " + entry.getValue().size() + " file(s))" +
+                    (NIOTests.containsKey(entry.getKey()) ? " - possible NIO" : ""));
+                int listed = 0;
+                for (String change : entry.getValue()) {
+                    if (listed++ == MAX_LISTED_FILES) {
+                        logger.warn(FILE_CHANGE_INDENT + "...");
+                        break;
+                    }
+                    logger.warn(FILE_CHANGE_INDENT + change);
+                }
+            }
+        }
+        if (!isCoverageComplete(numReruns)) {
+            logger.info("");
+            logger.warn("Coverage incomplete: " + classesRun + " out of " + classesTotal + " test class(es) got " +
+                "their initial run, and all results are decided after " + getRerunsCovered(numReruns) + " out of " +
+                numReruns + " reruns");
+        }
+    }
+
+    /**
+     * Flags a test whose test class was rerun in a recycled worker.
+     *
+     * @param testMethod the test method (i.e. com.example.exampleTest#TestSomething)
+     * @return the flag to append to the result of the test, empty if its worker was not recycled
+     */
+    private String getRecycledFlag(String testMethod) {
+        int separator = testMethod.indexOf('#');
+        return separator > 0 && recycledClasses.containsKey(testMethod.substring(0, separator))
+            ? " - rerun in a recycled worker" : "";
+    }
+
+    /**
+     * Logs the changes of each test on one line, marking possible NIO tests.
+     *
+     * @param changesByTest map from test method to its changes, in the order to log
+     * @param kind what changed (i.e. "static field(s)")
+     * @param NIOTests the possible NIO tests
+     */
+    private static void logChanges(Map<String, Set<String>> changesByTest, String kind, Map<String, Integer> NIOTests) {
+        for (Map.Entry<String, Set<String>> entry : changesByTest.entrySet()) {
+            List<String> changes = new ArrayList<>(entry.getValue());
+            String listedChanges = String.join(", ", changes.subList(0, Math.min(changes.size(), MAX_LISTED_FIELDS))) +
+                (changes.size() > MAX_LISTED_FIELDS ? ", ..." : "");
+            logger.warn(entry.getKey() + " (changed " + changes.size() + " " + kind + ": " + listedChanges + ")" +
+                (NIOTests.containsKey(entry.getKey()) ? " - possible NIO" : ""));
+        }
+    }
+}
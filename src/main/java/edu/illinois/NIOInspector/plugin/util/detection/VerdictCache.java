@@ -0,0 +1,493 @@
+package edu.illinois.NIOInspector.plugin.util.detection;
+
+import edu.illinois.NIOInspector.plugin.util.analysis.ClassFileInfo;
+import edu.illinois.NIOInspector.plugin.util.analysis.ClassFileParser;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+
+/**
+ * Persisted cache of the last verdict of each test class, keyed by a hash of the bytecode of the class and its
+ * superclasses, and a fingerprint of the rest of the classpath, including the resources and the helper classes of
+ * the test output directory. Classes whose hashes still match an idempotent verdict can be skipped by later reruns.
+ */
+public class VerdictCache {
+
+    private static final Logger logger = LoggerFactory.getLogger(VerdictCache.class);
+
+    /**
+     * Default location of the cache, next to the time-named log directories
+     */
+    public static final String DEFAULT_CACHE_FILE = ".NIOInspector" + File.separator + "cache" + File.separator +
+        "verdicts.properties";
+
+    /**
+     * Verdict of a test class
+     */
+    public enum Verdict {
+        IDEMPOTENT, NIO, ND
+    }
+
+    private final File cacheFile;
+
+    private final ClassLoader classLoader;
+
+    private static final List<String> TEST_METHOD_ANNOTATIONS = Arrays.asList(
+        "Lorg/junit/Test;", "Lorg/junit/jupiter/api/Test;", "Lorg/junit/jupiter/api/RepeatedTest;",
+        "Lorg/junit/jupiter/api/TestFactory;", "Lorg/junit/jupiter/api/TestTemplate;",
+        "Lorg/junit/jupiter/params/ParameterizedTest;");
+
+    private static final List<String> TEST_CLASS_ANNOTATIONS = Arrays.asList(
+        "Lorg/junit/runner/RunWith;", "Lorg/junit/jupiter/api/Nested;");
+
+    private static final String JUNIT3_TEST_CASE = "junit/framework/TestCase";
+
+    private final String classpathHash;
+
+    private final File testDirectory;
+
+    // Fingerprint of the test output directory without the test classes, computed for the first list of test classes
+    private String testOutputHash;
+
+    // Cached entries: class name -> "verdict,numReruns,classHash,classpathHash"
+    private final Properties entries = new Properties();
+
+    // Hashes of the test classes computed in this run
+    private final Map<String, String> classHashes = new HashMap<>();
+
+    /**
+     * Loads the cache (if present) and fingerprints the classpath of the given class loader.
+     *
+     * @param cacheFile the file the cache is persisted to
+     * @param classLoader the class loader loaded with test classes and all dependencies
+     * @param testOutputDirectory the directory of the test classes, which are hashed per class instead
+     */
+    public VerdictCache(File cacheFile, ClassLoader classLoader, String testOutputDirectory) {
+        this.cacheFile = cacheFile;
+        this.classLoader = classLoader;
+        this.classpathHash = hashClasspath(classLoader, testOutputDirectory);
+        this.testDirectory = testOutputDirectory == null ? null : new File(testOutputDirectory).getAbsoluteFile();
+        if (cacheFile.isFile()) {
+            try (InputStream in = new FileInputStream(cacheFile)) {
+                entries.load(in);
+            } catch (IOException e) {
+                logger.warn("Ignoring unreadable verdict cache " + cacheFile.getPath() + ": " + e);
+                entries.clear();
+            }
+        }
+    }
+
+    /**
+     * Splits off the test classes whose bytecode and classpath are unchanged since an idempotent verdict
+     * obtained with at least as many reruns.
+     *
+     * @param testClasses the list of test classes to run
+     * @param numReruns user-configured number of times to rerun the tests
+     * @return the test classes that still need to run
+     */
+    public List<String> filterUnchanged(List<String> testClasses, int numReruns) {
+        List<String> classesToRun = new ArrayList<>();
+        List<String> skippedClasses = new ArrayList<>();
+        String classpathHash = getClasspathHash(testClasses);
+        for (String testClass : testClasses) {
+            String[] entry = entries.getProperty(testClass, "").split(",");
+            String classHash = getClassHash(testClass);
+            boolean unchanged = entry.length == 4 && Verdict.IDEMPOTENT.name().equals(entry[0]) &&
+                parseInt(entry[1]) >= numReruns && classHash != null && classHash.equals(entry[2]) &&
+                classpathHash.equals(entry[3]);
+            if (unchanged) {
+                skippedClasses.add(testClass);
+            } else {
+                classesToRun.add(testClass);
+            }
+        }
+        if (!skippedClasses.isEmpty()) {
+            logger.info("Skipping " + skippedClasses.size() + " unchanged test class(es) found idempotent " +
+                "by a previous rerun (use -DfullRun=true to run them)");
+        }
+        return classesToRun;
+    }
+
+    /**
+     * Records the verdicts of the test classes run in this run and persists the cache.
+     * Classes with tests that failed in the initial run, and quarantined classes, are dropped from the cache, while
+     * classes that did not get to run (e.g. when running out of time budget) keep their previous entry.
+     *
+     * @param testClasses the test classes run in this run
+     * @param aggregator the outcomes of all runs
+     * @param numReruns the number of reruns all test classes were given
+     */
+    public void update(List<String> testClasses, TestOutcomeAggregator aggregator, int numReruns) {
+        Map<String, Verdict> verdicts = getClassVerdicts(aggregator, numReruns);
+        Set<String> classesRun = new HashSet<>();
+        for (String testMethod : aggregator.getFirstRunResults().keySet()) {
+            classesRun.add(testMethod.substring(0, testMethod.indexOf('#')));
+        }
+        Set<String> quarantinedClasses = aggregator.getQuarantinedClasses().keySet();
+        String classpathHash = getClasspathHash(testClasses);
+        for (String testClass : testClasses) {
+            if (quarantinedClasses.contains(testClass)) {
+                // Hung or killed its worker: never skipped by a later rerun
+                entries.remove(testClass);
+                continue;
+            }
+            if (!classesRun.contains(testClass)) {
+                continue;
+            }
+            Verdict verdict = verdicts.get(testClass);
+            String classHash = getClassHash(testClass);
+            if (verdict == null || classHash == null) {
+                entries.remove(testClass);
+            } else {
+                entries.setProperty(testClass, verdict.name() + "," + numReruns + "," + classHash + "," +
+                    classpathHash);
+            }
+        }
+        try {
+            File directory = cacheFile.getAbsoluteFile().getParentFile();
+            if (!directory.isDirectory() && !directory.mkdirs()) {
+                throw new IOException("Failed to create directory: " + directory.getPath());
+            }
+            // Write to a temporary file first, so that concurrent or interrupted runs never see a partial cache
+            File tmpFile = new File(directory, cacheFile.getName() + ".tmp");
+            try (OutputStream out = new FileOutputStream(tmpFile)) {
+                entries.store(out, "NIOInspector verdicts: verdict,numReruns,classHash,classpathHash");
+            }
+            Files.move(tmpFile.toPath(), cacheFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            logger.warn("Failed to write verdict cache " + cacheFile.getPath() + ": " + e);
+        }
+    }
+
+    /**
+     * Derives the verdict of each test class from the verdicts of its test methods.
+     *
+     * @param aggregator the outcomes of all runs
+     * @param numReruns user-configured number of times to rerun the tests
+     * @return map from test class to its verdict, for classes whose tests all passed in the initial run
+     */
+    static Map<String, Verdict> getClassVerdicts(TestOutcomeAggregator aggregator, int numReruns) {
+        Map<String, Verdict> verdicts = new HashMap<>();
+        List<String> failingClasses = new ArrayList<>();
+        for (Map.Entry<String, Boolean> entry : aggregator.getFirstRunResults().entrySet()) {
+            String testClass = entry.getKey().substring(0, entry.getKey().indexOf('#'));
+            if (!entry.getValue()) {
+                failingClasses.add(testClass);
+            }
+            verdicts.putIfAbsent(testClass, Verdict.IDEMPOTENT);
+        }
+        Map<String, Integer> NIOTests = aggregator.getNIOTests(numReruns);
+        for (String flakyTest : aggregator.getFlakyTests().keySet()) {
+            String testClass = flakyTest.substring(0, flakyTest.indexOf('#'));
+            if (NIOTests.containsKey(flakyTest)) {
+                verdicts.put(testClass, Verdict.NIO);
+            } else if (verdicts.get(testClass) != Verdict.NIO) {
+                verdicts.put(testClass, Verdict.ND);
+            }
+        }
+        for (String testClass : failingClasses) {
+            verdicts.remove(testClass);
+        }
+        return verdicts;
+    }
+
+    /**
+     * Combines the fingerprint of the classpath with the fingerprint of the test output directory. The latter is
+     * computed once, for the test classes first given (i.e. all the test classes of the rerun), so that the verdicts
+     * recorded for the classes actually run match the ones looked up.
+     *
+     * @param testClasses the test classes hashed per class
+     * @return the fingerprint
+     */
+    private String getClasspathHash(Collection<String> testClasses) {
+        if (testOutputHash == null) {
+            testOutputHash = hashTestOutput(testDirectory, testClasses);
+        }
+        return toHex(newDigest().digest((classpathHash + ":" + testOutputHash).getBytes(StandardCharsets.UTF_8)));
+    }
+
+    /**
+     * Hashes the bytecode of a test class and of its superclasses (e.g. an abstract base test class), including
+     * their nested classes when loaded from a directory.
+     *
+     * @param testClass the name of the test class
+     * @return the hash, or null if the class file is not found
+     */
+    private String getClassHash(String testClass) {
+        if (classHashes.containsKey(testClass)) {
+            return classHashes.get(testClass);
+        }
+        String hash = null;
+        try {
+            MessageDigest digest = newDigest();
+            Set<String> hashedClasses = new HashSet<>();
+            boolean found = false;
+            for (String className = testClass; className != null && hashedClasses.add(className); ) {
+                URL resource = classLoader.getResource(className.replace('.', '/') + ".class");
+                if (resource == null) {
+                    break;
+                }
+                found = true;
+                digest.update(className.getBytes(StandardCharsets.UTF_8));
+                byte[] bytecode = hashClassFiles(resource, digest);
+                className = getSuperclassName(bytecode);
+            }
+            hash = found ? toHex(digest.digest()) : null;
+        } catch (IOException | URISyntaxException | RuntimeException e) {
+            logger.warn("Failed to hash " + testClass + ": " + e);
+        }
+        classHashes.put(testClass, hash);
+        return hash;
+    }
+
+    /**
+     * Adds the bytecode of a class, and of its nested classes when loaded from a directory, to the digest.
+     *
+     * @param resource the class file
+     * @param digest the digest to update
+     * @return the bytecode of the class
+     */
+    private static byte[] hashClassFiles(URL resource, MessageDigest digest) throws IOException, URISyntaxException {
+        if ("file".equals(resource.getProtocol())) {
+            File classFile = new File(resource.toURI());
+            String nestedPrefix = classFile.getName().replace(".class", "$");
+            File[] classFiles = classFile.getParentFile().listFiles(file -> file.equals(classFile) ||
+                (file.getName().startsWith(nestedPrefix) && file.getName().endsWith(".class")));
+            Arrays.sort(classFiles);
+            for (File file : classFiles) {
+                digest.update(file.getName().getBytes(StandardCharsets.UTF_8));
+                digest.update(Files.readAllBytes(file.toPath()));
+            }
+            return Files.readAllBytes(classFile.toPath());
+        }
+        try (InputStream in = resource.openStream()) {
+            ByteArrayOutputStream bytecode = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                digest.update(buffer, 0, read);
+                bytecode.write(buffer, 0, read);
+            }
+            return bytecode.toByteArray();
+        }
+    }
+
+    /**
+     * Reads the superclass of a class from its bytecode.
+     *
+     * @param bytecode the bytecode of the class
+     * @return the binary name of the superclass, or null for java.lang.Object or unparseable bytecode
+     */
+    private static String getSuperclassName(byte[] bytecode) {
+        ClassFileInfo info;
+        try {
+            info = ClassFileParser.parse(new ByteArrayInputStream(bytecode));
+        } catch (IOException | RuntimeException e) {
+            return null;
+        }
+        String superName = info.getSuperName();
+        return superName == null || "java/lang/Object".equals(superName) ? null : superName.replace('/', '.');
+    }
+
+    /**
+     * Fingerprints the test output directory, except for the class files of the test classes and their nested
+     * classes, which are hashed per class: the bytecode of the other classes (e.g. shared helpers and fixtures) is
+     * hashed, and the other files (e.g. test resources) are fingerprinted by size and modification time. Since every
+     * class file of the directory may be listed (see RerunMojo), only the listed classes declaring or inheriting
+     * tests count as test classes.
+     *
+     * @param testDirectory the directory of the test classes, or null
+     * @param testClasses the classes to rerun
+     * @return the fingerprint
+     */
+    static String hashTestOutput(File testDirectory, Collection<String> testClasses) {
+        MessageDigest digest = newDigest();
+        if (testDirectory != null) {
+            Set<String> testClassFiles = new HashSet<>();
+            Map<String, Boolean> declaresTests = new HashMap<>();
+            for (String testClass : testClasses) {
+                String className = testClass.replace('.', '/');
+                if (declaresTests(testDirectory, className, declaresTests)) {
+                    testClassFiles.add(className);
+                }
+            }
+            hashTestOutput(testDirectory, "", testClassFiles, digest);
+        }
+        return toHex(digest.digest());
+    }
+
+    /**
+     * Checks whether a class of the test output directory declares tests, or inherits them from a superclass of
+     * that directory: JUnit 4 or Jupiter test methods, a JUnit 4 runner, or a JUnit 3 test case.
+     *
+     * @param testDirectory the directory of the test classes
+     * @param className the internal name of the class
+     * @param declaresTests the classes checked so far
+     * @return true if the class declares tests, or cannot be parsed
+     */
+    private static boolean declaresTests(File testDirectory, String className, Map<String, Boolean> declaresTests) {
+        Boolean cached = declaresTests.get(className);
+        if (cached != null) {
+            return cached;
+        }
+        // Guards against cycles, e.g. in malformed bytecode
+        declaresTests.put(className, false);
+        File classFile = new File(testDirectory, className + ".class");
+        if (!classFile.isFile()) {
+            return false;
+        }
+        boolean result;
+        try (InputStream in = new FileInputStream(classFile)) {
+            ClassFileInfo info = ClassFileParser.parse(in);
+            result = JUNIT3_TEST_CASE.equals(info.getSuperName());
+            for (ClassFileInfo.Annotation annotation : info.getAnnotations()) {
+                result |= TEST_CLASS_ANNOTATIONS.contains(annotation.getDescriptor());
+            }
+            for (ClassFileInfo.Method method : info.getMethods()) {
+                result |= method.isAnnotatedWith(TEST_METHOD_ANNOTATIONS);
+            }
+            if (!result && info.getSuperName() != null) {
+                result = declaresTests(testDirectory, info.getSuperName(), declaresTests);
+            }
+        } catch (IOException | RuntimeException e) {
+            // Hashed per class, as before this check
+            result = true;
+        }
+        declaresTests.put(className, result);
+        return result;
+    }
+
+    private static void hashTestOutput(File file, String path, Set<String> testClassFiles, MessageDigest digest) {
+        if (file.isDirectory()) {
+            File[] children = file.listFiles();
+            if (children != null) {
+                Arrays.sort(children);
+                for (File child : children) {
+                    hashTestOutput(child, path.isEmpty() ? child.getName() : path + "/" + child.getName(),
+                        testClassFiles, digest);
+                }
+            }
+        } else if (file.isFile() && path.endsWith(".class")) {
+            // A test class, or a class nested in one
+            String className = path.substring(0, path.length() - ".class".length());
+            int simpleName = className.lastIndexOf('/') + 1;
+            for (int end = className.length(); end > simpleName; end = className.lastIndexOf('$', end - 1)) {
+                if (testClassFiles.contains(className.substring(0, end))) {
+                    return;
+                }
+            }
+            try {
+                digest.update((path + "\n").getBytes(StandardCharsets.UTF_8));
+                digest.update(Files.readAllBytes(file.toPath()));
+            } catch (IOException e) {
+                // Unreadable: fall back to its size and modification time
+                fingerprint(file, path, digest);
+            }
+        } else {
+            fingerprint(file, path, digest);
+        }
+    }
+
+    /**
+     * Fingerprints the classpath by the URLs, sizes and modification times of all its entries, so that
+     * a change to the main classes or to any dependency invalidates all cached verdicts.
+     *
+     * @param classLoader the class loader loaded with test classes and all dependencies
+     * @param testOutputDirectory the directory of the test classes, which is left out
+     * @return the fingerprint
+     */
+    static String hashClasspath(ClassLoader classLoader, String testOutputDirectory) {
+        MessageDigest digest = newDigest();
+        File testDirectory = testOutputDirectory == null ? null : new File(testOutputDirectory).getAbsoluteFile();
+        // Shared jars (see IsolatedURLClassLoader.create) are in the parent of the class loader
+        List<URL> urls = new ArrayList<>();
+        for (ClassLoader loader = classLoader; loader instanceof URLClassLoader; loader = loader.getParent()) {
+            urls.addAll(0, Arrays.asList(((URLClassLoader) loader).getURLs()));
+        }
+        for (URL url : urls) {
+            digest.update(url.toExternalForm().getBytes(StandardCharsets.UTF_8));
+            File file;
+            try {
+                file = new File(url.toURI()).getAbsoluteFile();
+            } catch (URISyntaxException | IllegalArgumentException e) {
+                continue;
+            }
+            if (!file.equals(testDirectory)) {
+                fingerprint(file, "", digest);
+            }
+        }
+        return toHex(digest.digest());
+    }
+
+    /**
+     * Adds the path, size and modification time of a file, or of all files under a directory, to the digest.
+     *
+     * @param file the file or directory
+     * @param path the path of the file relative to the classpath entry
+     * @param digest the digest to update
+     */
+    private static void fingerprint(File file, String path, MessageDigest digest) {
+        if (file.isDirectory()) {
+            File[] children = file.listFiles();
+            if (children != null) {
+                Arrays.sort(children);
+                for (File child : children) {
+                    fingerprint(child, path + "/" + child.getName(), digest);
+                }
+            }
+        } else if (file.isFile()) {
+            digest.update((path + ":" + file.length() + ":" + file.lastModified() + "\n")
+                .getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    private static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+
+    private static int parseInt(String value) {
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    private static String toHex(byte[] bytes) {
+        StringBuilder hex = new StringBuilder();
+        for (byte b : bytes) {
+            hex.append(String.format("%02x", b));
+        }
+        return hex.toString();
+    }
+}
@@ -0,0 +1,283 @@
+package edu.illinois.NIOInspector.plugin.util.detection;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Supervises the successive forked workers of one shard (see ForkedShardExecutor). Reads the progress lines of the
+ * current worker (see ProgressReporter) to know which test classes and tests it is running, kills it once a test or
+ * a test class runs longer than its timeout, and when the worker is killed or dies (e.g. a test calls System.exit),
+ * quarantines the test classes it was running so that a respawned worker can run the rest of the shard. A worker
+ * stopping after a rerun because its heap grew past the limit (see HeapMonitor) is recycled: a fresh worker runs the
+ * remaining reruns, and the test classes of the shard are flagged.
+ * A respawned worker starts over from the initial run, so that the reruns see the state left by earlier runs; its
+ * outcomes already reported by earlier workers are dropped instead of being reported twice.
+ */
+class WorkerSupervisor implements Consumer<String> {
+
+    private static final Logger logger = LoggerFactory.getLogger(WorkerSupervisor.class);
+
+    private final String shardName;
+
+    private final long testTimeoutNanos;
+
+    private final long classTimeoutNanos;
+
+    private final Consumer<String> outcomeSink;
+
+    // Worker of the current attempt
+    private Process worker;
+
+    // Start times (System.nanoTime) of the test classes and tests running in the current worker, by unique ID
+    private final Map<String, ProgressReporter.Progress> running = new LinkedHashMap<>();
+    private final Map<String, Long> startTimes = new LinkedHashMap<>();
+
+    // Run the current worker is in, or -1 before its first test class starts
+    private int currentRun = -1;
+
+    // Whether the current worker reported its coverage, i.e. finished all its runs
+    private boolean completed;
+
+    // Why the current worker was killed, and the test classes it was killed for; null while it is not killed
+    private String killReason;
+    private final Set<String> killedClasses = new LinkedHashSet<>();
+
+    // Last rerun of the current worker if it stopped for its heap growth, and the growth (in bytes); -1 otherwise
+    private int recycledRun = -1;
+    private long recycledHeapGrowth;
+
+    // Outcomes of the runs before this one are all reported by earlier workers
+    private int replayedRuns;
+
+    // Latest run with reported outcomes, and the unique IDs of its reported tests
+    private int reportedRun = -1;
+    private final Set<String> reportedTests = new HashSet<>();
+
+    /**
+     * Creates a supervisor of the workers of one shard.
+     *
+     * @param shardName the name of the shard (i.e. shard-0)
+     * @param testTimeoutMillis the time after which a running test is considered hung, or 0 for no timeout
+     * @param classTimeoutMillis the time after which a test class running in one run is considered hung, or 0 for
+     *                           no timeout
+     * @param outcomeSink the consumer of the outcome lines of all shards
+     */
+    WorkerSupervisor(String shardName, long testTimeoutMillis, long classTimeoutMillis, Consumer<String> outcomeSink) {
+        this.shardName = shardName;
+        this.testTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(testTimeoutMillis);
+        this.classTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(classTimeoutMillis);
+        this.outcomeSink = outcomeSink;
+    }
+
+    /**
+     * Gets how often the timeouts are checked: often enough to kill a hung worker within a tenth of the shortest
+     * timeout, but at most every 10 ms.
+     *
+     * @param testTimeoutMillis the test timeout, or 0 for none
+     * @param classTimeoutMillis the test class timeout, or 0 for none
+     * @return the interval between two checks in milliseconds
+     */
+    static long getCheckInterval(long testTimeoutMillis, long classTimeoutMillis) {
+        long shortestTimeout = Long.MAX_VALUE;
+        for (long timeout : new long[] { testTimeoutMillis, classTimeoutMillis }) {
+            if (timeout > 0) {
+                shortestTimeout = Math.min(shortestTimeout, timeout);
+            }
+        }
+        return Math.max(10, Math.min(1000, shortestTimeout / 10));
+    }
+
+    /**
+     * Starts supervising a new worker of the shard.
+     *
+     * @param worker the worker process
+     */
+    synchronized void startAttempt(Process worker) {
+        this.worker = worker;
+        running.clear();
+        startTimes.clear();
+        currentRun = -1;
+        completed = false;
+        killReason = null;
+        killedClasses.clear();
+        recycledRun = -1;
+    }
+
+    /**
+     * Reads a line of the current worker: progress lines are tracked, other lines are passed to the outcome sink
+     * unless an earlier worker already reported them.
+     *
+     * @param line the outcome or progress line
+     */
+    @Override
+    public synchronized void accept(String line) {
+        ProgressReporter.Progress progress = ProgressReporter.decode(line);
+        if (progress != null) {
+            if (progress.started) {
+                running.put(progress.uniqueId, progress);
+                startTimes.put(progress.uniqueId, System.nanoTime());
+                currentRun = Math.max(currentRun, progress.run);
+            } else {
+                running.remove(progress.uniqueId);
+                startTimes.remove(progress.uniqueId);
+            }
+            return;
+        }
+        long[] recycle = HeapMonitor.decodeRecycle(line);
+        if (recycle != null) {
+            recycledRun = (int) recycle[0];
+            recycledHeapGrowth = recycle[1];
+            return;
+        }
+
+        TestOutcome outcome = TestOutcome.decode(line);
+        if (outcome != null) {
+            if (outcome.getRun() < replayedRuns) {
+                return;
+            }
+            if (outcome.getRun() > reportedRun) {
+                reportedRun = outcome.getRun();
+                reportedTests.clear();
+            }
+            if (outcome.getRun() == reportedRun && !reportedTests.add(outcome.getUniqueId())) {
+                return;
+            }
+        } else if (TestOutcomeAggregator.isCoverageLine(line)) {
+            completed = true;
+        } else if (replayedRuns > 0 && HeapMonitor.decode(line) == null) {
+            // State changes are reported once the initial run ends, which an earlier worker got past; heap samples
+            // are kept, being labeled by worker
+            return;
+        }
+        synchronized (outcomeSink) {
+            outcomeSink.accept(line);
+        }
+    }
+
+    /**
+     * Kills the current worker if a test or test class it is running exceeded its timeout.
+     */
+    synchronized void checkTimeouts() {
+        if (worker == null || killReason != null) {
+            return;
+        }
+        long now = System.nanoTime();
+        for (Map.Entry<String, ProgressReporter.Progress> entry : running.entrySet()) {
+            ProgressReporter.Progress progress = entry.getValue();
+            long timeoutNanos = progress.testClass ? classTimeoutNanos : testTimeoutNanos;
+            if (timeoutNanos <= 0 || now - startTimes.get(entry.getKey()) <= timeoutNanos) {
+                continue;
+            }
+            String name = progress.testClass ? progress.className : getTestName(progress.uniqueId);
+            killReason = (progress.testClass ? "ran" : "its test " + name + " ran") + " longer than the " +
+                (progress.testClass ? "class" : "test") + " timeout of " + TimeUnit.NANOSECONDS.toMillis(timeoutNanos) +
+                " ms in " + getRunName(progress.run);
+            killedClasses.add(progress.className);
+            logger.warn(name + " timed out in " + getRunName(progress.run) + ", killing the worker of " + shardName);
+            worker.destroyForcibly();
+            return;
+        }
+    }
+
+    /**
+     * Checks whether the current worker finished all its runs.
+     *
+     * @return true if the worker reported its coverage without being killed
+     */
+    synchronized boolean isCompleted() {
+        return completed && killReason == null;
+    }
+
+    /**
+     * Quarantines the test classes the current worker was killed for, or was running when it died, reporting them
+     * to the outcome sink. Outcomes of the runs the worker got past are not reported again by the next worker.
+     *
+     * @param exitCode the exit code of the worker
+     * @return the quarantined test classes, empty if the worker died outside of any test class
+     */
+    synchronized List<String> quarantine(int exitCode) {
+        Set<String> quarantinedClasses = new LinkedHashSet<>(killedClasses);
+        String reason = killReason;
+        if (reason == null) {
+            for (ProgressReporter.Progress progress : running.values()) {
+                quarantinedClasses.add(progress.className);
+            }
+            reason = "its worker exited with code " + exitCode + " while it was running in " +
+                getRunName(Math.max(currentRun, 0));
+        }
+        if (!quarantinedClasses.isEmpty()) {
+            replayedRuns = Math.max(replayedRuns, currentRun);
+            for (String testClass : quarantinedClasses) {
+                synchronized (outcomeSink) {
+                    outcomeSink.accept(TestOutcomeAggregator.encodeQuarantine(testClass, reason));
+                }
+            }
+        }
+        return new ArrayList<>(quarantinedClasses);
+    }
+
+    /**
+     * Checks whether the current worker stopped after a rerun for its heap growth.
+     *
+     * @return true if the worker is to be recycled
+     */
+    synchronized boolean isRecycled() {
+        return recycledRun > 0 && !completed && killReason == null;
+    }
+
+    /**
+     * Flags the test classes of the current worker, which stopped for its heap growth, reporting them to the
+     * outcome sink. Outcomes of the runs the worker got past are not reported again by the next worker.
+     *
+     * @param testClasses the test classes run by the worker
+     * @return the first rerun the next worker executes after the initial run
+     */
+    synchronized int recycle(List<String> testClasses) {
+        String reason = "its worker was recycled after rerun #" + recycledRun + ", the heap it retained having " +
+            "grown by " + HeapMonitor.formatMegabytes(recycledHeapGrowth) + " since the initial run";
+        for (String testClass : testClasses) {
+            synchronized (outcomeSink) {
+                outcomeSink.accept(TestOutcomeAggregator.encodeRecycled(testClass, reason));
+            }
+        }
+        replayedRuns = Math.max(replayedRuns, recycledRun + 1);
+        return recycledRun + 1;
+    }
+
+    /**
+     * Gets the first run the next worker reports the outcomes of.
+     *
+     * @return 0 for the initial run, i for rerun #i
+     */
+    synchronized int getReplayedRuns() {
+        return replayedRuns;
+    }
+
+    /**
+     * Kills the current worker, if any is still running.
+     */
+    synchronized void destroyWorker() {
+        if (worker != null) {
+            worker.destroy();
+        }
+    }
+
+    private static String getTestName(String uniqueId) {
+        String testMethod = ClassLoaderIsolatedTestRunner.extractTestMethod(uniqueId);
+        return testMethod == null || testMethod.isEmpty() ? uniqueId : testMethod;
+    }
+
+    static String getRunName(int run) {
+        return run == 0 ? "the initial run" : "rerun #" + run;
+    }
+}
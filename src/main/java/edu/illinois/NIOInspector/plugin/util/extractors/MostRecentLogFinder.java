@@ -6,6 +6,7 @@ import java.util.Arrays;
 import java.util.Comparator;
 import java.util.Date;
 import java.util.Optional;
+import java.util.regex.Pattern;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -21,6 +22,8 @@ public class MostRecentLogFinder {
     
     private static final String LOG_DIRECTORY = ".NIOInspector";
 
+    private static final Pattern TIMESTAMP_PATTERN = Pattern.compile("\\d{4}-\\d{2}-\\d{2}-\\d{2}-\\d{2}-\\d{2}");
+
     /**
      * Find the most recent log file generated by the rerun Mojo
      * @return The most recent log file found
@@ -30,10 +33,10 @@ public class MostRecentLogFinder {
         File logDirectory = new File(LOG_DIRECTORY);
         File logFile = null;
 
-        // List all time-base named subdirectories in the .NIOInspector directory
-        File[] subdirectories = logDirectory.listFiles(File::isDirectory);
+        // List all time-base named subdirectories in the .NIOInspector directory (skipping e.g. the cache)
+        File[] subdirectories = logDirectory.listFiles(file -> file.isDirectory() && isTimestampDirectory(file));
 
-        if (subdirectories != null) {
+        if (subdirectories != null && subdirectories.length > 0) {
             // Sort subdirectories by timestamp (descending order)
             Arrays.sort(subdirectories, Comparator.comparingLong(MostRecentLogFinder::getTimestampFromDirectory).reversed());
 
@@ -53,6 +56,15 @@ public class MostRecentLogFinder {
         return logFile;
     }
 
+    /**
+     * Check whether a directory is named after the time of a rerun
+     * @param directory The directory to check
+     * @return true if the name of the directory is a timestamp
+     */
+    public static boolean isTimestampDirectory(File directory) {
+        return TIMESTAMP_PATTERN.matcher(directory.getName()).matches();
+    }
+
     /**
      * Get time stamp from the time-based directory name
      * @param directory The directory with time-based name
@@ -0,0 +1,84 @@
+package edu.illinois.NIOInspector.plugin.util.history;
+
+import edu.illinois.NIOInspector.plugin.util.detection.TestOutcome;
+import edu.illinois.NIOInspector.plugin.util.detection.TestOutcomeAggregator;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * Collects the outcome lines of one rerun of the project (see TestOutcomeAggregator) into rows of the
+ * HistoryStore, to be appended as one build once all runs are done.
+ */
+public class HistoryRecorder implements Consumer<String> {
+
+    private static final Logger logger = LoggerFactory.getLogger(HistoryRecorder.class);
+
+    private final long startTime = System.currentTimeMillis();
+
+    // Passed runs, failed runs and total duration of each test, in the order the tests were first seen
+    private final Map<String, long[]> rows = new LinkedHashMap<>();
+
+    /**
+     * Decodes an outcome line and records it; lines without an outcome are ignored.
+     * Outcomes of runs beyond HistoryStore.MAX_RUNS only count towards the duration.
+     *
+     * @param line the line to decode
+     */
+    @Override
+    public synchronized void accept(String line) {
+        TestOutcome outcome = TestOutcome.decode(line);
+        if (outcome == null) {
+            return;
+        }
+        long[] row = rows.computeIfAbsent(outcome.getUniqueId(), k -> new long[3]);
+        if (outcome.getRun() >= 0 && outcome.getRun() < HistoryStore.MAX_RUNS) {
+            if (outcome.getStatus() == TestOutcomeAggregator.PASSED) {
+                row[0] |= 1L << outcome.getRun();
+            } else if (outcome.getStatus() == TestOutcomeAggregator.FAILED) {
+                row[1] |= 1L << outcome.getRun();
+            }
+        }
+        row[2] += outcome.getDurationMillis();
+    }
+
+    /**
+     * Builds the rows of the recorded outcomes.
+     *
+     * @return one row per test
+     */
+    public synchronized List<HistoryStore.Row> getRows() {
+        List<HistoryStore.Row> result = new ArrayList<>();
+        for (Map.Entry<String, long[]> entry : rows.entrySet()) {
+            long[] row = entry.getValue();
+            result.add(new HistoryStore.Row(entry.getKey(), row[0], row[1], (int) Math.min(Integer.MAX_VALUE, row[2])));
+        }
+        return result;
+    }
+
+    /**
+     * Appends the recorded outcomes as one build to the store in the given directory.
+     * Failures are logged, since the history is not needed for the results of the current rerun.
+     *
+     * @param directory the directory of the store
+     */
+    public void save(File directory) {
+        List<HistoryStore.Row> result = getRows();
+        if (result.isEmpty()) {
+            return;
+        }
+        try {
+            new HistoryStore(directory).appendBuild(startTime, result);
+        } catch (IOException | RuntimeException e) {
+            logger.warn("Failed to record the outcomes in " + directory.getPath() + ": " + e);
+        }
+    }
+}
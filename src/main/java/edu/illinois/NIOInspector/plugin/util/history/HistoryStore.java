@@ -0,0 +1,420 @@
+package edu.illinois.NIOInspector.plugin.util.history;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Append-only, columnar store of the per-test outcomes of past reruns. Every rerun of the project appends one
+ * build, and every test executed in it appends one row. Each column is kept in its own fixed-width file and read
+ * through a memory mapping, so that queries over the most recent builds only touch the tail of the columns.
+ * <p>
+ * Files in the store directory:
+ * <ul>
+ *     <li>tests.idx: interned unique IDs of the tests, one per line (the line number is the test ID)</li>
+ *     <li>builds.col: start time of each build (int64)</li>
+ *     <li>build.col, test.col: build and test ID of each row (int32)</li>
+ *     <li>passed.col, failed.col: bitsets of the runs (bit 0 is the initial run) the test passed / failed (int64)</li>
+ *     <li>duration.col: total execution time of the test over all runs, in milliseconds (int32)</li>
+ * </ul>
+ */
+public class HistoryStore {
+
+    /**
+     * Default location of the store, next to the time-named log directories
+     */
+    public static final String DEFAULT_DIRECTORY = ".NIOInspector" + File.separator + "history";
+
+    /**
+     * Number of runs (initial run and reruns) whose outcomes are kept in the bitsets of a row
+     */
+    public static final int MAX_RUNS = Long.SIZE;
+
+    private static final String TESTS = "tests.idx";
+    private static final String BUILDS = "builds.col";
+    private static final String BUILD = "build.col";
+    private static final String TEST = "test.col";
+    private static final String PASSED = "passed.col";
+    private static final String FAILED = "failed.col";
+    private static final String DURATION = "duration.col";
+    private static final String LOCK = "history.lock";
+
+    private static final String[] ROW_COLUMNS = {BUILD, TEST, PASSED, FAILED, DURATION};
+    private static final int[] ROW_COLUMN_WIDTHS = {Integer.BYTES, Integer.BYTES, Long.BYTES, Long.BYTES, Integer.BYTES};
+
+    private final File directory;
+
+    private final List<String> testNames = new ArrayList<>();
+
+    private final Map<String, Integer> testIds = new HashMap<>();
+
+    private int buildCount;
+
+    private int rowCount;
+
+    /**
+     * One row to append: the outcomes of one test in all runs of a build
+     */
+    public static class Row {
+
+        private final String uniqueId;
+        private final long passedRuns;
+        private final long failedRuns;
+        private final int durationMillis;
+
+        /**
+         * Creates a row.
+         *
+         * @param uniqueId the unique ID of the test
+         * @param passedRuns bitset of the runs the test passed (bit 0 is the initial run)
+         * @param failedRuns bitset of the runs the test failed (bit 0 is the initial run)
+         * @param durationMillis total execution time of the test over all runs
+         */
+        public Row(String uniqueId, long passedRuns, long failedRuns, int durationMillis) {
+            this.uniqueId = uniqueId;
+            this.passedRuns = passedRuns;
+            this.failedRuns = failedRuns;
+            this.durationMillis = durationMillis;
+        }
+    }
+
+    /**
+     * Statistics of one test over a range of builds
+     */
+    public static class TestStats {
+
+        private int builds;
+        private int initialPasses;
+        private int rerunsExecuted;
+        private int rerunsFailed;
+        private int flakyBuilds;
+        private int NIOBuilds;
+        private int runsExecuted;
+        private long totalDurationMillis;
+
+        /**
+         * @return the number of builds the test was executed in
+         */
+        public int getBuilds() {
+            return builds;
+        }
+
+        /**
+         * @return the number of builds the test passed the initial run of
+         */
+        public int getInitialPasses() {
+            return initialPasses;
+        }
+
+        /**
+         * @return the number of reruns of the test executed in builds where it passed the initial run
+         */
+        public int getRerunsExecuted() {
+            return rerunsExecuted;
+        }
+
+        /**
+         * @return the number of reruns the test failed after passing the initial run
+         */
+        public int getRerunsFailed() {
+            return rerunsFailed;
+        }
+
+        /**
+         * @return the number of builds the test passed the initial run of and failed at least one rerun of
+         */
+        public int getFlakyBuilds() {
+            return flakyBuilds;
+        }
+
+        /**
+         * @return the number of builds the test passed the initial run of and failed all reruns of
+         */
+        public int getNIOBuilds() {
+            return NIOBuilds;
+        }
+
+        /**
+         * @return the mean execution time of one run of the test, in milliseconds
+         */
+        public double getMeanDurationMillis() {
+            return runsExecuted == 0 ? 0 : (double) totalDurationMillis / runsExecuted;
+        }
+
+        /**
+         * @return the total execution time of the test, in milliseconds
+         */
+        public long getTotalDurationMillis() {
+            return totalDurationMillis;
+        }
+
+        private void add(long passedRuns, long failedRuns, int durationMillis) {
+            builds++;
+            runsExecuted += Long.bitCount(passedRuns | failedRuns);
+            totalDurationMillis += durationMillis;
+            if ((passedRuns & 1) != 0) {
+                initialPasses++;
+                int reruns = Long.bitCount((passedRuns | failedRuns) >>> 1);
+                int failures = Long.bitCount(failedRuns >>> 1);
+                rerunsExecuted += reruns;
+                rerunsFailed += failures;
+                if (failures > 0) {
+                    flakyBuilds++;
+                    if (failures == reruns) {
+                        NIOBuilds++;
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Opens the store in the given directory. Anything left behind by a partially written append is ignored.
+     *
+     * @param directory the directory of the store (created on the first append)
+     * @throws IOException if the store cannot be read
+     */
+    public HistoryStore(File directory) throws IOException {
+        this.directory = directory;
+        reload(false);
+    }
+
+    /**
+     * Appends one build with the outcomes of all tests executed in it.
+     *
+     * @param timestamp the start time of the build
+     * @param rows the outcomes of the tests
+     * @return the index of the appended build
+     * @throws IOException if the build cannot be written
+     */
+    public synchronized int appendBuild(long timestamp, List<Row> rows) throws IOException {
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Failed to create directory: " + directory.getAbsolutePath());
+        }
+        // Other Maven invocations may append to the same store concurrently
+        try (FileChannel lockChannel = FileChannel.open(path(LOCK), StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE)) {
+            // Released when the channel is closed
+            lockChannel.lock();
+            reload(true);
+
+            StringBuilder newTests = new StringBuilder();
+            int[] rowTestIds = new int[rows.size()];
+            for (int i = 0; i < rows.size(); i++) {
+                String uniqueId = rows.get(i).uniqueId.replace('\n', ' ').replace('\r', ' ');
+                Integer testId = testIds.get(uniqueId);
+                if (testId == null) {
+                    testId = testNames.size();
+                    testNames.add(uniqueId);
+                    testIds.put(uniqueId, testId);
+                    newTests.append(uniqueId).append('\n');
+                }
+                rowTestIds[i] = testId;
+            }
+            append(TESTS, ByteBuffer.wrap(newTests.toString().getBytes(StandardCharsets.UTF_8)));
+
+            int build = buildCount;
+            ByteBuffer[] columns = new ByteBuffer[ROW_COLUMNS.length];
+            for (int c = 0; c < columns.length; c++) {
+                columns[c] = ByteBuffer.allocate(ROW_COLUMN_WIDTHS[c] * rows.size());
+            }
+            for (int i = 0; i < rows.size(); i++) {
+                Row row = rows.get(i);
+                columns[0].putInt(i * Integer.BYTES, build);
+                columns[1].putInt(i * Integer.BYTES, rowTestIds[i]);
+                columns[2].putLong(i * Long.BYTES, row.passedRuns);
+                columns[3].putLong(i * Long.BYTES, row.failedRuns);
+                columns[4].putInt(i * Integer.BYTES, row.durationMillis);
+            }
+            for (int c = 0; c < columns.length; c++) {
+                append(ROW_COLUMNS[c], columns[c]);
+            }
+            // Publish the build only once all of its rows are written (see reload)
+            ByteBuffer timestampBytes = ByteBuffer.allocate(Long.BYTES);
+            timestampBytes.putLong(0, timestamp);
+            append(BUILDS, timestampBytes);
+            buildCount++;
+            rowCount += rows.size();
+            return build;
+        }
+    }
+
+    /**
+     * Computes the statistics of one test over the most recent builds.
+     *
+     * @param uniqueId the unique ID of the test
+     * @param lastBuilds the number of most recent builds to consider
+     * @return the statistics of the test
+     * @throws IOException if the store cannot be read
+     */
+    public synchronized TestStats query(String uniqueId, int lastBuilds) throws IOException {
+        TestStats stats = new TestStats();
+        Integer testId = testIds.get(uniqueId);
+        if (testId != null) {
+            scan(lastBuilds, testId, stats, null);
+        }
+        return stats;
+    }
+
+    /**
+     * Computes the statistics of every test over the most recent builds in one pass over the columns.
+     *
+     * @param lastBuilds the number of most recent builds to consider
+     * @return map from the unique ID of each test executed in these builds to its statistics
+     * @throws IOException if the store cannot be read
+     */
+    public synchronized Map<String, TestStats> summarize(int lastBuilds) throws IOException {
+        Map<Integer, TestStats> statsById = new HashMap<>();
+        scan(lastBuilds, -1, null, statsById);
+        Map<String, TestStats> stats = new HashMap<>();
+        for (Map.Entry<Integer, TestStats> entry : statsById.entrySet()) {
+            stats.put(testNames.get(entry.getKey()), entry.getValue());
+        }
+        return stats;
+    }
+
+    /**
+     * @return the number of builds in the store
+     */
+    public synchronized int getBuildCount() {
+        return buildCount;
+    }
+
+    /**
+     * @return the number of rows in the store
+     */
+    public synchronized int getRowCount() {
+        return rowCount;
+    }
+
+    /**
+     * Scans the rows of the most recent builds, for one test or for all of them.
+     */
+    private void scan(int lastBuilds, int testId, TestStats stats, Map<Integer, TestStats> statsById)
+        throws IOException {
+        if (rowCount == 0) {
+            return;
+        }
+        IntBuffer builds = map(BUILD, Integer.BYTES).asIntBuffer();
+        IntBuffer tests = map(TEST, Integer.BYTES).asIntBuffer();
+        LongBuffer passed = map(PASSED, Long.BYTES).asLongBuffer();
+        LongBuffer failed = map(FAILED, Long.BYTES).asLongBuffer();
+        IntBuffer durations = map(DURATION, Integer.BYTES).asIntBuffer();
+
+        // Rows are appended in build order, so the rows of the most recent builds are a suffix of the columns
+        int firstBuild = Math.max(0, buildCount - Math.max(0, lastBuilds));
+        int low = 0;
+        int high = rowCount;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (builds.get(middle) < firstBuild) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        for (int row = low; row < rowCount; row++) {
+            int rowTestId = tests.get(row);
+            if (testId >= 0 && rowTestId != testId) {
+                continue;
+            }
+            TestStats rowStats = statsById == null ? stats : statsById.computeIfAbsent(rowTestId, k -> new TestStats());
+            rowStats.add(passed.get(row), failed.get(row), durations.get(row));
+        }
+    }
+
+    /**
+     * Reads the test index and the sizes of the columns. Whatever a failed append left behind is ignored, and
+     * truncated when recovering (only safe while holding the lock): partial lines and rows, and the rows of a build
+     * whose start time was never written.
+     */
+    private void reload(boolean recover) throws IOException {
+        testNames.clear();
+        testIds.clear();
+        buildCount = 0;
+        rowCount = 0;
+        if (!directory.isDirectory()) {
+            return;
+        }
+
+        Path testsPath = path(TESTS);
+        if (Files.exists(testsPath)) {
+            byte[] bytes = Files.readAllBytes(testsPath);
+            int end = 0;
+            for (int i = 0; i < bytes.length; i++) {
+                if (bytes[i] == '\n') {
+                    String uniqueId = new String(bytes, end, i - end, StandardCharsets.UTF_8);
+                    testIds.put(uniqueId, testNames.size());
+                    testNames.add(uniqueId);
+                    end = i + 1;
+                }
+            }
+            if (recover) {
+                truncate(TESTS, end);
+            }
+        }
+
+        buildCount = (int) (size(BUILDS) / Long.BYTES);
+        long rows = Long.MAX_VALUE;
+        for (int c = 0; c < ROW_COLUMNS.length; c++) {
+            rows = Math.min(rows, size(ROW_COLUMNS[c]) / ROW_COLUMN_WIDTHS[c]);
+        }
+        rowCount = (int) rows;
+        if (rowCount > 0) {
+            // Rows are appended in build order, so the rows of an unpublished build are a suffix of the columns
+            IntBuffer builds = map(BUILD, Integer.BYTES).asIntBuffer();
+            while (rowCount > 0 && builds.get(rowCount - 1) >= buildCount) {
+                rowCount--;
+            }
+        }
+        if (recover) {
+            truncate(BUILDS, (long) buildCount * Long.BYTES);
+            for (int c = 0; c < ROW_COLUMNS.length; c++) {
+                truncate(ROW_COLUMNS[c], (long) rowCount * ROW_COLUMN_WIDTHS[c]);
+            }
+        }
+    }
+
+    private ByteBuffer map(String column, int width) throws IOException {
+        try (FileChannel channel = FileChannel.open(path(column), StandardOpenOption.READ)) {
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, (long) rowCount * width);
+        }
+    }
+
+    private void append(String file, ByteBuffer bytes) throws IOException {
+        try (FileChannel channel = FileChannel.open(path(file), StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+            StandardOpenOption.APPEND)) {
+            while (bytes.hasRemaining()) {
+                channel.write(bytes);
+            }
+        }
+    }
+
+    private void truncate(String file, long size) throws IOException {
+        if (size(file) > size) {
+            try (FileChannel channel = FileChannel.open(path(file), StandardOpenOption.WRITE)) {
+                channel.truncate(size);
+            }
+        }
+    }
+
+    private long size(String file) throws IOException {
+        Path filePath = path(file);
+        return Files.exists(filePath) ? Files.size(filePath) : 0;
+    }
+
+    private Path path(String file) {
+        return new File(directory, file).toPath();
+    }
+}
@@ -0,0 +1,79 @@
+package edu.illinois.NIOInspector.plugin.util.history;
+
+import edu.illinois.NIOInspector.plugin.util.detection.ClassLoaderIsolatedTestRunner;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Orders test classes so that classes likely to be NIO or non-deterministic (according to the history of past
+ * reruns) run first, and among equally likely classes, cheaper ones run first.
+ */
+public class TestPrioritizer {
+
+    /**
+     * Default number of most recent builds considered
+     */
+    public static final int DEFAULT_HISTORY_BUILDS = 200;
+
+    private TestPrioritizer() {
+    }
+
+    /**
+     * Orders test classes by descending likelihood of being flaky, then by ascending execution time.
+     * Classes that never ran before get a likelihood of 1/4, ranking them after classes flaky in more than a
+     * quarter of past builds but before classes that were stable; ties keep their original order.
+     *
+     * @param testClasses the test classes to order
+     * @param history statistics of the tests in past builds, by unique ID (see HistoryStore#summarize)
+     * @return the ordered test classes
+     */
+    public static List<String> prioritize(List<String> testClasses, Map<String, HistoryStore.TestStats> history) {
+        Map<String, ClassStats> classStats = new HashMap<>();
+        for (Map.Entry<String, HistoryStore.TestStats> entry : history.entrySet()) {
+            String testMethod = ClassLoaderIsolatedTestRunner.extractTestMethod(entry.getKey());
+            if (testMethod == null || !testMethod.contains("#")) {
+                continue;
+            }
+            String testClass = testMethod.substring(0, testMethod.indexOf('#'));
+            classStats.computeIfAbsent(testClass, k -> new ClassStats()).add(entry.getValue());
+        }
+
+        List<String> prioritizedClasses = new ArrayList<>(testClasses);
+        ClassStats noHistory = new ClassStats();
+        // List.sort is stable, so ties keep their original order
+        prioritizedClasses.sort(Comparator
+            .comparingDouble((String testClass) -> -classStats.getOrDefault(testClass, noHistory).getLikelihood())
+            .thenComparingDouble(testClass -> classStats.getOrDefault(testClass, noHistory).meanDurationMillis));
+        return prioritizedClasses;
+    }
+
+    /**
+     * History of all tests of one class
+     */
+    private static class ClassStats {
+
+        private int builds;
+        private int flakyBuilds;
+        private int NIOBuilds;
+        private double meanDurationMillis;
+
+        private void add(HistoryStore.TestStats stats) {
+            builds = Math.max(builds, stats.getBuilds());
+            flakyBuilds = Math.max(flakyBuilds, stats.getFlakyBuilds());
+            NIOBuilds = Math.max(NIOBuilds, stats.getNIOBuilds());
+            meanDurationMillis += stats.getMeanDurationMillis();
+        }
+
+        /**
+         * Estimates the likelihood of the class containing a flaky test, counting NIO findings twice
+         * (smoothed towards 1/4, so that a single build does not decide the order).
+         */
+        private double getLikelihood() {
+            return (flakyBuilds + NIOBuilds + 0.25) / (builds + 1.0);
+        }
+    }
+}
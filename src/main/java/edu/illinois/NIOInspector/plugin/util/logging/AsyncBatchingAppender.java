@@ -0,0 +1,344 @@
+package edu.illinois.NIOInspector.plugin.util.logging;
+
+import ch.qos.logback.classic.Logger;
+import ch.qos.logback.classic.LoggerContext;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.core.Appender;
+import ch.qos.logback.core.FileAppender;
+import ch.qos.logback.core.OutputStreamAppender;
+import ch.qos.logback.core.UnsynchronizedAppenderBase;
+import ch.qos.logback.core.spi.AppenderAttachable;
+import ch.qos.logback.core.spi.AppenderAttachableImpl;
+import ch.qos.logback.core.spi.DeferredProcessingAware;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Appender handing events to the appenders attached to it (i.e. the log file) from a writer thread, so that logging
+ * threads do not wait for the disk. Events go through a bounded queue: a logging thread finding it full waits for
+ * room instead of dropping events. The writer takes the queued events in batches, and flushes the output streams of
+ * the attached appenders once per batch, which should therefore not flush every event themselves.
+ */
+public class AsyncBatchingAppender<E> extends UnsynchronizedAppenderBase<E> implements AppenderAttachable<E> {
+
+    /**
+     * Number of events queued by default
+     */
+    public static final int DEFAULT_QUEUE_SIZE = 8192;
+
+    /**
+     * Number of events written between two flushes by default
+     */
+    public static final int DEFAULT_MAX_BATCH_SIZE = 512;
+
+    /**
+     * Time the queued events are given to be written when the appender stops, by default
+     */
+    public static final long DEFAULT_MAX_FLUSH_TIME = 5000;
+
+    private final AppenderAttachableImpl<E> appenders = new AppenderAttachableImpl<>();
+
+    private int queueSize = DEFAULT_QUEUE_SIZE;
+
+    private int maxBatchSize = DEFAULT_MAX_BATCH_SIZE;
+
+    private long maxFlushTime = DEFAULT_MAX_FLUSH_TIME;
+
+    private BlockingQueue<E> queue;
+
+    private Thread writer;
+
+    // Events queued and events written (or failed to be written) so far, guarded by this appender
+    private long queuedEvents;
+    private long writtenEvents;
+
+    // Batches written, time spent flushing them, and the logging calls that waited for room in the queue
+    private long batches;
+    private long flushNanos;
+    private long blockedCalls;
+    private long blockedNanos;
+
+    // Events dropped because the logging thread was interrupted while waiting for room in the queue
+    private long droppedEvents;
+
+    /**
+     * Starts the writer thread, provided an appender is attached.
+     */
+    @Override
+    public void start() {
+        if (isStarted()) {
+            return;
+        }
+        if (!appenders.iteratorForAppenders().hasNext()) {
+            addError("No appender attached to the appender named [" + name + "].");
+            return;
+        }
+        if (queueSize < 1 || maxBatchSize < 1) {
+            addError("Invalid queue size " + queueSize + " or batch size " + maxBatchSize);
+            return;
+        }
+        queue = new ArrayBlockingQueue<>(queueSize);
+        super.start();
+        writer = new Thread(this::writeBatches, "NIOInspector-log-writer-" + name);
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    /**
+     * Stops accepting events, gives the queued events up to the maximum flush time to be written, then stops the
+     * attached appenders.
+     */
+    @Override
+    public void stop() {
+        if (!isStarted()) {
+            return;
+        }
+        super.stop();
+        writer.interrupt();
+        try {
+            writer.join(maxFlushTime);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (writer.isAlive()) {
+            addWarn("Gave up writing " + queue.size() + " queued event(s) after " + maxFlushTime + " ms");
+        }
+        appenders.detachAndStopAllAppenders();
+    }
+
+    /**
+     * Queues an event, waiting for room in the queue if it is full.
+     *
+     * @param event the event to write
+     */
+    @Override
+    protected void append(E event) {
+        if (event instanceof DeferredProcessingAware) {
+            // Capture the message arguments, thread name and MDC now, before they change
+            ((DeferredProcessingAware) event).prepareForDeferredProcessing();
+        }
+        synchronized (this) {
+            queuedEvents++;
+        }
+        if (queue.offer(event)) {
+            return;
+        }
+        long start = System.nanoTime();
+        boolean queued = false;
+        try {
+            queue.put(event);
+            queued = true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        synchronized (this) {
+            blockedCalls++;
+            blockedNanos += System.nanoTime() - start;
+            if (!queued) {
+                droppedEvents++;
+                writtenEvents++;
+                notifyAll();
+            }
+        }
+    }
+
+    /**
+     * Body of the writer thread: writes the queued events batch by batch until the appender stops and the queue is
+     * empty.
+     */
+    private void writeBatches() {
+        List<E> batch = new ArrayList<>(maxBatchSize);
+        while (isStarted() || !queue.isEmpty()) {
+            try {
+                E event = queue.poll(100, TimeUnit.MILLISECONDS);
+                if (event == null) {
+                    continue;
+                }
+                batch.add(event);
+            } catch (InterruptedException e) {
+                // Stopping: write what is left without waiting
+                if (queue.isEmpty()) {
+                    continue;
+                }
+            }
+            queue.drainTo(batch, maxBatchSize - batch.size());
+            for (E event : batch) {
+                appenders.appendLoopOnAppenders(event);
+            }
+            long flushStart = System.nanoTime();
+            flush();
+            synchronized (this) {
+                flushNanos += System.nanoTime() - flushStart;
+                batches++;
+                writtenEvents += batch.size();
+                notifyAll();
+            }
+            batch.clear();
+        }
+    }
+
+    /**
+     * Flushes the output streams of the attached appenders. Only the writer thread writes to them.
+     */
+    private void flush() {
+        Iterator<Appender<E>> iterator = appenders.iteratorForAppenders();
+        while (iterator.hasNext()) {
+            Appender<E> appender = iterator.next();
+            if (appender instanceof OutputStreamAppender && appender.isStarted()) {
+                OutputStream outputStream = ((OutputStreamAppender<E>) appender).getOutputStream();
+                try {
+                    if (outputStream != null) {
+                        outputStream.flush();
+                    }
+                } catch (IOException e) {
+                    addError("Failed to flush appender named [" + appender.getName() + "].", e);
+                }
+            }
+        }
+    }
+
+    /**
+     * Waits until the events queued so far are written and flushed.
+     *
+     * @param timeoutMillis the maximum time to wait
+     * @return true if they are, false if the timeout elapsed first
+     */
+    public synchronized boolean awaitWritten(long timeoutMillis) {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        long target = queuedEvents;
+        while (writtenEvents < target && isStarted()) {
+            long remainingNanos = deadline - System.nanoTime();
+            if (remainingNanos <= 0) {
+                return false;
+            }
+            try {
+                TimeUnit.NANOSECONDS.timedWait(this, remainingNanos);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+        }
+        return writtenEvents >= target;
+    }
+
+    /**
+     * Formats the size of the files written by the attached appenders, and the time spent writing them.
+     *
+     * @return the lines of the report
+     */
+    public synchronized List<String> formatReport() {
+        List<String> lines = new ArrayList<>();
+        long bytes = 0;
+        List<String> files = new ArrayList<>();
+        Iterator<Appender<E>> iterator = appenders.iteratorForAppenders();
+        while (iterator.hasNext()) {
+            Appender<E> appender = iterator.next();
+            if (appender instanceof FileAppender && ((FileAppender<E>) appender).getFile() != null) {
+                File file = new File(((FileAppender<E>) appender).getFile());
+                bytes += file.length();
+                files.add(file.getName());
+            }
+        }
+        lines.add("Log " + String.join(", ", files) + ": " +
+            String.format(Locale.ROOT, "%.1f MB", bytes / (1024.0 * 1024.0)) + " written as " + writtenEvents +
+            " event(s) in " + batches + " batch(es), flushing took " + TimeUnit.NANOSECONDS.toMillis(flushNanos) +
+            " ms");
+        if (blockedCalls > 0) {
+            lines.add("Logging waited " + TimeUnit.NANOSECONDS.toMillis(blockedNanos) + " ms in " + blockedCalls +
+                " call(s) for room in the queue of " + queueSize + " event(s)" +
+                (droppedEvents > 0 ? ", dropping " + droppedEvents + " event(s) of interrupted threads" : ""));
+        }
+        return lines;
+    }
+
+    /**
+     * Finds the started appenders of this class attached to the loggers of the Logback context of this class loader.
+     *
+     * @return the appenders, empty if SLF4J is not bound to Logback
+     */
+    public static List<AsyncBatchingAppender<?>> getStartedAppenders() {
+        List<AsyncBatchingAppender<?>> started = new ArrayList<>();
+        if (!(LoggerFactory.getILoggerFactory() instanceof LoggerContext)) {
+            return started;
+        }
+        for (Logger logger : ((LoggerContext) LoggerFactory.getILoggerFactory()).getLoggerList()) {
+            Iterator<Appender<ILoggingEvent>> iterator = logger.iteratorForAppenders();
+            while (iterator.hasNext()) {
+                Appender<?> appender = iterator.next();
+                if (appender instanceof AsyncBatchingAppender && appender.isStarted() && !started.contains(appender)) {
+                    started.add((AsyncBatchingAppender<?>) appender);
+                }
+            }
+        }
+        return started;
+    }
+
+    public void setQueueSize(int queueSize) {
+        this.queueSize = queueSize;
+    }
+
+    public int getQueueSize() {
+        return queueSize;
+    }
+
+    public void setMaxBatchSize(int maxBatchSize) {
+        this.maxBatchSize = maxBatchSize;
+    }
+
+    public int getMaxBatchSize() {
+        return maxBatchSize;
+    }
+
+    public void setMaxFlushTime(long maxFlushTime) {
+        this.maxFlushTime = maxFlushTime;
+    }
+
+    public long getMaxFlushTime() {
+        return maxFlushTime;
+    }
+
+    @Override
+    public void addAppender(Appender<E> newAppender) {
+        appenders.addAppender(newAppender);
+    }
+
+    @Override
+    public Iterator<Appender<E>> iteratorForAppenders() {
+        return appenders.iteratorForAppenders();
+    }
+
+    @Override
+    public Appender<E> getAppender(String name) {
+        return appenders.getAppender(name);
+    }
+
+    @Override
+    public boolean isAttached(Appender<E> appender) {
+        return appenders.isAttached(appender);
+    }
+
+    @Override
+    public void detachAndStopAllAppenders() {
+        appenders.detachAndStopAllAppenders();
+    }
+
+    @Override
+    public boolean detachAppender(Appender<E> appender) {
+        return appenders.detachAppender(appender);
+    }
+
+    @Override
+    public boolean detachAppender(String name) {
+        return appenders.detachAppender(name);
+    }
+}
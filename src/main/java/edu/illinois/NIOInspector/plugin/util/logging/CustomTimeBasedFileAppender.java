@@ -2,6 +2,7 @@ package edu.illinois.NIOInspector.plugin.util.logging;
 
 import ch.qos.logback.core.FileAppender;
 
+import java.io.File;
 import java.text.SimpleDateFormat;
 import java.util.Date;
 
@@ -10,6 +11,12 @@ import java.util.Date;
  */
 public class CustomTimeBasedFileAppender<E> extends FileAppender<E> {
 
+    // Directory to write logs to instead of a new time-named one (e.g. the directory of a shard)
+    private static volatile String logDirectoryOverride;
+
+    // Directory of the log file most recently opened by an appender of this class
+    private static volatile String logDirectory;
+
     /**
      * Starts the appender. Constructs the log file path with the current timestamp and sets it.
      * If the fileName is not set, logs an error.
@@ -19,11 +26,18 @@ public class CustomTimeBasedFileAppender<E> extends FileAppender<E> {
     public void start() {
         if (fileName != null) {
             try {
-                String timestamp = new SimpleDateFormat("yyyy-MM-dd-HH-mm-ss").format(new Date());
-                // Constructing the file path with the current time as directory name
-                String filePath = fileName.replace("current-time", timestamp) + ".log";
+                String filePath;
+                if (logDirectoryOverride != null) {
+                    // Keep the file name, but place the log in the requested directory
+                    filePath = new File(logDirectoryOverride, new File(fileName).getName() + ".log").getPath();
+                } else {
+                    String timestamp = new SimpleDateFormat("yyyy-MM-dd-HH-mm-ss").format(new Date());
+                    // Constructing the file path with the current time as directory name
+                    filePath = fileName.replace("current-time", timestamp) + ".log";
+                }
                 setFile(filePath);
                 super.start();
+                logDirectory = new File(filePath).getAbsoluteFile().getParent();
             } catch (Exception e) {
                 addError("Failed to create log file", e);
             }
@@ -31,4 +45,23 @@ public class CustomTimeBasedFileAppender<E> extends FileAppender<E> {
             addError("The File property must be set before using this appender.");
         }
     }
+
+    /**
+     * Redirects logs of appenders started afterwards (in the same class loader) to the given directory.
+     * Must be called before logging is initialized.
+     *
+     * @param directory the directory to write logs to, or null to use a time-named directory
+     */
+    public static void setLogDirectoryOverride(String directory) {
+        logDirectoryOverride = directory;
+    }
+
+    /**
+     * Gets the directory of the log file most recently opened (in the same class loader).
+     *
+     * @return the absolute path of the directory, or null if no log file was opened
+     */
+    public static String getLogDirectory() {
+        return logDirectory;
+    }
 }
@@ -0,0 +1,102 @@
+package edu.illinois.NIOInspector.plugin.util.logging;
+
+import jdk.jfr.Configuration;
+import jdk.jfr.Recording;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.text.ParseException;
+
+/**
+ * JDK Flight Recorder recording of the current JVM with the default (low overhead) settings, which include the
+ * phase events (see PhaseTimer). Recordings are only started when PhaseTimer.isFlightRecorderAvailable().
+ */
+public class FlightRecording {
+
+    private static final Logger logger = LoggerFactory.getLogger(FlightRecording.class);
+
+    private final Recording recording;
+
+    private FlightRecording(Recording recording) {
+        this.recording = recording;
+    }
+
+    /**
+     * Starts recording the current JVM.
+     *
+     * @param name the name of the recording
+     * @return the recording, to dump once the goal ends
+     * @throws IOException if the default settings cannot be read
+     * @throws ParseException if the default settings cannot be parsed
+     * @throws IllegalStateException if the JVM cannot record (e.g. JDK Flight Recorder is disabled)
+     */
+    public static FlightRecording start(String name) throws IOException, ParseException {
+        Recording recording = new Recording(Configuration.getConfiguration("default"));
+        recording.setName(name);
+        recording.start();
+        return new FlightRecording(recording);
+    }
+
+    /**
+     * Starts recording the current JVM if JDK Flight Recorder is available, logging why not otherwise.
+     *
+     * @param name the name of the recording (i.e. the goal)
+     * @return the recording, or null if the JVM cannot record
+     */
+    public static FlightRecording startIfAvailable(String name) {
+        if (!PhaseTimer.isFlightRecorderAvailable()) {
+            logger.warn("JDK Flight Recorder is not available in this JVM (Java 11 or later is required), " +
+                "not recording " + name);
+            return null;
+        }
+        try {
+            return start(name);
+        } catch (IOException | ParseException | RuntimeException e) {
+            logger.warn("Failed to start recording " + name + " with JDK Flight Recorder: " + e);
+            return null;
+        }
+    }
+
+    /**
+     * Stops the recording and writes it to a file, logging failures since the recording is not needed for the
+     * results of the goal.
+     *
+     * @param file the .jfr file to write
+     */
+    public void dumpTo(File file) {
+        try {
+            dump(file);
+            logger.info("JDK Flight Recorder recording written to " + file.getPath());
+        } catch (IOException | RuntimeException e) {
+            logger.warn("Failed to write the JDK Flight Recorder recording to " + file.getPath() + ": " + e);
+        }
+    }
+
+    /**
+     * Stops the recording and writes it to a file.
+     *
+     * @param file the .jfr file to write
+     * @throws IOException if the file cannot be written
+     */
+    public void dump(File file) throws IOException {
+        try {
+            recording.stop();
+            recording.dump(file.toPath());
+        } finally {
+            recording.close();
+        }
+    }
+
+    /**
+     * Gets the option making a forked JVM record itself with the default settings until it exits.
+     *
+     * @param file the .jfr file the JVM writes as it exits
+     * @return the JVM option
+     */
+    public static String getJvmOption(File file) {
+        return "-XX:StartFlightRecording=settings=default,dumponexit=true,filename=" + file.getAbsolutePath();
+    }
+}
@@ -0,0 +1,70 @@
+package edu.illinois.NIOInspector.plugin.util.logging;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Numbers the stack traces written to a log, so that the frames of a stack trace repeating (e.g. the same failure in
+ * every rerun) are written only once, and referred back to afterwards. The exception lines before the first frame are
+ * always written, since their messages often differ from one rerun to the next. A stack trace written in full is
+ * headed by "(trace #n)"; a repeated one by "same frames as trace #n", followed by its exception lines only (see
+ * CollectTestInfoMojo, which resolves them).
+ */
+public class LoggedStackTraces {
+
+    private static final Pattern FIRST = Pattern.compile("\\(trace #(\\d+)\\)\\s*$");
+
+    private static final Pattern REFERENCE = Pattern.compile("same frames as trace #(\\d+)\\s*$");
+
+    // Start of the first frame of a stack trace
+    private static final Pattern FRAME = Pattern.compile("\\r?\\n\\tat ");
+
+    // Number of the stack trace each frames were first written with, numbered from 1
+    private final Map<String, Integer> numbers = new HashMap<>();
+
+    /**
+     * Formats a stack trace to be written after a header: in full, numbered, if its frames are written for the first
+     * time; otherwise its exception lines, referring to the stack trace with the same frames written before.
+     *
+     * @param stackTrace the stack trace about to be written
+     * @return the rest of the header line, followed by the lines of the stack trace to write
+     */
+    public synchronized String format(String stackTrace) {
+        Matcher frame = FRAME.matcher(stackTrace);
+        if (!frame.find()) {
+            return System.lineSeparator() + stackTrace;
+        }
+        String frames = stackTrace.substring(frame.start());
+        Integer number = numbers.get(frames);
+        if (number != null) {
+            return "same frames as trace #" + number + System.lineSeparator() + stackTrace.substring(0, frame.start());
+        }
+        number = numbers.size() + 1;
+        numbers.put(frames, number);
+        return "(trace #" + number + ")" + System.lineSeparator() + stackTrace;
+    }
+
+    /**
+     * Parses the number of a stack trace written in full from its header line.
+     *
+     * @param line the header line
+     * @return the number of the stack trace following the line, or -1 if the line does not head one
+     */
+    public static int parseFirst(String line) {
+        Matcher matcher = FIRST.matcher(line);
+        return matcher.find() ? Integer.parseInt(matcher.group(1)) : -1;
+    }
+
+    /**
+     * Parses the number of the stack trace a header line refers back to.
+     *
+     * @param line the header line
+     * @return the number of the stack trace written before, or -1 if the line does not refer to one
+     */
+    public static int parseReference(String line) {
+        Matcher matcher = REFERENCE.matcher(line);
+        return matcher.find() ? Integer.parseInt(matcher.group(1)) : -1;
+    }
+}
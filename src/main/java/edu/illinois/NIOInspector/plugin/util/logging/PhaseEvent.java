@@ -0,0 +1,55 @@
+package edu.illinois.NIOInspector.plugin.util.logging;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * JDK Flight Recorder event spanning one phase of a goal (see PhaseTimer).
+ * Only loaded when JDK Flight Recorder is available, i.e. on Java 11 or later.
+ */
+@Name("edu.illinois.NIOInspector.Phase")
+@Label("NIOInspector Phase")
+@Category("NIOInspector")
+@Description("A phase of a NIOInspector goal, such as classpath assembly, discovery or a rerun")
+@StackTrace(false)
+class PhaseEvent extends Event {
+
+    @Label("Goal")
+    String goal;
+
+    @Label("Phase")
+    String phase;
+
+    @Label("Detail")
+    String detail;
+
+    /**
+     * Begins the event of a phase.
+     *
+     * @param goal the goal running the phase
+     * @param phase the name of the phase
+     * @param detail the detail of this execution of the phase, or null
+     * @return the event, to commit once the phase ends
+     */
+    static Object begin(String goal, String phase, String detail) {
+        PhaseEvent event = new PhaseEvent();
+        event.goal = goal;
+        event.phase = phase;
+        event.detail = detail;
+        event.begin();
+        return event;
+    }
+
+    /**
+     * Ends and commits the event of a phase, if a recording enables it.
+     *
+     * @param event the event returned by begin
+     */
+    static void commit(Object event) {
+        ((PhaseEvent) event).commit();
+    }
+}
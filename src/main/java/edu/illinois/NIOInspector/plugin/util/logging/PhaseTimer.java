@@ -0,0 +1,155 @@
+package edu.illinois.NIOInspector.plugin.util.logging;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Times the phases of a goal (e.g. classpath assembly, discovery, each run), adding up the phases of the same name
+ * for a timing table in the log. On JVMs providing JDK Flight Recorder (Java 11 or later), each phase is also a
+ * PhaseEvent, recorded by any active recording (see FlightRecording).
+ */
+public class PhaseTimer {
+
+    private static final boolean FLIGHT_RECORDER_AVAILABLE = isClassAvailable("jdk.jfr.Event");
+
+    private final String goal;
+
+    // Number of times each phase ran and its total time in nanoseconds, in the order the phases first ran
+    private final Map<String, long[]> totals = new LinkedHashMap<>();
+
+    /**
+     * One execution of a phase, ended by close().
+     */
+    public class Phase implements AutoCloseable {
+
+        private final String name;
+
+        private final long startTime = System.nanoTime();
+
+        // PhaseEvent, kept as an Object so that this class loads without JDK Flight Recorder
+        private final Object event;
+
+        private long elapsedNanos = -1;
+
+        private Phase(String name, String detail) {
+            this.name = name;
+            this.event = FLIGHT_RECORDER_AVAILABLE ? PhaseEvent.begin(goal, name, detail) : null;
+        }
+
+        /**
+         * Ends the phase, adding its time to the total of the phases of the same name. Only the first call counts.
+         */
+        @Override
+        public void close() {
+            if (elapsedNanos >= 0) {
+                return;
+            }
+            elapsedNanos = System.nanoTime() - startTime;
+            if (event != null) {
+                PhaseEvent.commit(event);
+            }
+            record(name, elapsedNanos);
+        }
+
+        /**
+         * Gets the time the phase took.
+         *
+         * @return the time in nanoseconds, or -1 if the phase is not ended yet
+         */
+        public long getElapsedNanos() {
+            return elapsedNanos;
+        }
+    }
+
+    /**
+     * Creates a timer of the phases of a goal.
+     *
+     * @param goal the goal (i.e. rerun), reported with every phase event
+     */
+    public PhaseTimer(String goal) {
+        this.goal = goal;
+    }
+
+    /**
+     * Checks whether phases are reported as JDK Flight Recorder events.
+     *
+     * @return true if JDK Flight Recorder is available in this JVM
+     */
+    public static boolean isFlightRecorderAvailable() {
+        return FLIGHT_RECORDER_AVAILABLE;
+    }
+
+    /**
+     * Starts a phase.
+     *
+     * @param name the name of the phase (i.e. discovery)
+     * @return the phase, to close once it ends
+     */
+    public Phase start(String name) {
+        return start(name, null);
+    }
+
+    /**
+     * Starts a phase, with a detail telling apart the executions of the phase in the phase events.
+     *
+     * @param name the name of the phase (i.e. discovery)
+     * @param detail the detail of this execution (i.e. rerun #2), or null
+     * @return the phase, to close once it ends
+     */
+    public Phase start(String name, String detail) {
+        return new Phase(name, detail);
+    }
+
+    /**
+     * Adds the time of one execution of a phase.
+     *
+     * @param name the name of the phase
+     * @param nanos the time of the execution in nanoseconds
+     */
+    public synchronized void record(String name, long nanos) {
+        long[] total = totals.computeIfAbsent(name, k -> new long[2]);
+        total[0]++;
+        total[1] += nanos;
+    }
+
+    /**
+     * Gets the total time of a phase.
+     *
+     * @param name the name of the phase
+     * @return the total time of all its executions in nanoseconds, 0 if it never ran
+     */
+    public synchronized long getTotalNanos(String name) {
+        long[] total = totals.get(name);
+        return total == null ? 0 : total[1];
+    }
+
+    /**
+     * Formats the timing table of the phases, one line per phase in the order they first ran.
+     *
+     * @return the lines of the table, empty if no phase ran
+     */
+    public synchronized List<String> formatTimings() {
+        List<String> lines = new ArrayList<>();
+        if (totals.isEmpty()) {
+            return lines;
+        }
+        lines.add("Phase timings of " + goal + ":");
+        for (Map.Entry<String, long[]> entry : totals.entrySet()) {
+            lines.add(String.format("    %-24s %4dx %8d ms", entry.getKey(), entry.getValue()[0],
+                TimeUnit.NANOSECONDS.toMillis(entry.getValue()[1])));
+        }
+        return lines;
+    }
+
+    private static boolean isClassAvailable(String className) {
+        try {
+            Class.forName(className, false, PhaseTimer.class.getClassLoader());
+            return true;
+        } catch (ClassNotFoundException | LinkageError e) {
+            return false;
+        }
+    }
+}
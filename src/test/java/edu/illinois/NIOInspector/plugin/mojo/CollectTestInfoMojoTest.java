@@ -7,6 +7,7 @@ import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.verify;
 import static org.mockito.ArgumentMatchers.anyString;
 
+import edu.illinois.NIOInspector.plugin.util.detection.OutputCapture;
 import org.apache.maven.plugin.logging.Log;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
@@ -18,7 +19,10 @@ import java.io.IOException;
 import java.lang.reflect.Field;
 import java.lang.reflect.Method;
 import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 
 public class CollectTestInfoMojoTest {
 
@@ -139,4 +143,72 @@ public class CollectTestInfoMojoTest {
         mojo.execute();
         verify(mockLog).info(anyString());
     }
+
+    @Test
+    public void testGetFileChanges() throws Exception {
+        try (FileWriter writer = new FileWriter(logFile, true)) {
+            writer.write("[INFO] \n");
+            writer.write("[INFO] =====================File System Pollution======================\n");
+            writer.write("[INFO] \n");
+            writer.write("[WARN] Number of Test(s) Changing Files in the Initial Run: 2\n");
+            writer.write("[WARN] edu.illinois.NIOInspector.plugin.mojo.CollectTestInfoMojoTest#testMethod (changed 1 file(s)) - possible NIO\n");
+            writer.write("[WARN]     created /tmp/out.txt\n");
+            writer.write("[WARN] com.example.OtherTest#other (changed 1 file(s))\n");
+            writer.write("[WARN]     deleted target/other.txt\n");
+            writer.write("[INFO] \n");
+            writer.write("[WARN] Coverage incomplete: 1 out of 2 test class(es) got their initial run\n");
+        }
+
+        Map<String, List<String>> fileChanges = mojo.getFileChanges(logFile);
+
+        assertEquals(2, fileChanges.size());
+        assertEquals(Collections.singletonList("created /tmp/out.txt"),
+            fileChanges.get("edu.illinois.NIOInspector.plugin.mojo.CollectTestInfoMojoTest#testMethod"));
+        assertEquals(Collections.singletonList("deleted target/other.txt"), fileChanges.get("com.example.OtherTest#other"));
+
+        setPrivateField(mojo, "logFilePath", logFile.getAbsolutePath());
+        mojo.execute();
+        File changedFiles = new File(tempDir, "edu.illinois.NIOInspector.plugin.mojo.CollectTestInfoMojoTest.testMethod/changed_files");
+        assertEquals(Collections.singletonList("created /tmp/out.txt"), Files.readAllLines(changedFiles.toPath()));
+    }
+
+    @Test
+    public void testWriteCapturedOutput() throws Exception {
+        List<String> lines = Files.readAllLines(logFile.toPath());
+        int allFailed = lines.indexOf("[WARN] All Failed tests:");
+        lines.add(allFailed, "[WARN] Captured output (last 12 of 30 bytes):");
+        lines.add(allFailed + 1, OutputCapture.CAPTURED_OUTPUT_INDENT + "state: 2");
+        lines.add(allFailed + 2, OutputCapture.CAPTURED_OUTPUT_INDENT + "done");
+        Files.write(logFile.toPath(), lines);
+
+        Method method = CollectTestInfoMojo.class.getDeclaredMethod("writeCapturedOutput", String.class, String.class, File.class);
+        method.setAccessible(true);
+        method.invoke(mojo, "edu.illinois.NIOInspector.plugin.mojo.CollectTestInfoMojoTest#testMethod", tempDir.getAbsolutePath(), logFile);
+        method.setAccessible(false);
+
+        File output = new File(tempDir, "edu.illinois.NIOInspector.plugin.mojo.CollectTestInfoMojoTest.testMethod/output1");
+        assertEquals(Arrays.asList("state: 2", "done"), Files.readAllLines(output.toPath()));
+    }
+
+    @Test
+    public void testWriteStackTrace_ResolvesReferencedFrames() throws Exception {
+        List<String> lines = Files.readAllLines(logFile.toPath());
+        lines.set(lines.indexOf("[WARN] Failure message: "), "[WARN] Failure message: (trace #1)");
+        int finalResults = lines.indexOf("[INFO] =========================Final Results=========================") - 1;
+        lines.addAll(finalResults, Arrays.asList(
+            "[INFO] =======================Starting Rerun #2=========================",
+            "[INFO] ",
+            "[WARN] Failing Test: edu.illinois.NIOInspector.plugin.mojo.CollectTestInfoMojoTest#testMethod",
+            "[WARN] Failure message: same frames as trace #1",
+            "java.lang.AssertionError: expected:<true> but was:<null>",
+            "[WARN] All Failed tests:"));
+        Files.write(logFile.toPath(), lines);
+
+        mojo.writeStackTrace("edu.illinois.NIOInspector.plugin.mojo.CollectTestInfoMojoTest#testMethod", tempDir.getAbsolutePath(), logFile);
+
+        File stackTrace = new File(tempDir, "edu.illinois.NIOInspector.plugin.mojo.CollectTestInfoMojoTest.testMethod/stacktrace2");
+        assertEquals(Arrays.asList("java.lang.AssertionError: expected:<true> but was:<null>",
+            "\tat edu.illinois.NIOInspector.plugin.mojo.CollectTestInfoMojoTest.testMethod(CollectTestInfoMojoTest.java:10)"),
+            Files.readAllLines(stackTrace.toPath()));
+    }
 }
@@ -12,9 +12,13 @@ import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 
 import org.apache.maven.model.Build;
+import org.apache.maven.model.Plugin;
+import org.apache.maven.model.PluginExecution;
 import org.apache.maven.project.MavenProject;
+import org.codehaus.plexus.util.xml.Xpp3Dom;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -134,4 +138,35 @@ public class RerunMojoTest {
         assertNotNull(excludes);
         assertTrue(excludes.isEmpty());
     }
+
+    @Test
+    public void testParseSurefireConfigurationParameters() {
+        assertTrue(RerunMojo.parseSurefireConfigurationParameters(mockProject).isEmpty());
+
+        Plugin surefirePlugin = new Plugin();
+        surefirePlugin.setConfiguration(surefireConfiguration(
+            "junit.jupiter.execution.parallel.enabled = true\n" +
+            "junit.jupiter.execution.parallel.mode.default = same_thread"));
+        PluginExecution execution = new PluginExecution();
+        execution.setConfiguration(surefireConfiguration("junit.jupiter.execution.parallel.mode.default = concurrent"));
+        surefirePlugin.addExecution(execution);
+        when(mockProject.getPlugin("org.apache.maven.plugins:maven-surefire-plugin")).thenReturn(surefirePlugin);
+
+        Map<String, String> parameters = RerunMojo.parseSurefireConfigurationParameters(mockProject);
+
+        assertEquals(2, parameters.size());
+        assertEquals("true", parameters.get("junit.jupiter.execution.parallel.enabled"));
+        assertEquals("concurrent", parameters.get("junit.jupiter.execution.parallel.mode.default"),
+            "Executions should override the plugin configuration");
+    }
+
+    private static Xpp3Dom surefireConfiguration(String configurationParameters) {
+        Xpp3Dom parametersNode = new Xpp3Dom("configurationParameters");
+        parametersNode.setValue(configurationParameters);
+        Xpp3Dom propertiesNode = new Xpp3Dom("properties");
+        propertiesNode.addChild(parametersNode);
+        Xpp3Dom configuration = new Xpp3Dom("configuration");
+        configuration.addChild(propertiesNode);
+        return configuration;
+    }
 }
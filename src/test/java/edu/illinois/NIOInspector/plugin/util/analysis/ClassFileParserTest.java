@@ -0,0 +1,108 @@
+package edu.illinois.NIOInspector.plugin.util.analysis;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class ClassFileParserTest {
+
+    private static final String FIXTURE = "edu/illinois/NIOInspector/plugin/util/analysis/ClassFileParserTest$Fixture";
+
+    static class Fixture implements Runnable {
+        static int counter;
+        static final String NAME = "fixture";
+        @Deprecated
+        long value;
+
+        @Override
+        public void run() {
+            counter++;
+        }
+
+        @Deprecated
+        String branches(int i) {
+            switch (i) {
+                case 1: return "one";
+                case 2: return "two";
+                case 3: return "three";
+                default: break;
+            }
+            switch (i) {
+                case 10: return "ten";
+                case 1000: return "thousand";
+                default: break;
+            }
+            return System.setProperty(NAME, String.valueOf(i));
+        }
+
+        Runnable lambda() {
+            return () -> counter--;
+        }
+    }
+
+    private static ClassFileInfo parseFixture() throws IOException {
+        try (InputStream in = ClassFileParserTest.class.getClassLoader().getResourceAsStream(FIXTURE + ".class")) {
+            return ClassFileParser.parse(in);
+        }
+    }
+
+    @Test
+    public void testParseHierarchyAndMembers() throws IOException {
+        ClassFileInfo info = parseFixture();
+
+        assertEquals(FIXTURE, info.getName());
+        assertEquals("java/lang/Object", info.getSuperName());
+        assertEquals(1, info.getInterfaces().size());
+        assertEquals("java/lang/Runnable", info.getInterfaces().get(0));
+        assertEquals("I", info.getField("counter").getDescriptor());
+        assertEquals("Ljava/lang/Deprecated;", info.getField("value").getAnnotations().get(0).getDescriptor());
+        assertNotNull(info.getMethod("run", "()V"));
+    }
+
+    @Test
+    public void testParseStaticFieldAccesses() throws IOException {
+        ClassFileInfo.Method run = parseFixture().getMethod("run", "()V");
+
+        ClassFileInfo.MemberRef counter = new ClassFileInfo.MemberRef(FIXTURE, "counter", "I");
+        assertEquals(1, run.getStaticWrites().size());
+        assertEquals(counter, run.getStaticWrites().get(0));
+        assertEquals(counter, run.getStaticReads().get(0));
+    }
+
+    @Test
+    public void testParseInvocationsAfterSwitches() throws IOException {
+        ClassFileInfo.Method branches = parseFixture().getMethod("branches", "(I)Ljava/lang/String;");
+
+        assertTrue(branches.getInvocations().contains(new ClassFileInfo.MemberRef("java/lang/System", "setProperty",
+            "(Ljava/lang/String;Ljava/lang/String;)Ljava/lang/String;")));
+        assertTrue(branches.isAnnotatedWith(java.util.Collections.singletonList("Ljava/lang/Deprecated;")));
+    }
+
+    @Test
+    public void testParseLambdaBody() throws IOException {
+        ClassFileInfo info = parseFixture();
+        List<ClassFileInfo.MemberRef> invocations = info.getMethod("lambda", "()Ljava/lang/Runnable;")
+            .getInvocations();
+
+        boolean lambdaBodyFound = false;
+        for (ClassFileInfo.MemberRef invocation : invocations) {
+            lambdaBodyFound |= invocation.getOwner().equals(FIXTURE) && invocation.getName().startsWith("lambda$");
+        }
+        assertTrue(lambdaBodyFound);
+    }
+
+    @Test
+    public void testParseMalformedClassFile() {
+        assertThrows(IOException.class, () -> ClassFileParser.parse(new ByteArrayInputStream(new byte[] {1, 2, 3, 4})));
+        assertThrows(IOException.class, () -> ClassFileParser.parse(new ByteArrayInputStream(
+            new byte[] {(byte) 0xCA, (byte) 0xFE, (byte) 0xBA, (byte) 0xBE, 0, 0, 0, 52, 0, 3, 99})));
+    }
+}
@@ -0,0 +1,138 @@
+package edu.illinois.NIOInspector.plugin.util.analysis;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class StateMutationAnalyzerTest {
+
+    private static final String FIXTURES = Fixtures.class.getName();
+
+    interface Action {
+        void perform();
+    }
+
+    static class Polluter implements Action {
+        @Override
+        public void perform() {
+            Fixtures.counter++;
+        }
+    }
+
+    static class Holder {
+        final int value = 1;
+    }
+
+    static class Fixtures {
+        static int counter;
+        static final String NAME = "fixture";
+        static final List<String> CACHE = new ArrayList<>();
+        static final Holder HOLDER = new Holder();
+
+        void pure() {
+            Math.max(NAME.length(), HOLDER.value);
+        }
+
+        void writesStatic() {
+            counter++;
+        }
+
+        void setsProperty() {
+            System.setProperty(NAME, "value");
+        }
+
+        void callsHelper() {
+            helper();
+        }
+
+        private static void helper() {
+            counter = 2;
+        }
+
+        void addsToCache() {
+            CACHE.add(NAME);
+        }
+
+        void writesFile() throws IOException {
+            Files.write(Paths.get(NAME), new byte[0]);
+        }
+
+        void runsLambda() {
+            Runnable runnable = () -> counter--;
+            runnable.run();
+        }
+
+        void dispatches(Action action) {
+            action.perform();
+        }
+    }
+
+    static class PollutingSetUp {
+        @BeforeEach
+        void resetCounter() {
+            Fixtures.counter = 0;
+        }
+
+        void pure() {
+        }
+    }
+
+    private StateMutationAnalyzer analyzer;
+
+    @BeforeEach
+    public void setUp() {
+        URL testClasses = StateMutationAnalyzerTest.class.getProtectionDomain().getCodeSource().getLocation();
+        analyzer = new StateMutationAnalyzer(new URLClassLoader(new URL[] {testClasses},
+            StateMutationAnalyzerTest.class.getClassLoader()));
+    }
+
+    @Test
+    public void testPureTest() {
+        assertNull(analyzer.findMutation(FIXTURES, "pure"));
+    }
+
+    @Test
+    public void testStaticFieldWrites() {
+        assertTrue(analyzer.findMutation(FIXTURES, "writesStatic").contains("writes static field"));
+        assertTrue(analyzer.findMutation(FIXTURES, "callsHelper").contains("helper"));
+        assertNotNull(analyzer.findMutation(FIXTURES, "runsLambda"));
+    }
+
+    @Test
+    public void testMutableStaticField() {
+        assertTrue(analyzer.findMutation(FIXTURES, "addsToCache").contains("CACHE"));
+    }
+
+    @Test
+    public void testStateMutatingLibraryCalls() {
+        assertTrue(analyzer.findMutation(FIXTURES, "setsProperty").contains("java.lang.System.setProperty"));
+        assertTrue(analyzer.findMutation(FIXTURES, "writesFile").contains("java.nio.file.Files.write"));
+    }
+
+    @Test
+    public void testInterfaceDispatch() {
+        assertNotNull(analyzer.findMutation(FIXTURES, "dispatches"));
+    }
+
+    @Test
+    public void testLifecycleMethods() {
+        assertNotNull(analyzer.findMutation(PollutingSetUp.class.getName(), "pure"));
+    }
+
+    @Test
+    public void testUnresolvedTestsCanMutate() {
+        assertNotNull(analyzer.findMutation(FIXTURES, "missing"));
+        assertNotNull(analyzer.findMutation("com.example.MissingTest", "pure"));
+    }
+}
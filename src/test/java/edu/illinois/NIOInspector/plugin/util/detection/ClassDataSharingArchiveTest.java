@@ -0,0 +1,134 @@
+package edu.illinois.NIOInspector.plugin.util.detection;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class ClassDataSharingArchiveTest {
+
+    private static final String DUMP_OPTION = "-XX:ArchiveClassesAtExit=";
+
+    private static final List<String> SHARD = Arrays.asList("com.example.FooTest", "com.example.BarTest#test");
+
+    private File tempDir;
+    private File workerJar;
+    private URLClassLoader classLoader;
+
+    @BeforeEach
+    public void setUp() throws IOException {
+        tempDir = Files.createTempDirectory("cds-archive").toFile();
+        workerJar = new File(tempDir, "plugin.jar");
+        Files.write(workerJar.toPath(), new byte[] { 0 });
+        classLoader = new URLClassLoader(new URL[] { workerJar.toURI().toURL() }, null);
+    }
+
+    @AfterEach
+    public void tearDown() throws IOException {
+        classLoader.close();
+        deleteRecursively(tempDir);
+    }
+
+    @Test
+    public void testIsSupported() {
+        assertTrue(ClassDataSharingArchive.isSupported(workerJar.getPath()));
+        assertFalse(ClassDataSharingArchive.isSupported(tempDir.getPath()));
+        assertFalse(ClassDataSharingArchive.isSupported(new File(tempDir, "missing.jar").getPath()));
+    }
+
+    @Test
+    public void testFirstWorkerCreatesArchiveForLaterRuns() throws IOException {
+        File directory = new File(tempDir, "cds");
+        ClassDataSharingArchive archive = createArchive(directory);
+
+        List<String> options = archive.getJvmOptions();
+        assertFalse(archive.isArchived());
+        assertTrue(options.get(0).startsWith(DUMP_OPTION), options.toString());
+        assertEquals(Collections.emptyList(), archive.getJvmOptions(), "Only the first worker creates the archive");
+
+        // The worker writes the archive as it exits
+        Files.write(new File(options.get(0).substring(DUMP_OPTION.length())).toPath(), new byte[] { 1 });
+        archive.save();
+        assertTrue(archive.getArchiveFile().isFile());
+        assertEquals(2, directory.list().length, "Only the archive and the times should be kept");
+
+        ClassDataSharingArchive laterArchive = createArchive(directory);
+        assertTrue(laterArchive.isArchived());
+        for (int worker = 0; worker < 2; worker++) {
+            assertEquals("-XX:SharedArchiveFile=" + laterArchive.getArchiveFile().getPath(),
+                laterArchive.getJvmOptions().get(0), "Every worker maps the archive");
+        }
+    }
+
+    @Test
+    public void testMissingArchiveIsCreatedAgain() {
+        File directory = new File(tempDir, "cds");
+        ClassDataSharingArchive archive = createArchive(directory);
+        archive.getJvmOptions();
+
+        archive.save();
+
+        assertFalse(archive.getArchiveFile().exists());
+        assertTrue(createArchive(directory).getJvmOptions().get(0).startsWith(DUMP_OPTION));
+    }
+
+    @Test
+    public void testRecordWorkerTimeReportsTimeSaved() throws IOException {
+        File directory = new File(tempDir, "cds");
+        ClassDataSharingArchive archive = createArchive(directory);
+        String dumpOption = archive.getJvmOptions().get(0);
+        Files.write(new File(dumpOption.substring(DUMP_OPTION.length())).toPath(), new byte[] { 1 });
+
+        assertNull(archive.recordWorkerTime(SHARD, 3, 900));
+        archive.save();
+
+        ClassDataSharingArchive laterArchive = createArchive(directory);
+        assertEquals(Long.valueOf(300), laterArchive.recordWorkerTime(SHARD, 3, 600));
+        assertNull(laterArchive.recordWorkerTime(SHARD, 4, 600), "Shards are timed per number of reruns");
+    }
+
+    @Test
+    public void testArchiveFollowsClasspath() throws IOException {
+        File directory = new File(tempDir, "cds");
+        File archiveFile = createArchive(directory).getArchiveFile();
+        assertEquals(archiveFile, createArchive(directory).getArchiveFile());
+
+        Files.write(workerJar.toPath(), new byte[] { 0, 1 });
+        assertNotEquals(archiveFile, createArchive(directory).getArchiveFile());
+    }
+
+    @Test
+    public void testGetShardKey() {
+        assertEquals(ClassDataSharingArchive.getShardKey(SHARD, 3), ClassDataSharingArchive.getShardKey(SHARD, 3));
+        assertNotEquals(ClassDataSharingArchive.getShardKey(SHARD, 3),
+            ClassDataSharingArchive.getShardKey(SHARD.subList(0, 1), 3));
+    }
+
+    private ClassDataSharingArchive createArchive(File directory) {
+        return new ClassDataSharingArchive(directory, workerJar.getPath(), classLoader, null);
+    }
+
+    private static void deleteRecursively(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                deleteRecursively(child);
+            }
+        }
+        file.delete();
+    }
+}
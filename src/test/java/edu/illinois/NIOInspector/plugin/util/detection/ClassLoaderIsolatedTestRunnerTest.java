@@ -2,9 +2,17 @@ package edu.illinois.NIOInspector.plugin.util.detection;
 
 import org.apache.maven.plugin.MojoExecutionException;
 import org.junit.jupiter.api.Test;
+import org.junit.platform.engine.discovery.DiscoverySelectors;
+import org.junit.platform.launcher.LauncherDiscoveryRequest;
 
 import java.lang.reflect.Method;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.Optional;
+import java.util.stream.Collectors;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.junit.jupiter.api.Assertions.fail;
 
 
@@ -39,5 +47,38 @@ class ClassLoaderIsolatedTestRunnerTest {
 
         assertEquals(result, "com.example.ExampleTest#testMethod");
     }
-}
 
+    @Test
+    void testGetNIOCandidates() {
+        BitSet passedInFirstRun = new BitSet();
+        passedInFirstRun.set(0);
+        BitSet failedTests = new BitSet();
+        // 0 passed then failed, 1 failed twice, 2 did not run in the initial run
+        failedTests.set(0);
+        failedTests.set(1);
+        failedTests.set(2);
+
+        BitSet candidates = ClassLoaderIsolatedTestRunner.getNIOCandidates(passedInFirstRun, failedTests);
+
+        assertEquals(Collections.singletonList(0), candidates.stream().boxed().collect(Collectors.toList()));
+    }
+
+    @Test
+    void testIsParallel() {
+        assertFalse(ClassLoaderIsolatedTestRunner.isParallel(Collections.emptyMap()));
+        assertFalse(ClassLoaderIsolatedTestRunner.isParallel(
+            Collections.singletonMap("junit.jupiter.execution.parallel.enabled", "false")));
+        assertTrue(ClassLoaderIsolatedTestRunner.isParallel(
+            Collections.singletonMap("junit.jupiter.execution.parallel.enabled", "true")));
+    }
+
+    @Test
+    void testCreateRequestPassesConfigurationParameters() {
+        LauncherDiscoveryRequest request = ClassLoaderIsolatedTestRunner.createRequest(
+            Collections.singletonList(DiscoverySelectors.selectClass(ClassLoaderIsolatedTestRunnerTest.class)),
+            Collections.emptySet(), Collections.singletonMap("junit.jupiter.execution.parallel.enabled", "true"));
+
+        assertEquals(Optional.of("true"),
+            request.getConfigurationParameters().get("junit.jupiter.execution.parallel.enabled"));
+    }
+}
@@ -6,10 +6,17 @@ import org.junit.platform.launcher.TestPlan;
 
 import org.junit.platform.engine.TestExecutionResult;
 
-import java.util.Map;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.Mockito.when;
 import static org.mockito.Mockito.mock;
@@ -17,78 +24,182 @@ import static org.mockito.Mockito.mock;
 public class CustomSummaryGeneratingListenerTest {
 
     @Test
-    public void testTestPlanExecutionStarted_ClearsTestStatusMap() {
+    public void testTestPlanExecutionStarted_ClearsTestStatus() {
         CustomSummaryGeneratingListener listener = new CustomSummaryGeneratingListener();
-        TestPlan mockTestPlan = mock(TestPlan.class);
-        listener.getTestPassStatus().put("test1", true);
+        listener.executionFinished(mockTest("test1"), TestExecutionResult.successful());
 
-        listener.testPlanExecutionStarted(mockTestPlan);
+        listener.testPlanExecutionStarted(mock(TestPlan.class));
 
-        assertTrue(listener.getTestPassStatus().isEmpty(), "Test pass status map should be empty after test plan execution started");
+        assertTrue(listener.getExecutedTests().isEmpty(), "No test should be executed after test plan execution started");
+        assertTrue(listener.getPassedTests().isEmpty(), "No test should be passed after test plan execution started");
+        assertEquals(0, listener.indexOf("test1"), "Indexes should be kept across runs");
     }
 
     @Test
     public void testExecutionFinished_UpdatesTestStatus() {
         CustomSummaryGeneratingListener listener = new CustomSummaryGeneratingListener();
-        TestIdentifier mockTestIdentifier = mock(TestIdentifier.class);
-        TestExecutionResult mockTestExecutionResult = mock(TestExecutionResult.class);
-        String testId = "test1";
-        
-        when(mockTestIdentifier.getUniqueId()).thenReturn(testId);
-        when(mockTestExecutionResult.getStatus()).thenReturn(TestExecutionResult.Status.SUCCESSFUL);
-
-        listener.executionFinished(mockTestIdentifier, mockTestExecutionResult);
-
-        Map<String, Boolean> statusMap = listener.getTestPassStatus();
-        assertEquals(1, statusMap.size(), "Status map should contain one entry");
-        assertTrue(statusMap.containsKey(testId), "Status map should contain the test ID");
-        assertTrue(statusMap.get(testId), "Test status should be successful");
+
+        listener.executionFinished(mockTest("test1"), TestExecutionResult.successful());
+
+        int index = listener.indexOf("test1");
+        assertEquals(1, listener.getExecutedTests().cardinality(), "One test should be executed");
+        assertTrue(listener.getPassedTests().get(index), "Test status should be successful");
+        assertEquals("test1", listener.getUniqueId(index));
     }
 
     @Test
     public void testExecutionFinished_DoesNotOverwriteExistingTestStatus() {
         CustomSummaryGeneratingListener listener = new CustomSummaryGeneratingListener();
-        TestIdentifier mockTestIdentifier = mock(TestIdentifier.class);
-        TestExecutionResult mockTestExecutionResult = mock(TestExecutionResult.class);
-        String testId = "test1";
+        TestIdentifier testIdentifier = mockTest("test1");
+
+        listener.executionFinished(testIdentifier, TestExecutionResult.failed(new AssertionError("first")));
+        listener.executionFinished(testIdentifier, TestExecutionResult.successful());
+
+        int index = listener.indexOf("test1");
+        assertEquals(1, listener.getExecutedTests().cardinality(), "One test should be executed");
+        assertTrue(listener.getFailedTests().get(index), "Test status should not be overwritten");
+        assertFalse(listener.getPassedTests().get(index), "Test status should not be overwritten");
+    }
+
+    @Test
+    public void testExecutionFinished_SeparatesFailedAndAbortedTests() {
+        CustomSummaryGeneratingListener listener = new CustomSummaryGeneratingListener();
 
-        listener.getTestPassStatus().put(testId, false);
-        
-        when(mockTestIdentifier.getUniqueId()).thenReturn(testId);
-        when(mockTestExecutionResult.getStatus()).thenReturn(TestExecutionResult.Status.SUCCESSFUL);
+        listener.executionFinished(mockTest("test1"), TestExecutionResult.successful());
+        listener.executionFinished(mockTest("test2"), TestExecutionResult.failed(new AssertionError("failed")));
+        listener.executionFinished(mockTest("test3"), TestExecutionResult.aborted(null));
+
+        BitSet failed = listener.getFailedTests();
+        assertEquals(3, listener.getExecutedTests().cardinality(), "Three tests should be executed");
+        assertTrue(listener.getPassedTests().get(listener.indexOf("test1")), "First test should be successful");
+        assertTrue(failed.get(listener.indexOf("test2")), "Second test should be failed");
+        assertFalse(failed.get(listener.indexOf("test3")), "Aborted test should not be failed");
+        assertEquals(1, listener.getTestsFailedCount());
+        assertEquals("test2()", listener.getDisplayName(listener.indexOf("test2")));
+    }
+
+    @Test
+    public void testExecutionFinished_RecordsTestDuration() {
+        CustomSummaryGeneratingListener listener = new CustomSummaryGeneratingListener();
+        TestIdentifier testIdentifier = mockTest("test1");
 
-        listener.executionFinished(mockTestIdentifier, mockTestExecutionResult);
+        listener.executionStarted(testIdentifier);
+        listener.executionFinished(testIdentifier, TestExecutionResult.successful());
 
-        Map<String, Boolean> statusMap = listener.getTestPassStatus();
-        assertEquals(1, statusMap.size(), "Status map should contain one entry");
-        assertTrue(statusMap.containsKey(testId), "Status map should contain the test ID");
-        assertFalse(statusMap.get(testId), "Test status should not be overwritten");
+        assertTrue(listener.getDurationMillis(listener.indexOf("test1")) >= 0, "Test duration should not be negative");
+    }
+
+    @Test
+    public void testFailureDigest_KeepsStackTracesOfDigestedTestsOnly() {
+        CustomSummaryGeneratingListener listener = new CustomSummaryGeneratingListener();
+        BitSet digestedTests = new BitSet();
+        digestedTests.set(listener.indexOf("digested"));
+        listener.setDigestedTests(digestedTests);
+
+        listener.executionFinished(mockTest("digested"), TestExecutionResult.failed(new AssertionError("polluted")));
+        listener.executionFinished(mockTest("other"), TestExecutionResult.failed(new AssertionError("flaky")));
+        listener.executionFinished(mockTest("noThrowable"), TestExecutionResult.failed(null));
+
+        String digest = listener.getFailureDigest(listener.indexOf("digested"));
+        assertTrue(digest.startsWith("java.lang.AssertionError: polluted"), digest);
+        assertTrue(digest.contains("\tat " + CustomSummaryGeneratingListenerTest.class.getName()), digest);
+        assertEquals("java.lang.AssertionError: flaky", listener.getFailureDigest(listener.indexOf("other")));
+        assertNull(listener.getFailureDigest(listener.indexOf("noThrowable")));
     }
 
     @Test
-    public void testGetTestPassStatus_ReturnsCorrectMap() {
+    public void testFailureDigest_IsDeduplicatedAndBounded() {
         CustomSummaryGeneratingListener listener = new CustomSummaryGeneratingListener();
-        TestIdentifier mockTestIdentifier1 = mock(TestIdentifier.class);
-        TestIdentifier mockTestIdentifier2 = mock(TestIdentifier.class);
-        TestExecutionResult mockTestExecutionResult1 = mock(TestExecutionResult.class);
-        TestExecutionResult mockTestExecutionResult2 = mock(TestExecutionResult.class);
-        String testId1 = "test1";
-        String testId2 = "test2";
-        
-        when(mockTestIdentifier1.getUniqueId()).thenReturn(testId1);
-        when(mockTestExecutionResult1.getStatus()).thenReturn(TestExecutionResult.Status.SUCCESSFUL);
-        listener.executionFinished(mockTestIdentifier1, mockTestExecutionResult1);
-
-        when(mockTestIdentifier2.getUniqueId()).thenReturn(testId2);
-        when(mockTestExecutionResult2.getStatus()).thenReturn(TestExecutionResult.Status.FAILED);
-        listener.executionFinished(mockTestIdentifier2, mockTestExecutionResult2);
-
-        Map<String, Boolean> statusMap = listener.getTestPassStatus();
-
-        assertEquals(2, statusMap.size(), "Status map should contain two entries");
-        assertTrue(statusMap.containsKey(testId1), "Status map should contain the first test ID");
-        assertTrue(statusMap.containsKey(testId2), "Status map should contain the second test ID");
-        assertTrue(statusMap.get(testId1), "First test status should be successful");
-        assertFalse(statusMap.get(testId2), "Second test status should be failed");
+        int tests = CustomSummaryGeneratingListener.MAX_DIGESTS + 2;
+        for (int i = 0; i < tests; i++) {
+            listener.executionFinished(mockTest("test" + i), TestExecutionResult.failed(new AssertionError("failure " + i)));
+        }
+        listener.executionFinished(mockTest("duplicate"), TestExecutionResult.failed(new AssertionError("failure 0")));
+
+        assertEquals("java.lang.AssertionError: failure 0", listener.getFailureDigest(listener.indexOf("duplicate")));
+        assertEquals(CustomSummaryGeneratingListener.OMITTED_DIGEST,
+            listener.getFailureDigest(listener.indexOf("test" + (tests - 1))));
+        assertEquals(2, listener.getOmittedDigests());
+    }
+
+    @Test
+    public void testConcurrentCallbacks_RecordEveryTest() throws Exception {
+        CustomSummaryGeneratingListener listener = new CustomSummaryGeneratingListener();
+        int threads = 8;
+        int testsPerThread = 100;
+        List<List<TestIdentifier>> tests = new ArrayList<>();
+        for (int thread = 0; thread < threads; thread++) {
+            List<TestIdentifier> threadTests = new ArrayList<>();
+            for (int i = 0; i < testsPerThread; i++) {
+                threadTests.add(mockTest("test" + thread + "-" + i));
+            }
+            tests.add(threadTests);
+        }
+
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<?>> results = new ArrayList<>();
+            for (List<TestIdentifier> threadTests : tests) {
+                results.add(pool.submit(() -> {
+                    for (int i = 0; i < threadTests.size(); i++) {
+                        listener.executionStarted(threadTests.get(i));
+                        listener.executionFinished(threadTests.get(i), i % 2 == 0 ? TestExecutionResult.successful()
+                            : TestExecutionResult.failed(new AssertionError("failure " + i)));
+                    }
+                }));
+            }
+            for (Future<?> result : results) {
+                result.get();
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+
+        assertEquals(threads * testsPerThread, listener.getExecutedTests().cardinality());
+        assertEquals(threads * testsPerThread / 2, listener.getPassedTests().cardinality());
+        assertEquals(threads * testsPerThread / 2, listener.getTestsFailedCount());
+        assertEquals("java.lang.AssertionError: failure 1", listener.getFailureDigest(listener.indexOf("test7-1")));
+    }
+
+    @Test
+    public void testRenderStackTrace_CutsLongTraces() {
+        Throwable throwable = new StackOverflowError();
+        StackTraceElement[] frames = new StackTraceElement[CustomSummaryGeneratingListener.MAX_DIGEST_LINES * 2];
+        Arrays.fill(frames, new StackTraceElement("com.example.FooTest", "bar", "FooTest.java", 1));
+        throwable.setStackTrace(frames);
+
+        String[] lines = CustomSummaryGeneratingListener.renderStackTrace(throwable).split(System.lineSeparator());
+
+        assertEquals(CustomSummaryGeneratingListener.MAX_DIGEST_LINES + 1, lines.length);
+        assertEquals("\t... " + (CustomSummaryGeneratingListener.MAX_DIGEST_LINES + 1) + " more lines",
+            lines[lines.length - 1]);
+    }
+
+    @Test
+    public void testFormatSummary_CountsOutcomesOnOneLine() {
+        CustomSummaryGeneratingListener listener = new CustomSummaryGeneratingListener();
+        listener.testPlanExecutionStarted(mock(TestPlan.class));
+        BitSet digestedTests = new BitSet();
+        digestedTests.set(listener.indexOf("test2"));
+        listener.setDigestedTests(digestedTests);
+
+        listener.executionFinished(mockTest("test1"), TestExecutionResult.successful());
+        listener.executionFinished(mockTest("test2"), TestExecutionResult.failed(new AssertionError("failed")));
+        listener.executionFinished(mockTest("test3"), TestExecutionResult.aborted(null));
+
+        String summary = listener.formatSummary();
+        assertTrue(summary.startsWith("Test run finished after "), summary);
+        assertTrue(summary.endsWith("3 test(s) started, 1 successful, 1 failed, 1 aborted, 0 skipped"), summary);
+        assertFalse(summary.contains(System.lineSeparator()), summary);
+        assertTrue(listener.isDigested(listener.indexOf("test2")));
+        assertFalse(listener.isDigested(listener.indexOf("test1")));
+    }
+
+    private static TestIdentifier mockTest(String uniqueId) {
+        TestIdentifier testIdentifier = mock(TestIdentifier.class);
+        when(testIdentifier.getUniqueId()).thenReturn(uniqueId);
+        when(testIdentifier.getDisplayName()).thenReturn(uniqueId + "()");
+        when(testIdentifier.isTest()).thenReturn(true);
+        return testIdentifier;
     }
-}
\ No newline at end of file
+}
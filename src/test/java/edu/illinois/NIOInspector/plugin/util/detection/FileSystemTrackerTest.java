@@ -0,0 +1,84 @@
+package edu.illinois.NIOInspector.plugin.util.detection;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class FileSystemTrackerTest {
+
+    private Path directory;
+
+    @BeforeEach
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("tracked");
+    }
+
+    @AfterEach
+    public void tearDown() throws IOException {
+        Files.walk(directory).sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+    }
+
+    @Test
+    public void testDiffFindsCreatedModifiedAndDeletedFiles() throws IOException {
+        Path kept = Files.write(directory.resolve("kept.txt"), "kept".getBytes());
+        Path modified = Files.write(directory.resolve("modified.txt"), "before".getBytes());
+        Path deleted = Files.write(directory.resolve("deleted.txt"), "deleted".getBytes());
+        FileSystemTracker tracker = new FileSystemTracker(Collections.singletonList(directory.toFile()));
+        Map<String, long[]> before = tracker.index();
+
+        Files.write(modified, "after, and longer".getBytes());
+        Files.delete(deleted);
+        Path created = Files.write(directory.resolve("created.txt"), new byte[0]);
+        List<String> changes = FileSystemTracker.diff(before, tracker.index());
+
+        assertEquals(Arrays.asList("created " + created, "deleted " + deleted, "modified " + modified), changes);
+        assertFalse(changes.toString().contains(kept.toString()));
+    }
+
+    @Test
+    public void testExcludedAndNestedDirectories() throws IOException {
+        Path logs = Files.createDirectories(directory.resolve(".NIOInspector"));
+        Path nested = Files.createDirectories(directory.resolve("target"));
+        Path workerTmp = Files.createDirectories(logs.resolve("shard-0").resolve("tmp"));
+        FileSystemTracker tracker = new FileSystemTracker(Arrays.asList(directory.toFile(), nested.toFile(),
+            workerTmp.toFile(), new File(directory.toFile(), "missing")));
+        Map<String, long[]> before = tracker.index();
+
+        Files.write(logs.resolve("rerun-results.log"), "log".getBytes());
+        Path output = Files.write(nested.resolve("output.txt"), "output".getBytes());
+        Path temporary = Files.write(workerTmp.resolve("temporary.txt"), "temporary".getBytes());
+
+        assertEquals(Arrays.asList("created " + temporary, "created " + output),
+            FileSystemTracker.diff(before, tracker.index()));
+    }
+
+    @Test
+    public void testReportFileChanges() {
+        FileSystemTracker tracker = new FileSystemTracker(Collections.singletonList(directory.toFile()));
+        tracker.getFileChanges().put("[engine:junit-jupiter]/[class:com.example.FooTest]/[method:bar()]",
+            Collections.singletonList("created /tmp/out.txt"));
+
+        List<String> lines = new ArrayList<>();
+        tracker.reportFileChanges(lines::add);
+        TestOutcomeAggregator aggregator = new TestOutcomeAggregator();
+        lines.forEach(aggregator);
+
+        assertEquals(1, lines.size());
+        assertTrue(aggregator.getFileChangingTests().get("com.example.FooTest#bar").contains("created /tmp/out.txt"));
+    }
+}
@@ -0,0 +1,38 @@
+package edu.illinois.NIOInspector.plugin.util.detection;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+public class ForkedRerunWorkerTest {
+
+    @Test
+    public void testParseTests() {
+        List<String> testClassNames = new ArrayList<>();
+        Map<String, List<String>> classStringToMethodsMap = new HashMap<>();
+
+        ForkedRerunWorker.parseTests("a.ATest#first, a.ATest#second,b.BTest,", testClassNames, classStringToMethodsMap);
+
+        assertEquals(Arrays.asList("a.ATest", "b.BTest"), testClassNames);
+        assertEquals(Arrays.asList("first", "second"), classStringToMethodsMap.get("a.ATest"));
+        assertFalse(classStringToMethodsMap.containsKey("b.BTest"));
+    }
+
+    @Test
+    public void testParseEmptyTests() {
+        List<String> testClassNames = new ArrayList<>();
+        Map<String, List<String>> classStringToMethodsMap = new HashMap<>();
+
+        ForkedRerunWorker.parseTests("", testClassNames, classStringToMethodsMap);
+
+        assertEquals(0, testClassNames.size());
+        assertEquals(0, classStringToMethodsMap.size());
+    }
+}
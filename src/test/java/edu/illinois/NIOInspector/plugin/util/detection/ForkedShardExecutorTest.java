@@ -0,0 +1,51 @@
+package edu.illinois.NIOInspector.plugin.util.detection;
+
+import org.apache.maven.plugin.MojoExecutionException;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Properties;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class ForkedShardExecutorTest {
+
+    private static final String NIO_ID = "[engine:junit-jupiter]/[class:com.example.ExampleTest]/[method:pollutes()]";
+
+    private static final String ND_ID = "[engine:junit-jupiter]/[class:com.example.ExampleTest]/[method:flaky()]";
+
+    @Test
+    public void testRequiresURLClassLoader() {
+        ClassLoader classLoader = new ClassLoader() { };
+
+        assertThrows(MojoExecutionException.class, () -> new ForkedShardExecutor(classLoader, new Properties()));
+    }
+
+    @Test
+    public void testOutcomesAreMergedFromMixedStream() throws Exception {
+        String stream = String.join("\n",
+            "Starting Rerun #0",
+            TestOutcomeAggregator.encodeOutcome(0, NIO_ID, TestOutcomeAggregator.PASSED),
+            TestOutcomeAggregator.encodeOutcome(0, ND_ID, TestOutcomeAggregator.PASSED),
+            "printed by a test",
+            TestOutcomeAggregator.encodeOutcome(1, NIO_ID, TestOutcomeAggregator.FAILED),
+            TestOutcomeAggregator.encodeOutcome(1, ND_ID, TestOutcomeAggregator.FAILED),
+            "",
+            TestOutcomeAggregator.encodeOutcome(2, NIO_ID, TestOutcomeAggregator.FAILED),
+            TestOutcomeAggregator.encodeOutcome(2, ND_ID, TestOutcomeAggregator.PASSED),
+            "printed without newline");
+        TestOutcomeAggregator aggregator = new TestOutcomeAggregator();
+
+        long lastOutcomeTime = ForkedShardExecutor.readOutcomes(
+            new ByteArrayInputStream(stream.getBytes(StandardCharsets.UTF_8)), "shard-0", aggregator);
+
+        assertNotEquals(0, lastOutcomeTime);
+        assertEquals(Integer.valueOf(2), aggregator.getNIOTests(2).get("com.example.ExampleTest#pollutes"));
+        assertFalse(aggregator.getNIOTests(2).containsKey("com.example.ExampleTest#flaky"));
+        assertEquals(Integer.valueOf(1), aggregator.getFlakyTests().get("com.example.ExampleTest#flaky"));
+    }
+}
@@ -0,0 +1,53 @@
+package edu.illinois.NIOInspector.plugin.util.detection;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TimeZone;
+import java.util.jar.JarFile;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+
+public class GlobalStateAgentTest {
+
+    private final TimeZone timeZone = TimeZone.getDefault();
+
+    private File jarFile;
+
+    @AfterEach
+    public void tearDown() {
+        TimeZone.setDefault(timeZone);
+        if (jarFile != null) {
+            jarFile.delete();
+        }
+    }
+
+    @Test
+    public void testWriteAgentJar() throws IOException {
+        jarFile = Files.createTempFile("agent", ".jar").toFile();
+        GlobalStateAgent.writeAgentJar(jarFile);
+
+        try (JarFile jar = new JarFile(jarFile)) {
+            assertEquals(GlobalStateAgent.class.getName(), jar.getManifest().getMainAttributes().getValue("Premain-Class"));
+        }
+    }
+
+    @Test
+    public void testSnapshot() {
+        assertFalse(GlobalStateAgent.isInstalled());
+        Map<String, String> before = GlobalStateAgent.snapshot(Thread.currentThread(), getClass().getClassLoader());
+        assertEquals(Locale.getDefault().toLanguageTag(), before.get("default locale"));
+
+        TimeZone.setDefault(TimeZone.getTimeZone(timeZone.getID().equals("Asia/Tokyo") ? "UTC" : "Asia/Tokyo"));
+        Map<String, String> after = GlobalStateAgent.snapshot(Thread.currentThread(), getClass().getClassLoader());
+        assertNotEquals(before.get("default time zone"), after.get("default time zone"));
+        assertEquals(before.get("security providers"), after.get("security providers"));
+    }
+}
@@ -0,0 +1,56 @@
+package edu.illinois.NIOInspector.plugin.util.detection;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class GlobalStateTrackerTest {
+
+    @Test
+    public void testUnavailableWithoutAgent() {
+        assertFalse(new GlobalStateTracker(getClass().getClassLoader()).isAvailable());
+    }
+
+    @Test
+    public void testDiff() {
+        Map<String, String> before = new HashMap<>();
+        before.put("default time zone", "UTC");
+        before.put("default locale", "en-US");
+        before.put("JUL level of com.example", "INFO");
+        before.put("thread local holding com.example.Context#1", "com.example.Context@2");
+        Map<String, String> after = new HashMap<>(before);
+        after.put("default time zone", "Asia/Tokyo");
+        after.remove("JUL level of com.example");
+        after.put("JUL level of com.example.created", "null");
+        after.remove("thread local holding com.example.Context#1");
+        after.put("thread local holding java.lang.StringBuilder#3", "java.lang.StringBuilder@4");
+
+        assertEquals(Arrays.asList("JUL level of com.example", "default time zone",
+            "thread local holding java.lang.StringBuilder"), GlobalStateTracker.diff(before, after));
+        assertTrue(GlobalStateTracker.diff(before, new HashMap<>(before)).isEmpty());
+    }
+
+    @Test
+    public void testReportChangedState() {
+        GlobalStateTracker tracker = new GlobalStateTracker(getClass().getClassLoader());
+        tracker.getChangedState().put("[engine:junit-jupiter]/[class:com.example.FooTest]/[method:bar()]",
+            Collections.singletonList("default time zone"));
+
+        List<String> lines = new ArrayList<>();
+        tracker.reportChangedState(lines::add);
+        TestOutcomeAggregator aggregator = new TestOutcomeAggregator();
+        lines.forEach(aggregator);
+
+        assertEquals(1, lines.size());
+        assertTrue(aggregator.getGlobalStateChangingTests().get("com.example.FooTest#bar").contains("default time zone"));
+    }
+}
@@ -0,0 +1,67 @@
+package edu.illinois.NIOInspector.plugin.util.detection;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class HeapMonitorTest {
+
+    @Test
+    public void testEncodedSampleIsDecoded() {
+        HeapMonitor.Sample sample = HeapMonitor.decode(HeapMonitor.encode(
+            new HeapMonitor.Sample("shard-1", 2, 100, 80, 300, 4, 12)));
+
+        assertEquals("shard-1", sample.source);
+        assertEquals(2, sample.run);
+        assertEquals(100, sample.retainedBeforeBytes);
+        assertEquals(80, sample.retainedAfterBytes);
+        assertEquals(300, sample.peakBytes);
+        assertEquals(4, sample.collections);
+        assertEquals(12, sample.collectionMillis);
+        assertEquals(-20, sample.getGrowthBytes());
+    }
+
+    @Test
+    public void testMainRunnerSampleHasNoSource() {
+        HeapMonitor.Sample sample = HeapMonitor.decode(HeapMonitor.encode(
+            new HeapMonitor.Sample("", 0, 1, 2, 3, 0, 0)));
+
+        assertEquals("", sample.source);
+        assertEquals(0, sample.run);
+    }
+
+    @Test
+    public void testOtherLinesAreNotSamples() {
+        assertNull(HeapMonitor.decode(HeapMonitor.encodeRecycle(3, 1024)));
+        assertNull(HeapMonitor.decode(TestOutcomeAggregator.encodeCoverage(1, 1, 3)));
+        assertNull(HeapMonitor.decodeRecycle(HeapMonitor.encode(new HeapMonitor.Sample("", 0, 1, 2, 3, 0, 0))));
+
+        long[] recycle = HeapMonitor.decodeRecycle(HeapMonitor.encodeRecycle(3, 1024));
+        assertEquals(3, recycle[0]);
+        assertEquals(1024, recycle[1]);
+    }
+
+    @Test
+    public void testRetainedHeapIsSampledAroundRuns() {
+        HeapMonitor monitor = new HeapMonitor();
+        assertEquals(0, monitor.getGrowthSinceInitialRun());
+
+        monitor.startRun();
+        HeapMonitor.Sample initialRun = monitor.endRun("", 0);
+        monitor.startRun();
+        HeapMonitor.Sample rerun = monitor.endRun("", 1);
+
+        assertTrue(initialRun.retainedAfterBytes > 0);
+        assertTrue(initialRun.collections >= 0 && initialRun.collectionMillis >= 0);
+        assertEquals(initialRun.retainedAfterBytes, rerun.retainedBeforeBytes);
+        assertEquals(rerun.retainedAfterBytes - initialRun.retainedAfterBytes, monitor.getGrowthSinceInitialRun());
+    }
+
+    @Test
+    public void testFormatMegabytes() {
+        assertEquals("64.0 MB", HeapMonitor.formatMegabytes(64L << 20));
+        assertEquals("0.5 MB", HeapMonitor.formatMegabytes(512L << 10));
+    }
+}
@@ -0,0 +1,38 @@
+package edu.illinois.NIOInspector.plugin.util.detection;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class HeapTelemetryRecorderTest {
+
+    private static final String TEST_ID = "[engine:junit-jupiter]/[class:com.example.ExampleTest]/[method:testMethod()]";
+
+    @Test
+    public void testSamplesAreKeptPerSource() {
+        HeapTelemetryRecorder recorder = new HeapTelemetryRecorder();
+        recorder.accept(HeapMonitor.encode(new HeapMonitor.Sample("shard-0", 0, 10, 20, 40, 1, 5)));
+        recorder.accept(HeapMonitor.encode(new HeapMonitor.Sample("shard-1", 0, 10, 15, 30, 0, 0)));
+        recorder.accept(HeapMonitor.encode(new HeapMonitor.Sample("shard-0", 1, 20, 50, 60, 2, 7)));
+        recorder.accept(TestOutcomeAggregator.encodeOutcome(0, TEST_ID, TestOutcomeAggregator.PASSED));
+
+        assertEquals(2, recorder.getSamples("shard-0").size());
+        assertEquals(1, recorder.getSamples("shard-1").size());
+        assertTrue(recorder.getSamples("").isEmpty());
+        assertEquals(Long.valueOf(30), recorder.getGrowthSinceInitialRun("shard-0"));
+        assertNull(recorder.getGrowthSinceInitialRun("shard-1"));
+    }
+
+    @Test
+    public void testGrowthSinceInitialRunUsesTheLastRerun() {
+        HeapTelemetryRecorder recorder = new HeapTelemetryRecorder();
+        recorder.accept(HeapMonitor.encode(new HeapMonitor.Sample("", 0, 10, 20, 40, 1, 5)));
+        recorder.accept(HeapMonitor.encode(new HeapMonitor.Sample("", 2, 30, 25, 60, 0, 0)));
+        recorder.accept(HeapMonitor.encode(new HeapMonitor.Sample("", 1, 20, 30, 60, 0, 0)));
+
+        assertEquals(Long.valueOf(5), recorder.getGrowthSinceInitialRun(""));
+        recorder.logReport();
+    }
+}
@@ -0,0 +1,79 @@
+package edu.illinois.NIOInspector.plugin.util.detection;
+
+import org.apache.maven.plugin.MojoExecutionException;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class InJvmShardExecutorTest {
+
+    static class PollutingFixture {
+        static int runs;
+
+        @Test
+        void pollutes() {
+            runs++;
+            assertEquals(1, runs);
+        }
+    }
+
+    static class FlakyFixture {
+        static int runs;
+
+        @Test
+        void failsInFirstRerun() {
+            runs++;
+            assertNotEquals(2, runs);
+        }
+    }
+
+    @Test
+    public void testRequiresURLClassLoader() {
+        ClassLoader classLoader = new ClassLoader() { };
+
+        assertThrows(MojoExecutionException.class, () -> new InJvmShardExecutor(classLoader, new Properties()));
+    }
+
+    @Test
+    public void testShardOutcomesAreMerged() throws Exception {
+        String pollutingTest = PollutingFixture.class.getName() + "#pollutes";
+        String flakyTest = FlakyFixture.class.getName() + "#failsInFirstRerun";
+        Map<String, List<String>> classStringToMethodsMap = new HashMap<>();
+        classStringToMethodsMap.put(PollutingFixture.class.getName(), new ArrayList<>(Arrays.asList("pollutes")));
+        classStringToMethodsMap.put(FlakyFixture.class.getName(), new ArrayList<>(Arrays.asList("failsInFirstRerun")));
+        TestOutcomeAggregator aggregator = new TestOutcomeAggregator();
+
+        try (URLClassLoader classLoader = createTestClassLoader()) {
+            new InJvmShardExecutor(classLoader, new Properties()).run(
+                Arrays.asList(PollutingFixture.class.getName(), FlakyFixture.class.getName()),
+                classStringToMethodsMap, 2, 2, aggregator);
+        }
+
+        Map<String, Integer> NIOTests = aggregator.getNIOTests(2);
+        assertEquals(Integer.valueOf(2), NIOTests.get(pollutingTest));
+        assertFalse(NIOTests.containsKey(flakyTest));
+        assertEquals(Integer.valueOf(1), aggregator.getFlakyTests().get(flakyTest));
+    }
+
+    private static URLClassLoader createTestClassLoader() throws IOException {
+        List<URL> urls = new ArrayList<>();
+        for (String entry : System.getProperty("java.class.path").split(File.pathSeparator)) {
+            urls.add(new File(entry).toURI().toURL());
+        }
+        return new URLClassLoader(urls.toArray(new URL[0]), ClassLoader.getPlatformClassLoader());
+    }
+}
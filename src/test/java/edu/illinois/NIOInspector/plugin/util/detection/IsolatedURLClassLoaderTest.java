@@ -5,7 +5,11 @@ import org.junit.jupiter.api.Test;
 import java.net.URL;
 import java.net.URLClassLoader;
 import java.net.MalformedURLException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
 
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertNotEquals;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
@@ -61,4 +65,51 @@ public class IsolatedURLClassLoaderTest {
         
         classLoader.close();
     }
+
+    @Test
+    public void testGetLoadedClasses() throws Exception {
+        URL[] urls = new URL[] { IsolatedURLClassLoaderTest.class.getProtectionDomain().getCodeSource().getLocation() };
+        IsolatedURLClassLoader classLoader = new IsolatedURLClassLoader(urls);
+
+        Class<?> loadedClass = classLoader.loadClass(IsolatedURLClassLoaderTest.class.getName());
+        classLoader.loadClass("java.lang.String");
+
+        classLoader.close();
+        assertEquals(1, classLoader.getLoadedClasses().size());
+        assertEquals(loadedClass, classLoader.getLoadedClasses().get(0));
+    }
+
+    @Test
+    public void testCreateSharesDeduplicatedURLs() throws Exception {
+        URL testClasses = IsolatedURLClassLoaderTest.class.getProtectionDomain().getCodeSource().getLocation();
+        URL jupiter = Test.class.getProtectionDomain().getCodeSource().getLocation();
+        List<URL> sharedURLs = Arrays.asList(jupiter, jupiter);
+        List<URL> isolatedURLs = Arrays.asList(testClasses, jupiter, testClasses);
+
+        try (IsolatedURLClassLoader first = IsolatedURLClassLoader.create(sharedURLs, isolatedURLs)) {
+            assertArrayEquals(new URL[] { testClasses }, first.getURLs());
+            assertArrayEquals(new URL[] { jupiter }, first.getSharedURLs());
+            assertTrue(first.getParent() instanceof IsolatedURLClassLoader.SharedURLClassLoader);
+
+            // A second isolated class loader on top of the same shared one
+            try (IsolatedURLClassLoader second = new IsolatedURLClassLoader(first.getURLs(), first.getParent())) {
+                assertEquals(first.loadClass(Test.class.getName()), second.loadClass(Test.class.getName()));
+                assertNotEquals(first.loadClass(IsolatedURLClassLoaderTest.class.getName()),
+                    second.loadClass(IsolatedURLClassLoaderTest.class.getName()));
+                assertEquals(1, second.getLoadedClasses().size());
+            }
+        }
+    }
+
+    @Test
+    public void testCreateWithoutSharedURLs() throws Exception {
+        URL testClasses = IsolatedURLClassLoaderTest.class.getProtectionDomain().getCodeSource().getLocation();
+
+        try (IsolatedURLClassLoader classLoader = IsolatedURLClassLoader.create(Collections.emptyList(),
+                Arrays.asList(testClasses, testClasses))) {
+            assertEquals(ClassLoader.getPlatformClassLoader(), classLoader.getParent());
+            assertArrayEquals(new URL[] { testClasses }, classLoader.getURLs());
+            assertEquals(0, classLoader.getSharedURLs().length);
+        }
+    }
 }
@@ -0,0 +1,145 @@
+package edu.illinois.NIOInspector.plugin.util.detection;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.platform.engine.FilterResult;
+import org.junit.platform.engine.TestExecutionResult;
+import org.junit.platform.engine.discovery.DiscoverySelectors;
+import org.junit.platform.launcher.PostDiscoveryFilter;
+import org.junit.platform.launcher.TestExecutionListener;
+import org.junit.platform.launcher.TestIdentifier;
+import org.junit.platform.launcher.core.LauncherDiscoveryRequestBuilder;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class JUnit4ExecutorTest {
+
+    private static final String FIXTURE_ID = "[engine:junit-vintage]/[runner:" + JUnit4Fixture.class.getName() + "]";
+
+    @AfterEach
+    public void tearDown() {
+        JUnit4Fixture.failing = false;
+    }
+
+    @Test
+    public void testIsJUnit4Class() {
+        assertTrue(JUnit4Executor.isJUnit4Class(JUnit4Fixture.class));
+        assertTrue(JUnit4Executor.isJUnit4Class(JUnit3Fixture.class));
+        assertFalse(JUnit4Executor.isJUnit4Class(JupiterFixture.class));
+        assertFalse(JUnit4Executor.isJUnit4Class(Object.class));
+    }
+
+    @Test
+    public void testCanRun() {
+        ClassLoader classLoader = getClass().getClassLoader();
+
+        assertTrue(JUnit4Executor.canRun(Arrays.asList(JUnit4Fixture.class, JUnit3Fixture.class), classLoader));
+        assertFalse(JUnit4Executor.canRun(Arrays.asList(JUnit4Fixture.class, JupiterFixture.class), classLoader));
+        assertFalse(JUnit4Executor.canRun(Collections.emptyList(), classLoader));
+    }
+
+    @Test
+    public void testExecuteReportsVintageUniqueIds() {
+        JUnit4Fixture.failing = true;
+        RecordingListener listener = new RecordingListener();
+        JUnit4Executor executor = new JUnit4Executor();
+        executor.registerTestExecutionListeners(listener);
+
+        JUnit4Executor.Plan plan = executor.discover(LauncherDiscoveryRequestBuilder.request()
+            .selectors(DiscoverySelectors.selectClass(JUnit4Fixture.class)).build());
+        executor.execute(plan);
+
+        assertEquals(1, plan.getRunnerCount());
+        assertEquals(TestExecutionResult.Status.SUCCESSFUL, listener.results.get(testId("passes")));
+        assertEquals(TestExecutionResult.Status.FAILED, listener.results.get(testId("fails")));
+        assertEquals(TestExecutionResult.Status.SUCCESSFUL, listener.results.get(FIXTURE_ID));
+        assertEquals(TestExecutionResult.Status.SUCCESSFUL, listener.results.get("[engine:junit-vintage]"));
+        assertEquals(Collections.singletonList(testId("ignored")), listener.skipped);
+        assertEquals(JUnit4Fixture.class.getName() + "#fails",
+            ClassLoaderIsolatedTestRunner.extractTestMethod(testId("fails")));
+    }
+
+    @Test
+    public void testSelectorsAndPostDiscoveryFilters() {
+        RecordingListener listener = new RecordingListener();
+        JUnit4Executor executor = new JUnit4Executor();
+
+        executor.execute(executor.discover(LauncherDiscoveryRequestBuilder.request()
+            .selectors(DiscoverySelectors.selectMethod(JUnit4Fixture.class, "passes"),
+                DiscoverySelectors.selectUniqueId(testId("fails")))
+            .build()), listener);
+        assertTrue(listener.results.containsKey(testId("passes")));
+        assertTrue(listener.results.containsKey(testId("fails")));
+        assertFalse(listener.results.containsKey(testId("ignored")));
+
+        listener = new RecordingListener();
+        executor.execute(executor.discover(LauncherDiscoveryRequestBuilder.request()
+            .selectors(DiscoverySelectors.selectClass(JUnit4Fixture.class))
+            .filters((PostDiscoveryFilter) descriptor ->
+                FilterResult.includedIf(!descriptor.getUniqueId().toString().equals(testId("passes"))))
+            .build()), listener);
+        assertFalse(listener.results.containsKey(testId("passes")));
+        assertTrue(listener.results.containsKey(testId("fails")));
+    }
+
+    private static String testId(String method) {
+        return FIXTURE_ID + "/[test:" + method + "(" + JUnit4Fixture.class.getName() + ")]";
+    }
+
+    private static class RecordingListener implements TestExecutionListener {
+
+        private final Map<String, TestExecutionResult.Status> results = new LinkedHashMap<>();
+        private final List<String> skipped = new ArrayList<>();
+
+        @Override
+        public void executionSkipped(TestIdentifier testIdentifier, String reason) {
+            skipped.add(testIdentifier.getUniqueId());
+        }
+
+        @Override
+        public void executionFinished(TestIdentifier testIdentifier, TestExecutionResult testExecutionResult) {
+            results.put(testIdentifier.getUniqueId(), testExecutionResult.getStatus());
+        }
+    }
+
+    public static class JUnit4Fixture {
+
+        static boolean failing;
+
+        @org.junit.Test
+        public void passes() {
+        }
+
+        @org.junit.Test
+        public void fails() {
+            org.junit.Assert.assertFalse(failing);
+        }
+
+        @org.junit.Ignore
+        @org.junit.Test
+        public void ignored() {
+        }
+    }
+
+    public static class JUnit3Fixture extends junit.framework.TestCase {
+
+        public void testSomething() {
+        }
+    }
+
+    public static class JupiterFixture {
+
+        @Test
+        public void test() {
+        }
+    }
+}
@@ -0,0 +1,112 @@
+package edu.illinois.NIOInspector.plugin.util.detection;
+
+import org.apache.maven.plugin.MojoExecutionException;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class NIOConfirmerTest {
+
+    private static final String TEST_ID = "[engine:junit-jupiter]/[class:com.example.ExampleTest]/[method:testMethod()]";
+
+    private static final String TEST_METHOD = "com.example.ExampleTest#testMethod";
+
+    static class PollutingFixture {
+        static int runs;
+
+        @Test
+        void pollutes() {
+            runs++;
+            assertEquals(1, runs);
+        }
+    }
+
+    @Test
+    public void testPassThenFailIsConfirmed() {
+        TestOutcomeAggregator aggregator = new TestOutcomeAggregator();
+        aggregator.recordOutcome(0, TEST_ID, TestOutcomeAggregator.PASSED);
+        aggregator.recordOutcome(1, TEST_ID, TestOutcomeAggregator.FAILED);
+
+        assertEquals(NIOConfirmer.Verdict.CONFIRMED, NIOConfirmer.getVerdict(aggregator, TEST_METHOD));
+    }
+
+    @Test
+    public void testPassTwiceIsOrderDependent() {
+        TestOutcomeAggregator aggregator = new TestOutcomeAggregator();
+        aggregator.recordOutcome(0, TEST_ID, TestOutcomeAggregator.PASSED);
+        aggregator.recordOutcome(1, TEST_ID, TestOutcomeAggregator.PASSED);
+
+        assertEquals(NIOConfirmer.Verdict.ORDER_DEPENDENT, NIOConfirmer.getVerdict(aggregator, TEST_METHOD));
+    }
+
+    @Test
+    public void testFailingFirstRunIsInconclusive() {
+        TestOutcomeAggregator aggregator = new TestOutcomeAggregator();
+        aggregator.recordOutcome(0, TEST_ID, TestOutcomeAggregator.FAILED);
+        aggregator.recordOutcome(1, TEST_ID, TestOutcomeAggregator.FAILED);
+
+        assertEquals(NIOConfirmer.Verdict.FAILS_ALONE, NIOConfirmer.getVerdict(aggregator, TEST_METHOD));
+        assertEquals(NIOConfirmer.Verdict.NOT_RUN, NIOConfirmer.getVerdict(new TestOutcomeAggregator(), TEST_METHOD));
+    }
+
+    @Test
+    public void testConfirmsCandidateWithRerunOptionsSet() throws Exception {
+        File tempDir = Files.createTempDirectory("nio-confirmer").toFile();
+        Properties options = new Properties();
+        options.setProperty(RerunOptions.SNAPSHOT_STATICS, "true");
+        // Without GlobalStateAgent attached, tracking globals would fork a JVM
+        options.setProperty(RerunOptions.TRACK_GLOBALS, "true");
+        options.setProperty(RerunOptions.TRACKED_DIRECTORIES, tempDir.getAbsolutePath());
+        options.setProperty(RerunOptions.PREFILTER_RERUNS, "true");
+        options.setProperty(RerunOptions.NARROW_RERUNS, "true");
+        // Time budget of the reruns already spent
+        options.setProperty(RerunOptions.DEADLINE, String.valueOf(System.currentTimeMillis() - 1));
+
+        // The runner of the candidate sets the context class loader of the calling thread
+        ClassLoader contextClassLoader = Thread.currentThread().getContextClassLoader();
+        try (URLClassLoader classLoader = createTestClassLoader()) {
+            NIOConfirmer confirmer = new NIOConfirmer(classLoader, options);
+
+            assertEquals(NIOConfirmer.Verdict.CONFIRMED,
+                confirmer.confirmCandidate(PollutingFixture.class.getName() + "#pollutes", tempDir));
+        } finally {
+            Thread.currentThread().setContextClassLoader(contextClassLoader);
+            deleteRecursively(tempDir);
+        }
+    }
+
+    @Test
+    public void testRequiresURLClassLoader() {
+        ClassLoader classLoader = new ClassLoader() {};
+
+        assertThrows(MojoExecutionException.class, () -> new NIOConfirmer(classLoader, new Properties()));
+    }
+
+    private static URLClassLoader createTestClassLoader() throws IOException {
+        List<URL> urls = new ArrayList<>();
+        for (String entry : System.getProperty("java.class.path").split(File.pathSeparator)) {
+            urls.add(new File(entry).toURI().toURL());
+        }
+        return new URLClassLoader(urls.toArray(new URL[0]), ClassLoader.getPlatformClassLoader());
+    }
+
+    private static void deleteRecursively(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                deleteRecursively(child);
+            }
+        }
+        file.delete();
+    }
+}
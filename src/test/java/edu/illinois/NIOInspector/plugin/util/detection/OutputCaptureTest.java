@@ -0,0 +1,193 @@
+package edu.illinois.NIOInspector.plugin.util.detection;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.platform.engine.TestExecutionResult;
+import org.junit.platform.launcher.TestIdentifier;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class OutputCaptureTest {
+
+    private PrintStream systemOut;
+    private PrintStream systemErr;
+    private ByteArrayOutputStream console;
+
+    @BeforeEach
+    public void setUp() {
+        systemOut = System.out;
+        systemErr = System.err;
+        console = new ByteArrayOutputStream();
+        System.setOut(new PrintStream(console, true));
+        System.setErr(new PrintStream(console, true));
+    }
+
+    @AfterEach
+    public void tearDown() {
+        System.setOut(systemOut);
+        System.setErr(systemErr);
+    }
+
+    @Test
+    public void testRingBuffer_KeepsLastBytes() {
+        OutputCapture.RingBuffer buffer = new OutputCapture.RingBuffer(8);
+        StringBuilder written = new StringBuilder();
+        for (int i = 0; i < 10; i++) {
+            byte[] chunk = ("ab" + i).getBytes(StandardCharsets.UTF_8);
+            buffer.write(chunk, 0, chunk.length);
+            written.append("ab").append(i);
+        }
+
+        assertEquals(30, buffer.getWritten());
+        assertEquals(written.substring(written.length() - 8), new String(buffer.toByteArray(), StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void testRingBuffer_KeepsTailOfLargeWrite() {
+        OutputCapture.RingBuffer buffer = new OutputCapture.RingBuffer(4);
+        byte[] small = "xy".getBytes(StandardCharsets.UTF_8);
+        byte[] large = "0123456789".getBytes(StandardCharsets.UTF_8);
+        buffer.write(small, 0, small.length);
+        buffer.write(large, 1, 8);
+
+        assertEquals(10, buffer.getWritten());
+        assertArrayEquals("5678".getBytes(StandardCharsets.UTF_8), buffer.toByteArray());
+    }
+
+    @Test
+    public void testCapture_KeepsOutputOfFailedTestsOnly() {
+        OutputCapture capture = new OutputCapture(1024);
+        capture.install();
+        try {
+            capture.startRun(true);
+            System.out.println("runner");
+            capture.executionStarted(mockTest("failing"));
+            System.out.print("out ");
+            System.err.print("err");
+            capture.executionFinished(mockTest("failing"), TestExecutionResult.failed(new AssertionError()));
+            capture.executionStarted(mockTest("passing"));
+            System.out.print("passed");
+            capture.executionFinished(mockTest("passing"), TestExecutionResult.successful());
+        } finally {
+            capture.uninstall();
+        }
+
+        assertEquals("out err", capture.getCapturedOutput("failing"));
+        assertEquals(7, capture.getCapturedBytes("failing"));
+        assertNull(capture.getCapturedOutput("passing"));
+        assertEquals("runner" + System.lineSeparator(), new String(console.toByteArray(), StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void testCapture_DropsFailuresUnlessKept() {
+        OutputCapture capture = new OutputCapture(1024);
+        capture.install();
+        try {
+            capture.startRun(false);
+            capture.executionStarted(mockTest("failing"));
+            System.out.print("initial run");
+            capture.executionFinished(mockTest("failing"), TestExecutionResult.failed(new AssertionError()));
+        } finally {
+            capture.uninstall();
+        }
+
+        assertNull(capture.getCapturedOutput("failing"));
+        assertEquals(0, console.size());
+    }
+
+    @Test
+    public void testCapture_AttributesOutputOfThreadsCreatedByTest() throws Exception {
+        OutputCapture capture = new OutputCapture(1024);
+        capture.install();
+        try {
+            capture.startRun(true);
+            capture.executionStarted(mockTest("threaded"));
+            Thread thread = new Thread(() -> System.out.print("from thread"));
+            thread.start();
+            thread.join();
+            capture.executionFinished(mockTest("threaded"), TestExecutionResult.failed(new AssertionError()));
+        } finally {
+            capture.uninstall();
+        }
+
+        assertEquals("from thread", capture.getCapturedOutput("threaded"));
+    }
+
+    @Test
+    public void testCapture_ConcurrentCapturesShareRouters() throws Exception {
+        PrintStream out = System.out;
+        OutputCapture first = new OutputCapture(1024);
+        OutputCapture second = new OutputCapture(1024);
+        TestIdentifier firstTest = mockTest("first");
+        TestIdentifier secondTest = mockTest("second");
+        TestIdentifier lateTest = mockTest("late");
+        first.install();
+        second.install();
+        first.startRun(true);
+        second.startRun(true);
+        // Each capture runs its test on its own thread, like in-JVM shards
+        Thread firstShard = new Thread(() -> {
+            first.executionStarted(firstTest);
+            System.out.print("first out");
+            System.err.print(" first err");
+            first.executionFinished(firstTest, TestExecutionResult.failed(new AssertionError()));
+        });
+        Thread secondShard = new Thread(() -> {
+            second.executionStarted(secondTest);
+            System.out.print("second out");
+            second.executionFinished(secondTest, TestExecutionResult.failed(new AssertionError()));
+        });
+        firstShard.start();
+        secondShard.start();
+        firstShard.join();
+        secondShard.join();
+
+        // Uninstalled in the same order as installed: the second capture still captures
+        first.uninstall();
+        Thread lateShard = new Thread(() -> {
+            second.executionStarted(lateTest);
+            System.out.print("late out");
+            second.executionFinished(lateTest, TestExecutionResult.failed(new AssertionError()));
+        });
+        lateShard.start();
+        lateShard.join();
+        System.out.print("runner");
+        second.uninstall();
+
+        assertEquals("first out first err", first.getCapturedOutput("first"));
+        assertNull(second.getCapturedOutput("first"));
+        assertEquals("second out", second.getCapturedOutput("second"));
+        assertEquals("late out", second.getCapturedOutput("late"));
+        assertEquals("runner", new String(console.toByteArray(), StandardCharsets.UTF_8));
+        assertSame(out, System.out);
+    }
+
+    @Test
+    public void testUninstall_RestoresStreams() {
+        PrintStream out = System.out;
+        PrintStream err = System.err;
+        OutputCapture capture = new OutputCapture(1024);
+        capture.install();
+        capture.uninstall();
+
+        assertSame(out, System.out);
+        assertSame(err, System.err);
+    }
+
+    private static TestIdentifier mockTest(String uniqueId) {
+        TestIdentifier testIdentifier = mock(TestIdentifier.class);
+        when(testIdentifier.getUniqueId()).thenReturn(uniqueId);
+        when(testIdentifier.isTest()).thenReturn(true);
+        return testIdentifier;
+    }
+}
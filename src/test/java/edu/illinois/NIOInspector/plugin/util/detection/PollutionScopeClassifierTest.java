@@ -0,0 +1,62 @@
+package edu.illinois.NIOInspector.plugin.util.detection;
+
+import org.apache.maven.plugin.MojoExecutionException;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class PollutionScopeClassifierTest {
+
+    private static final String TEST_METHOD = "com.example.ExampleTest#testMethod";
+
+    @Test
+    public void testPassingInFreshClassLoaderIsStaticState() {
+        assertEquals(PollutionScopeClassifier.Scope.STATIC_STATE, PollutionScopeClassifier.getScope(true, null));
+    }
+
+    @Test
+    public void testPassingOnlyInFreshJvmIsJvmGlobalState() {
+        assertEquals(PollutionScopeClassifier.Scope.JVM_GLOBAL_STATE, PollutionScopeClassifier.getScope(false, true));
+    }
+
+    @Test
+    public void testFailingInFreshJvmIsExternalState() {
+        assertEquals(PollutionScopeClassifier.Scope.EXTERNAL_STATE, PollutionScopeClassifier.getScope(false, false));
+        assertEquals(PollutionScopeClassifier.Scope.EXTERNAL_STATE, PollutionScopeClassifier.getScope(null, false));
+    }
+
+    @Test
+    public void testPassingInFreshJvmAfterForkedRerunsIsInMemoryState() {
+        assertEquals(PollutionScopeClassifier.Scope.IN_MEMORY_STATE, PollutionScopeClassifier.getScope(null, true));
+    }
+
+    @Test
+    public void testNotRunInFreshJvmIsUnknown() {
+        assertEquals(PollutionScopeClassifier.Scope.UNKNOWN, PollutionScopeClassifier.getScope(false, null));
+        assertEquals(PollutionScopeClassifier.Scope.UNKNOWN, PollutionScopeClassifier.getScope(null, null));
+    }
+
+    @Test
+    public void testGetShardIndex() {
+        List<List<String>> shards = Arrays.asList(Collections.singletonList("com.example.OtherTest"),
+            Collections.singletonList(TEST_METHOD), Collections.singletonList("com.example.ClassTest"));
+
+        assertEquals(1, PollutionScopeClassifier.getShardIndex(shards, TEST_METHOD));
+        assertEquals(2, PollutionScopeClassifier.getShardIndex(shards, "com.example.ClassTest#testMethod"));
+        assertEquals(-1, PollutionScopeClassifier.getShardIndex(shards, "com.example.MissingTest#testMethod"));
+    }
+
+    @Test
+    public void testRequiresURLClassLoader() {
+        ClassLoader classLoader = new ClassLoader() { };
+
+        assertThrows(MojoExecutionException.class,
+            () -> new PollutionScopeClassifier(classLoader, new Properties(), null));
+    }
+}
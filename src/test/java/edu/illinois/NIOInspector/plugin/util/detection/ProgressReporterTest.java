@@ -0,0 +1,41 @@
+package edu.illinois.NIOInspector.plugin.util.detection;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class ProgressReporterTest {
+
+    private static final String TEST_ID = "[engine:junit-jupiter]/[class:com.example.ExampleTest]/[method:testMethod()]";
+
+    @Test
+    public void testEncodedProgressIsDecoded() {
+        ProgressReporter.Progress progress = ProgressReporter.decode("printed without newline" +
+            ProgressReporter.encode(true, false, 2, "com.example.ExampleTest", TEST_ID));
+
+        assertTrue(progress.started);
+        assertFalse(progress.testClass);
+        assertEquals(2, progress.run);
+        assertEquals("com.example.ExampleTest", progress.className);
+        assertEquals(TEST_ID, progress.uniqueId);
+    }
+
+    @Test
+    public void testOutcomeLinesAreNotProgress() {
+        assertNull(ProgressReporter.decode(TestOutcomeAggregator.encodeOutcome(0, TEST_ID, TestOutcomeAggregator.PASSED)));
+        assertNull(ProgressReporter.decode("[INFO] Starting Rerun #1"));
+    }
+
+    @Test
+    public void testTestClassOfJupiterAndJUnit4Tests() {
+        assertEquals("com.example.ExampleTest", ProgressReporter.getTestClass(TEST_ID));
+        assertEquals("com.example.ExampleTest", ProgressReporter.getTestClass(
+            "[engine:junit-jupiter]/[class:com.example.ExampleTest]/[nested-class:Inner]/[method:test()]"));
+        assertEquals("com.example.LegacyTest", ProgressReporter.getTestClass(
+            "[engine:junit-vintage]/[runner:com.example.LegacyTest]/[test:test(com.example.LegacyTest)]"));
+        assertNull(ProgressReporter.getTestClass("[engine:junit-jupiter]"));
+    }
+}
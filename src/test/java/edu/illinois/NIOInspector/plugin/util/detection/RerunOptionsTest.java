@@ -0,0 +1,105 @@
+package edu.illinois.NIOInspector.plugin.util.detection;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Properties;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class RerunOptionsTest {
+
+    @Test
+    public void testGetInt() {
+        Properties options = new Properties();
+        options.setProperty(RerunOptions.FORK_COUNT, " 4 ");
+
+        assertEquals(4, RerunOptions.getInt(options, RerunOptions.FORK_COUNT, 1));
+        assertEquals(1, RerunOptions.getInt(options, "missing", 1));
+        assertEquals(1, RerunOptions.getInt(null, RerunOptions.FORK_COUNT, 1));
+    }
+
+    @Test
+    public void testGetIntMalformed() {
+        Properties options = new Properties();
+        options.setProperty(RerunOptions.FORK_COUNT, "four");
+
+        assertEquals(1, RerunOptions.getInt(options, RerunOptions.FORK_COUNT, 1));
+    }
+
+    @Test
+    public void testGetBoolean() {
+        Properties options = new Properties();
+        options.setProperty("enabled", "true");
+        options.setProperty("disabled", "no");
+
+        assertTrue(RerunOptions.getBoolean(options, "enabled"));
+        assertFalse(RerunOptions.getBoolean(options, "disabled"));
+        assertFalse(RerunOptions.getBoolean(options, "missing"));
+        assertFalse(RerunOptions.getBoolean(null, "enabled"));
+    }
+
+    @Test
+    public void testGetLong() {
+        Properties options = new Properties();
+        options.setProperty(RerunOptions.DEADLINE, "1700000000000");
+
+        assertEquals(1700000000000L, RerunOptions.getLong(options, RerunOptions.DEADLINE, 0));
+        assertEquals(0, RerunOptions.getLong(options, "missing", 0));
+    }
+
+    @Test
+    public void testParseDurationMillis() {
+        assertEquals(15 * 60 * 1000L, RerunOptions.parseDurationMillis("15m"));
+        assertEquals(90 * 1000L, RerunOptions.parseDurationMillis("90s"));
+        assertEquals(90 * 1000L, RerunOptions.parseDurationMillis("90"));
+        assertEquals(90 * 60 * 1000L, RerunOptions.parseDurationMillis("1h30m"));
+        assertEquals(500L, RerunOptions.parseDurationMillis("500ms"));
+    }
+
+    @Test
+    public void testParseDurationMillisMalformed() {
+        assertThrows(IllegalArgumentException.class, () -> RerunOptions.parseDurationMillis("15 minutes"));
+        assertThrows(IllegalArgumentException.class, () -> RerunOptions.parseDurationMillis(""));
+        assertThrows(IllegalArgumentException.class, () -> RerunOptions.parseDurationMillis("m"));
+    }
+
+    @Test
+    public void testParseSizeBytes() {
+        assertEquals(512L << 20, RerunOptions.parseSizeBytes("512m"));
+        assertEquals(2L << 30, RerunOptions.parseSizeBytes("2G"));
+        assertEquals(800L << 10, RerunOptions.parseSizeBytes("800kb"));
+        assertEquals(1048576L, RerunOptions.parseSizeBytes("1048576"));
+        assertThrows(IllegalArgumentException.class, () -> RerunOptions.parseSizeBytes("512 MB"));
+        assertThrows(IllegalArgumentException.class, () -> RerunOptions.parseSizeBytes(""));
+    }
+
+    @Test
+    public void testGetFiles() {
+        Properties options = new Properties();
+        assertTrue(RerunOptions.getFiles(options, RerunOptions.TRACKED_DIRECTORIES).isEmpty());
+        assertTrue(RerunOptions.getFiles(null, RerunOptions.TRACKED_DIRECTORIES).isEmpty());
+
+        options.setProperty(RerunOptions.TRACKED_DIRECTORIES, "project" + File.pathSeparator + " target ");
+        assertEquals(Arrays.asList(new File("project"), new File("target")),
+            RerunOptions.getFiles(options, RerunOptions.TRACKED_DIRECTORIES));
+    }
+
+    @Test
+    public void testGetConfigurationParameters() {
+        Properties options = new Properties();
+        assertTrue(RerunOptions.getConfigurationParameters(null).isEmpty());
+        assertTrue(RerunOptions.getConfigurationParameters(options).isEmpty());
+
+        options.setProperty(RerunOptions.FORK_COUNT, "2");
+        options.setProperty(RerunOptions.CONFIGURATION_PARAMETER_PREFIX + "junit.jupiter.execution.parallel.enabled",
+            " true ");
+        assertEquals(Collections.singletonMap("junit.jupiter.execution.parallel.enabled", "true"),
+            RerunOptions.getConfigurationParameters(options));
+    }
+}
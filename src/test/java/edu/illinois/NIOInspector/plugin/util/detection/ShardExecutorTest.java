@@ -0,0 +1,68 @@
+package edu.illinois.NIOInspector.plugin.util.detection;
+
+import org.junit.jupiter.api.Test;
+
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+public class ShardExecutorTest {
+
+    @Test
+    public void testCreateShardsRoundRobin() {
+        List<String> testClasses = Arrays.asList("a.ATest", "b.BTest", "c.CTest");
+
+        List<List<String>> shards = ShardExecutor.createShards(testClasses, new HashMap<>(), 2);
+
+        assertEquals(2, shards.size());
+        assertEquals(Arrays.asList("a.ATest", "c.CTest"), shards.get(0));
+        assertEquals(Collections.singletonList("b.BTest"), shards.get(1));
+    }
+
+    @Test
+    public void testCreateShardsKeepsSelectedMethodsTogether() {
+        List<String> testClasses = Arrays.asList("a.ATest", "a.ATest", "b.BTest");
+        Map<String, List<String>> classStringToMethodsMap = new HashMap<>();
+        classStringToMethodsMap.put("a.ATest", Arrays.asList("first", "second"));
+
+        List<List<String>> shards = ShardExecutor.createShards(testClasses, classStringToMethodsMap, 4);
+
+        assertEquals(2, shards.size());
+        assertEquals(Arrays.asList("a.ATest#first", "a.ATest#second"), shards.get(0));
+        assertEquals(Collections.singletonList("b.BTest"), shards.get(1));
+    }
+
+    @Test
+    public void testCreateShardOptions() throws Exception {
+        Properties options = new Properties();
+        options.setProperty(RerunOptions.FORK_COUNT, "4");
+        options.setProperty(RerunOptions.THREAD_SHARDS, "2");
+        options.setProperty(RerunOptions.HEAP_GROWTH_LIMIT, "1048576");
+        options.setProperty(RerunOptions.HEAP_TELEMETRY, "true");
+        ShardExecutor executor = new InJvmShardExecutor(new URLClassLoader(new URL[0]), options);
+
+        Properties shardOptions = executor.createShardOptions();
+
+        assertEquals("1", shardOptions.getProperty(RerunOptions.FORK_COUNT));
+        assertEquals("1", shardOptions.getProperty(RerunOptions.THREAD_SHARDS));
+        assertEquals("4", options.getProperty(RerunOptions.FORK_COUNT));
+        // Shards do not fork again to recycle their workers, but keep sampling their heap
+        assertNull(shardOptions.getProperty(RerunOptions.HEAP_GROWTH_LIMIT));
+        assertEquals("true", shardOptions.getProperty(RerunOptions.HEAP_TELEMETRY));
+    }
+
+    @Test
+    public void testGetShardDirectory() throws Exception {
+        ShardExecutor executor = new InJvmShardExecutor(new URLClassLoader(new URL[0]), new Properties());
+
+        assertEquals("shard-3", executor.getShardDirectory(3).getName());
+    }
+}
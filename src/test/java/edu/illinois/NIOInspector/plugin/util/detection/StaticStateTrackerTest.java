@@ -0,0 +1,89 @@
+package edu.illinois.NIOInspector.plugin.util.detection;
+
+import org.junit.jupiter.api.Test;
+
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class StaticStateTrackerTest {
+
+    static class Node {
+        int value;
+        Node next;
+        final List<String> names = new ArrayList<>();
+    }
+
+    private final StaticStateTracker tracker = new StaticStateTracker(new URLClassLoader(new URL[0]));
+
+    private long hash(Object value) {
+        return tracker.hash(value, StaticStateTracker.MAX_DEPTH, new IdentityHashMap<>());
+    }
+
+    @Test
+    public void testUnavailableWithoutIsolatedURLClassLoader() {
+        assertFalse(tracker.isAvailable());
+    }
+
+    @Test
+    public void testHashIsStructural() {
+        Node first = new Node();
+        Node second = new Node();
+        assertEquals(hash(first), hash(second));
+
+        first.names.add("polluted");
+        assertNotEquals(hash(first), hash(second));
+        second.names.add("polluted");
+        assertEquals(hash(first), hash(second));
+
+        first.value = 1;
+        assertNotEquals(hash(first), hash(second));
+    }
+
+    @Test
+    public void testHashHandlesCycles() {
+        Node node = new Node();
+        node.next = node;
+        long hash = hash(node);
+
+        assertEquals(hash, hash(node));
+        node.value = 1;
+        assertNotEquals(hash, hash(node));
+    }
+
+    @Test
+    public void testHashOfMapsAndArrays() {
+        Map<String, int[]> map = new HashMap<>();
+        map.put("key", new int[] {1, 2});
+        long hash = hash(map);
+
+        map.get("key")[1] = 3;
+        assertNotEquals(hash, hash(map));
+    }
+
+    @Test
+    public void testDiff() {
+        Map<String, Long> before = new HashMap<>();
+        before.put("com.example.A.counter", 1L);
+        before.put("com.example.A.cache", 2L);
+        Map<String, Long> after = new HashMap<>(before);
+        after.put("com.example.A.counter", 3L);
+        // Initialized during the test
+        after.put("com.example.B.values", 4L);
+
+        List<String> changed = StaticStateTracker.diff(before, after);
+
+        assertEquals(Arrays.asList("com.example.A.counter"), changed);
+        assertTrue(StaticStateTracker.diff(before, before).isEmpty());
+    }
+}
@@ -0,0 +1,127 @@
+package edu.illinois.NIOInspector.plugin.util.detection;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+public class TestDurationRecorderTest {
+
+    private static final String FOO_ID = "[engine:junit-jupiter]/[class:com.example.FooTest]/[method:foo()]";
+    private static final String BAR_ID = "[engine:junit-jupiter]/[class:com.example.FooTest]/[method:bar()]";
+    private static final String BAZ_ID = "[engine:junit-jupiter]/[class:com.example.BazTest]/[method:baz()]";
+
+    private File tempDir;
+
+    @BeforeEach
+    public void setUp() throws IOException {
+        tempDir = Files.createTempDirectory("durations").toFile();
+    }
+
+    @AfterEach
+    public void tearDown() {
+        File[] files = tempDir.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        tempDir.delete();
+    }
+
+    @Test
+    public void testAcceptRecordsTestsOnly() {
+        TestDurationRecorder recorder = new TestDurationRecorder();
+
+        recorder.accept(TestOutcomeAggregator.encodeOutcome(0, FOO_ID, TestOutcomeAggregator.PASSED, 12));
+        recorder.accept(TestOutcomeAggregator.encodeOutcome(0, "[engine:junit-jupiter]/[class:com.example.FooTest]",
+            TestOutcomeAggregator.PASSED, 30));
+        recorder.accept("not an outcome");
+
+        assertEquals(12, recorder.getDurationMillis(0, "com.example.FooTest#foo"));
+        assertEquals(-1, recorder.getDurationMillis(1, "com.example.FooTest#foo"));
+        assertArrayEquals(new long[] { 12 }, recorder.getSortedDurations(0));
+    }
+
+    @Test
+    public void testInvocationsOfTheSameMethodAddUp() {
+        TestDurationRecorder recorder = new TestDurationRecorder();
+
+        recorder.accept(TestOutcomeAggregator.encodeOutcome(1, FOO_ID + "/[test-template-invocation:#1]",
+            TestOutcomeAggregator.PASSED, 5));
+        recorder.accept(TestOutcomeAggregator.encodeOutcome(1, FOO_ID + "/[test-template-invocation:#2]",
+            TestOutcomeAggregator.FAILED, 7));
+
+        assertEquals(12, recorder.getDurationMillis(1, "com.example.FooTest#foo"));
+    }
+
+    @Test
+    public void testPercentile() {
+        long[] sorted = new long[100];
+        for (int i = 0; i < sorted.length; i++) {
+            sorted[i] = i + 1;
+        }
+
+        assertEquals(50, TestDurationRecorder.percentile(sorted, 50));
+        assertEquals(95, TestDurationRecorder.percentile(sorted, 95));
+        assertEquals(99, TestDurationRecorder.percentile(sorted, 99));
+        assertEquals(7, TestDurationRecorder.percentile(new long[] { 7 }, 99));
+        assertEquals(0, TestDurationRecorder.percentile(new long[0], 50));
+    }
+
+    @Test
+    public void testSlowdownComparesTheSameTests() {
+        TestDurationRecorder recorder = new TestDurationRecorder();
+        recorder.recordDuration(0, "com.example.FooTest#foo", 100);
+        recorder.recordDuration(0, "com.example.FooTest#bar", 50);
+        // Only foo is rerun (e.g. narrowed reruns)
+        recorder.recordDuration(1, "com.example.FooTest#foo", 150);
+
+        assertEquals(0.5, recorder.getSlowdown(1), 1e-9);
+        assertNull(recorder.getSlowdown(2));
+    }
+
+    @Test
+    public void testSlowestTestsAndClasses() {
+        TestDurationRecorder recorder = new TestDurationRecorder();
+        recorder.recordDuration(0, "com.example.FooTest#foo", 10);
+        recorder.recordDuration(0, "com.example.FooTest#bar", 30);
+        recorder.recordDuration(0, "com.example.BazTest#baz", 35);
+
+        assertEquals(Arrays.asList("com.example.BazTest#baz", "com.example.FooTest#bar", "com.example.FooTest#foo"),
+            recorder.getSlowestTests());
+        assertEquals(Arrays.asList("com.example.FooTest", "com.example.BazTest"),
+            Arrays.asList(recorder.getSlowestClasses().keySet().toArray()));
+        assertEquals(Long.valueOf(40), recorder.getSlowestClasses().get("com.example.FooTest"));
+    }
+
+    @Test
+    public void testSaveWritesSlowestFirst() throws IOException {
+        TestDurationRecorder recorder = new TestDurationRecorder();
+        recorder.accept(TestOutcomeAggregator.encodeOutcome(0, FOO_ID, TestOutcomeAggregator.PASSED, 10));
+        recorder.accept(TestOutcomeAggregator.encodeOutcome(0, BAR_ID, TestOutcomeAggregator.PASSED, 20));
+        recorder.accept(TestOutcomeAggregator.encodeOutcome(1, BAR_ID, TestOutcomeAggregator.PASSED, 30));
+        recorder.accept(TestOutcomeAggregator.encodeOutcome(2, BAR_ID, TestOutcomeAggregator.FAILED, 50));
+        recorder.accept(TestOutcomeAggregator.encodeOutcome(1, BAZ_ID, TestOutcomeAggregator.PASSED, 1));
+
+        recorder.save(tempDir);
+
+        List<String> lines = Files.readAllLines(new File(tempDir, TestDurationRecorder.DURATIONS_FILE).toPath(),
+            StandardCharsets.UTF_8);
+        assertEquals(Arrays.asList(
+            "test,class,initialRunMillis,rerunsExecuted,meanRerunMillis,maxRerunMillis",
+            "com.example.FooTest#bar,com.example.FooTest,20,2,40.0,50",
+            "com.example.FooTest#foo,com.example.FooTest,10,0,0.0,0",
+            "com.example.BazTest#baz,com.example.BazTest,-1,1,1.0,1"), lines);
+    }
+}
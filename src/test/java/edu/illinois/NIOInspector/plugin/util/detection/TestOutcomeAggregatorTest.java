@@ -0,0 +1,188 @@
+package edu.illinois.NIOInspector.plugin.util.detection;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class TestOutcomeAggregatorTest {
+
+    private static final String TEST_ID = "[engine:junit-jupiter]/[class:com.example.ExampleTest]/[method:testMethod()]";
+
+    @Test
+    public void testEncodedOutcomeIsDecoded() {
+        TestOutcomeAggregator aggregator = new TestOutcomeAggregator();
+        String line = TestOutcomeAggregator.encodeOutcome(0, TEST_ID, TestOutcomeAggregator.PASSED);
+
+        assertTrue(TestOutcomeAggregator.isOutcomeLine(line));
+        aggregator.accept(line);
+        aggregator.accept(TestOutcomeAggregator.encodeOutcome(1, TEST_ID, TestOutcomeAggregator.FAILED));
+
+        assertEquals(Integer.valueOf(1), aggregator.getFlakyTests().get("com.example.ExampleTest#testMethod"));
+    }
+
+    @Test
+    public void testOutcomeAfterTestOutputIsDecoded() {
+        TestOutcomeAggregator aggregator = new TestOutcomeAggregator();
+
+        aggregator.accept("printed without newline" + TestOutcomeAggregator.encodeOutcome(0, TEST_ID, TestOutcomeAggregator.PASSED));
+        aggregator.accept(TestOutcomeAggregator.encodeOutcome(1, TEST_ID, TestOutcomeAggregator.FAILED));
+
+        assertEquals(1, aggregator.getFlakyTests().size());
+    }
+
+    @Test
+    public void testOtherLinesAreIgnored() {
+        TestOutcomeAggregator aggregator = new TestOutcomeAggregator();
+
+        assertFalse(TestOutcomeAggregator.isOutcomeLine("[INFO] Starting Rerun #1"));
+        aggregator.accept("[INFO] Starting Rerun #1");
+        aggregator.accept(TestOutcomeAggregator.MARKER + "\tOUTCOME\tnot-a-number\tP\t" + TEST_ID);
+
+        assertTrue(aggregator.getFlakyTests().isEmpty());
+    }
+
+    @Test
+    public void testOnlyTestsPassingInitialRunAreCounted() {
+        TestOutcomeAggregator aggregator = new TestOutcomeAggregator();
+        String failingId = "[engine:junit-jupiter]/[class:com.example.ExampleTest]/[method:alwaysFails()]";
+        String abortedId = "[engine:junit-jupiter]/[class:com.example.ExampleTest]/[method:aborted()]";
+
+        aggregator.recordOutcome(0, TEST_ID, TestOutcomeAggregator.PASSED);
+        aggregator.recordOutcome(0, failingId, TestOutcomeAggregator.FAILED);
+        aggregator.recordOutcome(0, abortedId, TestOutcomeAggregator.PASSED);
+        for (int rerun = 1; rerun <= 3; rerun++) {
+            aggregator.recordOutcome(rerun, TEST_ID, TestOutcomeAggregator.FAILED);
+            aggregator.recordOutcome(rerun, failingId, TestOutcomeAggregator.FAILED);
+            aggregator.recordOutcome(rerun, abortedId, TestOutcomeAggregator.OTHER);
+        }
+
+        Map<String, Integer> flakyTests = aggregator.getFlakyTests();
+        assertEquals(1, flakyTests.size());
+        assertEquals(Integer.valueOf(3), flakyTests.get("com.example.ExampleTest#testMethod"));
+    }
+
+    @Test
+    public void testLogFinalResultsWithoutOutcomes() {
+        // Must not fail when no test was run at all
+        new TestOutcomeAggregator().logFinalResults(3);
+    }
+
+    @Test
+    public void testGetNIOTestsAndFirstRunStatus() {
+        TestOutcomeAggregator aggregator = new TestOutcomeAggregator();
+        String ndId = "[engine:junit-jupiter]/[class:com.example.ExampleTest]/[method:sometimes()]";
+
+        aggregator.recordOutcome(0, TEST_ID, TestOutcomeAggregator.PASSED);
+        aggregator.recordOutcome(0, ndId, TestOutcomeAggregator.PASSED);
+        aggregator.recordOutcome(1, TEST_ID, TestOutcomeAggregator.FAILED);
+        aggregator.recordOutcome(1, ndId, TestOutcomeAggregator.FAILED);
+        aggregator.recordOutcome(2, TEST_ID, TestOutcomeAggregator.FAILED);
+        aggregator.recordOutcome(2, ndId, TestOutcomeAggregator.PASSED);
+
+        Map<String, Integer> NIOTests = aggregator.getNIOTests(2);
+        assertEquals(1, NIOTests.size());
+        assertEquals(Integer.valueOf(2), NIOTests.get("com.example.ExampleTest#testMethod"));
+        assertEquals(Boolean.TRUE, aggregator.getFirstRunStatus("com.example.ExampleTest#testMethod"));
+        assertEquals(null, aggregator.getFirstRunStatus("com.example.ExampleTest#neverRun"));
+    }
+
+    @Test
+    public void testPartialCoverage() {
+        TestOutcomeAggregator aggregator = new TestOutcomeAggregator();
+        String unfinishedId = "[engine:junit-jupiter]/[class:com.example.OtherTest]/[method:unfinished()]";
+        aggregator.recordOutcome(0, TEST_ID, TestOutcomeAggregator.PASSED);
+        aggregator.recordOutcome(0, unfinishedId, TestOutcomeAggregator.PASSED);
+        for (int rerun = 1; rerun <= 3; rerun++) {
+            aggregator.recordOutcome(rerun, TEST_ID, rerun == 1 ? TestOutcomeAggregator.FAILED : TestOutcomeAggregator.PASSED);
+        }
+        aggregator.recordOutcome(1, unfinishedId, TestOutcomeAggregator.FAILED);
+        aggregator.accept(TestOutcomeAggregator.encodeCoverage(1, 1, 3));
+        assertTrue(aggregator.isCoverageComplete(3));
+        aggregator.accept(TestOutcomeAggregator.encodeCoverage(1, 2, 1));
+
+        assertFalse(aggregator.isCoverageComplete(3));
+        assertEquals(1, aggregator.getRerunsCovered(3));
+        // Judged on the single rerun it was given
+        assertEquals(1, aggregator.getNIOTests(3).size());
+        assertTrue(aggregator.getNIOTests(3).containsKey("com.example.OtherTest#unfinished"));
+    }
+
+    @Test
+    public void testPollutionLinesAreRanked() {
+        TestOutcomeAggregator aggregator = new TestOutcomeAggregator();
+        String otherId = "[engine:junit-jupiter]/[class:com.example.OtherTest]/[method:other()]";
+        aggregator.accept(TestOutcomeAggregator.encodePollution(TEST_ID,
+            Collections.singletonList("com.example.Cache.entries")));
+        aggregator.accept("output without newline" + TestOutcomeAggregator.encodePollution(otherId,
+            Arrays.asList("com.example.Config.values", "com.example.Cache.entries")));
+
+        Map<String, Set<String>> pollutingTests = aggregator.getPollutingTests();
+        assertEquals(2, pollutingTests.size());
+        assertEquals("com.example.OtherTest#other", pollutingTests.keySet().iterator().next());
+        assertTrue(pollutingTests.get("com.example.OtherTest#other").contains("com.example.Config.values"));
+        assertTrue(aggregator.getFlakyTests().isEmpty());
+    }
+
+    @Test
+    public void testFileChangeLines() {
+        TestOutcomeAggregator aggregator = new TestOutcomeAggregator();
+        String otherId = "[engine:junit-jupiter]/[class:com.example.OtherTest]/[method:other()]";
+        aggregator.accept(TestOutcomeAggregator.encodeFileChanges(TEST_ID,
+            Collections.singletonList("created /tmp/a b.txt")));
+        aggregator.accept(TestOutcomeAggregator.encodeFileChanges(otherId,
+            Arrays.asList("modified /tmp/x,y.txt", "deleted target/out.txt")));
+
+        Map<String, Set<String>> fileChangingTests = aggregator.getFileChangingTests();
+        assertEquals(2, fileChangingTests.size());
+        assertEquals("com.example.OtherTest#other", fileChangingTests.keySet().iterator().next());
+        assertTrue(fileChangingTests.get("com.example.OtherTest#other").contains("modified /tmp/x,y.txt"));
+        assertTrue(aggregator.getPollutingTests().isEmpty());
+    }
+
+    @Test
+    public void testGlobalStateLines() {
+        TestOutcomeAggregator aggregator = new TestOutcomeAggregator();
+        aggregator.accept(TestOutcomeAggregator.encodeGlobalStateChanges(TEST_ID,
+            Arrays.asList("default time zone", "system property a.b (set)")));
+
+        Map<String, Set<String>> globalStateChangingTests = aggregator.getGlobalStateChangingTests();
+        assertEquals(1, globalStateChangingTests.size());
+        assertEquals(2, globalStateChangingTests.values().iterator().next().size());
+        assertTrue(aggregator.getFileChangingTests().isEmpty());
+    }
+
+    @Test
+    public void testQuarantineAndProgressLines() {
+        TestOutcomeAggregator aggregator = new TestOutcomeAggregator();
+        aggregator.accept(ProgressReporter.encode(true, false, 0, "com.example.ExampleTest", TEST_ID));
+        aggregator.accept(TestOutcomeAggregator.encodeQuarantine("com.example.ExampleTest",
+            "its worker exited with code 3\twhile it was running in rerun #1"));
+
+        Map<String, String> quarantinedClasses = aggregator.getQuarantinedClasses();
+        assertEquals(1, quarantinedClasses.size());
+        assertEquals("its worker exited with code 3 while it was running in rerun #1",
+            quarantinedClasses.get("com.example.ExampleTest"));
+        assertTrue(aggregator.getFirstRunResults().isEmpty());
+    }
+
+    @Test
+    public void testRecycledClassesAreFlaggedAndHeapLinesIgnored() {
+        TestOutcomeAggregator aggregator = new TestOutcomeAggregator();
+        aggregator.accept(HeapMonitor.encode(new HeapMonitor.Sample("shard-0", 1, 10, 20, 30, 1, 5)));
+        aggregator.accept(HeapMonitor.encodeRecycle(1, 10));
+        aggregator.accept(TestOutcomeAggregator.encodeRecycled("com.example.ExampleTest",
+            "its worker was recycled after rerun #1"));
+
+        assertEquals(1, aggregator.getRecycledClasses().size());
+        assertEquals("its worker was recycled after rerun #1",
+            aggregator.getRecycledClasses().get("com.example.ExampleTest"));
+        assertTrue(aggregator.getQuarantinedClasses().isEmpty());
+    }
+}
@@ -0,0 +1,28 @@
+package edu.illinois.NIOInspector.plugin.util.detection;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+public class TestOutcomeTest {
+
+    private static final String TEST_ID = "[engine:junit-jupiter]/[class:com.example.ExampleTest]/[method:testMethod()]";
+
+    @Test
+    public void testEncodedOutcomeIsDecoded() {
+        TestOutcome outcome = TestOutcome.decode(new TestOutcome(2, TestOutcomeAggregator.FAILED, 42, TEST_ID).encode());
+
+        assertEquals(2, outcome.getRun());
+        assertEquals(TestOutcomeAggregator.FAILED, outcome.getStatus());
+        assertEquals(42, outcome.getDurationMillis());
+        assertEquals(TEST_ID, outcome.getUniqueId());
+    }
+
+    @Test
+    public void testMalformedLinesAreRejected() {
+        assertNull(TestOutcome.decode("[INFO] Starting Rerun #1"));
+        assertNull(TestOutcome.decode(TestOutcomeAggregator.MARKER + "\tOUTCOME\t1\tP\t" + TEST_ID));
+        assertNull(TestOutcome.decode(TestOutcomeAggregator.MARKER + "\tOUTCOME\t1\tP\tslow\t" + TEST_ID));
+    }
+}
@@ -0,0 +1,282 @@
+package edu.illinois.NIOInspector.plugin.util.detection;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class VerdictCacheTest {
+
+    private static final String TEST_CLASS = "com.example.ExampleTest";
+
+    private static final String TEST_ID = "[engine:junit-jupiter]/[class:com.example.ExampleTest]/[method:testMethod()]";
+
+    static class BaseFixture {
+        @Test
+        void inherited() {
+        }
+    }
+
+    static class SubFixture extends BaseFixture {
+    }
+
+    static class HelperFixture {
+        static int help() {
+            return 1;
+        }
+    }
+
+    private File tempDir;
+    private File testClassesDir;
+    private File dependency;
+    private File cacheFile;
+
+    @BeforeEach
+    public void setUp() throws IOException {
+        tempDir = Files.createTempDirectory("verdict-cache").toFile();
+        testClassesDir = new File(tempDir, "test-classes");
+        writeFile(new File(testClassesDir, "com/example/ExampleTest.class"), "bytecode");
+        dependency = new File(tempDir, "dependency.jar");
+        writeFile(dependency, "dependency");
+        cacheFile = new File(tempDir, "cache/verdicts.properties");
+    }
+
+    @AfterEach
+    public void tearDown() {
+        deleteRecursively(tempDir);
+    }
+
+    @Test
+    public void testUnchangedIdempotentClassIsSkipped() throws IOException {
+        updateCache(TestOutcomeAggregator.PASSED, 3);
+
+        List<String> testClasses = Arrays.asList(TEST_CLASS, "com.example.OtherTest");
+        try (URLClassLoader classLoader = createClassLoader()) {
+            VerdictCache cache = new VerdictCache(cacheFile, classLoader, testClassesDir.getPath());
+
+            assertEquals(Collections.singletonList("com.example.OtherTest"), cache.filterUnchanged(testClasses, 3));
+            assertEquals(testClasses, cache.filterUnchanged(testClasses, 5));
+        }
+    }
+
+    @Test
+    public void testChangedClassIsRun() throws IOException {
+        updateCache(TestOutcomeAggregator.PASSED, 3);
+        writeFile(new File(testClassesDir, "com/example/ExampleTest$Nested.class"), "nested");
+
+        try (URLClassLoader classLoader = createClassLoader()) {
+            VerdictCache cache = new VerdictCache(cacheFile, classLoader, testClassesDir.getPath());
+
+            assertEquals(Collections.singletonList(TEST_CLASS),
+                cache.filterUnchanged(Collections.singletonList(TEST_CLASS), 3));
+        }
+    }
+
+    @Test
+    public void testFlakyClassIsRun() throws IOException {
+        updateCache(TestOutcomeAggregator.FAILED, 3);
+
+        try (URLClassLoader classLoader = createClassLoader()) {
+            VerdictCache cache = new VerdictCache(cacheFile, classLoader, testClassesDir.getPath());
+
+            assertEquals(Collections.singletonList(TEST_CLASS),
+                cache.filterUnchanged(Collections.singletonList(TEST_CLASS), 3));
+        }
+    }
+
+    @Test
+    public void testChangedSuperclassInvalidatesVerdict() throws IOException {
+        List<String> testClasses = Arrays.asList(SubFixture.class.getName(), BaseFixture.class.getName());
+        File baseClassFile = copyClassFile(BaseFixture.class);
+        copyClassFile(SubFixture.class);
+        updateCache(testClasses, TestOutcomeAggregator.PASSED, 3);
+        try (URLClassLoader classLoader = createClassLoader()) {
+            assertEquals(Collections.emptyList(),
+                new VerdictCache(cacheFile, classLoader, testClassesDir.getPath()).filterUnchanged(testClasses, 3));
+        }
+
+        // The base class is a test class itself, so it is not part of the fingerprint of the test output directory
+        Files.write(baseClassFile.toPath(), new byte[]{0}, StandardOpenOption.APPEND);
+
+        try (URLClassLoader classLoader = createClassLoader()) {
+            VerdictCache cache = new VerdictCache(cacheFile, classLoader, testClassesDir.getPath());
+
+            assertEquals(testClasses, cache.filterUnchanged(testClasses, 3));
+        }
+    }
+
+    @Test
+    public void testChangedResourceInvalidatesVerdict() throws IOException {
+        File resource = new File(testClassesDir, "config.properties");
+        writeFile(resource, "key=value");
+        updateCache(TestOutcomeAggregator.PASSED, 3);
+
+        writeFile(resource, "key=other value");
+
+        try (URLClassLoader classLoader = createClassLoader()) {
+            VerdictCache cache = new VerdictCache(cacheFile, classLoader, testClassesDir.getPath());
+
+            assertEquals(Collections.singletonList(TEST_CLASS),
+                cache.filterUnchanged(Collections.singletonList(TEST_CLASS), 3));
+        }
+    }
+
+    @Test
+    public void testChangedHelperClassInvalidatesVerdict() throws IOException {
+        List<String> testClasses = Arrays.asList(TEST_CLASS, "com.example.OtherTest");
+        File helper = new File(testClassesDir, "com/example/Helper.class");
+        writeFile(helper, "helper");
+        writeFile(new File(testClassesDir, "com/example/OtherTest.class"), "other test");
+        updateCache(testClasses, TestOutcomeAggregator.PASSED, 3);
+
+        // Other test classes are hashed per class
+        writeFile(new File(testClassesDir, "com/example/OtherTest.class"), "edited test");
+        writeFile(new File(testClassesDir, "com/example/OtherTest$Nested.class"), "nested");
+        try (URLClassLoader classLoader = createClassLoader()) {
+            VerdictCache cache = new VerdictCache(cacheFile, classLoader, testClassesDir.getPath());
+
+            assertEquals(Collections.singletonList("com.example.OtherTest"), cache.filterUnchanged(testClasses, 3));
+        }
+
+        writeFile(helper, "edited");
+
+        try (URLClassLoader classLoader = createClassLoader()) {
+            VerdictCache cache = new VerdictCache(cacheFile, classLoader, testClassesDir.getPath());
+
+            assertEquals(testClasses, cache.filterUnchanged(testClasses, 3));
+        }
+    }
+
+    @Test
+    public void testChangedListedHelperClassInvalidatesVerdict() throws IOException {
+        // Every class file of the test output directory is listed, helpers included (see RerunMojo)
+        List<String> testClasses = Arrays.asList(SubFixture.class.getName(), BaseFixture.class.getName(),
+            HelperFixture.class.getName());
+        copyClassFile(BaseFixture.class);
+        copyClassFile(SubFixture.class);
+        File helperClassFile = copyClassFile(HelperFixture.class);
+        updateCache(testClasses, TestOutcomeAggregator.PASSED, 3);
+        try (URLClassLoader classLoader = createClassLoader()) {
+            assertEquals(Collections.emptyList(),
+                new VerdictCache(cacheFile, classLoader, testClassesDir.getPath()).filterUnchanged(testClasses, 3));
+        }
+
+        Files.write(helperClassFile.toPath(), new byte[]{0}, StandardOpenOption.APPEND);
+
+        try (URLClassLoader classLoader = createClassLoader()) {
+            VerdictCache cache = new VerdictCache(cacheFile, classLoader, testClassesDir.getPath());
+
+            assertEquals(testClasses, cache.filterUnchanged(testClasses, 3));
+        }
+    }
+
+    @Test
+    public void testClasspathHashTracksDependenciesOnly() throws IOException {
+        try (URLClassLoader classLoader = createClassLoader()) {
+            String hash = VerdictCache.hashClasspath(classLoader, testClassesDir.getPath());
+
+            writeFile(new File(testClassesDir, "com/example/NewTest.class"), "new test");
+            assertEquals(hash, VerdictCache.hashClasspath(classLoader, testClassesDir.getPath()));
+
+            writeFile(dependency, "updated dependency");
+            assertNotEquals(hash, VerdictCache.hashClasspath(classLoader, testClassesDir.getPath()));
+        }
+    }
+
+    @Test
+    public void testClasspathHashTracksSharedDependencies() throws IOException {
+        try (IsolatedURLClassLoader classLoader = IsolatedURLClassLoader.create(
+                Collections.singletonList(dependency.toURI().toURL()),
+                Collections.singletonList(testClassesDir.toURI().toURL()))) {
+            String hash = VerdictCache.hashClasspath(classLoader, testClassesDir.getPath());
+
+            writeFile(dependency, "updated dependency");
+            assertNotEquals(hash, VerdictCache.hashClasspath(classLoader, testClassesDir.getPath()));
+        }
+    }
+
+    @Test
+    public void testGetClassVerdicts() {
+        TestOutcomeAggregator aggregator = new TestOutcomeAggregator();
+        String ndId = "[engine:junit-jupiter]/[class:com.example.NDTest]/[method:sometimes()]";
+        String failingId = "[engine:junit-jupiter]/[class:com.example.FailingTest]/[method:alwaysFails()]";
+        aggregator.recordOutcome(0, TEST_ID, TestOutcomeAggregator.PASSED);
+        aggregator.recordOutcome(0, ndId, TestOutcomeAggregator.PASSED);
+        aggregator.recordOutcome(0, failingId, TestOutcomeAggregator.FAILED);
+        aggregator.recordOutcome(1, TEST_ID, TestOutcomeAggregator.PASSED);
+        aggregator.recordOutcome(1, ndId, TestOutcomeAggregator.FAILED);
+        aggregator.recordOutcome(2, ndId, TestOutcomeAggregator.PASSED);
+
+        Map<String, VerdictCache.Verdict> verdicts = VerdictCache.getClassVerdicts(aggregator, 2);
+
+        assertEquals(VerdictCache.Verdict.IDEMPOTENT, verdicts.get(TEST_CLASS));
+        assertEquals(VerdictCache.Verdict.ND, verdicts.get("com.example.NDTest"));
+        assertFalse(verdicts.containsKey("com.example.FailingTest"));
+    }
+
+    private void updateCache(char rerunStatus, int numReruns) throws IOException {
+        updateCache(Collections.singletonList(TEST_CLASS), rerunStatus, numReruns);
+    }
+
+    private void updateCache(List<String> testClasses, char rerunStatus, int numReruns) throws IOException {
+        TestOutcomeAggregator aggregator = new TestOutcomeAggregator();
+        for (String testClass : testClasses) {
+            String testId = "[engine:junit-jupiter]/[class:" + testClass + "]/[method:testMethod()]";
+            aggregator.recordOutcome(0, testId, TestOutcomeAggregator.PASSED);
+            for (int rerun = 1; rerun <= numReruns; rerun++) {
+                aggregator.recordOutcome(rerun, testId, rerunStatus);
+            }
+        }
+        try (URLClassLoader classLoader = createClassLoader()) {
+            VerdictCache cache = new VerdictCache(cacheFile, classLoader, testClassesDir.getPath());
+            cache.update(cache.filterUnchanged(testClasses, numReruns), aggregator, numReruns);
+        }
+        assertTrue(cacheFile.isFile());
+    }
+
+    private File copyClassFile(Class<?> clazz) throws IOException {
+        String path = clazz.getName().replace('.', '/') + ".class";
+        File classFile = new File(testClassesDir, path);
+        classFile.getParentFile().mkdirs();
+        try (InputStream in = clazz.getClassLoader().getResourceAsStream(path)) {
+            Files.copy(in, classFile.toPath());
+        }
+        return classFile;
+    }
+
+    private URLClassLoader createClassLoader() throws IOException {
+        return new URLClassLoader(new URL[]{dependency.toURI().toURL(), testClassesDir.toURI().toURL()}, null);
+    }
+
+    private static void writeFile(File file, String content) throws IOException {
+        file.getParentFile().mkdirs();
+        Files.write(file.toPath(), content.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static void deleteRecursively(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                deleteRecursively(child);
+            }
+        }
+        file.delete();
+    }
+}
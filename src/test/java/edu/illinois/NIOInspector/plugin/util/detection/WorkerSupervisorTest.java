@@ -0,0 +1,113 @@
+package edu.illinois.NIOInspector.plugin.util.detection;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class WorkerSupervisorTest {
+
+    private static final String TEST_CLASS = "com.example.ExampleTest";
+
+    private static final String TEST_ID = "[engine:junit-jupiter]/[class:com.example.ExampleTest]/[method:testMethod()]";
+
+    private static final String CLASS_ID = "[engine:junit-jupiter]/[class:com.example.ExampleTest]";
+
+    @Test
+    public void testCheckIntervalFollowsTheShortestTimeout() {
+        assertEquals(500, WorkerSupervisor.getCheckInterval(5000, 0));
+        assertEquals(200, WorkerSupervisor.getCheckInterval(60000, 2000));
+        assertEquals(10, WorkerSupervisor.getCheckInterval(50, 0));
+        assertEquals(1000, WorkerSupervisor.getCheckInterval(0, 600000));
+    }
+
+    @Test
+    public void testProgressLinesAreNotForwarded() {
+        List<String> lines = new ArrayList<>();
+        WorkerSupervisor supervisor = new WorkerSupervisor("shard-0", 1000, 0, lines::add);
+        supervisor.startAttempt(null);
+
+        supervisor.accept(ProgressReporter.encode(true, true, 0, TEST_CLASS, CLASS_ID));
+        String outcome = TestOutcomeAggregator.encodeOutcome(0, TEST_ID, TestOutcomeAggregator.PASSED);
+        supervisor.accept(outcome);
+        supervisor.accept(ProgressReporter.encode(false, true, 0, TEST_CLASS, CLASS_ID));
+
+        assertEquals(Collections.singletonList(outcome), lines);
+        assertFalse(supervisor.isCompleted());
+        supervisor.accept(TestOutcomeAggregator.encodeCoverage(1, 1, 1));
+        assertTrue(supervisor.isCompleted());
+    }
+
+    @Test
+    public void testCrashedClassIsQuarantinedAndReplayedRunsAreNotReportedAgain() {
+        List<String> lines = new ArrayList<>();
+        WorkerSupervisor supervisor = new WorkerSupervisor("shard-0", 1000, 0, lines::add);
+        supervisor.startAttempt(null);
+        supervisor.accept(TestOutcomeAggregator.encodeOutcome(0, TEST_ID, TestOutcomeAggregator.PASSED));
+        supervisor.accept(TestOutcomeAggregator.encodeOutcome(1, TEST_ID, TestOutcomeAggregator.PASSED));
+        supervisor.accept(ProgressReporter.encode(true, true, 2, TEST_CLASS, CLASS_ID));
+
+        assertEquals(Collections.singletonList(TEST_CLASS), supervisor.quarantine(3));
+        assertEquals(2, supervisor.getReplayedRuns());
+        assertEquals(TestOutcomeAggregator.encodeQuarantine(TEST_CLASS,
+            "its worker exited with code 3 while it was running in rerun #2"), lines.get(lines.size() - 1));
+
+        // The respawned worker replays the initial run and rerun #1
+        lines.clear();
+        supervisor.startAttempt(null);
+        supervisor.accept(TestOutcomeAggregator.encodeOutcome(0, TEST_ID, TestOutcomeAggregator.PASSED));
+        supervisor.accept(TestOutcomeAggregator.encodePollution(TEST_ID, Collections.singletonList("field")));
+        supervisor.accept(TestOutcomeAggregator.encodeOutcome(1, TEST_ID, TestOutcomeAggregator.PASSED));
+        String outcome = TestOutcomeAggregator.encodeOutcome(2, TEST_ID, TestOutcomeAggregator.FAILED);
+        supervisor.accept(outcome);
+        supervisor.accept(outcome);
+
+        assertEquals(Collections.singletonList(outcome), lines);
+    }
+
+    @Test
+    public void testWorkerDyingOutsideOfTestClassesQuarantinesNothing() {
+        List<String> lines = new ArrayList<>();
+        WorkerSupervisor supervisor = new WorkerSupervisor("shard-0", 0, 1000, lines::add);
+        supervisor.startAttempt(null);
+        supervisor.accept(ProgressReporter.encode(true, true, 0, TEST_CLASS, CLASS_ID));
+        supervisor.accept(ProgressReporter.encode(false, true, 0, TEST_CLASS, CLASS_ID));
+
+        assertTrue(supervisor.quarantine(1).isEmpty());
+        assertEquals(0, supervisor.getReplayedRuns());
+        assertTrue(lines.isEmpty());
+    }
+
+    @Test
+    public void testRecycledWorkerIsReplacedFromTheNextRerun() {
+        List<String> lines = new ArrayList<>();
+        WorkerSupervisor supervisor = new WorkerSupervisor("shard-0", 0, 0, lines::add);
+        supervisor.startAttempt(null);
+        supervisor.accept(TestOutcomeAggregator.encodeOutcome(0, TEST_ID, TestOutcomeAggregator.PASSED));
+        supervisor.accept(TestOutcomeAggregator.encodeOutcome(1, TEST_ID, TestOutcomeAggregator.PASSED));
+        supervisor.accept(HeapMonitor.encodeRecycle(1, 64L << 20));
+
+        assertTrue(supervisor.isRecycled());
+        assertEquals(2, supervisor.recycle(Collections.singletonList(TEST_CLASS)));
+        assertEquals(TestOutcomeAggregator.encodeRecycled(TEST_CLASS, "its worker was recycled after rerun #1, " +
+            "the heap it retained having grown by 64.0 MB since the initial run"), lines.get(lines.size() - 1));
+
+        // The fresh worker replays the initial run, whose heap sample is kept
+        lines.clear();
+        supervisor.startAttempt(null);
+        assertFalse(supervisor.isRecycled());
+        supervisor.accept(TestOutcomeAggregator.encodeOutcome(0, TEST_ID, TestOutcomeAggregator.PASSED));
+        String heapLine = HeapMonitor.encode(new HeapMonitor.Sample("shard-0-respawn-1", 0, 10, 20, 30, 1, 5));
+        supervisor.accept(heapLine);
+        String outcome = TestOutcomeAggregator.encodeOutcome(2, TEST_ID, TestOutcomeAggregator.PASSED);
+        supervisor.accept(outcome);
+
+        assertEquals(Arrays.asList(heapLine, outcome), lines);
+    }
+}
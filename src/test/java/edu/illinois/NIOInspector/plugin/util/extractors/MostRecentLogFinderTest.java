@@ -1,8 +1,10 @@
 package edu.illinois.NIOInspector.plugin.util.extractors;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
 import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.when;
 
@@ -91,6 +93,14 @@ public class MostRecentLogFinderTest {
         assertEquals("Failed to find a recent rerun-results.log file", thrown.getMessage());
     }
 
+    @Test
+    public void testIsTimestampDirectory() {
+        mockedStatic.when(() -> MostRecentLogFinder.isTimestampDirectory(Mockito.any(File.class))).thenCallRealMethod();
+
+        assertTrue(MostRecentLogFinder.isTimestampDirectory(new File("2024-01-01-00-00-01")));
+        assertFalse(MostRecentLogFinder.isTimestampDirectory(new File("cache")));
+    }
+
     @AfterEach
     public void tearDown() {
         // Close the static mock
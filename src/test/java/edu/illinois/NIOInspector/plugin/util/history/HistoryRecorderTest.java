@@ -0,0 +1,39 @@
+package edu.illinois.NIOInspector.plugin.util.history;
+
+import edu.illinois.NIOInspector.plugin.util.detection.TestOutcomeAggregator;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class HistoryRecorderTest {
+
+    private static final String TEST_ID = "[engine:junit-jupiter]/[class:com.example.ExampleTest]/[method:testMethod()]";
+
+    @Test
+    public void testOutcomesAreSavedAsOneBuild() throws IOException {
+        HistoryRecorder recorder = new HistoryRecorder();
+        recorder.accept(TestOutcomeAggregator.encodeOutcome(0, TEST_ID, TestOutcomeAggregator.PASSED, 5));
+        recorder.accept(TestOutcomeAggregator.encodeOutcome(1, TEST_ID, TestOutcomeAggregator.FAILED, 7));
+        recorder.accept(TestOutcomeAggregator.encodeOutcome(2, TEST_ID, TestOutcomeAggregator.OTHER, 0));
+        recorder.accept("[INFO] not an outcome");
+
+        List<HistoryStore.Row> rows = recorder.getRows();
+        assertEquals(1, rows.size());
+
+        File directory = new File(Files.createTempDirectory("history").toFile(), "history");
+        recorder.save(directory);
+        HistoryStore store = new HistoryStore(directory);
+        HistoryStore.TestStats stats = store.query(TEST_ID, 1);
+
+        assertEquals(1, store.getBuildCount());
+        assertEquals(1, stats.getRerunsExecuted());
+        assertEquals(1, stats.getNIOBuilds());
+        assertEquals(12, stats.getTotalDurationMillis());
+    }
+}
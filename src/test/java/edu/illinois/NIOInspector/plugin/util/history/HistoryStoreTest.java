@@ -0,0 +1,139 @@
+package edu.illinois.NIOInspector.plugin.util.history;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class HistoryStoreTest {
+
+    private static final String NIO_TEST = "[engine:junit-jupiter]/[class:com.example.ExampleTest]/[method:polluting()]";
+
+    private static final String CLEAN_TEST = "[engine:junit-jupiter]/[class:com.example.ExampleTest]/[method:clean()]";
+
+    private File directory;
+
+    @BeforeEach
+    public void setUp() throws IOException {
+        directory = new File(Files.createTempDirectory("history").toFile(), "history");
+    }
+
+    @AfterEach
+    public void tearDown() {
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        directory.delete();
+        directory.getParentFile().delete();
+    }
+
+    @Test
+    public void testQueryAfterReopen() throws IOException {
+        HistoryStore store = new HistoryStore(directory);
+        // Passed the initial run, failed all three reruns
+        store.appendBuild(1L, Arrays.asList(new HistoryStore.Row(NIO_TEST, 0b0001, 0b1110, 40),
+            new HistoryStore.Row(CLEAN_TEST, 0b1111, 0, 8)));
+        // Passed the initial run, failed one of three reruns
+        store.appendBuild(2L, Collections.singletonList(new HistoryStore.Row(NIO_TEST, 0b1011, 0b0100, 40)));
+
+        HistoryStore reopened = new HistoryStore(directory);
+        HistoryStore.TestStats stats = reopened.query(NIO_TEST, 200);
+
+        assertEquals(2, reopened.getBuildCount());
+        assertEquals(3, reopened.getRowCount());
+        assertEquals(2, stats.getBuilds());
+        assertEquals(2, stats.getInitialPasses());
+        assertEquals(6, stats.getRerunsExecuted());
+        assertEquals(4, stats.getRerunsFailed());
+        assertEquals(2, stats.getFlakyBuilds());
+        assertEquals(1, stats.getNIOBuilds());
+        assertEquals(10.0, stats.getMeanDurationMillis());
+        assertEquals(0, reopened.query("unknown", 200).getBuilds());
+    }
+
+    @Test
+    public void testOnlyMostRecentBuildsAreQueried() throws IOException {
+        HistoryStore store = new HistoryStore(directory);
+        for (int build = 0; build < 10; build++) {
+            long failedRuns = build < 5 ? 0b10 : 0;
+            store.appendBuild(build, Arrays.asList(new HistoryStore.Row(NIO_TEST, 0b01, failedRuns, 1),
+                new HistoryStore.Row(CLEAN_TEST, 0b11, 0, 1)));
+        }
+
+        assertEquals(0, store.query(NIO_TEST, 5).getRerunsFailed());
+        assertEquals(2, store.query(NIO_TEST, 7).getRerunsFailed());
+        Map<String, HistoryStore.TestStats> summary = store.summarize(3);
+        assertEquals(2, summary.size());
+        assertEquals(3, summary.get(CLEAN_TEST).getBuilds());
+    }
+
+    @Test
+    public void testPartialAppendIsIgnored() throws IOException {
+        HistoryStore store = new HistoryStore(directory);
+        store.appendBuild(1L, Collections.singletonList(new HistoryStore.Row(NIO_TEST, 0b01, 0b10, 1)));
+        // Simulate an append interrupted after writing part of a row
+        try (FileOutputStream out = new FileOutputStream(new File(directory, "test.col"), true)) {
+            out.write(new byte[]{0, 0});
+        }
+        try (FileOutputStream out = new FileOutputStream(new File(directory, "tests.idx"), true)) {
+            out.write("[engine:junit".getBytes());
+        }
+
+        HistoryStore reopened = new HistoryStore(directory);
+        assertEquals(1, reopened.getRowCount());
+        reopened.appendBuild(2L, Collections.singletonList(new HistoryStore.Row(CLEAN_TEST, 0b11, 0, 1)));
+
+        HistoryStore recovered = new HistoryStore(directory);
+        assertEquals(2, recovered.getRowCount());
+        assertEquals(1, recovered.query(CLEAN_TEST, 1).getBuilds());
+        assertEquals(1, recovered.query(NIO_TEST, 2).getFlakyBuilds());
+        assertTrue(recovered.summarize(2).containsKey(CLEAN_TEST));
+    }
+
+    @Test
+    public void testRowsOfUnpublishedBuildAreIgnored() throws IOException {
+        HistoryStore store = new HistoryStore(directory);
+        store.appendBuild(1L, Collections.singletonList(new HistoryStore.Row(NIO_TEST, 0b01, 0b10, 1)));
+        store.appendBuild(2L, Arrays.asList(new HistoryStore.Row(NIO_TEST, 0b11, 0, 1),
+            new HistoryStore.Row(CLEAN_TEST, 0b11, 0, 1)));
+        // Simulate an append interrupted in the middle of the last row of one column, before the build was published
+        truncate(new File(directory, "failed.col"), 2 * Long.BYTES + Long.BYTES / 2);
+        truncate(new File(directory, "builds.col"), Long.BYTES);
+
+        HistoryStore reopened = new HistoryStore(directory);
+        assertEquals(1, reopened.getBuildCount());
+        assertEquals(1, reopened.getRowCount());
+        assertEquals(0, reopened.query(CLEAN_TEST, 2).getBuilds());
+        assertEquals(1, reopened.query(NIO_TEST, 2).getBuilds());
+        assertEquals(1, reopened.query(NIO_TEST, 2).getFlakyBuilds());
+
+        reopened.appendBuild(3L, Collections.singletonList(new HistoryStore.Row(CLEAN_TEST, 0b11, 0, 1)));
+
+        HistoryStore recovered = new HistoryStore(directory);
+        assertEquals(2, recovered.getBuildCount());
+        assertEquals(2, recovered.getRowCount());
+        assertEquals(1, recovered.query(CLEAN_TEST, 1).getBuilds());
+        assertEquals(1, recovered.query(NIO_TEST, 2).getBuilds());
+    }
+
+    private static void truncate(File file, long size) throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.WRITE)) {
+            channel.truncate(size);
+        }
+    }
+}
@@ -0,0 +1,58 @@
+package edu.illinois.NIOInspector.plugin.util.history;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class TestPrioritizerTest {
+
+    private File directory;
+
+    @BeforeEach
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("history").toFile();
+    }
+
+    @AfterEach
+    public void tearDown() {
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        directory.delete();
+    }
+
+    @Test
+    public void testLikelyFlakyClassesRunFirst() throws IOException {
+        HistoryStore store = new HistoryStore(directory);
+        for (int build = 0; build < 4; build++) {
+            store.appendBuild(build, Arrays.asList(
+                new HistoryStore.Row(testId("com.example.CleanTest", "fast"), 0b11, 0, 1),
+                new HistoryStore.Row(testId("com.example.SlowCleanTest", "slow"), 0b11, 0, 1000),
+                new HistoryStore.Row(testId("com.example.NDTest", "sometimes"), build % 2 == 0 ? 0b101 : 0b111,
+                    build % 2 == 0 ? 0b010 : 0, 1),
+                new HistoryStore.Row(testId("com.example.NIOTest", "polluting"), 0b01, 0b10, 1)));
+        }
+        List<String> testClasses = Arrays.asList("com.example.SlowCleanTest", "com.example.CleanTest",
+            "com.example.NDTest", "com.example.NewTest", "com.example.NIOTest");
+
+        List<String> prioritized = TestPrioritizer.prioritize(testClasses, store.summarize(200));
+
+        assertEquals(Arrays.asList("com.example.NIOTest", "com.example.NDTest", "com.example.NewTest",
+            "com.example.CleanTest", "com.example.SlowCleanTest"), prioritized);
+    }
+
+    private static String testId(String testClass, String method) {
+        return "[engine:junit-jupiter]/[class:" + testClass + "]/[method:" + method + "()]";
+    }
+}
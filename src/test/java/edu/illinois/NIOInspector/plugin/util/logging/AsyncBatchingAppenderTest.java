@@ -0,0 +1,145 @@
+package edu.illinois.NIOInspector.plugin.util.logging;
+
+import ch.qos.logback.core.Appender;
+import ch.qos.logback.core.AppenderBase;
+import ch.qos.logback.core.ContextBase;
+import ch.qos.logback.core.FileAppender;
+import ch.qos.logback.core.encoder.EchoEncoder;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class AsyncBatchingAppenderTest {
+
+    @TempDir
+    File tempDir;
+
+    @Test
+    public void testEventsAreWrittenInOrderAndFlushed() throws Exception {
+        ContextBase context = new ContextBase();
+        File logFile = new File(tempDir, "rerun-results.log");
+        FileAppender<String> fileAppender = new FileAppender<>();
+        fileAppender.setContext(context);
+        fileAppender.setFile(logFile.getPath());
+        fileAppender.setImmediateFlush(false);
+        fileAppender.setEncoder(new EchoEncoder<>());
+        fileAppender.start();
+        AsyncBatchingAppender<String> appender = createAppender(context, fileAppender);
+        List<String> events = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            events.add("event " + i);
+        }
+
+        events.forEach(appender::doAppend);
+
+        assertTrue(appender.awaitWritten(5000));
+        // Flushed once written, without stopping the appender
+        assertEquals(events, Files.readAllLines(logFile.toPath()));
+        List<String> report = appender.formatReport();
+        assertEquals(1, report.size());
+        assertTrue(report.get(0).startsWith("Log rerun-results.log: "), report.get(0));
+        assertTrue(report.get(0).contains(" written as 1000 event(s) in "), report.get(0));
+        appender.stop();
+        assertFalse(fileAppender.isStarted());
+    }
+
+    @Test
+    public void testFullQueueBlocksInsteadOfDropping() {
+        ContextBase context = new ContextBase();
+        SlowAppender slowAppender = new SlowAppender();
+        slowAppender.setContext(context);
+        slowAppender.start();
+        AsyncBatchingAppender<String> appender = new AsyncBatchingAppender<>();
+        appender.setQueueSize(1);
+        appender.setMaxBatchSize(1);
+        appender = createAppender(context, slowAppender, appender);
+
+        for (int i = 0; i < 20; i++) {
+            appender.doAppend("event " + i);
+        }
+        appender.stop();
+
+        List<String> expected = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            expected.add("event " + i);
+        }
+        assertEquals(expected, slowAppender.getEvents());
+        List<String> report = appender.formatReport();
+        assertEquals(2, report.size());
+        assertTrue(report.get(1).startsWith("Logging waited "), report.get(1));
+        assertTrue(report.get(1).endsWith("for room in the queue of 1 event(s)"), report.get(1));
+    }
+
+    @Test
+    public void testStopWritesQueuedEvents() {
+        ContextBase context = new ContextBase();
+        SlowAppender slowAppender = new SlowAppender();
+        slowAppender.setContext(context);
+        slowAppender.start();
+        AsyncBatchingAppender<String> appender = createAppender(context, slowAppender);
+
+        appender.doAppend("first");
+        appender.doAppend("second");
+        appender.stop();
+
+        assertEquals(Arrays.asList("first", "second"), slowAppender.getEvents());
+        assertFalse(slowAppender.isStarted());
+    }
+
+    @Test
+    public void testStartWithoutAttachedAppender() {
+        AsyncBatchingAppender<String> appender = new AsyncBatchingAppender<>();
+        appender.setContext(new ContextBase());
+
+        appender.start();
+
+        assertFalse(appender.isStarted());
+    }
+
+    private static AsyncBatchingAppender<String> createAppender(ContextBase context,
+        Appender<String> attached) {
+        return createAppender(context, attached, new AsyncBatchingAppender<>());
+    }
+
+    private static AsyncBatchingAppender<String> createAppender(ContextBase context,
+        Appender<String> attached, AsyncBatchingAppender<String> appender) {
+        appender.setContext(context);
+        appender.setName("test");
+        appender.addAppender(attached);
+        appender.start();
+        return appender;
+    }
+
+    /**
+     * Appender taking a few milliseconds per event, so that the queue fills up.
+     */
+    private static class SlowAppender extends AppenderBase<String> {
+
+        private final List<String> events = Collections.synchronizedList(new ArrayList<>());
+
+        @Override
+        protected void append(String event) {
+            try {
+                Thread.sleep(2);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            events.add(event);
+        }
+
+        List<String> getEvents() {
+            return new ArrayList<>(events);
+        }
+    }
+}
@@ -6,6 +6,7 @@ import ch.qos.logback.core.encoder.LayoutWrappingEncoder;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
+import java.io.File;
 import java.text.SimpleDateFormat;
 import java.util.Date;
 
@@ -39,4 +40,18 @@ public class CustomTimeBasedFileAppenderTest {
         assertEquals(expectedFilePath, appender.getFile());
     }
 
+    @Test
+    public void testStartWithLogDirectoryOverride() {
+        appender.setFile("logs/current-time/rerun-results");
+        CustomTimeBasedFileAppender.setLogDirectoryOverride("logs/shard-0");
+        try {
+            appender.start();
+        } finally {
+            CustomTimeBasedFileAppender.setLogDirectoryOverride(null);
+        }
+
+        assertEquals(new File("logs/shard-0", "rerun-results.log").getPath(), appender.getFile());
+        assertEquals(new File("logs/shard-0").getAbsolutePath(), CustomTimeBasedFileAppender.getLogDirectory());
+    }
+
 }
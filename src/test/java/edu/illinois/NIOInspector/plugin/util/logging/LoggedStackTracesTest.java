@@ -0,0 +1,38 @@
+package edu.illinois.NIOInspector.plugin.util.logging;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class LoggedStackTracesTest {
+
+    private static final String NL = System.lineSeparator();
+
+    private static final String FRAMES = NL + "\tat com.example.ExampleTest.test(ExampleTest.java:10)" + NL +
+        "\tat java.base/java.util.ArrayList.forEach(ArrayList.java:1511)";
+
+    @Test
+    public void testRepeatedFramesReferToTheFirstStackTrace() {
+        LoggedStackTraces traces = new LoggedStackTraces();
+
+        String first = traces.format("java.lang.AssertionError: expected <1> but was <2>" + FRAMES);
+        String other = traces.format("java.lang.IllegalStateException" + NL + "\tat com.example.OtherTest.test(OtherTest.java:3)");
+        String repeated = traces.format("java.lang.AssertionError: expected <1> but was <3>" + FRAMES);
+
+        assertEquals("(trace #1)" + NL + "java.lang.AssertionError: expected <1> but was <2>" + FRAMES, first);
+        assertEquals(2, LoggedStackTraces.parseFirst("[WARN] Failure message: " + other.split(NL)[0]));
+        assertEquals("same frames as trace #1" + NL + "java.lang.AssertionError: expected <1> but was <3>", repeated);
+        assertEquals(1, LoggedStackTraces.parseReference("[WARN] Failure message: " + repeated.split(NL)[0]));
+        assertEquals(-1, LoggedStackTraces.parseFirst("[WARN] Failure message: " + repeated.split(NL)[0]));
+    }
+
+    @Test
+    public void testStackTraceWithoutFramesIsNotNumbered() {
+        LoggedStackTraces traces = new LoggedStackTraces();
+
+        assertEquals(NL + "java.lang.AssertionError: failed", traces.format("java.lang.AssertionError: failed"));
+        assertEquals(NL + "java.lang.AssertionError: failed", traces.format("java.lang.AssertionError: failed"));
+        assertEquals(-1, LoggedStackTraces.parseReference("[WARN] Failure message: "));
+        assertEquals(-1, LoggedStackTraces.parseFirst("[WARN] Failure message: "));
+    }
+}
@@ -0,0 +1,56 @@
+package edu.illinois.NIOInspector.plugin.util.logging;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class PhaseTimerTest {
+
+    @Test
+    public void testPhasesOfTheSameNameAddUp() {
+        PhaseTimer timer = new PhaseTimer("rerun");
+
+        timer.record("discovery", TimeUnit.MILLISECONDS.toNanos(5));
+        timer.record("reruns", TimeUnit.MILLISECONDS.toNanos(20));
+        timer.record("reruns", TimeUnit.MILLISECONDS.toNanos(30));
+
+        assertEquals(TimeUnit.MILLISECONDS.toNanos(5), timer.getTotalNanos("discovery"));
+        assertEquals(TimeUnit.MILLISECONDS.toNanos(50), timer.getTotalNanos("reruns"));
+        assertEquals(0, timer.getTotalNanos("class loading"));
+    }
+
+    @Test
+    public void testPhaseIsRecordedOnlyOnce() {
+        PhaseTimer timer = new PhaseTimer("rerun");
+
+        PhaseTimer.Phase phase = timer.start("discovery", "initial run");
+        assertEquals(-1, phase.getElapsedNanos());
+        phase.close();
+        long elapsedNanos = phase.getElapsedNanos();
+        phase.close();
+
+        assertTrue(elapsedNanos >= 0);
+        assertEquals(elapsedNanos, phase.getElapsedNanos());
+        assertEquals(elapsedNanos, timer.getTotalNanos("discovery"));
+    }
+
+    @Test
+    public void testFormatTimingsInTheOrderPhasesFirstRan() {
+        PhaseTimer timer = new PhaseTimer("collectTestInfo");
+        assertTrue(timer.formatTimings().isEmpty());
+
+        timer.record("log parsing", TimeUnit.MILLISECONDS.toNanos(12));
+        timer.record("source parsing", TimeUnit.MILLISECONDS.toNanos(7));
+        timer.record("log parsing", TimeUnit.MILLISECONDS.toNanos(3));
+
+        List<String> lines = timer.formatTimings();
+        assertEquals(3, lines.size());
+        assertEquals("Phase timings of collectTestInfo:", lines.get(0));
+        assertEquals(String.format("    %-24s %4dx %8d ms", "log parsing", 2, 15), lines.get(1));
+        assertEquals(String.format("    %-24s %4dx %8d ms", "source parsing", 1, 7), lines.get(2));
+    }
+}